@@ -16,7 +16,9 @@
 package meka.classifiers.incremental;
 
 import meka.classifiers.MultiXClassifier;
+import meka.classifiers.multilabel.IncrementalMultiLabelClassifier;
 import meka.core.*;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.UpdateableClassifier;
 import weka.core.*;
 import meka.classifiers.multilabel.MultiLabelClassifier;
@@ -31,6 +33,11 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * IncrementalEvaluation.java - For Evaluating Incremental (Updateable) Classifiers.
@@ -39,17 +46,24 @@ import java.util.Enumeration;
  */
 public class IncrementalEvaluation {
 
+	/** the evaluation options that take a value (see printOptions) */
+	protected static final String EVALUATION_OPTIONS[] = new String[]{"t", "T", "predictions", "x", "split-percentage", "sliding-window", "micro-batch", "supervision", "threshold", "verbosity", "d", "l", "model"};
+
 	/**
-	 * RunExperiment - Build and evaluate a model with command-line options.
+	 * RunExperiment - Build and evaluate a model with command-line options (and the other models given with -model,
+	 * on the same pass over the stream).
 	 * @param	h			a multi-label updateable classifier
 	 * @param	args		classifier + dataset options
 	 */
 	public static void runExperiment(MultiXClassifier h, String args[]) {
 		try {
+			// take out the evaluation options first, since the classifier rejects the options it does not know
+			String options[] = evaluationOptions(args);
 			h.setOptions(args);
-			Result avg = IncrementalEvaluation.evaluateModel(h,args);
-			if (avg != null)
-				System.out.println(avg);
+			for (Result r : IncrementalEvaluation.evaluateModels(h,options)) {
+				if (r != null)
+					System.out.println(r);
+			}
 		} catch(Exception e) {
 			System.err.println("Evaluation exception ("+e+"); failed to run experiment");
 			e.printStackTrace();
@@ -57,6 +71,46 @@ public class IncrementalEvaluation {
 		}
 	}
 
+	/**
+	 * EvaluationOptions - removes the evaluation options (see printOptions) from args.
+	 * @param	args		classifier + dataset options
+	 * @return	the evaluation options
+	 */
+	protected static String[] evaluationOptions(String args[]) throws Exception {
+		List<String> options = new ArrayList<String>();
+		for (String name : EVALUATION_OPTIONS) {
+			while (Utils.getOptionPos(name,args) >= 0) {
+				options.add("-"+name);
+				options.add(Utils.getOption(name,args));
+			}
+		}
+		if (Utils.getFlag("no-eval",args))
+			options.add("-no-eval");
+		return options.toArray(new String[0]);
+	}
+
+	/**
+	 * Models - h, and the classifiers given with -model (each as its classname and options, in a single string).
+	 * @param	h			a multi-label Updateable classifier
+	 * @param	options	dataset options
+	 * @return	the classifiers, h first
+	 */
+	protected static MultiXClassifier[] models(MultiXClassifier h, String options[]) throws Exception {
+		List<MultiXClassifier> models = new ArrayList<MultiXClassifier>();
+		models.add(h);
+		String spec;
+		while (!(spec = Utils.getOption("model",options)).isEmpty()) {
+			String spec_[] = Utils.splitOptions(spec);
+			String name = spec_[0];
+			spec_[0] = "";
+			Object h_ = AbstractClassifier.forName(name,spec_);
+			if (!(h_ instanceof MultiXClassifier) || !(h_ instanceof UpdateableClassifier))
+				throw new IllegalArgumentException("Not an updateable multi-label/multi-target classifier: " + name);
+			models.add((MultiXClassifier)h_);
+		}
+		return models.toArray(new MultiXClassifier[0]);
+	}
+
 	/**
 	 * EvaluateModel - Build and evaluate.
 	 * @param	h			a multi-label Updateable classifier
@@ -64,8 +118,23 @@ public class IncrementalEvaluation {
 	 * @return	The evaluation Result, null if none produced (eg when just outputting predictions)
 	 */
 	public static Result evaluateModel(MultiXClassifier h, String options[]) throws Exception {
+		return evaluateModels(h, options)[0];
+	}
+
+	/**
+	 * EvaluateModels - Build and evaluate h, and the other models given with -model (each as its classname and
+	 * options, in a single string; may be repeated), which are evaluated prequentially on the same pass over the
+	 * stream (see evaluateModelsPrequentialBasic).
+	 * @param	h			a multi-label Updateable classifier
+	 * @param	options	dataset options (classifier options should already be set)
+	 * @return	The evaluation Result of h, then of each other model; null if none produced (eg when just outputting predictions)
+	 */
+	public static Result[] evaluateModels(MultiXClassifier h, String options[]) throws Exception {
 		boolean needPrebuiltModel = false;
 
+		// Other models to evaluate on the same stream
+		MultiXClassifier models[] = models(h, options);
+
 		// Load data for non-incremental testing
 		Instances test = null;
 		if (Utils.getOptionPos('T', options) > -1) {
@@ -74,11 +143,10 @@ public class IncrementalEvaluation {
 			needPrebuiltModel = true;
 		}
 
-		// Load training data
-		Instances train = null;
+		// Open the training stream (read one instance at a time; "stdin" for the standard input)
+		InstanceStream train = null;
 		if (Utils.getOptionPos('t', options) > -1) {
-			train = Evaluation.loadDataset(options, 't');
-			MLUtils.prepareData(train);
+			train = new InstanceStream(Utils.getOption('t', options));
 			needPrebuiltModel = false;  // we can build a model with training data
 		}
 
@@ -94,6 +162,14 @@ public class IncrementalEvaluation {
 		// Set the size of the initial training
 		int nInit = OptionUtils.parse(options, "split-percentage", 10);
 
+		// Sample performance over a sliding window (rather than since the start)?
+		int nSliding = OptionUtils.parse(options, "sliding-window", 0);
+
+		// Update with micro-batches (rather than one instance at a time)?
+		int nBatch = OptionUtils.parse(options, "micro-batch", 1);
+		if (nBatch < 1)
+			throw new IllegalArgumentException("Micro-batch size must be at least 1, provided: " + nBatch);
+
 		// Partially labelled ?
 		double rLabeled = OptionUtils.parse(options, "supervision", 1.);
 
@@ -121,7 +197,7 @@ public class IncrementalEvaluation {
 				dataHeader = (Instances) data[1];
 				String msg;
 				if (train != null) {
-					msg = train.equalHeadersMsg(dataHeader);
+					msg = train.getStructure().equalHeadersMsg(dataHeader);
 					if (msg != null)
 						throw new IllegalArgumentException("New training data is not compatible with training header stored in '" + lname + "':\n" + msg);
 				}
@@ -140,23 +216,43 @@ public class IncrementalEvaluation {
 
 		if (h.getDebug()) {
 			if (train != null)
-				System.out.println(":- Dataset -: " + MLUtils.getDatasetName(train) + "\tL=" + train.classIndex() + "");
+				System.out.println(":- Dataset -: " + MLUtils.getDatasetName(train.getStructure()) + "\tL=" + train.getStructure().classIndex() + "");
 			if (test != null)
 				System.out.println(":- Test -: " + MLUtils.getDatasetName(test) + "\tL=" + test.classIndex() + "");
 		}
 
 		Utils.checkForRemainingOptions(options);
 
+		if (models.length > 1) {
+			if (train == null || !doEval || test != null || lname != null || dname != null || !predictions.isEmpty())
+				throw new IllegalArgumentException("Other models (-model) can only be evaluated on the training stream (-t), without -T, -l, -d, -predictions or -no-eval");
+			return evaluateModelsPrequentialBasic(models, train, nWin, nSliding, nBatch, rLabeled, Top, Vop);
+		}
+
 		Result result = null;
 		if (train != null) {
 			if (doEval) {
-				result = evaluateModelPrequentialBasic(h, train, nWin, rLabeled, Top, Vop);
+				result = evaluateModelPrequentialBasic(h, train, nWin, nSliding, nBatch, rLabeled, Top, Vop);
 			}
 			else {
-				Instances init = new Instances(train, 0, nWin); 	// initial window
+				Instances init = new Instances(train.getStructure(), nWin); 	// initial window
+				Instance inst;
+				while (init.numInstances() < nWin && (inst = train.next()) != null)
+					init.add(inst);
 				h.buildClassifier(init);
-				for (Instance inst: train)
-					((UpdateableClassifier) h).updateClassifier(inst);
+				for (Instance x : init)
+					((UpdateableClassifier) h).updateClassifier(x);
+				init = null;
+				Instances batch = new Instances(train.getStructure(), nBatch);
+				while ((inst = train.next()) != null) {
+					batch.add(inst);
+					if (batch.numInstances() == nBatch) {
+						update(h, batch);
+						batch.delete();
+					}
+				}
+				if (batch.numInstances() > 0)
+					update(h, batch);
 			}
 		}
 		if (test != null && doEval) {
@@ -166,7 +262,7 @@ public class IncrementalEvaluation {
 		}
 
 		if (dname != null) {
-			dataHeader = new Instances(train, 0);
+			dataHeader = new Instances(train.getStructure(), 0);
 			SerializationHelper.writeAll(dname, new Object[]{h, dataHeader});
 		}
 
@@ -199,7 +295,7 @@ public class IncrementalEvaluation {
 			}
 		}
 
-		return result;
+		return new Result[]{result};
 	}
 
 	private static String measures[] = new String[]{"Accuracy", "Exact match", "Hamming score"};
@@ -464,10 +560,62 @@ public class IncrementalEvaluation {
 	 * The window is sampled every N/numWindows instances, for a total of numWindows windows.
 	 */
 	public static Result evaluateModelPrequentialBasic(MultiXClassifier h, Instances D, int windowSize, double rLabeled, String Top, String Vop) throws Exception {
+		return evaluateModelPrequentialBasic(h, D, windowSize, 0, rLabeled, Top, Vop);
+	}
+
+	/**
+	 * Prequential Evaluation - Accuracy since the start of evaluation, or over a sliding window.
+	 * The statistics are accumulated as the predictions come in (see ResultAccumulator), so neither the cost
+	 * of a sample nor the memory grow with the length of the stream; the predictions are not stored in the Result.
+	 * @param	h	Multilabel Classifier
+	 * @param 	D	stream
+	 * @param	windowSize	sampling frequency (of evaluation statistics)
+	 * @param	slidingWindow	the number of most recent predictions to sample the statistics over (0 = since the start)
+	 * @param	rLabeled	labelled-ness (1.0 by default)
+	 * @param	Top	threshold option
+	 * @param	Vop	verbosity option
+	 */
+	public static Result evaluateModelPrequentialBasic(MultiXClassifier h, Instances D, int windowSize, int slidingWindow, double rLabeled, String Top, String Vop) throws Exception {
+		return evaluateModelPrequentialBasic(h, new InstanceStream(D), windowSize, slidingWindow, rLabeled, Top, Vop);
+	}
+
+	/**
+	 * Prequential Evaluation - on a stream that is read one instance at a time, so that only the initial window
+	 * is held in memory, and the stream may be of any length (see InstanceStream).
+	 * @param	h	Multilabel Classifier
+	 * @param 	stream	stream
+	 * @param	windowSize	sampling frequency (of evaluation statistics), and the size of the initial window
+	 * @param	slidingWindow	the number of most recent predictions to sample the statistics over (0 = since the start)
+	 * @param	rLabeled	labelled-ness (1.0 by default)
+	 * @param	Top	threshold option
+	 * @param	Vop	verbosity option
+	 */
+	public static Result evaluateModelPrequentialBasic(MultiXClassifier h, InstanceStream stream, int windowSize, int slidingWindow, double rLabeled, String Top, String Vop) throws Exception {
+		return evaluateModelPrequentialBasic(h, stream, windowSize, slidingWindow, 1, rLabeled, Top, Vop);
+	}
+
+	/**
+	 * Prequential Evaluation - with updates in micro-batches: each instance is tested as it arrives, and the
+	 * classifier is updated once a batch has been tested (and at each sample), in a single call if it is an
+	 * IncrementalMultiLabelClassifier. The update latency of each instance is that of its batch, shared evenly.
+	 * With PCut1/PCutL, the threshold of the first window is calibrated on the predictions of the initial classifier
+	 * for the initial window, and that of each next window on the predictions of the last one; the label frequencies
+	 * only count the labels the classifier is given (see -supervision), including those of the initial window.
+	 * @param	h	Multilabel Classifier
+	 * @param 	stream	stream
+	 * @param	windowSize	sampling frequency (of evaluation statistics), and the size of the initial window
+	 * @param	slidingWindow	the number of most recent predictions to sample the statistics over (0 = since the start)
+	 * @param	batchSize	the number of instances per update (1 = one instance at a time)
+	 * @param	rLabeled	labelled-ness (1.0 by default)
+	 * @param	Top	threshold option
+	 * @param	Vop	verbosity option
+	 */
+	public static Result evaluateModelPrequentialBasic(MultiXClassifier h, InstanceStream stream, int windowSize, int slidingWindow, int batchSize, double rLabeled, String Top, String Vop) throws Exception {
 
 		if (h.getDebug())
 			System.out.println(":- Classifier -: "+h.getClass().getName()+": "+Arrays.toString(h.getOptions()));
 
+		Instances D = stream.getStructure();
 		int L = D.classIndex();
 
 		Result result = new Result();
@@ -477,21 +625,24 @@ public class IncrementalEvaluation {
 
 		double nth = 1. / rLabeled; // label every nth example
 		result.setInfo("Supervision",String.valueOf(rLabeled));
+		if (batchSize > 1)
+			result.setInfo("Micro-batch",String.valueOf(batchSize));
 
-		Instances D_init = new Instances(D,0,windowSize); 	// initial window
+		Instances D_init = new Instances(D,windowSize); 	// initial window
+		Instance x;
+		while (D_init.numInstances() < windowSize && (x = stream.next()) != null)
+			D_init.add(x);
 
 		if (h.getDebug()) {
-			System.out.println("Training classifier on initial window (of size "+windowSize+") ...");
+			System.out.println("Training classifier on initial window (of size "+D_init.numInstances()+") ...");
 		}
 
-		train_time = System.currentTimeMillis();
+		train_time = System.nanoTime();
 		h.buildClassifier(D_init); 										// initial classifir
-		train_time = System.currentTimeMillis() - train_time;
-
-		D = new Instances(D,windowSize,D.numInstances()-windowSize); 	// the rest (after the initial window)
+		train_time = System.nanoTime() - train_time;
 
 		if (h.getDebug()) {
-			System.out.println("Proceeding to Test/Label/Update cycle on remaining ("+D.numInstances()+") instances ...");
+			System.out.println("Proceeding to Test/Label/Update cycle on the remaining instances ...");
 		}
 
 		result.setInfo("Classifier",h.getClass().getName());
@@ -499,34 +650,88 @@ public class IncrementalEvaluation {
 		result.setInfo("Additional Info",h.toString());
 		result.setInfo("Dataset",MLUtils.getDatasetName(D));
 		result.setInfo("Verbosity",Vop);
+		// calibrate the threshold online (PCut1, or PCutL for each label)?
+		boolean pcut = false;
 		if (h instanceof MultiTargetClassifier || Evaluation.isMT(D)) {
 			result.setInfo("Type","MT");
 		}
 		else {
 			result.setInfo("Type","ML");
 			double t = 0.5;
-			try {
-				t = Double.parseDouble(Top);
-			} catch(Exception e) {
-				System.err.println("[WARNING] Only a single threshold can be chosen for this kind of evaluation; Using "+t);
+			if (Top.equals("PCut1") || Top.equals("PCutL")) {
+				pcut = true;
+			}
+			else {
+				try {
+					t = Double.parseDouble(Top);
+				} catch(Exception e) {
+					System.err.println("[WARNING] Only a single threshold, PCut1 or PCutL can be chosen for this kind of evaluation; Using "+t);
+				}
 			}
 			result.setInfo("Threshold", String.valueOf(t));
 		}
+
+		// for PCut: a sketch of the confidences of the current window (one per label for PCutL), and the frequency
+		// of each label among those the classifier was given so far; the threshold of the next window is calibrated
+		// on them, and that of the first window on the initial window (as predicted by the initial classifier)
+		QuantileSketch sketches[] = null;
+		int ones[] = null, labelled[] = null;
+		if (pcut) {
+			sketches = new QuantileSketch[Top.equals("PCutL") ? L : 1];
+			for (int j = 0; j < sketches.length; j++)
+				sketches[j] = new QuantileSketch();
+			ones = new int[L];
+			labelled = new int[L];
+			long before = System.nanoTime();
+			for (Instance x_init : D_init) {
+				double y[] = h.distributionForInstance((Instance)x_init.copy());
+				for (int j = 0; j < L; j++)
+					sketches[sketches.length == 1 ? 0 : j].add(y[j]);
+				countLabels(x_init, ones, labelled);
+			}
+			if (D_init.numInstances() > 0)
+				result.setInfo("Threshold", thresholdString(sketches, calibrateThresholds(sketches, ones, labelled)));
+			train_time += System.nanoTime() - before;
+		}
+		D_init = null;
+
 		ArrayList<HashMap<String,Object>> samples = new ArrayList<HashMap<String,Object>>();
 
-		for(int i = 0; i < D.numInstances(); i++) {
+		// the statistics since the start, and the ones sampled over time
+		ResultAccumulator stats = new ResultAccumulator(result.getInfo("Type"), result.getInfo("Threshold"));
+		ResultAccumulator sampled = stats;
+		if (slidingWindow > 0)
+			sampled = new ResultAccumulator(result.getInfo("Type"), result.getInfo("Threshold"), slidingWindow);
+
+		// the latencies (in ns) over the current sample window, merged into those since the start at its end
+		LatencyHistogram test_lat = new LatencyHistogram();
+		LatencyHistogram update_lat = new LatencyHistogram();
+		LatencyHistogram test_lat_w = new LatencyHistogram();
+		LatencyHistogram update_lat_w = new LatencyHistogram();
+
+		// the instances tested, but not yet learned from
+		Instances batch = new Instances(D, batchSize);
+
+		for(int i = 0; (x = stream.next()) != null; i++) {
 
-			Instance x = D.instance(i);
 			Instance x_ = (Instance)x.copy(); 		// copy
 				
 			/*
 			 * TEST
 			 */
-			long before_test = System.currentTimeMillis();
+			long before_test = System.nanoTime();
 			double y[] = h.distributionForInstance(x_);
-			long after_test = System.currentTimeMillis();
+			long after_test = System.nanoTime();
 			test_time += (after_test-before_test);
-			result.addResult(y,x);
+			test_lat_w.add(after_test-before_test);
+			int y_true[] = MLUtils.toIntArray(x,y.length);
+			stats.addResult(y,y_true);
+			if (sampled != stats)
+				sampled.addResult(y,y_true);
+			if (pcut) {
+				for (int j = 0; j < L; j++)
+					sketches[sketches.length == 1 ? 0 : j].add(y[j]);
+			}
 
 			/*
 			 * LABEL BECOMES AVAILABLE ?
@@ -534,50 +739,224 @@ public class IncrementalEvaluation {
 			if ( rLabeled >= 0.5 ) {
 				x = MLUtils.setLabelsMissing(x,L);
 			}
+			if (pcut)
+				countLabels(x, ones, labelled);
 
 			/*
 			 * UPDATE
 			 * (The classifier will have to decide if it wants to deal with unlabelled instances.)
 			 */
-			long before = System.currentTimeMillis();
-			((UpdateableClassifier)h).updateClassifier(x);
-			long after = System.currentTimeMillis();
-			train_time += (after-before); 
+			if (batchSize == 1) {
+				long before = System.nanoTime();
+				((UpdateableClassifier)h).updateClassifier(x);
+				long after = System.nanoTime();
+				train_time += (after-before);
+				update_lat_w.add(after-before);
+			}
+			else {
+				batch.add(x);
+				if (batch.numInstances() == batchSize || i % windowSize == (windowSize-1))
+					train_time += update(h, batch, update_lat_w);
+			}
 
 			/*
 			 * RECORD MEASUREMENT
 			 */
 			if (i % windowSize == (windowSize-1)) {
-				HashMap<String,Object> eval_sample = Result.getStats(result,Vop);
-				eval_sample.put("Test time",(test_time)/1000.0);
-				eval_sample.put("Build time",(train_time)/1000.0);
-				eval_sample.put("Total time",(test_time+train_time)/1000.0);
+				HashMap<String,Object> eval_sample = sampled.getStats(Vop);
+				eval_sample.put("Test time",(test_time)/1e9);
+				eval_sample.put("Build time",(train_time)/1e9);
+				eval_sample.put("Total time",(test_time+train_time)/1e9);
+				test_lat_w.addMeasurements(eval_sample, "Test");
+				update_lat_w.addMeasurements(eval_sample, "Update");
+				eval_sample.put("Throughput (instances/s)",LatencyHistogram.throughput(test_lat_w, update_lat_w));
+				test_lat.merge(test_lat_w);
+				update_lat.merge(update_lat_w);
+				test_lat_w.clear();
+				update_lat_w.clear();
 				eval_sample.put("Instances",(double)i);
 				eval_sample.put("Samples",(double)(samples.size()+1));
 				samples.add(eval_sample);
-				System.out.println("Sample (#"+samples.size()+") of performance at "+i+"/"+D.numInstances()+" instances.");
+				System.out.println("Sample (#"+samples.size()+") of performance at "+i+" instances.");
+
+				if (pcut) {
+					String t_ = thresholdString(sketches, calibrateThresholds(sketches, ones, labelled));
+					stats.setThreshold(t_);
+					sampled.setThreshold(t_);
+					result.setInfo("Threshold", t_);
+				}
 			}
 
 		}
+		if (batch.numInstances() > 0)
+			train_time += update(h, batch, update_lat_w);
+		test_lat.merge(test_lat_w);
+		update_lat.merge(update_lat_w);
 
-		result.output = Result.getStats(result,Vop);
+		result.output = stats.getStats(Vop);
 		result.setMeasurement("Results sampled over time", Result.getResultsAsInstances(samples));
 
-		result.vals.put("Test time",(test_time)/1000.0);
-		result.vals.put("Build time",(train_time)/1000.0);
-		result.vals.put("Total time",(test_time+train_time)/1000.0);
+		result.vals.put("Test time",(test_time)/1e9);
+		result.vals.put("Build time",(train_time)/1e9);
+		result.vals.put("Total time",(test_time+train_time)/1e9);
+		test_lat.addMeasurements(result.vals, "Test");
+		update_lat.addMeasurements(result.vals, "Update");
+		result.vals.put("Throughput (instances/s)",LatencyHistogram.throughput(test_lat, update_lat));
 
 		return result;
 	}
 
 
+	/** the number of instances that may wait for each model, when evaluating several models on one stream */
+	public static final int QUEUE_CAPACITY = 1000;
+
+	/**
+	 * Prequential Evaluation - of several models on a single pass over the stream: the stream is read once, and each
+	 * instance is given to all the models, which are evaluated concurrently, each in its own thread (see
+	 * InstanceStream.fanOut); so the time taken is roughly that of the slowest model. At most QUEUE_CAPACITY
+	 * instances wait for any model.
+	 * @param	h	the classifiers
+	 * @param 	stream	stream
+	 * @param	windowSize	sampling frequency (of evaluation statistics), and the size of the initial window
+	 * @param	slidingWindow	the number of most recent predictions to sample the statistics over (0 = since the start)
+	 * @param	batchSize	the number of instances per update (1 = one instance at a time)
+	 * @param	rLabeled	labelled-ness (1.0 by default)
+	 * @param	Top	threshold option
+	 * @param	Vop	verbosity option
+	 * @return	the Result of each classifier
+	 */
+	public static Result[] evaluateModelsPrequentialBasic(MultiXClassifier h[], InstanceStream stream, int windowSize, int slidingWindow, int batchSize, double rLabeled, String Top, String Vop) throws Exception {
+
+		Result results[] = new Result[h.length];
+		if (h.length == 1) {
+			results[0] = evaluateModelPrequentialBasic(h[0], stream, windowSize, slidingWindow, batchSize, rLabeled, Top, Vop);
+			return results;
+		}
+
+		InstanceStream streams[] = stream.fanOut(h.length, QUEUE_CAPACITY);
+		ExecutorService executor = Executors.newFixedThreadPool(h.length);
+		try {
+			List<Future<Result>> futures = new ArrayList<Future<Result>>(h.length);
+			for (int k = 0; k < h.length; k++) {
+				final MultiXClassifier h_k = h[k];
+				final InstanceStream stream_k = streams[k];
+				futures.add(executor.submit(() -> {
+					try {
+						return evaluateModelPrequentialBasic(h_k, stream_k, windowSize, slidingWindow, batchSize, rLabeled, Top, Vop);
+					}
+					finally {
+						stream_k.close();
+					}
+				}));
+			}
+
+			// read the stream (in this thread), at the pace of the slowest model
+			stream.feed(streams);
+
+			for (int k = 0; k < h.length; k++) {
+				try {
+					results[k] = futures.get(k).get();
+				}
+				catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+			stream.close();
+		}
+
+		return results;
+	}
+
+	/**
+	 * CalibrateThresholds - PCut (with a single sketch of all confidences) or PCutL (a sketch for each label),
+	 * from the label frequencies so far; the sketches are then cleared for the next window.
+	 * @param	sketches	the sketch(es) of the confidences
+	 * @param	ones		the number of times each label was relevant
+	 * @param	labelled	the number of times each label was not missing
+	 * @return	the threshold of each label
+	 */
+	protected static double[] calibrateThresholds(QuantileSketch sketches[], int ones[], int labelled[]) {
+		int L = ones.length;
+		double F[] = new double[L];
+		for (int j = 0; j < L; j++)
+			F[j] = (labelled[j] > 0) ? ones[j] / (double)labelled[j] : 0.;
+		double t[];
+		if (sketches.length == 1) {
+			t = new double[L];
+			Arrays.fill(t, ThresholdUtils.calibrateThreshold(sketches[0], Utils.sum(F), L));
+		}
+		else {
+			t = ThresholdUtils.calibrateThresholds(sketches, F);
+		}
+		for (QuantileSketch s : sketches)
+			s.clear();
+		return t;
+	}
+
+	/**
+	 * CountLabels - add the known labels of x to the label frequencies (for PCut).
+	 */
+	protected static void countLabels(Instance x, int ones[], int labelled[]) {
+		for (int j = 0; j < ones.length; j++) {
+			if (!x.isMissing(j)) {
+				if (x.value(j) > 0.5)
+					ones[j]++;
+				labelled[j]++;
+			}
+		}
+	}
+
+	/**
+	 * ThresholdString - the "Threshold" of the thresholds t calibrated on the given sketches: a single one (PCut1),
+	 * or one per label (PCutL).
+	 */
+	protected static String thresholdString(QuantileSketch sketches[], double t[]) {
+		return (sketches.length == 1) ? String.valueOf(t[0]) : Arrays.toString(t);
+	}
+
+	/**
+	 * Update - the classifier with a batch, in a single call if it is an IncrementalMultiLabelClassifier.
+	 */
+	protected static void update(MultiXClassifier h, Instances batch) throws Exception {
+		if (h instanceof IncrementalMultiLabelClassifier) {
+			((IncrementalMultiLabelClassifier)h).updateClassifier(batch);
+		}
+		else {
+			for (Instance x : batch)
+				((UpdateableClassifier)h).updateClassifier(x);
+		}
+	}
+
+	/**
+	 * Update - the classifier with a batch (which is then cleared), recording the latency of each instance
+	 * as an equal share of that of the batch.
+	 * @return	the time taken, in nanoseconds
+	 */
+	protected static long update(MultiXClassifier h, Instances batch, LatencyHistogram... lat) throws Exception {
+		int n = batch.numInstances();
+		long before = System.nanoTime();
+		update(h, batch);
+		long t = System.nanoTime() - before;
+		for (LatencyHistogram lat_ : lat) {
+			for (int k = 0; k < n; k++)
+				lat_.add(t / n);
+		}
+		batch.delete();
+		return t;
+	}
+
 	public static void printOptions(Enumeration e) {
 
 		// Evaluation Options
 		StringBuffer text = new StringBuffer();
 		text.append("\n\nEvaluation Options:\n\n");
-		text.append("-t\n");
-		text.append("\tSpecify the dataset (required)\n");
+		text.append("-t <name of stream file>\n");
+		text.append("\tSpecify the dataset (required); it is read one instance at a time, and may be a named pipe, or 'stdin' to read from the standard input.\n");
 		text.append("-T <name of test file>\n");
 		text.append("\tSets test file (will be used for making predictions).\n");
 		text.append("-predictions <name of output file for predictions>\n");
@@ -586,14 +965,20 @@ public class IncrementalEvaluation {
 		//text.append("\tSets the percentage of data to use for the initial training, e.g., 10.\n");
 		text.append("-x <number of windows>\n");
 		text.append("\tSets the number of samples to take (at evenly space intervals); default: 10.\n");
+		text.append("-sliding-window <number of instances>\n");
+		text.append("\tSamples the performance over this many most recent instances, rather than since the start; default: 0 (since the start).\n");
+		text.append("-micro-batch <number of instances>\n");
+		text.append("\tUpdates the classifier with this many instances at a time (each is tested before the update); default: 1.\n");
 		text.append("-no-eval\n");
 		text.append("\tSkips evaluation, e.g., used when test set contains no class labels.\n");
 		text.append("-supervision <ratio labelled>\n");
 		text.append("\tSets the ratio of labelled instances; default: 1.\n");
 		text.append("-threshold <threshold>\n");
-		text.append("\tSets the threshold to use.\n");
+		text.append("\tSets the threshold to use: a value, or PCut1 (PCutL) to calibrate a threshold (one for each label) online, at each sample.\n");
 		text.append("-verbosity <verbosity level>\n");
 		text.append("\tSpecify more/less evaluation output.\n");
+		text.append("-model <classname and options>\n");
+		text.append("\tAlso evaluates this classifier (e.g., \"meka.classifiers.multilabel.incremental.CCUpdateable -W weka.classifiers.bayes.NaiveBayesUpdateable\"), on the same pass over the stream; may be given several times.\n");
 		// Multilabel Options
 		text.append("\n\nClassifier Options:\n\n");
 		while (e.hasMoreElements()) {
@@ -20,6 +20,8 @@ import meka.core.A;
 import meka.core.MatrixUtils;
 import meka.core.OptionUtils;
 import meka.core.StatUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import mst.Edge;
 import mst.EdgeWeightedGraph;
 import mst.KruskalMST;
@@ -43,7 +45,7 @@ import java.util.*;
  * @author	Jesse Read
  * @version June 2013
  */
-public class BCC extends CC {
+public class BCC extends CC implements ThreadLimiter {
 
 	private static final long serialVersionUID = 585507197229071545L;
 
@@ -91,7 +93,7 @@ public class BCC extends CC {
 		if (m_DependencyType.equals("L")) {
 			// New Option
 			if (getDebug()) System.out.println("The 'LEAD' method for finding conditional dependence.");
-			CD = StatUtils.LEAD(D,getClassifier(),m_R);
+			CD = StatUtils.LEAD(D,getClassifier(),getSeed(),m_NumThreads,m_CacheLEAD);
 		}
 		else {	
 			// Old/default Option
@@ -216,10 +218,55 @@ public class BCC extends CC {
 		return "XXX";
 	}
 
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;
+
+	/**
+	 * Sets the number of threads to use for measuring dependencies with LEAD.
+	 *
+	 * @param value 	the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1)
+			m_NumThreads = value;
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	/**
+	 * Returns the number of threads to use for measuring dependencies with LEAD.
+	 *
+	 * @return 		the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads to use for the internal models of LEAD (-X L); -1 = # of CPUs/cores.";
+	}
+
+	protected boolean m_CacheLEAD = false;
+
+	public void setCacheLEAD(boolean value) {
+		m_CacheLEAD = value;
+	}
+
+	public boolean getCacheLEAD() {
+		return m_CacheLEAD;
+	}
+
+	public String cacheLEADTipText() {
+		return "Whether to re-use the LEAD matrix (-X L) of earlier builds on the same data with the same base classifier and seed.";
+	}
+
 	@Override
 	public Enumeration listOptions() {
 		Vector result = new Vector();
 		result.addElement(new Option("\tThe way to measure dependencies.\n\tdefault: "+m_DependencyType+" (frequencies only)", "X", 1, "-X <value>"));
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.SEQUENTIAL, "num-threads");
+		OptionUtils.addFlag(result, cacheLEADTipText(), "cache-lead");
 		OptionUtils.add(result, super.listOptions());
 		return OptionUtils.toEnumeration(result);
 	}
@@ -227,6 +274,8 @@ public class BCC extends CC {
 	@Override
 	public void setOptions(String[] options) throws Exception {
 		setDependencyType(OptionUtils.parse(options, 'X', "Ibf"));
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		setCacheLEAD(Utils.getFlag("cache-lead", options));
 		super.setOptions(options);
 	}
 
@@ -234,6 +283,8 @@ public class BCC extends CC {
 	public String [] getOptions() {
 		List<String> result = new ArrayList<>();
 		OptionUtils.add(result, 'X', getDependencyType());
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		OptionUtils.add(result, "cache-lead", getCacheLEAD());
 		OptionUtils.add(result, super.getOptions());
 		return OptionUtils.toArray(result);
 	}
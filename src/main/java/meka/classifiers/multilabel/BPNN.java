@@ -19,11 +19,20 @@ import Jama.Matrix;
 import meka.classifiers.multilabel.NN.AbstractNeuralNet;
 import meka.core.MLUtils;
 import meka.core.MatrixUtils;
+import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Option;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @TEMP
@@ -32,12 +41,13 @@ import java.util.Random;
 /**
  * BPNN.java - Back Propagation Neural Network.
  * This is a standard back-propagated Neural Network with multiple outputs that correspond to multiple labels.<br>
- * If trained 'from scratch' only 1 layer is possible, but if you initialise it (from another method) with pre-trained weight matrices, the number of layers is inferred from that.
+ * If trained 'from scratch' only 1 layer is possible, but if you initialise it (from another method) with pre-trained weight matrices, the number of layers is inferred from that.<br>
+ * Training works on mini-batches (of size 1 by default, i.e., online), using preallocated activation and gradient buffers.
  * @author Jesse Read 
  * @version March 2013
 */
 
-public class BPNN extends AbstractNeuralNet {
+public class BPNN extends AbstractNeuralNet implements ThreadLimiter {
 
 	private static final long serialVersionUID = -4568680054917021671L;
 
@@ -46,6 +56,23 @@ public class BPNN extends AbstractNeuralNet {
 	protected Random r = null;
 	protected Matrix dW_[] = null;
 
+	/** mini-batch size */
+	protected int m_MiniBatchSize = 1;
+
+	/** number of threads for the matrix multiplications */
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;
+
+	/** Training buffers: activations Z[0..nW] (all but the last with bias column) */
+	protected transient double Z_[][][] = null;
+	/** Training buffers: error terms dZ[1..nW] */
+	protected transient double dZ_[][][] = null;
+	/** Training buffers: back-propagated errors E[1..nW-1] (with bias column) */
+	protected transient double E_[][][] = null;
+	/** Training buffers: weight gradients */
+	protected transient double G_[][][] = null;
+	/** the thread pool used during training, null if sequential */
+	protected transient ExecutorService m_Executor = null;
+
 	public BPNN() {
 		// different default for now
 		m_E = 100;			
@@ -159,30 +186,77 @@ public class BPNN extends AbstractNeuralNet {
 		I = Math.abs(I);
 		double E_ = Double.MAX_VALUE;
 		double E = 0.0;
-		for(int e = 0; e < I; e++) {
-			E = update(X_,Y_);
-			if (breakEarly && E > E_) {
-				if (getDebug()) System.out.println(" early stopped at epcho "+e+" ... ");
-				break; 	// positive gradient
+		m_Executor = ThreadUtils.newExecutor(m_NumThreads, ThreadUtils.getAvailableProcessors());
+		try {
+			for(int e = 0; e < I; e++) {
+				E = update(X_,Y_);
+				if (breakEarly && E > E_) {
+					if (getDebug()) System.out.println(" early stopped at epcho "+e+" ... ");
+					break; 	// positive gradient
+				}
+				E_ = E;
 			}
-			E_ = E;
+		}
+		finally {
+			if (m_Executor != null)
+				m_Executor.shutdownNow();
+			m_Executor = null;
+			// the training buffers are only needed while training
+			this.Z_ = null;
+			this.dZ_ = null;
+			this.E_ = null;
+			this.G_ = null;
 		}
 		if (getDebug()) System.out.println("Done.");
 		return E;
 	}
 
 	/**
-	 * Update - A single training epoch.
+	 * Update - A single training epoch, in mini-batches of size m_MiniBatchSize.
 	 */
 	public double update(double X_[][], double Y_[][]) throws Exception {
 		int N = X_.length;
+		int B = Math.max(1, Math.min(m_MiniBatchSize, N));
+		initBuffers(B);
 		double E = 0.0;
-		for(int i = 0; i < N; i++) {
-			E += this.backPropagate(new double[][]{X_[i]},new double[][]{Y_[i]});
+		for(int i = 0; i < N; i += B) {
+			E += this.backPropagate(X_,Y_,i,Math.min(i+B,N));
 		}
 		return E;
 	}
 
+	/**
+	 * InitBuffers - (Re)allocate the training buffers for batches of up to B rows, unless the current ones already fit.
+	 * @param	B	the batch size
+	 */
+	protected void initBuffers(int B) {
+		int nW = W.length;
+
+		if (Z_ != null && Z_.length == nW+1 && Z_[0].length >= B) {
+			boolean fits = true;
+			for(int i = 0; i < nW; i++) {
+				fits = fits && G_[i].length == W[i].getRowDimension() && G_[i][0].length == W[i].getColumnDimension();
+			}
+			if (fits)
+				return;
+		}
+
+		Z_ = new double[nW+1][][];
+		dZ_ = new double[nW+1][][];
+		E_ = new double[nW][][];
+		G_ = new double[nW][][];
+		for(int i = 0; i < nW; i++) {
+			int rows = W[i].getRowDimension();
+			int cols = W[i].getColumnDimension();
+			Z_[i] = new double[B][rows];
+			dZ_[i+1] = new double[B][cols];
+			if (i > 0)
+				E_[i] = new double[B][rows];
+			G_[i] = new double[rows][cols];
+		}
+		Z_[nW] = new double[B][W[nW-1].getColumnDimension()];
+	}
+
 	/**
 	 * Forward Pass - Given input x_, get output y_.
 	 * @param	x_	input
@@ -211,33 +285,23 @@ public class BPNN extends AbstractNeuralNet {
 	public Matrix[] forwardPass(double X_[][]) {
 
 		int numW = W.length; // number of weight matrices
+		int N = X_.length;
 		Matrix Z[] = new Matrix[numW+1];
 
 		// input activations
 		Z[0] = new Matrix(MatrixUtils.addBias(X_));
 
-		// hidden layer(s)
-		int i = 1;
-		for(i = 1; i < numW; i++) {
+		// hidden layer(s)     Z[n] = [1,sigma(Z[n-1] * W[n-1])]
+		for(int i = 1; i <= numW; i++) {
 			if (getDebug())
-				System.out.print("DO: ["+i+"] "+ MatrixUtils.getDim(Z[i - 1].getArray())+" * "+ MatrixUtils.getDim(W[i - 1].getArray())+" => ");
-
-			Matrix A_z = Z[i-1].times(W[i-1]);									// 					A = X * W1 		= Z[n-1] * W[n-1]	 
-			Z[i] = MatrixUtils.sigma(A_z);
-			Z[i] = MatrixUtils.addBias(Z[i]);											// ACTIVATIONS      Z[n] = sigma(A)	=
-
-			if (getDebug())
-				System.out.println("==: "+ MatrixUtils.getDim(A_z.getArray()));
+				System.out.println("DO: ["+i+"] "+ MatrixUtils.getDim(Z[i - 1].getArray())+" * "+ MatrixUtils.getDim(W[i - 1].getArray()));
+			boolean hidden = (i < numW);
+			double Z_i[][] = new double[N][W[i-1].getColumnDimension() + (hidden ? 1 : 0)];
+			MatrixUtils.multiplySigma(Z[i-1].getArray(), W[i-1].getArray(), Z_i, N, hidden, null);
+			Z[i] = new Matrix(Z_i);
 		}
 
-		// output layer
-		if (getDebug())
-			System.out.print("DX: ["+i+"] "+ MatrixUtils.getDim(Z[i - 1].getArray())+" * "+ MatrixUtils.getDim(W[i - 1].getArray())+" => ");
-		Matrix A_y = Z[i-1].times(W[i-1]);			// 					A = X * W1 		= Z[n-1] * W[n-1]	 
-		if (getDebug())
-			System.out.println("==: "+ MatrixUtils.getDim(A_y.getArray()));
-		Z[numW] = MatrixUtils.sigma(A_y);					// ACTIVATIONS      Z[n] = sigma(A)	=
-
+		// output layer: Y = Z[numW] (no bias)
 		return Z;
 	}
 
@@ -247,63 +311,144 @@ public class BPNN extends AbstractNeuralNet {
 	 * @param	Y_	teacher values
 	 */
 	public double backPropagate(double[][] X_, double[][] Y_) throws Exception {
+		initBuffers(X_.length);
+		return backPropagate(X_,Y_,0,X_.length);
+	}
 
-		int N = X_.length;				// batch size
-		int L = Y_[0].length;			// num. of labels
-		int nW = W.length;				// num. of weight matrices
+	/**
+	 * Back Propagate - Do one round of Back Propagation on the batch of rows [from,to) of X_,Y_, using the training buffers (which must fit the batch).
+	 * Gives the same result as the Matrix-based formulation (see comments), but without allocating anything.
+	 * @param	X_	input
+	 * @param	Y_	teacher values
+	 * @param	from	the first row of the batch
+	 * @param	to	the row after the last row of the batch
+	 * @return	the SQRT of the SUM of SQUARE ERROR over the batch
+	 */
+	protected double backPropagate(double[][] X_, double[][] Y_, int from, int to) throws Exception {
 
-		Matrix T = new Matrix(Y_);					// TARGETS
+		int N = to - from;				// batch size
+		int nW = W.length;				// num. of weight matrices
 
 		/*
 		   1. FORWARD PROPAGATION. 
 		   Forward-propagate X through the neural net to produce Z_1, Z_2, ..., Y.
 		 */
 
-		//Matrix X = new Matrix(M.addBias(X_));		// INPUT 
-		Matrix Z[] = forwardPass(X_);				// ALL LAYERS
+		// input activations 														Z[0] = [1,X]
+		for(int n = 0; n < N; n++) {
+			Z_[0][n][0] = 1.0;
+			System.arraycopy(X_[from+n],0,Z_[0][n],1,Z_[0][n].length-1);
+		}
+
+		// hidden layer(s) 															Z[i] = [1,sigma(Z[i-1] * W[i-1])]
+		for(int i = 1; i < nW; i++) {
+			MatrixUtils.multiplySigma(Z_[i-1], W[i-1].getArray(), Z_[i], N, true, m_Executor);
+		}
+
+		// output layer 															Y = sigma(Z[nW-1] * W[nW-1])
+		double Y[][] = Z_[nW];
+		MatrixUtils.multiplySigma(Z_[nW-1], W[nW-1].getArray(), Y, N, false, m_Executor);
 
 		/*
 		   2. BACKWARD PROPAGATION. 
 		   Propagate the errors backward through the neural net.
 		 */
 
-		Matrix dZ[] = new Matrix[nW+1]; // *new*
-
-		// Error terms (output)
-		Matrix E_y = T.minus(Z[nW]);												// ERROR
-
-		dZ[nW] = MatrixUtils.dsigma(Z[nW]).arrayTimes(E_y);
+		// Error terms (output) 													dZ[nW] = dsigma(Y) .* (T - Y)
+		double SSE = 0.0;
+		for(int n = 0; n < N; n++) {
+			double y[] = Y[n];
+			double t[] = Y_[from+n];
+			double d[] = dZ_[nW][n];
+			for(int j = 0; j < y.length; j++) {
+				double e = t[j] - y[j];
+				SSE = Jama.util.Maths.hypot(SSE,e);										// (as Matrix.normF())
+				d[j] = MatrixUtils.dsigma(y[j]) * e;
+			}
+		}
 
-		// Error terms (hidden) *NEW*
+		// Error terms (hidden) 													dZ[i] = removeBias(dsigma(Z[i]) .* (dZ[i+1] * W[i]'))
 		for(int i = nW-1; i > 0; i--) {
-			Matrix E = dZ[i+1].times(W[i].transpose());
-			dZ[i] = MatrixUtils.dsigma(Z[i]).arrayTimes(E);
-			dZ[i] = new Matrix(MatrixUtils.removeBias(dZ[i].getArray()));
+			double E[][] = E_[i];
+			MatrixUtils.multiplyTranspose(dZ_[i+1], W[i].getArray(), E, N, m_Executor);
+			for(int n = 0; n < N; n++) {
+				double z[] = Z_[i][n];
+				double d[] = dZ_[i][n];
+				for(int j = 0; j < d.length; j++) {
+					d[j] = MatrixUtils.dsigma(z[j+1]) * E[n][j+1];
+				}
+			}
 		}
 
-		// Error terms (hidden)
-		//Matrix E_z = dY.times(W[1].transpose());
-		//Matrix dZ = M.dsigma(Z[1]).arrayTimes(E_z); 
-		//dZ = new Matrix(M.removeBias(dZ.getArray()));
-
-		// Weight derivatives
-		Matrix dW[] = new Matrix[nW];
+		// Weight derivatives, momentum, and update 								dW[i] = (Z[i]' * r) * dZ[i+1] + dW_[i] * m; W[i] += dW[i]
 		for(int i = 0; i < nW; i++) {
-			dW[i] = (Z[i].transpose().times(m_R).times(dZ[i+1])) .plus (dW_[i].times(m_M));
+			double G[][] = G_[i];
+			MatrixUtils.transposeMultiply(Z_[i], m_R, dZ_[i+1], G, N, m_Executor);
+			double W_[][] = W[i].getArray();
+			double D_[][] = dW_[i].getArray();
+			for(int j = 0; j < G.length; j++) {
+				for(int k = 0; k < G[j].length; k++) {
+					D_[j][k] = G[j][k] + D_[j][k] * m_M;
+					W_[j][k] += D_[j][k];
+				}
+			}
 		}
 
-		// Weight update
-		for(int i = 0; i < nW; i++) {
-			//W[i] = W[i].plusEquals(dW[i]);
-			W[i].plusEquals(dW[i]);
-		}
+		return SSE;
+	}
 
-		// Update momentum records
-		dW_ = dW;
+	public void setMiniBatchSize(int b) {
+		m_MiniBatchSize = b;
+	}
 
-		//double SSE = (E_y.transpose().times(E_y)).trace();					// SUM of SQUARE ERROR (faster?)
-		double SSE = E_y.normF();												// SQRT of SUM of SQUARE ERROR (not the sqrt is not necessary, thus the following line should also suffice)
-		return SSE;
+	public int getMiniBatchSize() {
+		return m_MiniBatchSize;
+	}
+
+	public String miniBatchSizeTipText() {
+		return "The number of instances per back-propagation update (1 = online).";
+	}
+
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1)
+			m_NumThreads = value;
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads to use for the matrix multiplications during training; -1 = # of CPUs/cores.";
+	}
+
+	@Override
+	public Enumeration listOptions() {
+		Vector result = new Vector();
+		result.addElement(new Option("\tSets the mini-batch size\n\tdefault: 1", "B", 1, "-B <value>"));
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.SEQUENTIAL, "num-threads");
+		OptionUtils.add(result, super.listOptions());
+		return OptionUtils.toEnumeration(result);
+	}
+
+	@Override
+	public void setOptions(String[] options) throws Exception {
+		setMiniBatchSize(OptionUtils.parse(options, 'B', 1));
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		super.setOptions(options);
+	}
+
+	@Override
+	public String [] getOptions() {
+		List<String> result = new ArrayList<>();
+		OptionUtils.add(result, 'B', getMiniBatchSize());
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		OptionUtils.add(result, super.getOptions());
+		return OptionUtils.toArray(result);
 	}
 
 	public static void main(String args[]) throws Exception {
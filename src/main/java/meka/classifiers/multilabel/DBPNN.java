@@ -17,6 +17,7 @@ package meka.classifiers.multilabel;
 
 import Jama.Matrix;
 import meka.classifiers.multilabel.NN.AbstractDeepNeuralNet;
+import meka.classifiers.multilabel.NN.RepresentationCache;
 import meka.core.MLUtils;
 import meka.core.MatrixUtils;
 import rbms.DBM;
@@ -66,8 +67,20 @@ public class DBPNN extends AbstractDeepNeuralNet implements TechnicalInformation
 		dbm.setE(m_E);
 		((DBM)dbm).setH(m_H, m_N);
 
+		int B = (m_B > 0) ? m_B : m_H;
+		String key = getCacheKey(D,B);
+		RepresentationCache.Entry cached = isCaching() ? RepresentationCache.read(m_CacheDir,key) : null;
+
 		long before = System.currentTimeMillis();
-		dbm.train(X_,m_H); // batch train
+		if (cached != null) {
+			if (getDebug()) System.out.println("Using cached pre-trained weights ... ");
+			dbm.setWs(cached.W);
+		}
+		else {
+			dbm.train(X_,B); // batch train
+			if (isCaching())
+				RepresentationCache.write(m_CacheDir,key,dbm.getWs(),null);
+		}
 		rbm_time = System.currentTimeMillis() - before;
 
 		if (getDebug()) {
@@ -91,7 +104,7 @@ public class DBPNN extends AbstractDeepNeuralNet implements TechnicalInformation
 		                                                            
 		Matrix W[] = trimBiases(dbm.getWs());
 
-		// Back propagate with batch size of 1 to fine tune the DBM into a supervised DBN
+		// Back propagate (with the BPNN's mini-batch size) to fine tune the DBM into a supervised DBN
 		if (m_Classifier instanceof BPNN) {
 			if (getDebug())
 				System.out.println("You have chosen to use BPNN (good!)");
@@ -20,6 +20,7 @@ import meka.classifiers.multitarget.MultiTargetClassifier;
 import meka.core.MLEvalUtils;
 import meka.core.MLUtils;
 import meka.core.Result;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -595,6 +596,25 @@ public class Evaluation {
 		Result result = new Result(D_test.numInstances(),L);
 
 		if(h.getDebug()) System.out.print(":- Evaluate ");
+		if (h instanceof BatchPredictor && ((BatchPredictor)h).implementsMoreEfficientBatchPrediction()) {
+			// No cheating allowed; clear all class information (of a copy of the test data)
+			Instances D = new Instances(D_test);
+			for (int i = 0; i < D.numInstances(); i++) {
+				for(int v = 0; v < L; v++)
+					D.instance(i).setValue(v,0.0);
+			}
+
+			// Get and store the rankings, all at once
+			double Y[][] = ((BatchPredictor)h).distributionsForInstances(D);
+			for (int i = 0; i < D_test.numInstances(); i++) {
+				double y[] = Y[i];
+				if (h instanceof MultiTargetClassifier)
+					y = Arrays.copyOfRange(y, L, L*2);
+				result.addResult(y,D_test.instance(i));
+			}
+			if(h.getDebug()) System.out.println(":-");
+			return result;
+		}
 		for (int i = 0, c = 0; i < D_test.numInstances(); i++) {
 
 			if(h.getDebug()) { int t = i*50/D_test.numInstances(); if(t > c) { System.out.print("#"); c = t; } }
@@ -21,6 +21,8 @@
 package meka.classifiers.multilabel;
 
 import weka.classifiers.UpdateableClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
 
 /**
  * Interface for incremental multi-label classifiers.
@@ -30,4 +32,16 @@ import weka.classifiers.UpdateableClassifier;
  */
 public interface IncrementalMultiLabelClassifier
   extends MultiLabelClassifier, UpdateableClassifier{
+
+  /**
+   * Updates the classifier with a micro-batch of instances, as if with each of them in turn.
+   * Classifiers can override this to share the per-instance overhead across the batch.
+   *
+   * @param batch	the instances
+   * @throws Exception	if the update fails
+   */
+  public default void updateClassifier(Instances batch) throws Exception {
+    for (Instance x : batch)
+      updateClassifier(x);
+  }
 }
@@ -18,6 +18,7 @@ package meka.classifiers.multilabel;
 import weka.classifiers.Classifier;
 import weka.classifiers.SingleClassifierEnhancer;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -80,6 +81,42 @@ public abstract class LabelTransformationClassifier
      */
     public abstract double[] transformPredictionsBack(double[] y);
 
+    /**
+     * Transforms a batch of instances, as transformInstance does single instances. Subclasses
+     * should override this to transform all the instances at once, e.g., to extract the features
+     * of the whole batch with one filter run.
+     *
+     * @param D The instances to transform. Consist of features and labels.
+     * @return The transformed instances. Consist of features and transformed labels.
+     */
+    public Instances transformInstances(Instances D) throws Exception {
+	Instances result = null;
+	for (int i = 0; i < D.numInstances(); i++) {
+	    Instance x = this.transformInstance(D.instance(i));
+	    if (result == null)
+		result = new Instances(x.dataset(), D.numInstances());
+	    result.add(x);
+	}
+	return result;
+    }
+
+    /**
+     * Transforms a batch of predictions of the internal classifier back to the original labels,
+     * as transformPredictionsBack does single predictions. Subclasses should override this to
+     * decode the whole batch at once, e.g., with one matrix multiplication.
+     *
+     * @param Y The predictions that should be transformed back, one row per instance, each as
+     * returned from the internal classifier.
+     * @return The transformed predictions.
+     */
+    public double[][] transformPredictionsBack(double[][] Y) {
+	double[][] result = new double[Y.length][];
+	for (int i = 0; i < Y.length; i++) {
+	    result[i] = this.transformPredictionsBack(Y[i]);
+	}
+	return result;
+    }
+
 
     /** 
      * Default constructor using BR.
@@ -148,6 +185,54 @@ public abstract class LabelTransformationClassifier
 	return y;
     }
 
+    /**
+     * Batch prediction is only more efficient if the internal classifier's is.
+     *
+     * @return true if the internal classifier predicts batches more efficiently
+     */
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+	return (m_Classifier instanceof BatchPredictor) && ((BatchPredictor) m_Classifier).implementsMoreEfficientBatchPrediction();
+    }
+
+    /**
+     * Predicts the instances block by block (of getBatchSize() instances): a block gets
+     * transformed at once, predicted by the internal classifier (as a batch, if it supports
+     * that), and transformed back at once.
+     *
+     * @param D the instances to predict
+     * @return the predictions, one row per instance, as from distributionForInstance
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances D) throws Exception {
+	int N = D.numInstances();
+	double[][] result = new double[N][];
+	int B = Integer.parseInt(getBatchSize());
+	if (B <= 0)
+	    B = Math.max(N, 1);
+
+	for (int from = 0; from < N; from += B) {
+	    int n = Math.min(B, N - from);
+	    Instances D_transformed = this.transformInstances(new Instances(D, from, n));
+
+	    double[][] Y_transformed;
+	    if (m_Classifier instanceof BatchPredictor) {
+		Y_transformed = ((BatchPredictor) m_Classifier).distributionsForInstances(D_transformed);
+	    }
+	    else {
+		Y_transformed = new double[n][];
+		for (int i = 0; i < n; i++) {
+		    Y_transformed[i] = m_Classifier.distributionForInstance(D_transformed.instance(i));
+		}
+	    }
+
+	    double[][] Y = this.transformPredictionsBack(Y_transformed);
+	    System.arraycopy(Y, 0, result, from, n);
+	}
+
+	return result;
+    }
+
     @Override
     public String getRevision() {
 	return RevisionUtils.extract("$Revision: 9117 $");
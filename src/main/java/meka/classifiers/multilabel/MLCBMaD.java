@@ -16,20 +16,24 @@
 package meka.classifiers.multilabel;
 
 
+import meka.core.BooleanMatrixUtils;
 import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import org.kramerlab.bmad.algorithms.BooleanMatrixDecomposition;
 import org.kramerlab.bmad.general.Tuple;
-import org.kramerlab.bmad.matrix.BooleanMatrix;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -42,7 +46,7 @@ import java.util.Vector;
  *
  * @author 	Joerg Wicker (jw@oerg-wicker.org)
  */
-public class MLCBMaD extends LabelTransformationClassifier implements TechnicalInformationHandler {
+public class MLCBMaD extends LabelTransformationClassifier implements TechnicalInformationHandler, ThreadLimiter {
 
     protected static final long serialVersionUID = 585507197229071545L;
 
@@ -56,6 +60,11 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
      */
     protected Instances compressedMatrix = null;
 
+    /**
+     * The rows of the upper matrix as bitsets, for decoding.
+     */
+    protected transient long[][] upperbits = null;
+
     /**
      * The size of the compressed matrix, i.e., the number of columns of Y'.
      */
@@ -68,6 +77,21 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
      */
     protected double threshold = getDefaultThreshold();
 
+    /**
+     * Whether to use the bitset decomposition of MEKA instead of the BMaD library.
+     */
+    protected boolean useNative = false;
+
+    /**
+     * The seed for the initial order of the candidates (bitset decomposition only).
+     */
+    protected int seed = getDefaultSeed();
+
+    /**
+     * The number of threads to use for the decomposition (bitset decomposition only).
+     */
+    protected int numThreads = ThreadUtils.SEQUENTIAL;
+
     /**
      * Default threshold = 0.5, has to be in at least half of the rows.
      *
@@ -140,6 +164,91 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
 	    + "\n Between 0 and 1.";
     }
 
+    /**
+     * Returns whether the bitset decomposition is used.
+     *
+     * @return true if the bitset decomposition is used.
+     */
+    public boolean getUseNative(){
+	return useNative;
+    }
+
+    /**
+     * Sets whether to use the bitset decomposition instead of the BMaD library.
+     *
+     * @param useNative true to use the bitset decomposition.
+     */
+    public void setUseNative(boolean useNative){
+	this.useNative = useNative;
+    }
+
+    /**
+     * The tooltip for the native flag.
+     *
+     * @return the tooltip.
+     */
+    public String useNativeTipText(){
+	return "Use MEKA's bitset implementation of the decomposition instead of the BMaD library \n"
+	    + "(same algorithm, faster for large numbers of labels, reproducible through the seed).";
+    }
+
+    /**
+     * The default seed, set to 0.
+     *
+     * @return the default seed.
+     */
+    protected int getDefaultSeed(){
+	return 0;
+    }
+
+    /**
+     * Returns the seed of the bitset decomposition.
+     *
+     * @return the seed.
+     */
+    public int getSeed(){
+	return seed;
+    }
+
+    /**
+     * Sets the seed of the bitset decomposition.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(int seed){
+	this.seed = seed;
+    }
+
+    /**
+     * The tooltip for the seed.
+     *
+     * @return the tooltip.
+     */
+    public String seedTipText(){
+	return "The seed for the initial order of the candidate basis vectors (bitset decomposition only).";
+    }
+
+    @Override
+    public void setNumThreads(int value) {
+	if (value >= -1)
+	    numThreads = value;
+	else
+	    System.err.println("Number of threads must be >= -1, provided: " + value);
+    }
+
+    @Override
+    public int getNumThreads() {
+	return numThreads;
+    }
+
+    /**
+     * Gives the tiptext for numThreads.
+     * @return the tiptext for numThreads.
+     */
+    public String numThreadsTipText() {
+	return "The number of threads to use for the bitset decomposition; -1 = # of CPUs/cores.";
+    }
+
     /** 
      * Returns the global information of the classifier.
      * 
@@ -173,6 +282,20 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
 			      ""+getDefaultThreshold(),
 			      "threshold");
 
+	OptionUtils.addFlag(newVector,
+			    useNativeTipText(),
+			    "native");
+
+	OptionUtils.addOption(newVector,
+			      seedTipText(),
+			      ""+getDefaultSeed(),
+			      "seed");
+
+	OptionUtils.addOption(newVector,
+			      numThreadsTipText(),
+			      ""+ThreadUtils.SEQUENTIAL,
+			      "num-threads");
+
 	OptionUtils.add(newVector, super.listOptions());
 
 	return OptionUtils.toEnumeration(newVector);
@@ -187,6 +310,9 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
 	List<String> result = new ArrayList<>();
 	OptionUtils.add(result, "size", getSize());
 	OptionUtils.add(result, "threshold", getThreshold());
+	OptionUtils.add(result, "native", getUseNative());
+	OptionUtils.add(result, "seed", getSeed());
+	OptionUtils.add(result, "num-threads", getNumThreads());
 	OptionUtils.add(result, super.getOptions());
 	return OptionUtils.toArray(result);
     }
@@ -199,6 +325,9 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
     public void setOptions(String[] options) throws Exception {
 	setSize(OptionUtils.parse(options, "size", getDefaultSize()));
 	setThreshold(OptionUtils.parse(options, "threshold", getDefaultThreshold()));
+	setUseNative(Utils.getFlag("native", options));
+	setSeed(OptionUtils.parse(options, "seed", getDefaultSeed()));
+	setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
 	super.setOptions(options);
     }
 
@@ -218,28 +347,33 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
 
     @Override
     public Instance transformInstance(Instance x) throws Exception{
-	Instances tmpInst = new Instances(x.dataset());
+	// only the header of the dataset, not all of its instances
+	Instances tmpInst = new Instances(x.dataset(), 1);
 
-	tmpInst.delete();
 	tmpInst.add(x);
-	
-	Instances features = this.extractPart(tmpInst, false);
 
-	Instances pseudoLabels = new Instances(this.compressedMatrix);
-	Instance tmpin = pseudoLabels.instance(0);
-	pseudoLabels.delete();
+	return transformInstances(tmpInst).instance(0);
+    }
 
-	pseudoLabels.add(tmpin);
+    @Override
+    public Instances transformInstances(Instances D) throws Exception{
+	Instances features = this.extractPart(D, false);
+
+	// the header of the compressed labels, with all of them missing
+	Instances pseudoLabels = new Instances(this.compressedMatrix, D.numInstances());
 
-	for ( int i = 0; i< pseudoLabels.classIndex(); i++) {
-	    pseudoLabels.instance(0).setMissing(i);
+	for (int j = 0; j < D.numInstances(); j++) {
+	    pseudoLabels.add(this.compressedMatrix.instance(0));
+	    for ( int i = 0; i< pseudoLabels.classIndex(); i++) {
+		pseudoLabels.instance(j).setMissing(i);
+	    }
 	}
 
 	Instances newDataSet = Instances.mergeInstances(pseudoLabels, features);
 	newDataSet.setClassIndex(this.size);
 
 	
-	return newDataSet.instance(0);
+	return newDataSet;
     }
 
     @Override
@@ -248,12 +382,21 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
 	Instances features = this.extractPart(D, false);
 	Instances labels = this.extractPart(D, true);
 
-	BooleanMatrixDecomposition bmd =
+	if (this.useNative) {
+	    Instances[] res = BooleanMatrixUtils.decompose(labels, this.size, this.threshold,
+							   new Random(this.seed), this.numThreads);
+	    this.compressedMatrix = res[0];
+	    this.uppermatrix = res[1];
+	}
+	else {
+	    BooleanMatrixDecomposition bmd =
 			BooleanMatrixDecomposition.BEST_CONFIGURED(this.threshold);
-	Tuple<Instances, Instances> res = bmd.decompose(labels, this.size);
-	
-	this.compressedMatrix = res._1;
-	this.uppermatrix = res._2;
+	    Tuple<Instances, Instances> res = bmd.decompose(labels, this.size);
+
+	    this.compressedMatrix = res._1;
+	    this.uppermatrix = res._2;
+	}
+	this.upperbits = null;
 	
 	Instances result= Instances.mergeInstances(compressedMatrix,
 						   features);
@@ -264,27 +407,66 @@ public class MLCBMaD extends LabelTransformationClassifier implements TechnicalI
 
     @Override
     public double[] transformPredictionsBack(double[] y){
-	byte[] yByteArray = new byte[y.length];
+	return transformPredictionsBack(new double[][]{y})[0];
+    }
 
-	for(int i = 0; i < y.length; i++){
-	    yByteArray[i] = y[i]>=0.5 ? BooleanMatrix.TRUE:BooleanMatrix.FALSE;
+    /**
+     * Transforms a batch of predictions back: the Boolean product of the thresholded predictions
+     * and the upper matrix, computed on bitsets (label j is predicted if any of the predicted
+     * compressed labels includes it).
+     *
+     * @param Y The predictions that should be transformed back, one row per instance.
+     * @return The transformed predictions.
+     */
+    @Override
+    public double[][] transformPredictionsBack(double[][] Y){
+	long[][] upper = getUpperBits();
+	int L = this.uppermatrix.numAttributes();
+	double[][] result = new double[Y.length][L];
+	long[] reconstruction = new long[(L + 63) / 64];
+
+	for (int n = 0; n < Y.length; n++){
+	    double[] y = Y[n];
+	    if (y.length != upper.length)
+		throw new IllegalArgumentException("Incompatible matrix dimensions: cannot multiply 1 x "
+		    + y.length + " matrix with a " + upper.length + " x " + L + " matrix.");
+
+	    java.util.Arrays.fill(reconstruction, 0L);
+	    for (int i = 0; i < y.length; i++){
+		if (y[i] >= 0.5){
+		    long[] u = upper[i];
+		    for (int w = 0; w < u.length; w++){
+			reconstruction[w] |= u[w];
+		    }
+		}
+	    }
+	    for (int j = 0; j < L; j++){
+		result[n][j] = (reconstruction[j >>> 6] & (1L << j)) != 0 ? 1.0 : 0.0;
+	    }
 	}
 
-	BooleanMatrix yMatrix =
-			new BooleanMatrix( new byte[][]{yByteArray});
-	BooleanMatrix reconstruction =
-			yMatrix.booleanProduct(new BooleanMatrix(this.uppermatrix));
-
-	
-	double[] result = new double[reconstruction.getWidth()];
-	
-	for(int i = 0; i < reconstruction.getWidth(); i++){
-	    result[i] = reconstruction.apply(0,i) == BooleanMatrix.TRUE  ? 1.0:0.0;
+	return result;
+    }
 
+    /**
+     * The rows of the upper matrix as bitsets, of the entries that are true (in BooleanMatrix,
+     * values other than 0 and missing).
+     */
+    protected long[][] getUpperBits(){
+	if (this.upperbits == null){
+	    int L = this.uppermatrix.numAttributes();
+	    long[][] bits = new long[this.uppermatrix.numInstances()][(L + 63) / 64];
+	    for (int i = 0; i < bits.length; i++){
+		Instance u = this.uppermatrix.instance(i);
+		for (int j = 0; j < L; j++){
+		    double v = u.value(j);
+		    if (!Double.isNaN(v) && v != 0)
+			bits[i][j >>> 6] |= 1L << j;
+		}
+	    }
+	    this.upperbits = bits;
 	}
-
-	
-	return result;
+	return this.upperbits;
     }
     
     @Override
@@ -18,19 +18,28 @@ package meka.classifiers.multilabel;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import meka.classifiers.multilabel.Evaluation;
 import meka.classifiers.multitarget.CR;
 import meka.core.OptionUtils;
 import meka.core.Result;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import org.kramerlab.autoencoder.math.matrix.Mat;
 import org.kramerlab.autoencoder.neuralnet.autoencoder.Autoencoder;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.functions.LinearRegression;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.SerializedObject;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
@@ -50,7 +59,7 @@ import weka.filters.unsupervised.instance.SparseToNonSparse;
  *
  * @author 	Joerg Wicker (jw@joerg-wicker.org)
  */
-public class Maniac extends LabelTransformationClassifier implements TechnicalInformationHandler {
+public class Maniac extends LabelTransformationClassifier implements TechnicalInformationHandler, ThreadLimiter {
 
     protected static final long serialVersionUID = 585507197229071545L;
 
@@ -77,6 +86,24 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
      */
     protected double compression = getDefaultCompression();
 
+    /**
+     * The number of consecutive candidates in the optimization that may fail to improve on the best 
+     * validation accuracy before no more layers are added (0 = all candidates are evaluated).
+     */
+    protected int patience = getDefaultPatience();
+
+    /**
+     * The number of threads used to evaluate the candidates in the optimization.
+     */
+    protected int numThreads = ThreadUtils.SEQUENTIAL;
+
+    /**
+     * The features and the (converted) labels of the training data, if already available (e.g., in the 
+     * optimization, where they are shared by all candidates).
+     */
+    private transient Instances trainingFeatures;
+    private transient Mat trainingLabels;
+
     
     /**
      * Sets the autoencoder (for using a trained one, e.g. done in optimization).
@@ -87,6 +114,18 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
 	this.ae = ae;
     }
 
+    /**
+     * Sets the features and converted labels of the training data, so that the next call of 
+     * transformLabels does not have to extract and convert them again (e.g. done in optimization).
+     *
+     * @param features The features of the training data
+     * @param labels The labels of the training data, as a matrix
+     */
+    protected void setTrainingData(Instances features, Mat labels){
+	this.trainingFeatures = features;
+	this.trainingLabels = labels;
+    }
+
     /**
      * Returns the autoencoder of the class (used for compression of labels).
      *
@@ -238,6 +277,64 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
 	    +"set.";
     }
     
+    /**
+     * Get the <code>Patience</code> value.
+     *
+     * @return an <code>int</code> value
+     */
+    public int getPatience() {
+	return patience;
+    }
+
+    /**
+     * Set the <code>Patience</code> value.
+     *
+     * @param patience The new Patience value.
+     */
+    public void setPatience(int patience) {
+	this.patience = patience;
+    }
+
+    /**
+     * The default patience, 0, i.e. all candidates are evaluated.
+     *
+     * @return The default patience.
+     */
+    protected int getDefaultPatience(){
+	return 0;
+    }
+
+    /**
+     * Gives the tiptext for patience.
+     * @return the tiptext for patience.
+     */
+    public String patienceTipText(){
+	return "When optimizing the number of layers, stop adding layers once this many "
+	    +"consecutive candidates did not improve the validation accuracy (0 = evaluate all).";
+    }
+
+    @Override
+    public void setNumThreads(int value) {
+	if (value >= -1)
+	    numThreads = value;
+	else
+	    System.err.println("Number of threads must be >= -1, provided: " + value);
+    }
+
+    @Override
+    public int getNumThreads() {
+	return numThreads;
+    }
+
+    /**
+     * Gives the tiptext for numThreads.
+     * @return the tiptext for numThreads.
+     */
+    public String numThreadsTipText() {
+	return "The number of threads to use for evaluating the candidates when optimizing the "
+	    +"number of layers; -1 = # of CPUs/cores.";
+    }
+
     /** 
      * Returns the global information of the classifier.
      * 
@@ -274,6 +371,15 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
 			      ""+getDefaultOptimizeAE(),
 			      "optimizeAE");
 
+	OptionUtils.addOption(newVector,
+			      patienceTipText(),
+			      ""+getDefaultPatience(),
+			      "patience");
+
+	OptionUtils.addOption(newVector,
+			      numThreadsTipText(),
+			      ""+ThreadUtils.SEQUENTIAL,
+			      "num-threads");
 
 	
 	OptionUtils.add(newVector, super.listOptions());
@@ -302,6 +408,8 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
 	OptionUtils.add(result, "compression", getCompression());
 	OptionUtils.add(result, "optimizeAE", isOptimizeAE());
 	OptionUtils.add(result, "numberAutoencoders", getNumberAutoencoders());
+	OptionUtils.add(result, "patience", getPatience());
+	OptionUtils.add(result, "num-threads", getNumThreads());
 	OptionUtils.add(result, super.getOptions());
 	return OptionUtils.toArray(result);
     }
@@ -315,6 +423,8 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
 	setCompression(OptionUtils.parse(options, "compression", getDefaultCompression()));
 	setNumberAutoencoders(OptionUtils.parse(options, "numberAutoencoders", getDefaultNumberAutoencoders()));
 	setOptimizeAE(OptionUtils.parse(options, "optimizeAE", getDefaultOptimizeAE()));
+	setPatience(OptionUtils.parse(options, "patience", getDefaultPatience()));
+	setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
 	super.setOptions(options);
     }
 
@@ -335,125 +445,59 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
     @Override
     public Instance transformInstance(Instance x) throws Exception{
 	
-	Instances tmpInst = new Instances(x.dataset());
+	Instances tmpInst = new Instances(x.dataset(), 1);
 
-	tmpInst.delete();
 	tmpInst.add(x);
 	
-	Instances features = this.extractPart(tmpInst, false);
+	return transformInstances(tmpInst).instance(0);
+    }
 
-	Instances pseudoLabels = new Instances(this.compressedTemplateInst);
-	Instance tmpin = pseudoLabels.instance(0);
-	pseudoLabels.delete();
-	
-	pseudoLabels.add(tmpin);
+    @Override
+    public Instances transformInstances(Instances D) throws Exception{
 
-	for ( int i = 0; i< pseudoLabels.classIndex(); i++) {
-	    pseudoLabels.instance(0).setMissing(i);
+	Instances features = this.extractPart(D, false);
+
+	Instances pseudoLabels = new Instances(this.compressedTemplateInst, D.numInstances());
+	
+	for (int j = 0; j < D.numInstances(); j++) {
+	    pseudoLabels.add(this.compressedTemplateInst.instance(0));
+	    for ( int i = 0; i< pseudoLabels.classIndex(); i++) {
+		pseudoLabels.instance(j).setMissing(i);
+	    }
 	}
 
 	Instances newDataSet = Instances.mergeInstances(pseudoLabels, features);
 	newDataSet.setClassIndex(pseudoLabels.numAttributes());
 	
-	return newDataSet.instance(0);
+	return newDataSet;
     }
 
     @Override
     public Instances transformLabels(Instances D) throws Exception{
         // crazy scala-specific stuff that is necessary to access
         // "static" methods from java
-        org.kramerlab.autoencoder.package$ autoencoderStatics = 
-	    org.kramerlab.autoencoder.package$.MODULE$;
-        
         org.kramerlab.autoencoder.wekacompatibility.package$ wekaStatics =
 	    org.kramerlab.autoencoder.wekacompatibility.package$.MODULE$;
-        
-        org.kramerlab.autoencoder.experiments.package$ experimentsStatics = 
-	    org.kramerlab.autoencoder.experiments.package$.MODULE$;
 	
 	int topiter = -1;
 
 	// the optimization is a bit special, since we learn a stream
 	// of autoencoders, no need to start from scratch, we just add layers
 	if (this.isOptimizeAE()) {
-	    Instances train = D.trainCV(3,1);
-	    Instances test = D.testCV(3,1);
-	    Instances labels = this.extractPart(train, true);
-	    
-	    // first convert the arff into non sparse form
-	    SparseToNonSparse spfilter = new SparseToNonSparse();
-	    spfilter.setInputFormat(labels);
-	    Instances aeData = Filter.useFilter(labels, spfilter);
-	    
-	    // now convert it into a format suitable for the autoencoder
-	    Mat data = wekaStatics.instancesToMat(aeData);
-	    
-	    
-	    Iterable<Autoencoder> autoencoders = autoencoderStatics
-		.deepAutoencoderStream_java(
-					    autoencoderStatics.Sigmoid(), // type of neurons.
-					    // Sigmoid is ok
-					    this.getNumberAutoencoders(), // number of autoencoders = (max hidden layers + 1) /
-					    // 2
-					    this.getCompression(), // compression from k-th layer to (k+1)-th layer
-					    data, // training data 
-					    true, // true = L2 Error, false = CrossEntropy
-					    autoencoderStatics.HintonsMiraculousStrategy(), true,
-					    autoencoderStatics.NoObservers()
-					    );
-	    	    
-	    // test each autoencoder, select the best classifier
-	    double bestAccuracy = Double.NEGATIVE_INFINITY;
-	    int iteratorcount = 0;
-	    topiter = 0;
-	    for (Autoencoder a : autoencoders) {
-		iteratorcount ++;
-		
-		
-		Maniac candidate = new Maniac();
-		candidate.setOptimizeAE(false);
-		candidate.setNumberAutoencoders(this.getNumberAutoencoders());
-		candidate.setCompression(this.getCompression());
-		candidate.setClassifier(this.getClassifier());
-
-		candidate.setAE(a);
-		
-		Result res = Evaluation.evaluateModel(candidate, train, test);
-		double curac = (Double)res.getValue("Accuracy");
-
-
-		if (bestAccuracy < curac) {
-		    bestAccuracy = curac;
-		    topiter = iteratorcount;
-		}
-	    }
+	    topiter = this.optimizeNumberAutoencoders(D);
+	}
+
+	Instances features = this.trainingFeatures;
+	Mat data = this.trainingLabels;
+	this.setTrainingData(null, null);
+	if (features == null) {
+	    features = this.extractPart(D, false);
+	    data = this.labelsToMat(D);
 	}
-	Instances features = this.extractPart(D, false);
-	Instances labels = this.extractPart(D, true);
-	
-	// first convert the arff into non sparse form
-	SparseToNonSparse spfilter = new SparseToNonSparse();
-	spfilter.setInputFormat(labels);
-	Instances aeData = Filter.useFilter(labels, spfilter);
-	
-	// now convert it into a format suitable for the autoencoder
-	Mat data = wekaStatics.instancesToMat(aeData);
 	
 	if (this.getAE() == null) {
-	    Iterable<Autoencoder> autoencoders = autoencoderStatics
-		.deepAutoencoderStream_java(
-					    autoencoderStatics.Sigmoid(), // type of neurons.
-					    // Sigmoid is ok
-					    this.getNumberAutoencoders(), // number of autoencoders = (max hidden layers + 1) /
-					    // 2
-					    this.getCompression(), // compression from k-th layer to (k+1)-th layer
-					    data, // training data 
-					    true, // true = L2 Error, false = CrossEntropy
-					    autoencoderStatics.HintonsMiraculousStrategy(), true,
-					    autoencoderStatics.NoObservers()
-					    );
 	    int itercount=0;
-	    for (Autoencoder a : autoencoders) {
+	    for (Autoencoder a : this.autoencoderStream(data)) {
 		itercount++;
 		if(topiter > 0 && itercount == topiter ||
 		   itercount == this.getNumberAutoencoders()){
@@ -478,18 +522,167 @@ public class Maniac extends LabelTransformationClassifier implements TechnicalIn
 	return result;
     }
 
+    /**
+     * Selects the number of autoencoders on a validation split: each autoencoder of the stream 
+     * (i.e., with one more layer than the previous one) is evaluated as soon as it has been trained, 
+     * on a bounded pool of threads (on a copy), while the next one is being trained. The features and 
+     * converted labels of the training split are shared by all candidates. The candidates are checked in order, 
+     * so that the selection (including early stopping, see patience) does not depend on the number of 
+     * threads.
+     *
+     * @param D The training data
+     * @return The selected number of autoencoders
+     */
+    protected int optimizeNumberAutoencoders(Instances D) throws Exception{
+	Instances train = D.trainCV(3,1);
+	Instances test = D.testCV(3,1);
+	Instances features = this.extractPart(train, false);
+	Mat data = this.labelsToMat(train);
+
+	ExecutorService executor = ThreadUtils.newExecutor(this.getNumThreads(), this.getNumberAutoencoders());
+	List<Future<Double>> accuracies = new ArrayList<>();
+	double bestAccuracy = Double.NEGATIVE_INFINITY;
+	int topiter = 0;
+	int checked = 0;
+	boolean stop = false;
+	try {
+	    Iterator<Autoencoder> autoencoders = this.autoencoderStream(data).iterator();
+	    while (true) {
+		// training the next autoencoder happens in hasNext/next
+		boolean more = !stop && autoencoders.hasNext();
+		if (more) {
+		    Autoencoder a = autoencoders.next();
+		    // the stream trains the next autoencoder by propagating the data through this one (whose
+		    // layers cache their inputs), so a job running alongside gets its own copy
+		    if (executor != null)
+			a = (Autoencoder)new SerializedObject(a).getObject();
+		    Callable<Double> job = this.newCandidateJob(a, features, data, train, test);
+		    if (executor == null)
+			accuracies.add(CompletableFuture.completedFuture(job.call()));
+		    else
+			accuracies.add(executor.submit(job));
+		}
+		// test each autoencoder, select the best classifier (waiting only once all are submitted)
+		while (!stop && checked < accuracies.size() && (!more || accuracies.get(checked).isDone())) {
+		    double curac = accuracies.get(checked).get();
+		    checked++;
+		    if (bestAccuracy < curac) {
+			bestAccuracy = curac;
+			topiter = checked;
+		    }
+		    else if (this.getPatience() > 0 && checked - topiter >= this.getPatience()) {
+			stop = true;
+		    }
+		}
+		if (!more)
+		    break;
+	    }
+	}
+	finally {
+	    if (executor != null)
+		executor.shutdownNow();
+	}
+
+	if (getDebug()) System.out.println("Selected "+topiter+" autoencoder(s), validation accuracy: "+bestAccuracy);
+
+	return topiter;
+    }
+
+    /**
+     * Creates the job that evaluates a candidate autoencoder on the validation split.
+     *
+     * @return The job, returning the accuracy
+     */
+    private Callable<Double> newCandidateJob(Autoencoder a, Instances features, Mat data, 
+					     final Instances train, final Instances test) throws Exception{
+	final Maniac candidate = new Maniac();
+	candidate.setOptimizeAE(false);
+	candidate.setNumberAutoencoders(this.getNumberAutoencoders());
+	candidate.setCompression(this.getCompression());
+	candidate.setClassifier(AbstractClassifier.makeCopy(this.getClassifier()));
+
+	candidate.setAE(a);
+	candidate.setTrainingData(features, data);
+
+	return new Callable<Double>() {
+	    @Override
+	    public Double call() throws Exception {
+		Result res = Evaluation.evaluateModel(candidate, train, test, "PCut1", "1");
+		return (Double)res.output.get("Accuracy");
+	    }
+	};
+    }
+
+    /**
+     * Converts the labels of D into a (dense) matrix, as used by the autoencoders.
+     *
+     * @param D The instances (features and labels)
+     * @return The labels as a matrix
+     */
+    protected Mat labelsToMat(Instances D) throws Exception{
+        org.kramerlab.autoencoder.wekacompatibility.package$ wekaStatics =
+	    org.kramerlab.autoencoder.wekacompatibility.package$.MODULE$;
+
+	Instances labels = this.extractPart(D, true);
+	
+	// first convert the arff into non sparse form
+	SparseToNonSparse spfilter = new SparseToNonSparse();
+	spfilter.setInputFormat(labels);
+	Instances aeData = Filter.useFilter(labels, spfilter);
+	
+	// now convert it into a format suitable for the autoencoder
+	return wekaStatics.instancesToMat(aeData);
+    }
+
+    /**
+     * The (lazy) stream of autoencoders trained on the data, each one with one more layer than the previous one.
+     *
+     * @param data The labels as a matrix
+     * @return The autoencoders
+     */
+    protected Iterable<Autoencoder> autoencoderStream(Mat data){
+        org.kramerlab.autoencoder.package$ autoencoderStatics = 
+	    org.kramerlab.autoencoder.package$.MODULE$;
+
+	return autoencoderStatics
+	    .deepAutoencoderStream_java(
+					autoencoderStatics.Sigmoid(), // type of neurons.
+					// Sigmoid is ok
+					this.getNumberAutoencoders(), // number of autoencoders = (max hidden layers + 1) /
+					// 2
+					this.getCompression(), // compression from k-th layer to (k+1)-th layer
+					data, // training data 
+					true, // true = L2 Error, false = CrossEntropy
+					autoencoderStatics.HintonsMiraculousStrategy(), true,
+					autoencoderStatics.NoObservers()
+					);
+    }
+
     @Override
     public double[] transformPredictionsBack(double[] y){
-	Mat matrix = new Mat(1, y.length/2);
-	for (int i = 0; i < y.length/2; i++) {
-	    matrix.update(0, i, y[y.length/2 + i]);
+	return transformPredictionsBack(new double[][]{y})[0];
+    }
+
+    /**
+     * Transforms a batch of predictions back, with the decoder of the autoencoder applied to all
+     * of them at once (one matrix product per layer).
+     *
+     * @param Y The predictions that should be transformed back, one row per instance.
+     * @return The transformed predictions.
+     */
+    @Override
+    public double[][] transformPredictionsBack(double[][] Y){
+	if (Y.length == 0)
+	    return new double[0][];
+	int k = Y[0].length/2;
+	Mat matrix = new Mat(Y.length, k);
+	for (int n = 0; n < Y.length; n++) {
+	    for (int i = 0; i < k; i++) {
+		matrix.update(n, i, Y[n][k + i]);
+	    }
 	}
 	Mat reconstruction = this.getAE().decompress(matrix);
-	double[] result = new double[reconstruction.toArray()[0].length];
-	for(int i = 0; i < result.length; i++){
-	    result[i] = reconstruction.apply(0,i);
-	}
-	return result;
+	return reconstruction.toArray();
     }
     
     @Override
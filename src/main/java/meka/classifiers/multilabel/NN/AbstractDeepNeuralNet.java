@@ -15,17 +15,23 @@
 
 package meka.classifiers.multilabel.NN;
 
+import meka.core.MLUtils;
 import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
+import weka.core.Instances;
 import weka.core.Option;
+import weka.core.Utils;
 
+import java.io.File;
 import java.util.*;
 
 /**
- * AbstractDeepNeuralNet.java - Extends AbstractNeuralNet with depth options. 
+ * AbstractDeepNeuralNet.java - Extends AbstractNeuralNet with depth options, and options for pre-training the RBMs (which are passed on to them). 
  * @author Jesse Read (jesse@tsc.uc3m.es)
  * @version December 2012
  */
-public abstract class AbstractDeepNeuralNet extends AbstractNeuralNet  {
+public abstract class AbstractDeepNeuralNet extends AbstractNeuralNet implements ThreadLimiter {
 
 	private static final long serialVersionUID = 5416731163612885485L;
 
@@ -43,10 +49,114 @@ public abstract class AbstractDeepNeuralNet extends AbstractNeuralNet  {
 		return "The number of RBMs.";
 	}
 
+	/** mini-batch size for pre-training (0 = the method's default) */
+	protected int m_B = 0;
+
+	public int getMiniBatchSize() { 
+		return m_B;
+	}
+
+	public void setMiniBatchSize(int b) { 
+		m_B = b;
+	}
+
+	public String miniBatchSizeTipText() {
+		return "The mini-batch size for pre-training the RBMs (0 = the method's default).";
+	}
+
+	/** number of Gibbs steps (CD-k / PCD-k) */
+	protected int m_K = 1;
+
+	public int getK() { 
+		return m_K;
+	}
+
+	public void setK(int k) { 
+		m_K = k;
+	}
+
+	public String kTipText() {
+		return "The number of Gibbs steps k of contrastive divergence (CD-k / PCD-k).";
+	}
+
+	/** persistent contrastive divergence */
+	protected boolean m_Persistent = false;
+
+	public boolean getPersistent() { 
+		return m_Persistent;
+	}
+
+	public void setPersistent(boolean p) { 
+		m_Persistent = p;
+	}
+
+	public String persistentTipText() {
+		return "Whether to use persistent contrastive divergence (PCD), with chains that carry over between updates.";
+	}
+
+	/** number of threads for pre-training */
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;
+
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1)
+			m_NumThreads = value;
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads to use for the matrix products when pre-training the RBMs; -1 = # of CPUs/cores.";
+	}
+
+	/** directory for caching pre-trained weights and representations (empty = no caching) */
+	protected File m_CacheDir = new File("");
+
+	public File getCacheDir() { 
+		return m_CacheDir;
+	}
+
+	public void setCacheDir(File dir) { 
+		m_CacheDir = dir;
+	}
+
+	public String cacheDirTipText() {
+		return "The directory for caching the pre-trained RBM weights (and hidden representations) across builds on the same data; empty to disable.";
+	}
+
+	/**
+	 * Returns whether caching of pre-trained weights and representations is enabled.
+	 */
+	protected boolean isCaching() {
+		return m_CacheDir != null && !m_CacheDir.getPath().isEmpty();
+	}
+
+	/**
+	 * GetCacheKey - Key of the pre-training on D, in terms of the method, all the settings that affect the pre-training, and the data.
+	 * @param	D	the training data
+	 * @param	batchSize	the (effective) mini-batch size
+	 * @return	the key, i.e., the fingerprint of D followed by the setup
+	 */
+	protected String getCacheKey(Instances D, int batchSize) {
+		String setup = getClass().getName() + " -N " + m_N + " -H " + m_H + " -E " + m_E + " -r " + m_R + " -m " + m_M 
+			+ " -B " + batchSize + " -k " + m_K + " -persistent " + m_Persistent + " -S " + m_Seed;
+		return Long.toHexString(MLUtils.fingerprint(D)) + " " + setup;
+	}
+
 	@Override
 	public Enumeration listOptions() {
 		Vector result = new Vector();
 		result.addElement(new Option("\tSets the number of RBMs\n\tdefault: 2", "N", 1, "-N <value>"));
+		result.addElement(new Option("\tSets the mini-batch size for pre-training (0 = the method's default)\n\tdefault: 0", "B", 1, "-B <value>"));
+		result.addElement(new Option("\tSets the number of Gibbs steps of CD-k/PCD-k\n\tdefault: 1", "k", 1, "-k <value>"));
+		OptionUtils.addFlag(result, persistentTipText(), "persistent");
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.SEQUENTIAL, "num-threads");
+		OptionUtils.addOption(result, cacheDirTipText(), "", "cache-dir");
 		OptionUtils.add(result, super.listOptions());
 		return OptionUtils.toEnumeration(result);
 	}
@@ -54,6 +164,11 @@ public abstract class AbstractDeepNeuralNet extends AbstractNeuralNet  {
 	@Override
 	public void setOptions(String[] options) throws Exception {
 		setN(OptionUtils.parse(options, 'N', 2));
+		setMiniBatchSize(OptionUtils.parse(options, 'B', 0));
+		setK(OptionUtils.parse(options, 'k', 1));
+		setPersistent(Utils.getFlag("persistent", options));
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		setCacheDir(OptionUtils.parse(options, "cache-dir", new File("")));
 		super.setOptions(options);
 	}
 
@@ -61,6 +176,12 @@ public abstract class AbstractDeepNeuralNet extends AbstractNeuralNet  {
 	public String [] getOptions() {
 	  	List<String> result = new ArrayList<>();
 		OptionUtils.add(result, 'N', getN());
+		OptionUtils.add(result, 'B', getMiniBatchSize());
+		OptionUtils.add(result, 'k', getK());
+		OptionUtils.add(result, "persistent", getPersistent());
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		if (isCaching())
+			OptionUtils.add(result, "cache-dir", getCacheDir());
 		OptionUtils.add(result, super.getOptions());
 		return OptionUtils.toArray(result);
 	}
@@ -0,0 +1,210 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.classifiers.multilabel.NN;
+
+import Jama.Matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * RepresentationCache.java - On-disk cache of pre-trained RBM weights and the hidden representation of the training data.
+ * Entries are keyed by the pre-training setup and the data (see AbstractDeepNeuralNet#getCacheKey), so that, e.g., repeated
+ * evaluations or parameter searches that only vary the classifier on top skip pre-training (and encoding) altogether.
+ * The file name is only a hash of the key: each file stores the full key and the dimensions of its matrices, and is only
+ * used if the key matches and the dimensions agree with each other and with the size of the file.
+ * Files are written to a temporary file first (then moved into place), so that concurrent builds can share a directory.
+ *
+ * @version $Revision$
+ */
+public class RepresentationCache {
+
+	/** identifies the file format */
+	protected static final long MAGIC = 0x4d454b4152455032L;
+
+	/**
+	 * An entry of the cache: the weight matrices of the layers, and (optionally) the representation Z.
+	 */
+	public static class Entry {
+		public Matrix W[];
+		public double Z[][];
+
+		public Entry(Matrix W[], double Z[][]) {
+			this.W = W;
+			this.Z = Z;
+		}
+	}
+
+	/**
+	 * Hash - 64-bit FNV-1a hash of the key, for the file name.
+	 */
+	protected static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for(byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * GetFile - the cache file for the given key.
+	 * @param	dir	the cache directory
+	 * @param	key	the key
+	 * @return	the file
+	 */
+	public static File getFile(File dir, String key) {
+		return new File(dir, "rbm-" + Long.toHexString(hash(key)) + ".cache");
+	}
+
+	/**
+	 * Read - read the entry stored under the key in dir.
+	 * @param	dir	the cache directory
+	 * @param	key	the key
+	 * @return	the entry, or null if there is none (or it is stored under another key, or cannot be read)
+	 */
+	public static Entry read(File dir, String key) {
+		File file = getFile(dir, key);
+		if (!file.isFile())
+			return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readLong() != MAGIC)
+				return invalid(file, "not a cache file");
+			int n = in.readInt();
+			if (n < 0 || n > file.length())
+				return invalid(file, "the key has " + n + " bytes");
+			byte stored[] = new byte[n];
+			in.readFully(stored);
+			if (!key.equals(new String(stored, StandardCharsets.UTF_8)))
+				return null;
+			int L = in.readInt();
+			if (L <= 0)
+				return invalid(file, "no layers");
+			int dims[][] = new int[L][2];
+			long size = 0;
+			for(int l = 0; l < L; l++) {
+				dims[l][0] = in.readInt();
+				dims[l][1] = in.readInt();
+				if (dims[l][0] <= 0 || dims[l][1] <= 0)
+					return invalid(file, "layer " + l + " is " + dims[l][0] + "x" + dims[l][1]);
+				if (l > 0 && dims[l][0] != dims[l-1][1])
+					return invalid(file, "layer " + l + " has " + dims[l][0] + " inputs, but layer " + (l-1) + " has " + dims[l-1][1] + " outputs");
+				size += (long)dims[l][0] * dims[l][1];
+			}
+			int N = in.readInt();
+			int H = in.readInt();
+			if (N < 0 || H < 0 || (N > 0 && H == 0))
+				return invalid(file, "Z is " + N + "x" + H);
+			size += (long)N * H;
+			long header = 8 + 4 + stored.length + 4 + 8L * L + 8;
+			if (file.length() != header + 8 * size)
+				return invalid(file, "expected " + (header + 8 * size) + " bytes, but the file has " + file.length());
+
+			Matrix W[] = new Matrix[L];
+			for(int l = 0; l < L; l++) {
+				W[l] = new Matrix(read(in, dims[l][0], dims[l][1]));
+			}
+			double Z[][] = (N > 0) ? read(in, N, H) : null;
+			return new Entry(W, Z);
+		}
+		catch (Exception e) {
+			System.err.println("Failed to read cache file '" + file + "': " + e);
+			return null;
+		}
+	}
+
+	private static Entry invalid(File file, String reason) {
+		System.err.println("Ignoring invalid cache file '" + file + "': " + reason);
+		return null;
+	}
+
+	private static double[][] read(DataInputStream in, int rows, int cols) throws Exception {
+		double M[][] = new double[rows][cols];
+		for(int i = 0; i < rows; i++) {
+			for(int j = 0; j < cols; j++) {
+				M[i][j] = in.readDouble();
+			}
+		}
+		return M;
+	}
+
+	/**
+	 * Write - store the weights (and optionally Z) under the key in dir.
+	 * @param	dir	the cache directory (gets created if necessary)
+	 * @param	key	the key
+	 * @param	W	the weight matrices
+	 * @param	Z	the representation of the training data, may be null
+	 * @return	whether the entry was written
+	 */
+	public static boolean write(File dir, String key, Matrix W[], double Z[][]) {
+		File file = getFile(dir, key);
+		File tmp = null;
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs())
+				return false;
+			tmp = File.createTempFile(file.getName(), ".tmp", dir);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+				out.writeLong(MAGIC);
+				byte k[] = key.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(k.length);
+				out.write(k);
+				out.writeInt(W.length);
+				for(Matrix M : W) {
+					out.writeInt(M.getRowDimension());
+					out.writeInt(M.getColumnDimension());
+				}
+				out.writeInt((Z == null) ? 0 : Z.length);
+				out.writeInt((Z == null || Z.length == 0) ? 0 : Z[0].length);
+				for(Matrix M : W) {
+					write(out, M.getArray());
+				}
+				if (Z != null)
+					write(out, Z);
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (Exception e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		}
+		catch (Exception e) {
+			System.err.println("Failed to write cache file '" + file + "': " + e);
+			if (tmp != null)
+				tmp.delete();
+			return false;
+		}
+	}
+
+	private static void write(DataOutputStream out, double M[][]) throws Exception {
+		for(double row[] : M) {
+			for(double v : row) {
+				out.writeDouble(v);
+			}
+		}
+	}
+
+}
@@ -28,12 +28,16 @@ import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
 import weka.core.matrix.Matrix;
+import weka.core.matrix.QRDecomposition;
 import weka.core.matrix.SingularValueDecomposition;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -45,6 +49,11 @@ import java.util.Vector;
  * See: Farbound Tai and Hsuan-Tien Lin. Multilabel classification with 
  * principal label space transformation. Neural Computation, 24(9):2508--2542, 
  * September 2012. 
+ * <br>
+ * For wide label spaces, a randomized truncated SVD (see: Halko, Martinsson and Tropp. Finding structure
+ * with randomness: Probabilistic algorithms for constructing approximate matrix decompositions. SIAM Review,
+ * 53(2):217--288, 2011) can be used instead of the full one. It works directly from the (sparse) relevant
+ * labels of each instance, and needs O(N*size) memory rather than O(N*L).
  *
  * @author     Joerg Wicker (wicker@uni-mainz.de)
  */
@@ -73,6 +82,21 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
      */
     protected int m_Size = getDefaultSize();
 
+    /*
+     * Whether to use the randomized (truncated) SVD rather than the full one.
+     */
+    protected boolean m_Randomized = false;
+
+    /*
+     * The number of extra random directions sampled by the randomized SVD.
+     */
+    protected int m_Oversampling = getDefaultOversampling();
+
+    /*
+     * The number of power iterations of the randomized SVD.
+     */
+    protected int m_PowerIterations = getDefaultPowerIterations();
+
     /**
      * Returns the global information of the classifier.
      *
@@ -137,6 +161,107 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
 	    + "less than the number of labels and more than 1.";
     }
 
+    /**
+     * Returns whether the randomized SVD is used.
+     *
+     * @return true if randomized.
+     */
+    public boolean getRandomized(){
+	return m_Randomized;
+    }
+
+    /**
+     * Sets whether to use the randomized SVD.
+     *
+     * @param randomized true to use the randomized SVD.
+     */
+    public void setRandomized(boolean randomized){
+	this.m_Randomized = randomized;
+    }
+
+    /**
+     * The tooltip for the randomized flag.
+     *
+     * @return the tooltip.
+     */
+    public String randomizedTipText(){
+	return "Use a randomized, truncated SVD computed from the sparse label matrix \n"
+	    + "instead of the full SVD (for large numbers of labels).";
+    }
+
+    /**
+     * The default oversampling, set to 10.
+     *
+     * @return the default oversampling.
+     */
+    protected int getDefaultOversampling(){
+	return 10;
+    }
+
+    /**
+     * Returns the oversampling of the randomized SVD.
+     *
+     * @return the number of extra random directions.
+     */
+    public int getOversampling(){
+	return m_Oversampling;
+    }
+
+    /**
+     * Sets the oversampling of the randomized SVD.
+     *
+     * @param oversampling the number of extra random directions.
+     */
+    public void setOversampling(int oversampling){
+	this.m_Oversampling = oversampling;
+    }
+
+    /**
+     * The tooltip for the oversampling.
+     *
+     * @return the tooltip.
+     */
+    public String oversamplingTipText(){
+	return "The number of extra random directions sampled by the randomized SVD.";
+    }
+
+    /**
+     * The default number of power iterations, set to 2.
+     *
+     * @return the default number of power iterations.
+     */
+    protected int getDefaultPowerIterations(){
+	return 2;
+    }
+
+    /**
+     * Returns the number of power iterations of the randomized SVD.
+     *
+     * @return the number of power iterations.
+     */
+    public int getPowerIterations(){
+	return m_PowerIterations;
+    }
+
+    /**
+     * Sets the number of power iterations of the randomized SVD.
+     *
+     * @param powerIterations the number of power iterations.
+     */
+    public void setPowerIterations(int powerIterations){
+	this.m_PowerIterations = powerIterations;
+    }
+
+    /**
+     * The tooltip for the power iterations.
+     *
+     * @return the tooltip.
+     */
+    public String powerIterationsTipText(){
+	return "The number of power iterations of the randomized SVD \n"
+	    + "(more iterations give a more accurate decomposition).";
+    }
+
     /**
      * Returns an instance of a TechnicalInformation object, containing
      * detailed information about the technical background of this class,
@@ -174,6 +299,20 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
 			      ""+getDefaultSize(),
 			      "size");
 
+	OptionUtils.addFlag(newVector,
+			    randomizedTipText(),
+			    "randomized");
+
+	OptionUtils.addOption(newVector,
+			      oversamplingTipText(),
+			      ""+getDefaultOversampling(),
+			      "oversampling");
+
+	OptionUtils.addOption(newVector,
+			      powerIterationsTipText(),
+			      ""+getDefaultPowerIterations(),
+			      "power-iterations");
+
 	OptionUtils.add(newVector, super.listOptions());
 
 	return OptionUtils.toEnumeration(newVector);
@@ -187,6 +326,10 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
     public String[] getOptions(){
 	List<String> result = new ArrayList<>();
 	OptionUtils.add(result, "size", getSize());
+	if (getRandomized())
+	    result.add("-randomized");
+	OptionUtils.add(result, "oversampling", getOversampling());
+	OptionUtils.add(result, "power-iterations", getPowerIterations());
 	OptionUtils.add(result, super.getOptions());
 	return OptionUtils.toArray(result);
     }
@@ -201,6 +344,9 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
      */
     public void setOptions(String[] options) throws Exception {
 	setSize(OptionUtils.parse(options, "size", getDefaultSize()));
+	setRandomized(Utils.getFlag("randomized", options));
+	setOversampling(OptionUtils.parse(options, "oversampling", getDefaultOversampling()));
+	setPowerIterations(OptionUtils.parse(options, "power-iterations", getDefaultPowerIterations()));
 	super.setOptions(options);
     }
 
@@ -219,71 +365,66 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
     @Override
     public Instances transformLabels(Instances D) throws Exception{
 	Instances features = this.extractPart(D, false);
-	Instances labels = this.extractPart(D, true);
-
-
-	Matrix labelMatrix = MatrixUtils.instancesToMatrix(labels);
-        
-	// first, lets do the preprocessing as in the original implementation
-	double[] averages = new double[labels.numAttributes()];
-
-	for (int i = 0; i < labels.numAttributes(); i++){
-	    double[] column = labels.attributeToDoubleArray(i);
-	    double sum =0.0;
-	    for(int j = 0; j < column.length; j++){
-		if(column[j] == 1.0){
-		    sum += 1.0;
-		} else {
-		    sum += -1;
-		    // The algorithm needs 1/-1 coding, so let's
-		    // change the matrix here
-		    labelMatrix.set(j,i, -1.0);
+
+	int N = D.numInstances();
+	int L = D.classIndex();
+
+	// sparse representation of the labels (read directly off D, which may itself be sparse):
+	// the relevant labels of each instance
+	int[][] relevant = new int[N][];
+	int[] counts = new int[L];
+	int[] tmp = new int[L];
+	for (int i = 0; i < N; i++){
+	    Instance x = D.instance(i);
+	    int n = 0;
+	    for (int p = 0; p < x.numValues() && x.index(p) < L; p++){
+		if(x.valueSparse(p) == 1.0){
+		    tmp[n++] = x.index(p);
+		    counts[x.index(p)]++;
 		}
 	    }
-	    averages[i] = sum / column.length;
+	    relevant[i] = Arrays.copyOf(tmp, n);
+	}
+
+	// the preprocessing as in the original implementation: 1/-1 coding, centred
+	double[] averages = new double[L];
+	for (int j = 0; j < L; j++){
+	    averages[j] = (double)(2 * counts[j] - N) / N;
 	}
 
 	double[][] shiftMatrix =
-	    new double[1][labels.numAttributes()];
+	    new double[1][L];
 
 	shiftMatrix[0] = averages;
 
 	// remember shift for prediction
 	this.m_Shift = new Matrix(shiftMatrix);
 
-	double[][] shiftTrainMatrix =
-	    new double[labels.numInstances()][labels.numAttributes()];
-        
-	for (int i = 0; i < labels.numInstances(); i++){
-	    shiftTrainMatrix[i] = averages;
+	if (getRandomized()) {
+	    m_v = new Matrix(randomizedSVD(relevant, averages, getSize()));
 	}
+	else {
+	    double[][] centred = new double[N][L];
+	    for (int i = 0; i < N; i++){
+		for (int j = 0; j < L; j++){
+		    centred[i][j] = -1.0 - averages[j];
+		}
+		for (int j : relevant[i]){
+		    centred[i][j] = 1.0 - averages[j];
+		}
+	    }
 
-	Matrix trainShift = new Matrix(shiftTrainMatrix);
-
-	SingularValueDecomposition svd =
-	    new SingularValueDecomposition(labelMatrix.minus(trainShift));
-
-    
-        
-	// The paper uses U here, but the implementation by the authors uses V, so
-	// we used V here too.
-	m_v = svd.getV();
-
-
-	//remove columns so only size are left
-	double[][] newArr = new double[m_v.getRowDimension()][this.getSize()];
+	    SingularValueDecomposition svd =
+		new SingularValueDecomposition(new Matrix(centred));
 
-	for (int i =0; i < newArr.length; i++){
-	    for (int j =0; j < newArr[i].length; j++){
-		newArr[i][j] = m_v.getArray()[i][j];
-	    }
+	    // The paper uses U here, but the implementation by the authors uses V, so
+	    // we used V here too. Remove columns so only size are left.
+	    m_v = new Matrix(firstColumns(svd.getV().getArray(), this.getSize()));
 	}
-        
-	m_v = new Matrix(newArr);
 
-	// now the multiplication (last step of the algorithm)
-	Matrix compressed = MatrixUtils.instancesToMatrix(labels).times(this.m_v);
-        
+	// now the multiplication (last step of the algorithm), on the sparse labels
+	Matrix compressed = new Matrix(multiply(relevant, m_v.getArray(), this.getSize()));
+
 	// and transform it to Instances
 	ArrayList<Attribute> attinfos = new ArrayList<Attribute>();
 
@@ -308,6 +449,125 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
 	return result;
     }
 
+    /**
+     * Computes the top right singular vectors of the centred, 1/-1 coded label matrix A with a randomized
+     * range finder and power iterations, touching A only through products with the sparse labels.
+     * Since A = 2Y - 1c' (with c = 1 + averages), A*M = 2YM - 1(c'M) and A'M = 2Y'M - c(1'M).
+     *
+     * @param relevant the indices of the relevant labels of each instance
+     * @param averages the averages of the 1/-1 coded labels
+     * @param k the number of singular vectors
+     * @return the L x k matrix of right singular vectors
+     */
+    protected double[][] randomizedSVD(int[][] relevant, double[] averages, int k){
+	int N = relevant.length;
+	int L = averages.length;
+	int l = Math.max(k, Math.min(k + getOversampling(), Math.min(N, L)));
+
+	double[] c = new double[L];
+	for (int j = 0; j < L; j++){
+	    c[j] = 1.0 + averages[j];
+	}
+
+	Random r = new Random(0);
+	double[][] Q = orthonormalize(times(relevant, c, MatrixUtils.randn(L, l, r)));
+	for (int q = 0; q < getPowerIterations(); q++){
+	    Q = orthonormalize(times(relevant, c, orthonormalize(transposeTimes(relevant, c, Q))));
+	}
+
+	// A ~ Q Q'A; the left singular vectors of (Q'A)' = A'Q are the right singular vectors of A
+	SingularValueDecomposition svd =
+	    new SingularValueDecomposition(new Matrix(transposeTimes(relevant, c, Q)));
+
+	return firstColumns(svd.getU().getArray(), k);
+    }
+
+    /**
+     * A*M, with A = 2Y - 1c' given by the sparse labels Y.
+     */
+    private static double[][] times(int[][] relevant, double[] c, double[][] M){
+	int l = M[0].length;
+	double[] cM = new double[l];
+	for (int j = 0; j < c.length; j++){
+	    for (int t = 0; t < l; t++){
+		cM[t] += c[j] * M[j][t];
+	    }
+	}
+	double[][] R = new double[relevant.length][l];
+	for (int i = 0; i < relevant.length; i++){
+	    double[] row = R[i];
+	    for (int j : relevant[i]){
+		for (int t = 0; t < l; t++){
+		    row[t] += M[j][t];
+		}
+	    }
+	    for (int t = 0; t < l; t++){
+		row[t] = 2.0 * row[t] - cM[t];
+	    }
+	}
+	return R;
+    }
+
+    /**
+     * A'*Q, with A = 2Y - 1c' given by the sparse labels Y.
+     */
+    private static double[][] transposeTimes(int[][] relevant, double[] c, double[][] Q){
+	int l = Q[0].length;
+	double[] sumQ = new double[l];
+	double[][] R = new double[c.length][l];
+	for (int i = 0; i < relevant.length; i++){
+	    double[] q = Q[i];
+	    for (int t = 0; t < l; t++){
+		sumQ[t] += q[t];
+	    }
+	    for (int j : relevant[i]){
+		for (int t = 0; t < l; t++){
+		    R[j][t] += q[t];
+		}
+	    }
+	}
+	for (int j = 0; j < c.length; j++){
+	    for (int t = 0; t < l; t++){
+		R[j][t] = 2.0 * R[j][t] - c[j] * sumQ[t];
+	    }
+	}
+	return R;
+    }
+
+    /**
+     * An orthonormal basis for the columns of M (which must have at least as many rows as columns).
+     */
+    private static double[][] orthonormalize(double[][] M){
+	return new QRDecomposition(new Matrix(M)).getQ().getArray();
+    }
+
+    /**
+     * Y*V, for the sparse (0/1) labels Y, i.e., the sum of the rows of V of the relevant labels.
+     */
+    private static double[][] multiply(int[][] relevant, double[][] V, int k){
+	double[][] R = new double[relevant.length][k];
+	for (int i = 0; i < relevant.length; i++){
+	    double[] row = R[i];
+	    for (int j : relevant[i]){
+		for (int t = 0; t < k; t++){
+		    row[t] += V[j][t];
+		}
+	    }
+	}
+	return R;
+    }
+
+    /**
+     * The first k columns of M.
+     */
+    private static double[][] firstColumns(double[][] M, int k){
+	double[][] R = new double[M.length][];
+	for (int i = 0; i < M.length; i++){
+	    R[i] = Arrays.copyOf(M[i], k);
+	}
+	return R;
+    }
+
     /**
      * Transforms the predictions of the internal classifier back to the original labels.
      *
@@ -317,29 +577,42 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
      */
     @Override
     public double[] transformPredictionsBack(double[] y){
-	// y consists of predictions and maxindex, we need only predictions
-	double[] predictions = new double[y.length/2];
+	return transformPredictionsBack(new double[][]{y})[0];
+    }
 
-	for (int i = 0; i < predictions.length; i++){
-	    predictions[i] = y[predictions.length+i];
+    /**
+     * Transforms a batch of predictions of the internal classifier back to the original labels,
+     * with a single matrix multiplication.
+     *
+     * @param Y The predictions that should be transformed back, one row per instance, each as
+     * returned from the internal classifier.
+     * @return The transformed predictions.
+     */
+    @Override
+    public double[][] transformPredictionsBack(double[][] Y){
+	int n = Y.length;
+	int L = m_v.getRowDimension();
+
+	// each y consists of predictions and maxindex, we need only predictions
+	double[][] P = new double[n][];
+	for (int i = 0; i < n; i++){
+	    int k = Y[i].length/2;
+	    P[i] = Arrays.copyOfRange(Y[i], k, 2*k);
 	}
 
-	double[][] dataArray = new double[1][predictions.length];
-
-	dataArray[0] = predictions;
-
-	Matrix yMat = new Matrix(dataArray);
-        
-	Matrix multiplied = yMat.times(this.m_v.transpose()).plus(m_Shift);
+	double[][] R = new double[n][L];
+	MatrixUtils.multiplyTranspose(P, m_v.getArray(), R, n, null);
 
-	double[] res = new double[multiplied.getColumnDimension()];
-
-	// change back from -1/1 coding to 0/1
-	for (int i = 0; i < res.length; i++) {
-	    res[i] = multiplied.getArray()[0][i]<0.0 ? 0.0 : 1.0;
+	// add the shift, and change back from -1/1 coding to 0/1
+	double[] shift = m_Shift.getArray()[0];
+	for (int i = 0; i < n; i++){
+	    double[] res = R[i];
+	    for (int j = 0; j < L; j++){
+		res[j] = res[j] + shift[j] < 0.0 ? 0.0 : 1.0;
+	    }
 	}
 
-	return res;
+	return R;
     }
 
     /**
@@ -353,22 +626,36 @@ public class PLST extends LabelTransformationClassifier implements TechnicalInfo
      */
     @Override
     public Instance transformInstance(Instance x) throws Exception{
-	Instances tmpInst = new Instances(x.dataset());
+	// only the header of the dataset, not all of its instances
+	Instances tmpInst = new Instances(x.dataset(), 1);
 
-	tmpInst.delete();
 	tmpInst.add(x);
 
-	Instances features = this.extractPart(tmpInst, false);
+	return transformInstances(tmpInst).instance(0);
+    }
 
-	Instances labels = new Instances(this.m_PatternInstances);
+    /**
+     * Transforms a batch of instances at once: the features of all of them get extracted with
+     * one filter run, and merged with (empty) transformed labels.
+     *
+     * @param D The instances to transform. Consist of features and labels.
+     * @return The transformed instances. Consist of features and transformed labels.
+     */
+    @Override
+    public Instances transformInstances(Instances D) throws Exception{
+	Instances features = this.extractPart(D, false);
+
+	Instances labels = new Instances(this.m_PatternInstances, D.numInstances());
 
-	labels.add(new DenseInstance(labels.numAttributes()));
+	for (int i = 0; i < D.numInstances(); i++){
+	    labels.add(new DenseInstance(labels.numAttributes()));
+	}
 
 	Instances result = Instances.mergeInstances(labels, features);
 
 	result.setClassIndex(labels.numAttributes());
 
-	return result.instance(0);
+	return result;
     }
 
     /**
@@ -15,19 +15,29 @@
 
 package meka.classifiers.multilabel;
 
+import meka.core.A;
+import meka.core.MLUtils;
+import meka.core.OptionUtils;
 import weka.core.Attribute;
 import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
+import weka.core.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Vector;
 
 /**
  * RT.java - The 'Ranking + Threshold' classifier. 
  * Duplicates each multi-labelled example, and assigns one of the labels (only) to each copy; then trains a regular multi-class base classifier.
  * At test time, a <i>threshold</i> separates relevant from irrelevant labels using the posterior for each class value (i.e., label).
+ * <br>
+ * Each example is projected onto the multi-class problem only once; the copies for its other labels differ only in
+ * the class value. Optionally, the copies share the weight of the example (the 'copy-weight' transformation).
  * @author 	Jesse Read (jmr30@cs.waikato.ac.nz)
  * @version 2010
  */
@@ -36,6 +46,15 @@ public class RT extends ProblemTransformationMethod {
 	/** for serialization. */
 	private static final long serialVersionUID = 7348139531854838421L;
 
+	/** whether the copies of an example share its weight */
+	protected boolean m_CopyWeight = false;
+
+	/** the attributes kept in the multi-class problem (the first label stands for the class) */
+	protected transient int m_Keep[] = null;
+
+	/** the position in m_Keep of each attribute, -1 if not kept */
+	protected transient int m_Pos[] = null;
+
 	/**
 	 * Description to display in the GUI.
 	 * 
@@ -69,21 +88,13 @@ public class RT extends ProblemTransformationMethod {
 		D_.insertAttributeAt(new Attribute("ClassY",classes),0);
 		D_.setClassIndex(0);
 
+		m_InstancesTemplate = D_;
+		prepareProjection(L, D.numAttributes());
+
 		//Loop through D again
 		for (int i = 0; i < D.numInstances(); i++) {
-			for (int j = 0; j < L; j++) {
-				if((int)D.instance(i).value(j) > 0) {
-					// make a copy here ...
-					Instance x_ = (Instance)D.instance(i).copy();
-					x_.setDataset(null);
-					// make it multi-class, and set the appropriate class value ...
-					for (int k = 1; k < L; k++)
-						x_.deleteAttributeAt(1); 
-					x_.setDataset(D_);
-					x_.setClassValue(j); // (*) this just ponts to the right index
-					D_.add(x_);
-				}
-			}
+			for (Instance x_ : convertInstances(D.instance(i)))
+				D_.add(x_);
 		}
 
 		//Save the template
@@ -96,29 +107,104 @@ public class RT extends ProblemTransformationMethod {
 	}
 
 	/**
-	 * ConvertInstance - Convert an Instance to multi-class format by deleting all but one of the label attributes.
+	 * Precomputes the projection of an instance onto the multi-class problem, rather than deleting the labels
+	 * from each instance.
+	 */
+	protected void prepareProjection(int L, int numAttributes) {
+		int labels[] = new int[L-1];
+		for (int j = 1; j < L; j++)
+			labels[j-1] = j;
+		m_Keep = A.invert(labels, numAttributes);
+		m_Pos = new int[numAttributes];
+		Arrays.fill(m_Pos, -1);
+		for (int k = 0; k < m_Keep.length; k++)
+			m_Pos[m_Keep[k]] = k;
+	}
+
+	/**
+	 * ConvertInstance - x in multi-class format, with the given class value.
 	 * @param	x	incoming Instance
+	 * @param	c	the class value (a label index), or missing
 	 * @return	the converted Instance
 	 */
+	protected Instance convertInstance(Instance x, double c) {
+		if (m_Keep == null)
+			prepareProjection(x.classIndex(), x.numAttributes());
+		return MLUtils.keepAttributesAt(x, m_Keep, m_Pos, new double[]{c}, 1, new double[m_Keep.length], m_InstancesTemplate);
+	}
+
+	/**
+	 * ConvertInstance - Convert an Instance to multi-class format by deleting all but one of the label attributes.
+	 * @param	x	incoming Instance
+	 * @return	the converted Instance (with the class value missing)
+	 */
 	public Instance convertInstance(Instance x) {
+		return convertInstance(x, Utils.missingValue());
+	}
 
+	/**
+	 * ConvertInstances - Convert an Instance to multi-class format, one copy for each relevant label. The input
+	 * attributes are projected only once: the other copies are made from the first, and get their own values only
+	 * when their class value is set. With copy-weight, each copy gets an equal share of the weight of x.
+	 * @param	x	incoming Instance
+	 * @return	the converted Instances (none if x has no relevant labels)
+	 */
+	public List<Instance> convertInstances(Instance x) {
 		int L = x.classIndex();
+		List<Instance> copies = new ArrayList<>();
+		Instance x_ = null;
+		for (int j = 0; j < L; j++) {
+			if ((int)x.value(j) > 0) {
+				if (x_ == null) {
+					x_ = convertInstance(x, j);
+					copies.add(x_);
+				}
+				else {
+					Instance x_j = (Instance)x_.copy();
+					x_j.setClassValue(j);
+					copies.add(x_j);
+				}
+			}
+		}
+		if (m_CopyWeight) {
+			for (Instance x_j : copies)
+				x_j.setWeight(x.weight() / copies.size());
+		}
+		return copies;
+	}
 
-		//Copy the original instance
-		Instance x_ = (Instance) x.copy(); 
-		x_.setDataset(null);
+	public void setCopyWeight(boolean value) {
+		m_CopyWeight = value;
+	}
 
-		//Delete all class attributes
-		for (int i = 0; i < L; i++)
-			x_.deleteAttributeAt(0);
+	public boolean getCopyWeight() {
+		return m_CopyWeight;
+	}
 
-		//Add one of those class attributes at the begginning
-		x_.insertAttributeAt(0);
+	public String copyWeightTipText() {
+		return "Whether the copies of an example share its weight (each gets 1 / its number of labels), rather than each having the full weight.";
+	}
 
-		//Hopefully setting the dataset will configure that attribute properly
-		x_.setDataset(m_InstancesTemplate);
+	@Override
+	public Enumeration listOptions() {
+		Vector result = new Vector();
+		OptionUtils.addFlag(result, copyWeightTipText(), "copy-weight");
+		OptionUtils.add(result, super.listOptions());
+		return OptionUtils.toEnumeration(result);
+	}
 
-		return x_;
+	@Override
+	public void setOptions(String[] options) throws Exception {
+		setCopyWeight(Utils.getFlag("copy-weight", options));
+		super.setOptions(options);
+	}
+
+	@Override
+	public String [] getOptions() {
+		List<String> result = new ArrayList<>();
+		OptionUtils.add(result, "copy-weight", getCopyWeight());
+		OptionUtils.add(result, super.getOptions());
+		return OptionUtils.toArray(result);
 	}
 
 	@Override
@@ -18,10 +18,23 @@ package meka.classifiers.multilabel.incremental;
 import meka.classifiers.incremental.IncrementalEvaluation;
 import meka.classifiers.multilabel.BR;
 import meka.classifiers.multilabel.IncrementalMultiLabelClassifier;
+import meka.core.A;
 import meka.core.MLUtils;
+import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import weka.classifiers.UpdateableClassifier;
 import weka.classifiers.trees.HoeffdingTree;
 import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * BRUpdateable.java - Updateable BR.
@@ -30,11 +43,16 @@ import weka.core.Instance;
  * @author 		Jesse Read
  * @version 	September, 2011
  */
-public class BRUpdateable extends BR implements IncrementalMultiLabelClassifier {
+public class BRUpdateable extends BR implements IncrementalMultiLabelClassifier, ThreadLimiter {
 
 	/** for serialization. */
   	private static final long serialVersionUID = 6705611077773512052L;
 
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;
+
+	/** the pool the labels of a batch are updated on, kept from one batch to the next; null if sequential */
+	protected transient ExecutorService m_Executor = null;
+
 	@Override
 	public String globalInfo() {
 		return "Updateable BR\nMust be run with an Updateable base classifier.";
@@ -51,6 +69,55 @@ public class BRUpdateable extends BR implements IncrementalMultiLabelClassifier
 		return "weka.classifiers.trees.HoeffdingTree";
 	}
 
+	/** the attributes kept for each label (the label and the input attributes) */
+	protected transient int m_Keep[][] = null;
+
+	/** the position in m_Keep[j] of each attribute, -1 if not kept */
+	protected transient int m_Pos[][] = null;
+
+	/**
+	 * Precomputes the projection of an instance onto the problem of each label, rather than deleting the other
+	 * labels from each instance.
+	 */
+	protected void prepareProjections(int L, int numAttributes) {
+		m_Keep = new int[L][];
+		m_Pos = new int[L][];
+		for(int j = 0; j < L; j++) {
+			m_Keep[j] = A.invert(A.invert(new int[]{j},L),numAttributes);
+			m_Pos[j] = new int[numAttributes];
+			Arrays.fill(m_Pos[j],-1);
+			for(int k = 0; k < m_Keep[j].length; k++)
+				m_Pos[j][m_Keep[j][k]] = k;
+		}
+	}
+
+	@Override
+	public void buildClassifier(Instances D) throws Exception {
+		super.buildClassifier(D);
+		prepareProjections(D.classIndex(),D.numAttributes());
+		if (m_Executor != null)
+			m_Executor.shutdownNow();
+		m_Executor = null;
+	}
+
+	/**
+	 * Returns the pool for updating the labels with a batch, null if sequential.
+	 */
+	protected ExecutorService getExecutor(int L) {
+		if (m_Executor == null && ThreadUtils.getActualNumThreads(m_NumThreads, L) > ThreadUtils.SEQUENTIAL)
+			m_Executor = ThreadUtils.newExecutor(m_NumThreads, L, true);
+		return m_Executor;
+	}
+
+	/**
+	 * Update - the model of label j.
+	 */
+	protected void update(Instance x, int j) throws Exception {
+		// a new buffer each time, since the base classifier may keep the instance
+		Instance x_j = MLUtils.keepAttributesAt(x,m_Keep[j],m_Pos[j],null,0,new double[m_Keep[j].length],m_InstancesTemplates[j]);
+		((UpdateableClassifier)m_MultiClassifiers[j]).updateClassifier(x_j);
+	}
+
 	@Override
 	public void updateClassifier(Instance x) throws Exception {
 
@@ -58,17 +125,115 @@ public class BRUpdateable extends BR implements IncrementalMultiLabelClassifier
 
 		if(getDebug()) System.out.print("-: Updating "+L+" models");
 
+		if (m_Keep == null)
+			prepareProjections(L,x.numAttributes());
+
 		for(int j = 0; j < L; j++) {
-			Instance x_j = (Instance)x.copy();
-			x_j.setDataset(null);
-			x_j = MLUtils.keepAttributesAt(x_j,new int[]{j},L);
-			x_j.setDataset(m_InstancesTemplates[j]);
-			((UpdateableClassifier)m_MultiClassifiers[j]).updateClassifier(x_j);
+			update(x,j);
 		}
 
 		if(getDebug()) System.out.println(":- ");
 	}
 
+	/**
+	 * Update - the models of labels from..to-1, each with the whole batch in turn.
+	 */
+	protected void update(Instances batch, int from, int to) throws Exception {
+		for(int j = from; j < to; j++) {
+			for(Instance x : batch) {
+				update(x,j);
+			}
+		}
+	}
+
+	/**
+	 * Updates the model of each label with the whole batch in turn; in parallel, a single job per range of labels
+	 * for the whole batch.
+	 */
+	@Override
+	public void updateClassifier(Instances batch) throws Exception {
+
+		int L = batch.classIndex();
+
+		if(getDebug()) System.out.print("-: Updating "+L+" models with "+batch.numInstances()+" instances");
+
+		if (m_Keep == null)
+			prepareProjections(L,batch.numAttributes());
+
+		ExecutorService executor = getExecutor(L);
+		if (executor == null) {
+			update(batch,0,L);
+		}
+		else {
+			int n = ThreadUtils.getActualNumThreads(m_NumThreads, L);
+			List<Callable<Void>> jobs = new ArrayList<>(n);
+			for(int t = 0; t < n; t++) {
+				final int from = t * L / n;
+				final int to = (t + 1) * L / n;
+				jobs.add(() -> {
+					update(batch,from,to);
+					return null;
+				});
+			}
+			ThreadUtils.invokeAll(jobs, executor);
+		}
+
+		if(getDebug()) System.out.println(":- ");
+	}
+
+	/**
+	 * Sets the number of threads to use for updating the labels with a batch.
+	 *
+	 * @param value 	the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1) {
+			m_NumThreads = value;
+			if (m_Executor != null)
+				m_Executor.shutdownNow();
+			m_Executor = null;
+		}
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	/**
+	 * Returns the number of threads to use for updating the labels with a batch.
+	 *
+	 * @return 		the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads to use for updating the labels with a batch (see -micro-batch); -1 = # of CPUs/cores.";
+	}
+
+	@Override
+	public Enumeration listOptions() {
+		Vector result = new Vector();
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.SEQUENTIAL, "num-threads");
+		OptionUtils.add(result, super.listOptions());
+		return OptionUtils.toEnumeration(result);
+	}
+
+	@Override
+	public void setOptions(String[] options) throws Exception {
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		super.setOptions(options);
+	}
+
+	@Override
+	public String [] getOptions() {
+		List<String> result = new ArrayList<>();
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		OptionUtils.add(result, super.getOptions());
+		return OptionUtils.toArray(result);
+	}
+
 	public static void main(String args[]) {
 		IncrementalEvaluation.runExperiment(new BRUpdateable(),args);
 	}
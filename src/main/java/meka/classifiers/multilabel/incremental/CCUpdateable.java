@@ -20,14 +20,24 @@ import meka.classifiers.multilabel.CC;
 import meka.classifiers.multilabel.IncrementalMultiLabelClassifier;
 import meka.core.A;
 import meka.core.MLUtils;
+import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.UpdateableClassifier;
 import weka.classifiers.trees.HoeffdingTree;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * CCUpdateable.java - Updateable version of CC.
@@ -37,11 +47,16 @@ import java.util.Random;
  * @author 		Jesse Read
  * @version 	September, 2011
  */
-public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier {
+public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier, ThreadLimiter {
 
 	/** for serialization. */
   	private static final long serialVersionUID = 2856976982562474367L;
 
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;
+
+	/** the pool the links are updated with a batch on, kept from one batch to the next; null if sequential */
+	protected transient ExecutorService m_Executor = null;
+
 	public CCUpdateable() {
 		// default classifier for GUI
 		this.m_Classifier = new HoeffdingTree();
@@ -69,6 +84,9 @@ public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier
 		private int value = -1;
 		private int excld[]; // to contain the indices to delete
 		private int j = 0;
+		private int keep[]; // the indices kept (all the others)
+		private int pos[]; // where each index ends up (-1 if deleted)
+
 
 		public ULink(int chain[], int j, Instances train) throws Exception {
 			this.j = j;
@@ -99,6 +117,13 @@ public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier
 
 			_template = new Instances(new_train,0);
 
+			// precompute the projection, rather than deleting attributes from each instance
+			this.keep = A.invert(excld,train.numAttributes());
+			this.pos = new int[train.numAttributes()];
+			Arrays.fill(this.pos,-1);
+			for(int k = 0; k < keep.length; k++)
+				this.pos[keep[k]] = k;
+
 			this.classifier.buildClassifier(new_train);
 			new_train = null;
 
@@ -108,18 +133,9 @@ public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier
 
 		protected void update(Instance x) throws Exception {
 
-			Instance x_ = (Instance)x.copy();
-			x_.setDataset(null);
-
-			// delete all except one (leaving a binary problem)
-			// delete all the attributes (and track where our index ends up)
-			int c_index = this.value;
-			for(int i = excld.length-1; i >= 0; i--) {
-				x_.deleteAttributeAt(excld[i]);
-				if (excld[i] < this.index)
-					c_index--; 
-			}
-			x_.setDataset(this._template);
+			// all except the excluded attributes (leaving a binary problem); in a new buffer, since the
+			// base classifier may keep the instance
+			Instance x_ = MLUtils.keepAttributesAt(x,keep,pos,null,0,new double[keep.length],this._template);
 
 			((UpdateableClassifier)this.classifier).updateClassifier(x_);
 
@@ -127,24 +143,27 @@ public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier
 				next.update(x);
 		}
 
-		protected void classify(Instance test) throws Exception {
-			// copy
-			Instance copy = (Instance)test.copy();
-			copy.setDataset(null);
-
-			// delete attributes we don't need
-			for(int i = excld.length-1; i >= 0; i--) {
-				copy.deleteAttributeAt(this.excld[i]);
+		/**
+		 * Update - this link only, with the whole batch (the links are trained on the true labels, so they do not
+		 * depend on each other).
+		 */
+		protected void update(Instances batch) throws Exception {
+			for (Instance x : batch) {
+				Instance x_ = MLUtils.keepAttributesAt(x,keep,pos,null,0,new double[keep.length],this._template);
+				((UpdateableClassifier)this.classifier).updateClassifier(x_);
 			}
+		}
 
-			//set template
-			copy.setDataset(this._template);
+		protected void classify(Instance test, double ypred[]) throws Exception {
+			// the attributes we need, with the labels predicted so far
+			ypred[this.index] = Utils.missingValue();
+			Instance copy = MLUtils.keepAttributesAt(test,keep,pos,ypred,ypred.length,new double[keep.length],this._template);
 
 			//set class
-			test.setValue(this.index,(int)(this.classifier.classifyInstance(copy))); 
+			ypred[this.index] = (int)(this.classifier.classifyInstance(copy));
 
 			//carry on
-			if (next!=null) next.classify(test);
+			if (next!=null) next.classify(test,ypred);
 		}
 
 		@Override
@@ -168,6 +187,28 @@ public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier
 		if(getDebug()) System.out.print(":- Chain (");
 		root = new ULink(indices,0,D);
 		if (getDebug()) System.out.println(" ) -:");
+		if (m_Executor != null)
+			m_Executor.shutdownNow();
+		m_Executor = null;
+	}
+
+	/**
+	 * Returns the links of the chain, in order.
+	 */
+	protected List<ULink> links() {
+		List<ULink> links = new ArrayList<>();
+		for (ULink link = root; link != null; link = link.next)
+			links.add(link);
+		return links;
+	}
+
+	/**
+	 * Returns the pool for updating the links with a batch, null if sequential.
+	 */
+	protected ExecutorService getExecutor(int L) {
+		if (m_Executor == null && ThreadUtils.getActualNumThreads(m_NumThreads, L) > ThreadUtils.SEQUENTIAL)
+			m_Executor = ThreadUtils.newExecutor(m_NumThreads, L, true);
+		return m_Executor;
 	}
 
 	@Override
@@ -178,11 +219,96 @@ public class CCUpdateable extends CC implements IncrementalMultiLabelClassifier
 			throw new Exception("Train to update chain, but chain not build yet");
 	}
 
+	/**
+	 * Updates each link of the chain with the whole batch in turn; in parallel, a single job per range of links
+	 * for the whole batch.
+	 */
+	@Override
+	public void updateClassifier(Instances batch) throws Exception {
+		if (root==null)
+			throw new Exception("Train to update chain, but chain not build yet");
+
+		List<ULink> links = links();
+		int L = links.size();
+		ExecutorService executor = getExecutor(L);
+		if (executor == null) {
+			for (ULink link : links)
+				link.update(batch);
+		}
+		else {
+			int n = ThreadUtils.getActualNumThreads(m_NumThreads, L);
+			List<Callable<Void>> jobs = new ArrayList<>(n);
+			for(int t = 0; t < n; t++) {
+				final List<ULink> range = links.subList(t * L / n, (t + 1) * L / n);
+				jobs.add(() -> {
+					for (ULink link : range)
+						link.update(batch);
+					return null;
+				});
+			}
+			ThreadUtils.invokeAll(jobs, executor);
+		}
+	}
+
 	@Override
 	public double[] distributionForInstance(Instance x) throws Exception {
 		int L = x.classIndex();
-		root.classify(x);
-		return MLUtils.toDoubleArray(x,L);
+		double y[] = new double[L];
+		root.classify(x,y);
+		return y;
+	}
+
+	/**
+	 * Sets the number of threads to use for updating the links with a batch.
+	 *
+	 * @param value 	the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1) {
+			m_NumThreads = value;
+			if (m_Executor != null)
+				m_Executor.shutdownNow();
+			m_Executor = null;
+		}
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	/**
+	 * Returns the number of threads to use for updating the links with a batch.
+	 *
+	 * @return 		the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads to use for updating the links of the chain with a batch (see -micro-batch); -1 = # of CPUs/cores.";
+	}
+
+	@Override
+	public Enumeration listOptions() {
+		Vector result = new Vector();
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.SEQUENTIAL, "num-threads");
+		OptionUtils.add(result, super.listOptions());
+		return OptionUtils.toEnumeration(result);
+	}
+
+	@Override
+	public void setOptions(String[] options) throws Exception {
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		super.setOptions(options);
+	}
+
+	@Override
+	public String [] getOptions() {
+		List<String> result = new ArrayList<>();
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		OptionUtils.add(result, super.getOptions());
+		return OptionUtils.toArray(result);
 	}
 
 	public static void main(String args[]) {
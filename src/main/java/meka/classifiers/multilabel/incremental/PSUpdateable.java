@@ -22,8 +22,10 @@ import meka.core.LabelSet;
 import meka.core.MLUtils;
 import meka.core.OptionUtils;
 import meka.core.PSUtils;
+import meka.core.SpaceSaving;
 import weka.classifiers.UpdateableClassifier;
 import weka.classifiers.trees.HoeffdingTree;
+import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -35,6 +37,11 @@ import java.util.*;
  * Can be given any base classifier, since it must rebuild when the buffer is full anyway.
  * <br>
  * While the initial training set is being buffered, it will predict the majority labelset. Note that this version buffers training examples, not just combinations.
+ * <br>
+ * After that, the labelsets of the stream are counted in bounded memory (see SpaceSaving), and, if a refresh interval is
+ * set, every so often the classes (labelsets) that have fallen out of the most frequent ones are given to those that
+ * have become the most frequent, without rebuilding; the base classifier then learns the new labelsets of these
+ * classes from the instances that follow.
  * @see PS
  * @author 		Jesse Read
  * @version 	September, 2011
@@ -46,9 +53,13 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
   	
 	protected int m_Limit = 1000;
 	protected int m_Support = 10;
+	protected int m_Counters = 100;
+	protected int m_Refresh = 0;
 	protected int L = -1;
 
 	protected HashMap<LabelSet,Integer> combinations = null;
+	protected SpaceSaving<LabelSet> counts = null;
+	protected int n = 0; // instances since the last refresh
 	protected Instances batch = null;
 	protected MajorityLabelsetUpdateable mlu = new MajorityLabelsetUpdateable();
 
@@ -78,18 +89,8 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 		if (batch.numInstances() >= getLimit())  {
 			// if we have at least the limit, build!
 			if (getDebug()) System.out.println("Train on instances 0 ... "+batch.numInstances());
-			combinations = PSUtils.countCombinationsSparse(batch,L);
-			MLUtils.pruneCountHashMap(combinations,m_P);
-			// { NEW (we don't want more than m_Support classes!)
-			int p = m_P;
-			while(combinations.size() > getSupport()) {
-				//System.out.println("double prune!");
-				m_P++;
-				MLUtils.pruneCountHashMap(combinations,m_P);
-			}
-			super.buildClassifier(batch);
-			m_P = p;
-			// } NEW
+			buildPS(batch);
+			batch.clear();
 			mlu = null; // We won't be needing the majority set classifier!
 		}
 		else {
@@ -109,17 +110,7 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 			batch.add(x);
 			if (batch.numInstances() >= getLimit()) {
 				// we have enough instances to bulid PS!
-				combinations = PSUtils.countCombinationsSparse(batch,L);
-				MLUtils.pruneCountHashMap(combinations,m_P);
-				// { NEW (we don't want more than m_Support classes!) -- note, the while loop is a slow way to do this
-				int p = m_P;
-				while(combinations.size() > getSupport()) {
-					m_P++;
-					MLUtils.pruneCountHashMap(combinations,m_P);
-				}
-				super.buildClassifier(batch);
-				m_P = p;
-				// } NEW
+				buildPS(batch);
 				batch.clear();
 				mlu = null;
 			}
@@ -129,6 +120,12 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 			}
 		}
 		else {
+			// count the labelset, and refresh the classes every so often
+			counts.add(new LabelSet(MLUtils.toSparseIntArray(x,L)));
+			if (getRefresh() > 0 && ++n >= getRefresh()) {
+				refresh();
+				n = 0;
+			}
 			// update PS ...
 			for (Instance x_i : PSUtils.PSTransformation(x,L,combinations,m_N,super.m_InstancesTemplate)) {
 				// update internal sl classifier (e.g. naive bayes)
@@ -138,6 +135,72 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 		
 	}
 
+	/**
+	 * BuildPS - build PS on the batch, with (at most) the m_Support most frequent labelsets as classes, and start
+	 * counting the labelsets of the stream.
+	 */
+	protected void buildPS(Instances D) throws Exception {
+		combinations = PSUtils.countCombinationsSparse(D,L);
+		counts = new SpaceSaving<LabelSet>(Math.max(getCounters(),getSupport()));
+		// the most frequent labelsets of the batch, with their exact counts (the others could only take over counters
+		// with overestimated counts, depending on the order of the map)
+		List<Map.Entry<LabelSet,Integer>> entries = new ArrayList<Map.Entry<LabelSet,Integer>>(combinations.entrySet());
+		entries.sort((a, b) -> {
+			int c = Integer.compare(b.getValue(), a.getValue());
+			return (c != 0) ? c : a.getKey().toString().compareTo(b.getKey().toString());
+		});
+		for (Map.Entry<LabelSet,Integer> e : entries.subList(0, Math.min(entries.size(), counts.capacity())))
+			counts.add(e.getKey(),e.getValue());
+		// we don't want more than m_Support classes: prune at the count of the (m_Support+1)-th most frequent labelset
+		// (the lowest P that leaves m_Support or fewer)
+		int p = m_P;
+		int c[] = new int[combinations.size()];
+		int i = 0;
+		for (Integer c_ : combinations.values())
+			c[i++] = c_;
+		Arrays.sort(c);
+		if (c.length > getSupport())
+			m_P = Math.max(m_P,c[c.length - getSupport() - 1]);
+		MLUtils.pruneCountHashMap(combinations,m_P);
+		super.buildClassifier(D);
+		m_P = p;
+		n = 0;
+	}
+
+	/**
+	 * Refresh - give the classes of labelsets that are no longer among the m_Support most frequent, to those that
+	 * have become so (least frequent first), and update the counts used for decomposing unknown labelsets.
+	 */
+	protected void refresh() throws Exception {
+		List<LabelSet> top = counts.top(getSupport());
+		Set<LabelSet> in = new HashSet<LabelSet>(top);
+		// the current classes that dropped out, least frequent first
+		List<LabelSet> out = new ArrayList<LabelSet>();
+		for (LabelSet y : combinations.keySet()) {
+			if (!in.contains(y))
+				out.add(y);
+		}
+		out.sort((a, b) -> Integer.compare(counts.count(a), counts.count(b)));
+		// the new ones, most frequent first
+		int k = 0;
+		for (LabelSet y : top) {
+			if (k >= out.size())
+				break;
+			Attribute C = m_InstancesTemplate.classAttribute();
+			if (combinations.containsKey(y) || y.indices.length == 0 || C.indexOfValue(y.toString()) >= 0)
+				continue;
+			LabelSet y_out = out.get(k++);
+			if (C.indexOfValue(y_out.toString()) < 0)
+				continue;
+			if (getDebug()) System.out.println("Class "+y_out+" becomes "+y);
+			m_InstancesTemplate.renameAttributeValue(C,y_out.toString(),y.toString());
+			combinations.remove(y_out);
+			combinations.put(y,0);
+		}
+		for (LabelSet y : combinations.keySet())
+			combinations.put(y,counts.count(y));
+	}
+
 	@Override
 	public double[] distributionForInstance(Instance x) throws Exception {
 		int L = x.classIndex();
@@ -156,6 +219,8 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 		List<String> result = new ArrayList<>();
 		OptionUtils.add(result, 'I', getLimit());
 		OptionUtils.add(result, "support", getSupport());
+		OptionUtils.add(result, "counters", getCounters());
+		OptionUtils.add(result, "refresh", getRefresh());
 		OptionUtils.add(result, super.getOptions());
 		return OptionUtils.toArray(result);
 	}
@@ -164,6 +229,8 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 	public void setOptions(String[] options) throws Exception {
 		setLimit(OptionUtils.parse(options, 'I', 1000));
 		setSupport(OptionUtils.parse(options, "support", 10));
+		setCounters(OptionUtils.parse(options, "counters", 100));
+		setRefresh(OptionUtils.parse(options, "refresh", 0));
 		super.setOptions(options);
 	}
 
@@ -172,6 +239,8 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 		Vector result = new Vector();
 		result.addElement(new Option("\tSets the buffer size        \n\tdefault: 1000", "I", 1, "-I <value>"));
 		result.addElement(new Option("\tSets the max. num. of combs.\n\tdefault: 10", "support", 1, "-support <value>"));
+		result.addElement(new Option("\tSets the num. of combs. counted\n\tdefault: 100", "counters", 1, "-counters <value>"));
+		result.addElement(new Option("\tSets the num. of instances between refreshes of the combs. (0 = never)\n\tdefault: 0", "refresh", 1, "-refresh <value>"));
 		OptionUtils.add(result, super.listOptions());
 		return OptionUtils.toEnumeration(result);
 	}
@@ -200,6 +269,36 @@ public class PSUpdateable extends PS implements IncrementalMultiLabelClassifier
 		return "The maximum number of class values (i.e., label combinations) to consider.";
 	}
 
+	public int getCounters() {
+		return m_Counters;
+	}
+
+	public void setCounters(int m_Counters) {
+		if (m_Counters >= 1)
+			this.m_Counters = m_Counters;
+		else
+			System.err.println("Number of counters must be >= 1, provided: " + m_Counters);
+	}
+
+	public String countersTipText() {
+		return "The number of label combinations counted over the stream (bounded memory; at least the support).";
+	}
+
+	public int getRefresh() {
+		return m_Refresh;
+	}
+
+	public void setRefresh(int m_Refresh) {
+		if (m_Refresh >= 0)
+			this.m_Refresh = m_Refresh;
+		else
+			System.err.println("Number of instances between refreshes must be >= 0 (0 = never), provided: " + m_Refresh);
+	}
+
+	public String refreshTipText() {
+		return "The number of instances between refreshes of the class values (label combinations) with the most frequent ones of the stream (0 = never).";
+	}
+
 	public static void main(String args[]) {
 		IncrementalEvaluation.runExperiment(new PSUpdateable(),args);
 	}
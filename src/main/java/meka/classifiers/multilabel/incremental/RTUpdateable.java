@@ -25,6 +25,7 @@ import weka.core.Instance;
 /**
  * RTUpdateable.java - Updateable RT.
  * Must be given an UpdateableClassifier base classifier.
+ * Each instance of the stream is projected only once, whatever its number of labels (see RT.convertInstances).
  * @see RT
  * @author 	Jesse Read
  * @version October, 2011
@@ -53,15 +54,10 @@ public class RTUpdateable extends RT implements IncrementalMultiLabelClassifier
 	@Override
 	public void updateClassifier(Instance x) throws Exception {
 
-		int L = x.classIndex();
-
-		for (int j = 0; j < L; j++) {
-			if(x.value(j) > 0.0) {
-				Instance x_j = convertInstance(x);
-				x_j.setClassValue(j);
-				((UpdateableClassifier)m_Classifier).updateClassifier(x_j);
-			}
-		}
+		// x is projected once, for all its relevant labels (not into a single reused instance, since the base
+		// classifier may keep the instances it is given)
+		for (Instance x_j : convertInstances(x))
+			((UpdateableClassifier)m_Classifier).updateClassifier(x_j);
 	}
 
 	public static void main(String args[]) {
@@ -19,6 +19,9 @@ import meka.classifiers.multilabel.IncrementalMultiLabelClassifier;
 import meka.classifiers.multilabel.incremental.BRUpdateable;
 import meka.classifiers.incremental.IncrementalEvaluation;
 import meka.classifiers.multilabel.meta.EnsembleML;
+import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import weka.classifiers.UpdateableClassifier;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -27,19 +30,35 @@ import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
 
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * BaggingMLUpdatable.java - Using the OzaBag scheme (see OzaBag.java from MOA)).
  * See also: N. Oza and S. Russell. Online bagging and boosting. In Artificial Intelligence and Statistics 2001, pages 105-112. Morgan Kaufmann, 2001.
+ * <br>
+ * Each member draws its Poisson weights from its own random stream (seeded with the seed + its index), so that the
+ * members can be updated (and queried) in parallel, with the same results whatever the number of threads.
  * @version 	Jan 2013
  * @author 		Jesse Read
  */
 
-public class BaggingMLUpdateable extends EnsembleML implements IncrementalMultiLabelClassifier, TechnicalInformationHandler {
+public class BaggingMLUpdateable extends EnsembleML implements IncrementalMultiLabelClassifier, TechnicalInformationHandler, ThreadLimiter {
 
 	private static final long serialVersionUID = 4978269895923479962L;
-	protected Random random = null;
+
+	/** the random stream of each member */
+	protected Random m_Random[] = null;
+
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;
+
+	/** the pool the members are updated on, kept from one instance to the next; null if sequential */
+	protected transient ExecutorService m_Executor = null;
 
 	/**
 	 * Description to display in the GUI.
@@ -64,22 +83,56 @@ public class BaggingMLUpdateable extends EnsembleML implements IncrementalMultiL
 
 	@Override
 	public void buildClassifier(Instances D) throws Exception {
-		random = new Random(m_Seed);
 		super.buildClassifier(D);
+		m_Random = new Random[m_NumIterations];
+		for(int i = 0; i < m_NumIterations; i++) {
+			m_Random[i] = new Random(m_Seed + i);
+		}
+		if (m_Executor != null)
+			m_Executor.shutdownNow();
+		m_Executor = null;
 	}
 
-	@Override
-	public void updateClassifier(Instance x) throws Exception {
+	/**
+	 * Returns the pool for updating and querying the members, null if sequential.
+	 */
+	protected ExecutorService getExecutor() {
+		if (m_Executor == null && ThreadUtils.getActualNumThreads(m_NumThreads, m_NumIterations) > ThreadUtils.SEQUENTIAL)
+			m_Executor = ThreadUtils.newExecutor(m_NumThreads, m_NumIterations, true);
+		return m_Executor;
+	}
 
-		for(int i = 0; i < m_NumIterations; i++) {
-			// Oza-Bag style
-			int k = poisson(1.0, random);
+	/**
+	 * Splits the members into one job per thread; job(from,to) handles members from..to-1.
+	 */
+	protected <T> List<T> forMembers(ExecutorService executor, MemberJob<T> job) throws Exception {
+		int n = ThreadUtils.getActualNumThreads(m_NumThreads, m_NumIterations);
+		List<Callable<T>> jobs = new ArrayList<>(n);
+		for(int t = 0; t < n; t++) {
+			final int from = t * m_NumIterations / n;
+			final int to = (t + 1) * m_NumIterations / n;
+			jobs.add(() -> job.run(from, to));
+		}
+		return ThreadUtils.invokeAll(jobs, executor);
+	}
+
+	/** A job over a range of members. */
+	protected interface MemberJob<T> {
+		T run(int from, int to) throws Exception;
+	}
+
+	/**
+	 * Update - the members from..to-1, Oza-Bag style.
+	 */
+	protected void update(Instance x, int from, int to) throws Exception {
+		for(int i = from; i < to; i++) {
+			int k = poisson(1.0, m_Random[i]);
 			if (m_BagSizePercent == 100) {
 				// Train on all instances
 				k = 1;
 			}
 			if (k > 0) {
-				// Train on this instance only if k > 0
+				// Train on this instance only if k > 0 (the copy shares the values of x, only the weight differs)
 				Instance x_weighted = (Instance) x.copy();
 				x_weighted.setWeight(x.weight() * (double)k);
 				((UpdateableClassifier)m_Classifiers[i]).updateClassifier(x_weighted);
@@ -87,6 +140,145 @@ public class BaggingMLUpdateable extends EnsembleML implements IncrementalMultiL
 		}
 	}
 
+	@Override
+	public void updateClassifier(Instance x) throws Exception {
+		ExecutorService executor = getExecutor();
+		if (executor == null) {
+			update(x, 0, m_NumIterations);
+			return;
+		}
+		forMembers(executor, (from, to) -> {
+			update(x, from, to);
+			return null;
+		});
+	}
+
+	/**
+	 * Update - the members from..to-1 with a batch; each member draws the weights of the whole batch (as it would,
+	 * instance by instance) and is given the instances it trains on as a batch of its own.
+	 */
+	protected void update(Instances batch, int from, int to) throws Exception {
+		for(int i = from; i < to; i++) {
+			Instances batch_i = new Instances(batch, batch.numInstances());
+			for(Instance x : batch) {
+				int k = poisson(1.0, m_Random[i]);
+				if (m_BagSizePercent == 100) {
+					k = 1;
+				}
+				if (k > 0) {
+					batch_i.add(x);
+					batch_i.lastInstance().setWeight(x.weight() * (double)k);
+				}
+			}
+			if (m_Classifiers[i] instanceof IncrementalMultiLabelClassifier) {
+				((IncrementalMultiLabelClassifier)m_Classifiers[i]).updateClassifier(batch_i);
+			}
+			else {
+				for(Instance x : batch_i)
+					((UpdateableClassifier)m_Classifiers[i]).updateClassifier(x);
+			}
+		}
+	}
+
+	/**
+	 * Updates the members with a batch, in parallel (a single job per range of members for the whole batch).
+	 */
+	@Override
+	public void updateClassifier(Instances batch) throws Exception {
+		ExecutorService executor = getExecutor();
+		if (executor == null) {
+			update(batch, 0, m_NumIterations);
+			return;
+		}
+		forMembers(executor, (from, to) -> {
+			update(batch, from, to);
+			return null;
+		});
+	}
+
+	@Override
+	public double[] distributionForInstance(Instance x) throws Exception {
+		ExecutorService executor = getExecutor();
+		if (executor == null)
+			return super.distributionForInstance(x);
+
+		// the votes of each range of members, then summed in the order of the members (as sequentially, so that the
+		// result does not depend on the number of threads)
+		int L = x.classIndex();
+		double d[][] = new double[m_NumIterations][];
+		forMembers(executor, (from, to) -> {
+			for(int i = from; i < to; i++) {
+				d[i] = m_Classifiers[i].distributionForInstance((Instance) x.copy());
+			}
+			return null;
+		});
+		double p[] = new double[L];
+		for(int i = 0; i < m_NumIterations; i++) {
+			for(int j = 0; j < d[i].length; j++) {
+				p[j] += d[i][j];
+			}
+		}
+
+		// turn votes into a [0,1] confidence for each label
+		for(int j = 0; j < L; j++) {
+			p[j] = p[j]/m_NumIterations;
+		}
+
+		return p;
+	}
+
+	/**
+	 * Sets the number of threads to use for updating and querying the members.
+	 *
+	 * @param value 	the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1) {
+			m_NumThreads = value;
+			if (m_Executor != null)
+				m_Executor.shutdownNow();
+			m_Executor = null;
+		}
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	/**
+	 * Returns the number of threads to use for updating and querying the members.
+	 *
+	 * @return 		the number of threads: -1 = # of CPUs/cores
+	 */
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads to use for updating and querying the members; -1 = # of CPUs/cores.";
+	}
+
+	@Override
+	public Enumeration listOptions() {
+		Vector result = new Vector();
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.SEQUENTIAL, "num-threads");
+		OptionUtils.add(result, super.listOptions());
+		return OptionUtils.toEnumeration(result);
+	}
+
+	@Override
+	public void setOptions(String[] options) throws Exception {
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		super.setOptions(options);
+	}
+
+	@Override
+	public String [] getOptions() {
+		List<String> result = new ArrayList<>();
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		OptionUtils.add(result, super.getOptions());
+		return OptionUtils.toArray(result);
+	}
 
 	protected static int poisson(double lambda, Random r) {
 		if (lambda < 100.0) {
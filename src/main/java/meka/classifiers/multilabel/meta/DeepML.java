@@ -93,11 +93,25 @@ public class DeepML extends AbstractDeepNeuralNet implements TechnicalInformatio
 
 		dbm.setE(m_E);
 
-		// Train RBM, get Z
-		long before = System.currentTimeMillis();
-		dbm.train(X_,L);
-		rbm_time = System.currentTimeMillis() - before;
-		double Z[][] = dbm.prob_Z(X_);
+		// Train RBM, get Z (or both from the cache)
+		int B = (m_B > 0) ? m_B : L;
+		String key = getCacheKey(D,B);
+		RepresentationCache.Entry cached = isCaching() ? RepresentationCache.read(m_CacheDir,key) : null;
+		double Z[][];
+		if (cached != null && cached.Z != null) {
+			if (getDebug()) System.out.println("Using cached pre-trained weights and representation ... ");
+			dbm.setWs(cached.W);
+			rbm_time = 0;
+			Z = cached.Z;
+		}
+		else {
+			long before = System.currentTimeMillis();
+			dbm.train(X_,B);
+			rbm_time = System.currentTimeMillis() - before;
+			Z = dbm.prob_Z(X_);
+			if (isCaching())
+				RepresentationCache.write(m_CacheDir,key,dbm.getWs(),Z);
+		}
 		if (getDebug()) {
 			Matrix tW[] = dbm.getWs();
 			System.out.println("X = \n"+ MatrixUtils.toString(X_));
@@ -127,12 +141,41 @@ public class DeepML extends AbstractDeepNeuralNet implements TechnicalInformatio
 
 		double z[] = dbm.prob_z(MLUtils.getxfromInstance(xy));
 
-		Instance zy = (Instance)m_InstancesTemplate.firstInstance().copy();
+		return m_Classifier.distributionForInstance(makeInstance(z,L));
+	}
 
-		MLUtils.setValues(zy,z,L);
-		zy.setDataset(m_InstancesTemplate);
+	/**
+	 * Predictions for a batch of instances: all of them are encoded through the RBM(s) at once, rather than one by one.
+	 */
+	@Override
+	public double[][] distributionsForInstances(Instances D) throws Exception {
+
+		int L = D.classIndex();
+
+		double Z[][] = dbm.prob_Z(MLUtils.getXfromD(D));
 
-		return m_Classifier.distributionForInstance(zy);
+		double Y[][] = new double[Z.length][];
+		for(int i = 0; i < Z.length; i++) {
+			Y[i] = m_Classifier.distributionForInstance(makeInstance(Z[i],L));
+		}
+		return Y;
+	}
+
+	@Override
+	public boolean implementsMoreEfficientBatchPrediction() {
+		return true;
+	}
+
+	/**
+	 * MakeInstance - an instance in the space of the template, with hidden representation z.
+	 */
+	protected Instance makeInstance(double z[], int L) {
+		Instance template = m_InstancesTemplate.firstInstance();
+		double v[] = template.toDoubleArray();
+		System.arraycopy(z,0,v,L,z.length);
+		Instance zy = new DenseInstance(template.weight(),v);
+		zy.setDataset(m_InstancesTemplate);
+		return zy;
 	}
 
 	@Override
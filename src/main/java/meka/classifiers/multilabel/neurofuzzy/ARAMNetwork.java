@@ -74,10 +74,25 @@ public class ARAMNetwork extends ARAMNetworkClass    {
     double roa = 0.9;
     double rob = 1.0;
     double alpha = 0.0001;
-    double[][] weightsA = null;
+    /** the weights of the categories, flat: category i at [i*numFeatures, (i+1)*numFeatures) */
+    double[] weightsA = null;
+    /** the sums of the weights of the categories */
     double[] sweightsA = null;
+    /** per category and block of features, the sum of the weights from the block on (upper bounds for the fuzzy AND) */
+    double[] remweightsA = null;
     double sweightsA0=0;
-    double[][] weightsB = null;
+    /** whether all the weights learned are within [0,1], which the pruning of the activations relies on */
+    boolean weightsInUnitRange = true;
+    /** the label weights of the categories, flat: category i at [i*numClasses, (i+1)*numClasses) */
+    double[] weightsB = null;
+    /** the number of categories there is room for */
+    int capacity = 0;
+    /** the number of blocks of features */
+    int numBlocks = 0;
+    /** the block size, for the early stopping of the fuzzy AND */
+    static final int BLOCK = 64;
+    /** slack for comparing bounds, which are rounded differently than the activations */
+    static final double EPS = 1e-9;
     int learningRate = 1;
     int weightblearnmethod= 0;
     int maxNumCategories = 20000;
@@ -108,11 +123,15 @@ public class ARAMNetwork extends ARAMNetworkClass    {
 		numFeatures = fnumFeatures;
 		numClasses = fnumClasses;
 		threshold = fthreshold;
-		weightsA = new double[1][numFeatures];
-		Arrays.fill(weightsA[0], 1);
-		weightsB = new double[1][numClasses];
-		Arrays.fill(weightsB[0], 0);
-		numCategories = 1;
+		numBlocks = (numFeatures + BLOCK - 1) / BLOCK;
+		capacity = 0;
+		weightsA = new double[0];
+		weightsB = new double[0];
+		sweightsA = new double[0];
+		remweightsA = new double[0];
+		weightsInUnitRange = true;
+		numCategories = 0;
+		ARAMm_Add_New_Category();
 
 
 
@@ -217,65 +236,32 @@ public class ARAMNetwork extends ARAMNetworkClass    {
 				labels[j] = instance.value(j);
 				labels[j+num_classes] = 1 - labels[j];
 			}
-			SortPair[] cateacti = ARTActivateCategories(data);
-			java.util.Arrays.sort(cateacti);
-			boolean resonance = false;
-			int currentSortedIndex = 0;
-			int currentCategory = -1;
-			double matchA = 0;
-			double matchB = 0;
-
-			while (!resonance) {
-
-				currentCategory = cateacti[currentSortedIndex]
-						.getOriginalIndex();
-				matchA = ART_Calculate_Match(data, weightsA[currentCategory]);
-				if (sumArray(weightsB[currentCategory]) == 0) {
-					matchB = 1;
-				} else {
-					matchB = ART_Calculate_Match(labels,
-							weightsB[currentCategory]);
+			int currentCategory = ARAMm_Resonating_Category(data, labels);
 
-				}
-				if (matchA >= roa && matchB >= rob) {
-					if (currentCategory == numCategories -1) {
-
-						if (currentSortedIndex == maxNumCategories) {
-							System.out
-									.println("WARNING: The maximum number of categories has been reached.");
-							resonance = true;
-						} else {
-							// Add a new category
-							for (int j = 0; j < data.length; j++) {
-								weightsA[currentCategory][j] = data[j];
-							}
-
-							for (int j = 0; j < weightsB[currentCategory].length; j++) {
-								weightsB[currentCategory][j] = labels[j];
-							}
-							ARAMm_Add_New_Category();
-							// fprintf(FileID,'Add a new category of %d\n',
-							// network.numCategories);
-							// Increment the number of changes since we added a
-							// new category.
-							numChanges = numChanges + 1;
-							resonance = true;
-						}
-					} else {
-						// % Update weights
-						double weightChange = ARAMm_Update_Weights(data,
-								labels, currentCategory);
-						if (weightChange == 1) {
-							numChanges += 1;
-						}
-
-						resonance = true;
-					}
+			if (currentCategory == numCategories -1) {
+
+				if (numCategories > maxNumCategories) {
+					System.out
+							.println("WARNING: The maximum number of categories has been reached.");
 				} else {
-					currentSortedIndex += 1;
-					resonance = false;
+					// Add a new category
+					System.arraycopy(data, 0, weightsA, currentCategory * numFeatures, numFeatures);
+					System.arraycopy(labels, 0, weightsB, currentCategory * numClasses, numClasses);
+					ARAMm_Update_Sums(currentCategory);
+					ARAMm_Add_New_Category();
+					// fprintf(FileID,'Add a new category of %d\n',
+					// network.numCategories);
+					// Increment the number of changes since we added a
+					// new category.
+					numChanges = numChanges + 1;
+				}
+			} else {
+				// % Update weights
+				double weightChange = ARAMm_Update_Weights(data,
+						labels, currentCategory);
+				if (weightChange == 1) {
+					numChanges += 1;
 				}
-
 			}
       }
   }
@@ -294,36 +280,27 @@ public class ARAMNetwork extends ARAMNetworkClass    {
    * @exception Exception if there is a problem generating the prediction
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
+		PredictionBuffers buffers = new PredictionBuffers();
+		double[] ranking = distributionForInstance(instance, buffers);
+		this.neuronsactivated = buffers.neuronsactivated;
+		this.neuronsactivity = buffers.neuronsactivity;
+		return ranking;
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
 
       
 		int num_classes=(int) (0.5 * numClasses);
 		int num_features=(int) (0.5 * numFeatures);
-		double[] dist = new double[num_classes];
-		double[] currentData = new double[numFeatures];
+		double[] currentData = buffers.data(numFeatures);
 		double[] ranking = new double[num_classes];
 			for (int j = 0; j < num_features; j++) {
 				currentData[j] = instance.value(num_classes+j);
 				currentData[num_features+j] = 1 - currentData[j];
 			}
-			SortPair[] sortedActivations = ARTActivateCategories(currentData);
-
-			java.util.Arrays.sort(sortedActivations);
-			double diff_act = sortedActivations[0].getValue()
-					- sortedActivations[numCategories - 2].getValue();
-			int largest_activ = 1;
-			double activ_change = 0;
-			for (int i = 1; i < numCategories; i++) {
-				activ_change = (sortedActivations[0].getValue() - sortedActivations[i]
-						.getValue())
-						/ sortedActivations[0].getValue();
-				if (activ_change > threshold * diff_act) {
-					break;
-				}
-				largest_activ = largest_activ + 1;
-			}
-			// % largest_activ =5;
+			SortPair[] sortedActivations = ARTActivateCategories(currentData, buffers);
+			int largest_activ = sortedActivations.length;
 			double[] best_matches = new double[largest_activ];
-			java.util.Arrays.fill(best_matches, 1);
 			for (int i = 0; i < largest_activ; i++) {
 				// % best_matches(i) = matches(sortedCategories(i));
 				best_matches[i] = sortedActivations[i].getValue();
@@ -333,17 +310,17 @@ public class ARAMNetwork extends ARAMNetworkClass    {
 
 			double sum_mat = sumArray(best_matches);
 			int currentCategory = 0;
-			this.neuronsactivated=new int[largest_activ];
-			this.neuronsactivity=new double[largest_activ];
+			buffers.neuronsactivated=new int[largest_activ];
+			buffers.neuronsactivity=new double[largest_activ];
 			for (int i = 0; i < largest_activ; i++) {
-				this.neuronsactivity[i]=best_matches[i];
+				buffers.neuronsactivity[i]=best_matches[i];
 				best_matches[i] = best_matches[i] / sum_mat;
 				currentCategory = sortedActivations[i].getOriginalIndex();
-				this.neuronsactivated[i]=currentCategory;
+				buffers.neuronsactivated[i]=currentCategory;
 				// % Fill return vector with weightB values
 				for (int j = 0; j < num_classes; j++) {
 					ranking[j] = ranking[j]
-							+ best_matches[i] * weightsB[currentCategory][j];
+							+ best_matches[i] * weightsB[currentCategory * numClasses + j];
 				}
 			}
 			if(m_userankstoclass) {
@@ -379,23 +356,124 @@ public class ARAMNetwork extends ARAMNetworkClass    {
 	            }
 		return classes;
 	}
-	private SortPair[] ARTActivateCategories(double[] Data) {
-		SortPair[] catacti = new SortPair[numCategories];
-		// double[] catacti=new double[numCategories];
-		double[] matchVector = new double[numFeatures];
+	/**
+	 * The fuzzy AND of the input and the weights of category i, accumulated block by block. 
+	 * Stops early (returning NaN) once the sum is above lower and, even with all the remaining 
+	 * weights, stays below upper.
+	 */
+	private double ARAMm_Fuzzy_And(double[] Data, int i, double lower, double upper) {
+		int o = i * numFeatures;
+		int r = i * numBlocks;
+		double sumvector = 0;
+		for (int b = 0; b < numBlocks; b++) {
+			if (sumvector > lower && sumvector + remweightsA[r + b] < upper) {
+				return Double.NaN;
+			}
+			int end = Math.min(numFeatures, (b + 1) * BLOCK);
+			for (int j = b * BLOCK; j < end; j++) {
+				double w = weightsA[o + j];
+				sumvector += ((Data[j] < w) ? Data[j] : w);
+			}
+		}
+		return sumvector;
+	}
+
+	/**
+	 * The category to learn the input: of the categories that pass the vigilance tests, the one 
+	 * with the highest activation (the first one for ties). That is the one found by going through
+	 * the categories sorted by activation, without sorting, and categories that can neither pass 
+	 * the vigilance test for the input nor beat the best one so far are dropped early.
+	 */
+	private int ARAMm_Resonating_Category(double[] data, double[] labels) {
+		double suminput = sumArray(data);
+		// the uncommitted category always resonates
+		int best = numCategories - 1;
+		double bestActivation = ARAMm_Fuzzy_And(data, best, Double.POSITIVE_INFINITY, 0) / (alpha + sweightsA[best]);
+		double vigilance = roa * suminput * (1 - EPS);
+		for (int i = 0; i < numCategories - 1; i++) {
+			double upper = Math.max(vigilance, bestActivation * (alpha + sweightsA[i]) * (1 - EPS));
+			double sumvector = ARAMm_Fuzzy_And(data, i, Double.NEGATIVE_INFINITY, upper);
+			if (Double.isNaN(sumvector)) {
+				continue;
+			}
+			double activation = sumvector / (alpha + sweightsA[i]);
+			if (activation > bestActivation || (activation == bestActivation && best == numCategories - 1)) {
+				double matchA = (suminput == 0) ? 0.0 : sumvector / suminput;
+				double matchB;
+				if (sumArray(weightsB, i * numClasses, numClasses) == 0) {
+					matchB = 1;
+				} else {
+					matchB = ART_Calculate_Match(labels, weightsB, i * numClasses);
+				}
+				if (matchA >= roa && matchB >= rob) {
+					best = i;
+					bestActivation = activation;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The categories that vote for the input, sorted by activation: the ones whose activation is 
+	 * within threshold * (highest - second lowest activation) of the highest one. The others are 
+	 * dropped as soon as they are known to be neither close to the highest activation nor one of 
+	 * the two lowest (for inputs and weights within [0,1]).
+	 */
+	private SortPair[] ARTActivateCategories(double[] Data, PredictionBuffers buffers) {
+		SortPair[] catacti = buffers.activations(numCategories);
+		boolean prune = (weightsInUnitRange && threshold >= 0 && threshold <= 0.5);
+		for (int j = 0; prune && j < numFeatures; j++) {
+			prune = (Data[j] >= 0 && Data[j] <= 1);
+		}
+		double s0 = Double.NEGATIVE_INFINITY;
+		int top = -1;
+		double min1 = Double.POSITIVE_INFINITY;
+		double min2 = Double.POSITIVE_INFINITY;
+		int n = 0;
 		for (int i = 0; i < numCategories; i++) {
-			double sumvector = 0;
-			double sumweight = 0;
-			for (int j = 0; j < numFeatures; j++) {
-				matchVector[j] = ((Data[j] < weightsA[i][j]) ? Data[j]
-						: weightsA[i][j]);
-				sumvector += matchVector[j];
-				sumweight += weightsA[i][j];
+			double sumweight = sweightsA[i];
+			double lower = Double.NEGATIVE_INFINITY;
+			double upper = Double.NEGATIVE_INFINITY;
+			if (prune && top >= 0 && min2 < Double.POSITIVE_INFINITY) {
+				lower = min2 * (alpha + sumweight) * (1 + EPS);
+				upper = s0 * (1 - threshold * s0) * (alpha + sumweight) * (1 - EPS);
+			}
+			double sumvector = ARAMm_Fuzzy_And(Data, i, lower, upper);
+			if (Double.isNaN(sumvector)) {
+				continue;
+			}
+			double activation = sumvector / (alpha + sumweight);
+			if (activation > s0) {
+				s0 = activation;
+				top = i;
+			}
+			if (activation < min1) {
+				min2 = min1;
+				min1 = activation;
+			} else if (activation < min2) {
+				min2 = activation;
 			}
+			catacti[n++].set(activation, i);
+		}
+		if (numCategories < 2) {
+			throw new IllegalStateException("No categories have been learned yet.");
+		}
 
-			catacti[i] = new SortPair(sumvector / (alpha + sumweight), i);
+		double diff_act = s0 - min2;
+		int largest_activ = 0;
+		for (int i = 0; i < n; i++) {
+			double activ_change = (s0 - catacti[i].getValue()) / s0;
+			if (!(activ_change > threshold * diff_act) || catacti[i].getOriginalIndex() == top) {
+				SortPair tmp = catacti[largest_activ];
+				catacti[largest_activ++] = catacti[i];
+				catacti[i] = tmp;
+			}
 		}
-		return catacti;
+		SortPair[] sortedActivations = Arrays.copyOf(catacti, largest_activ);
+		// stable, so ties stay in the order of the categories
+		java.util.Arrays.sort(sortedActivations);
+		return sortedActivations;
 	}
 
  // ****YOU SHOULDN'T NEED TO CHANGE THIS
@@ -456,6 +534,7 @@ public class ARAMNetwork extends ARAMNetworkClass    {
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -504,7 +583,7 @@ public class ARAMNetwork extends ARAMNetworkClass    {
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -619,40 +698,38 @@ public class ARAMNetwork extends ARAMNetworkClass    {
 	private double ARAMm_Update_Weights(double[] data, double[] labels,
 			int category) {
 		double weightChange = 0;
+		int o = category * numFeatures;
 		for (int i = 0; i < numFeatures; i++) {
-			if (data[i] < weightsA[category][i]){
-			weightsA[category][i] = (learningRate * data[i])
-					+ (1 - learningRate) * weightsA[category][i];
+			if (data[i] < weightsA[o + i]){
+			weightsA[o + i] = (learningRate * data[i])
+					+ (1 - learningRate) * weightsA[o + i];
 			}
 
 		}
+		o = category * numClasses;
 		for (int i = 0; i < numClasses; i++) {
 		    if(weightblearnmethod== 0){
-		    	weightsB[category][i] = labels[i] + weightsB[category][i];
+		    	weightsB[o + i] = labels[i] + weightsB[o + i];
 	        weightChange = 1;
 		    }else{
 	      //  %normalise
-	        if ( labels[i]< weightsB[category][i]){
-	        	weightsB[category][i]  = (learningRate * labels[i] )+ (1 - learningRate) *weightsB[category][i];  
+	        if ( labels[i]< weightsB[o + i]){
+	        	weightsB[o + i]  = (learningRate * labels[i] )+ (1 - learningRate) *weightsB[o + i];  
 	            weightChange = 1;
 	        }
 		    }
 		}
+		ARAMm_Update_Sums(category);
 		return weightChange;
 	}
 
-	private double ART_Calculate_Match(double[] Data, double[] fweights) {
+	private double ART_Calculate_Match(double[] Data, double[] fweights, int offset) {
 
 		int lnumFeatures = Data.length;
-		if (lnumFeatures != fweights.length) {
-			return 0.0;
-		}
-		double[] matchVector = new double[lnumFeatures];
 		double summatch = 0;
 		double suminput = 0;
 		for (int j = 0; j < lnumFeatures; j++) {
-			matchVector[j] = ((Data[j] < fweights[j]) ? Data[j] : fweights[j]);
-			summatch += matchVector[j];
+			summatch += ((Data[j] < fweights[offset + j]) ? Data[j] : fweights[offset + j]);
 			suminput += Data[j];
 		}
 		if (suminput == 0) {
@@ -661,18 +738,48 @@ public class ARAMNetwork extends ARAMNetworkClass    {
 		return summatch / suminput;
 	}
 
+	/**
+	 * Recomputes the sum of the weights of the category, and the sums from each block on, and 
+	 * notes if its weights are not within [0,1].
+	 */
+	private void ARAMm_Update_Sums(int category) {
+		int o = category * numFeatures;
+		sweightsA[category] = sumArray(weightsA, o, numFeatures);
+		for (int i = o; weightsInUnitRange && i < o + numFeatures; i++) {
+			weightsInUnitRange = (weightsA[i] >= 0 && weightsA[i] <= 1);
+		}
+		double rem = 0;
+		for (int b = numBlocks - 1; b >= 0; b--) {
+			rem += sumArray(weightsA, o + b * BLOCK, Math.min(numFeatures, (b + 1) * BLOCK) - b * BLOCK);
+			remweightsA[category * numBlocks + b] = rem;
+		}
+	}
+
 	private void ARAMm_Add_New_Category() {
 
-		weightsA = Arrays.copyOf(weightsA, numCategories + 1);
-		weightsB = Arrays.copyOf(weightsB, numCategories + 1);
-		weightsA[numCategories] = new double[numFeatures];
-		weightsB[numCategories] = new double[numClasses];
-		Arrays.fill(weightsA[numCategories], 1.0);
-		Arrays.fill(weightsB[numCategories], 0.0);
+		if (numCategories == capacity) {
+			// grow geometrically, rather than copying all the weights for each new category
+			capacity = Math.max(16, 2 * capacity);
+			weightsA = Arrays.copyOf(weightsA, capacity * numFeatures);
+			weightsB = Arrays.copyOf(weightsB, capacity * numClasses);
+			sweightsA = Arrays.copyOf(sweightsA, capacity);
+			remweightsA = Arrays.copyOf(remweightsA, capacity * numBlocks);
+		}
+		Arrays.fill(weightsA, numCategories * numFeatures, (numCategories + 1) * numFeatures, 1.0);
+		Arrays.fill(weightsB, numCategories * numClasses, (numCategories + 1) * numClasses, 0.0);
+		ARAMm_Update_Sums(numCategories);
 		numCategories += 1;
 
 	}
 
+	private double sumArray(double[] arr, int from, int length) {
+		double result = 0;
+		for (int i = from; i < from + length; i++) {
+			result += arr[i];
+		}
+		return result;
+	}
+
 	private double sumArray(double[] arr) {
 		int num = arr.length;
 		double result = 0;
@@ -697,24 +804,6 @@ public String getModel() {
 	return null;
 }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
-
 @Override
 public void setDebug(boolean debug) {
 	// TODO Auto-generated method stub
@@ -10,12 +10,21 @@ package meka.classifiers.multilabel.neurofuzzy;
 
 import meka.classifiers.multilabel.IncrementalMultiLabelClassifier;
 import meka.classifiers.multilabel.MultiLabelClassifierThreaded;
+import meka.core.OptionUtils;
+import meka.core.ThreadLimiter;
+import meka.core.ThreadUtils;
 import weka.classifiers.SingleClassifierEnhancer;
 import weka.core.Attribute;
 import weka.core.Capabilities;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
 
 /**
  * ****REPLACE THE FOLLOWING WITH SIMILAR INFORMATION.
@@ -51,7 +60,7 @@ import java.util.List;
  * Modified by Rushi for use as a CN710 template
  */
 public abstract class  ARAMNetworkClass extends SingleClassifierEnhancer implements MultiLabelClassifierThreaded,
-IncrementalMultiLabelClassifier{
+IncrementalMultiLabelClassifier, ThreadLimiter{
 
     public int numFeatures = -1;
     public int numClasses = -1;
@@ -74,6 +83,59 @@ IncrementalMultiLabelClassifier{
 	List<Integer> order=null;
 	int nrinstclassified=0;
 	protected String activity_report="";
+	/** whether distributionForInstanceM spreads the instances over several threads */
+	protected boolean m_Threaded=false;
+	/** the number of threads for distributionForInstanceM: -1 = # of CPUs/cores */
+	protected int m_NumThreads=ThreadUtils.ALL;
+
+	/**
+	 * Scratch space for classifying one instance at a time. distributionForInstanceM allocates one 
+	 * per thread rather than one per instance, and writes the activated neurons here rather than 
+	 * to the (shared) fields of the network.
+	 */
+	protected static class PredictionBuffers {
+		/** the (complement coded) input */
+		double[] data=null;
+		/** the fuzzy AND of the input and the weights of a category */
+		double[] match=null;
+		/** the activations of the categories */
+		SortPair[] activations=null;
+		/** the buffers of the voters of an ensemble */
+		PredictionBuffers[] voters=null;
+		/** the neurons activated by the last instance, and their activity */
+		int[] neuronsactivated=null;
+		double[] neuronsactivity=null;
+
+		double[] data(int n) {
+			if (data==null || data.length!=n)
+				data=new double[n];
+			return data;
+		}
+
+		double[] match(int n) {
+			if (match==null || match.length!=n)
+				match=new double[n];
+			return match;
+		}
+
+		/** the activations of n categories (the values still have to be set) */
+		SortPair[] activations(int n) {
+			if (activations==null || activations.length!=n) {
+				activations=new SortPair[n];
+				for (int i = 0; i < n; i++)
+					activations[i]=new SortPair(0, i);
+			}
+			return activations;
+		}
+
+		PredictionBuffers voter(int i, int n) {
+			if (voters==null || voters.length!=n)
+				voters=new PredictionBuffers[n];
+			if (voters[i]==null)
+				voters[i]=new PredictionBuffers();
+			return voters[i];
+		}
+	}
 
 
  //**** THIS IS WHERE CLASSIFIER WEIGHTS ETC GO ****
@@ -107,6 +169,137 @@ IncrementalMultiLabelClassifier{
 		}
 	}
 
+	/**
+	 * Calculates the ranking of the instance, using (and reusing) the given scratch space only, so 
+	 * that it can be called concurrently. Networks that do not support this classify one instance 
+	 * at a time.
+	 *
+	 * @param instance the instance to be classified
+	 * @param buffers the scratch space of the calling thread
+	 * @return the ranking, as distributionForInstance(instance)
+	 * @exception Exception if there is a problem generating the prediction
+	 */
+	protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
+		synchronized (this) {
+			return distributionForInstance(instance);
+		}
+	}
+
+	/**
+	 * Whether distributionForInstanceM may classify instances concurrently, e.g., not if the 
+	 * activity of the neurons gets written to a report.
+	 */
+	protected boolean canPredictInParallel() {
+		return true;
+	}
+
+	/**
+	 * Calculates the rankings of all the instances, with their class values cleared (as Evaluation 
+	 * does for single instances). If threaded, the instances are split into one block per thread, 
+	 * and each thread reuses one set of buffers for all its instances; the rankings are identical 
+	 * to those of distributionForInstance.
+	 *
+	 * @param D the instances to be classified
+	 * @return the rankings, one row per instance
+	 * @exception Exception if there is a problem generating the predictions
+	 */
+	public double[][] distributionForInstanceM(final Instances D) throws Exception {
+		final int N = D.numInstances();
+		final double[][] result = new double[N][];
+		if (!m_Threaded || !canPredictInParallel()) {
+			for (int i = 0; i < N; i++)
+				result[i] = distributionForInstance(clearLabels(D.instance(i)));
+			return result;
+		}
+
+		int numThreads = ThreadUtils.getActualNumThreads(m_NumThreads, N);
+		int block = (N + numThreads - 1) / Math.max(numThreads, 1);
+		List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+		for (int from = 0; from < N; from += block) {
+			final int start = from;
+			final int end = Math.min(N, from + block);
+			jobs.add(new Callable<Object>() {
+				public Object call() throws Exception {
+					PredictionBuffers buffers = new PredictionBuffers();
+					for (int i = start; i < end; i++)
+						result[i] = distributionForInstance(clearLabels(D.instance(i)), buffers);
+					return null;
+				}
+			});
+		}
+		ThreadUtils.invokeAll(jobs, numThreads);
+		// (one instance at a time, distributionForInstance counts them)
+		nrinstclassified+=N;
+		return result;
+	}
+
+	/**
+	 * A copy of the instance, with the class values set to 0.
+	 */
+	protected static Instance clearLabels(Instance x) {
+		Instance copy = (Instance) x.copy();
+		for (int v = 0; v < x.classIndex(); v++)
+			copy.setValue(v, 0.0);
+		return copy;
+	}
+
+	public boolean isThreaded() {
+		return m_Threaded;
+	}
+
+	public void setThreaded(boolean setv) {
+		m_Threaded = setv;
+	}
+
+	public String threadedTipText() {
+		return "Whether to classify batches of instances with several threads";
+	}
+
+	public void setNumThreads(int value) {
+		if (value >= -1)
+			m_NumThreads = value;
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "The number of threads for classifying batches of instances: -1 = # of CPUs/cores";
+	}
+
+	/**
+	 * Adds the options for classifying with several threads (to the options of a network).
+	 *
+	 * @param result the options of the network
+	 */
+	protected void listThreadOptions(Vector result) {
+		OptionUtils.addFlag(result, threadedTipText(), "threaded");
+		OptionUtils.addOption(result, numThreadsTipText(), "" + ThreadUtils.ALL, "num-threads");
+	}
+
+	/**
+	 * Appends the current options for classifying with several threads (to the options of a network).
+	 *
+	 * @param options the options of the network
+	 * @return the options, including those of the threads
+	 */
+	protected String[] addThreadOptions(String[] options) {
+		List<String> result = new ArrayList<String>(Arrays.asList(options));
+		OptionUtils.add(result, "threaded", isThreaded());
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		return OptionUtils.toArray(result);
+	}
+
+	@Override
+	public void setOptions(String[] options) throws Exception {
+		setThreaded(Utils.getFlag("threaded", options));
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.ALL));
+		super.setOptions(options);
+	}
+
 }
 
 
@@ -351,17 +351,24 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
    * @exception Exception if there is a problem generating the prediction
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
+		PredictionBuffers buffers = new PredictionBuffers();
+		double[] ranking = distributionForInstance(instance, buffers);
+		this.neuronsactivated = buffers.neuronsactivated;
+		this.neuronsactivity = buffers.neuronsactivity;
+		return ranking;
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
 
 		int num_classes=(int) (snumClasses);
 		int num_features=(int) (snumFeatures);
-		double[] dist = new double[num_classes];
-		double[] currentData = new double[numFeatures];
+		double[] currentData = buffers.data(numFeatures);
 		double[] ranking = new double[num_classes];
 			for (int j = 0; j < num_features; j++) {
 				currentData[j] = instance.value(num_classes+j);
 				currentData[num_features+j] = 1 - currentData[j];
 			}
-			SortPair[] sortedActivations = ARTActivateCategories(currentData);
+			SortPair[] sortedActivations = ARTActivateCategories(currentData, buffers);
 
 			java.util.Arrays.sort(sortedActivations);
 			double diff_act = sortedActivations[0].getValue()
@@ -389,13 +396,13 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
 
 			double sum_mat = sumArray(best_matches);
 			int currentCategory = 0;
-			this.neuronsactivated=new int[largest_activ];
-			this.neuronsactivity=new double[largest_activ];
+			buffers.neuronsactivated=new int[largest_activ];
+			buffers.neuronsactivity=new double[largest_activ];
 			for (int i = 0; i < largest_activ; i++) {
-				this.neuronsactivity[i]=best_matches[i];
+				buffers.neuronsactivity[i]=best_matches[i];
 				best_matches[i] = best_matches[i] / sum_mat;
 				currentCategory = sortedActivations[i].getOriginalIndex();
-				this.neuronsactivated[i]=currentCategory;
+				buffers.neuronsactivated[i]=currentCategory;
 				// % Fill return vector with weightB values
 				for (int j = 0; j < num_classes; j++) {
 					ranking[j] = ranking[j]
@@ -434,10 +441,10 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
 	            }
 		return classes;
 	}
-	private SortPair[] ARTActivateCategories(double[] Data) {
-		SortPair[] catacti = new SortPair[numCategories-1];
+	private SortPair[] ARTActivateCategories(double[] Data, PredictionBuffers buffers) {
+		SortPair[] catacti = buffers.activations(numCategories-1);
 		// double[] catacti=new double[numCategories];
-		double[] matchVector = new double[numFeatures];
+		double[] matchVector = buffers.match(numFeatures);
 		for (int i = 0; i < numCategories-1; i++) {
 			double sumvector = 0;
 		//	double sumweight = 0;
@@ -457,7 +464,7 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
 				sumvector += matchVector[j];
 			}
 			//sumweight=sweightsA[i]; 
-			catacti[i] = new SortPair(sumvector / (alpha + sweightsA[i]), i);
+			catacti[i].set(sumvector / (alpha + sweightsA[i]), i);
 		//	catacti[i] = new SortPair(sumvector / (alpha + sumweight), i);
 			//System.out.println("sumweight "+(sumweight-sweightsA[i]));
 		}
@@ -560,6 +567,7 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -608,7 +616,7 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -849,24 +857,6 @@ public class ARAMNetworkSparse extends ARAMNetworkClass {
     }
   }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
-
 @Override
 public String getModel() {
 	// TODO Auto-generated method stub
@@ -67,10 +67,10 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
  //define stuff like weight matrices, classifier parameters etc.
  //e.g., protected double rho_a_bar=0.0;
 
-    HashMap[] weightsA = null;
+    SparseVector[] weightsA = null;
     double[] sweightsA = null;
     double sweightsA0;
-    HashMap[] weightsB = null;
+    SparseVector[] weightsB = null;
 	HashMap<String, Vector> hmclasses = null;
 	int snumFeatures=0;
 	int snumClasses=0;
@@ -89,16 +89,16 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		numClasses = fnumClasses;
 		snumClasses= (int)(0.5*numClasses);
 		threshold = fthreshold;
-		weightsA = new HashMap[1];
-		weightsA[0] = new HashMap();
+		weightsA = new SparseVector[1];
+		weightsA[0] = new SparseVector(numFeatures);
 		sweightsA = new double[1];
 		sweightsA[0]=0;
 		for(int i=0;i<numFeatures;i++){
 			sweightsA[0]+=1;
 		}
 		sweightsA0=sweightsA[0];
-		weightsB = new HashMap[1];
-		weightsB[0] = new HashMap();
+		weightsB = new SparseVector[1];
+		weightsB[0] = new SparseVector(snumClasses);
 		numCategories = 1;
 		hmclasses = new HashMap<String, Vector>();
 
@@ -228,7 +228,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 				}
 				else{
 				matchA = ART_Calculate_MatchA(data, weightsA[currentCategory],suminputA);
-				if (sumArray(weightsB[currentCategory]) == 0) {
+				if (weightsB[currentCategory].sum() == 0) {
 					matchB = 1;
 				} else {
 					matchB = ART_Calculate_MatchB(labels,
@@ -351,17 +351,24 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
    * @exception Exception if there is a problem generating the prediction
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
+		PredictionBuffers buffers = new PredictionBuffers();
+		double[] ranking = distributionForInstance(instance, buffers);
+		this.neuronsactivated = buffers.neuronsactivated;
+		this.neuronsactivity = buffers.neuronsactivity;
+		return ranking;
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
 
 		int num_classes=(int) (snumClasses);
 		int num_features=(int) (snumFeatures);
-		double[] dist = new double[num_classes];
-		double[] currentData = new double[numFeatures];
+		double[] currentData = buffers.data(numFeatures);
 		double[] ranking = new double[num_classes];
 			for (int j = 0; j < num_features; j++) {
 				currentData[j] = instance.value(num_classes+j);
 				currentData[num_features+j] = 1 - currentData[j];
 			}
-			SortPair[] sortedActivations = ARTActivateCategories(currentData);
+			SortPair[] sortedActivations = ARTActivateCategories(currentData, buffers);
 
 			java.util.Arrays.sort(sortedActivations);
 			double diff_act = sortedActivations[0].getValue()
@@ -389,17 +396,17 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 
 			double sum_mat = sumArray(best_matches);
 			int currentCategory = 0;
-			this.neuronsactivated=new int[largest_activ];
-			this.neuronsactivity=new double[largest_activ];
+			buffers.neuronsactivated=new int[largest_activ];
+			buffers.neuronsactivity=new double[largest_activ];
 			for (int i = 0; i < largest_activ; i++) {
-				this.neuronsactivity[i]=best_matches[i];
+				buffers.neuronsactivity[i]=best_matches[i];
 				best_matches[i] = best_matches[i] / sum_mat;
 				currentCategory = sortedActivations[i].getOriginalIndex();
-				this.neuronsactivated[i]=currentCategory;
+				buffers.neuronsactivated[i]=currentCategory;
 				// % Fill return vector with weightB values
 				for (int j = 0; j < num_classes; j++) {
 					ranking[j] = ranking[j]
-							+ best_matches[i] * (Double)weightsB[currentCategory].get(j);
+							+ best_matches[i] * weightsB[currentCategory].get(j);
 				}
 			}
 			if(m_userankstoclass) {
@@ -434,15 +441,15 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 	            }
 		return classes;
 	}
-	private SortPair[] ARTActivateCategories(double[] Data) {
-		SortPair[] catacti = new SortPair[numCategories-1];
+	private SortPair[] ARTActivateCategories(double[] Data, PredictionBuffers buffers) {
+		SortPair[] catacti = buffers.activations(numCategories-1);
 		// double[] catacti=new double[numCategories];
-		double[] matchVector = new double[numFeatures];
+		double[] matchVector = buffers.match(numFeatures);
 		for (int i = 0; i < numCategories-1; i++) {
 			double sumvector = 0;
 		//	double sumweight = 0;
 			for (int j = 0; j < (int)snumFeatures; j++) {
-				double wa=(Double)weightsA[i].get(j);
+				double wa=weightsA[i].get(j);
 				matchVector[j] = ((Data[j] < wa) ? Data[j]
 						: wa);
 				sumvector += matchVector[j];
@@ -451,13 +458,13 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 			}
 			for (int j = snumFeatures; j < numFeatures; j++) {
 
-				double wa=1-(Double)weightsA[i].get(j);
+				double wa=1-weightsA[i].get(j);
 				double da=1-Data[j-snumFeatures];
 				matchVector[j] = (((da) < wa) ? da: wa);
 				sumvector += matchVector[j];
 			}
 			//sumweight=sweightsA[i]; 
-			catacti[i] = new SortPair(sumvector / (alpha + sweightsA[i]), i);
+			catacti[i].set(sumvector / (alpha + sweightsA[i]), i);
 		//	catacti[i] = new SortPair(sumvector / (alpha + sumweight), i);
 			//System.out.println("sumweight "+(sumweight-sweightsA[i]));
 		}
@@ -480,7 +487,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		//	double sumweight = 0;
 			int k = ((Integer)lclasses.get(i)).intValue();
 			for (int j = 0; j < snumFeatures; j++) {
-				double wa=(Double)weightsA[k].get(j);
+				double wa=weightsA[k].get(j);
 				matchVector[j] = ((Data[j] < wa) ? Data[j]
 						: wa);
 				sumvector += matchVector[j];
@@ -488,7 +495,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 			}
 			for (int j = snumFeatures; j < numFeatures; j++) {
 
-				double wa=1-(Double)weightsA[k].get(j);
+				double wa=1-weightsA[k].get(j);
 				double da=1-Data[j-snumFeatures];
 				matchVector[j] = (((da) < wa) ? da: wa);
 				sumvector += matchVector[j];
@@ -560,6 +567,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -608,7 +616,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -725,7 +733,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		double weightChange = 0;
 		sweightsA[category]=0;
 		for (int i = 0; i < snumFeatures; i++) {
-			double wa=(Double)weightsA[category].get(i);
+			double wa=weightsA[category].get(i);
 			if (data[i] < wa ){
 			wa = (learningRate * data[i])
 					+ (1 - learningRate) * wa;
@@ -736,7 +744,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		}
 		//above
 		for (int i = snumFeatures; i < numFeatures; i++) {
-			double wa=1-(Double)weightsA[category].get(i);
+			double wa=1-weightsA[category].get(i);
 			double da=1-data[i-snumFeatures];
 			if (da < wa ){
 			wa = (learningRate * da)
@@ -747,7 +755,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 
 		}
 		for (int i = 0; i < snumClasses; i++) {
-			double wb=(Double)weightsB[category].get(i);
+			double wb=weightsB[category].get(i);
 		    if(weightblearnmethod== 0){
 		    	weightsB[category].put(i, labels[i] + wb);
 	        weightChange = 1;
@@ -762,7 +770,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		return weightChange;
 	}
 
-	private double ART_Calculate_MatchA(double[] Data, HashMap fweights, double suminput
+	private double ART_Calculate_MatchA(double[] Data, SparseVector fweights, double suminput
 			) {
 
 		if (suminput == 0) {
@@ -776,14 +784,14 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		double summatch = 0;
 		//double suminput = 0;
 		for (int j = 0; j < lnumFeatures; j++) {
-			double w = (Double)fweights.get(j);
+			double w = fweights.get(j);
 			matchVector[j] = ((Data[j] < w) ? Data[j] :w);
 			summatch += matchVector[j];
 			//suminput += Data[j];
 		}
 		for (int j = snumFeatures; j < numFeatures; j++) {
 
-			double w =1- (Double)fweights.get(j);
+			double w =1- fweights.get(j);
 			double da= 1-Data[j-snumFeatures];
 			matchVector[j] = ((da< w) ? da :w);
 			summatch += matchVector[j];
@@ -794,7 +802,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		return summatch / suminput;
 	}
 
-	private double ART_Calculate_MatchB(double[] Data, HashMap fweights, double suminput
+	private double ART_Calculate_MatchB(double[] Data, SparseVector fweights, double suminput
 			) {
 
 		if (suminput == 0) {
@@ -808,7 +816,7 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		double summatch = 0;
 		//double suminput = 0;
 		for (int j = 0; j < lnumFeatures; j++) {
-			double w =(Double) fweights.get(j);
+			double w =fweights.get(j);
 			matchVector[j] = ((Data[j] < w) ? Data[j] :w);
 			summatch += matchVector[j];
 			//suminput += Data[j];
@@ -821,9 +829,9 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		weightsA = Arrays.copyOf(weightsA, numCategories + 1);
 		sweightsA = Arrays.copyOf(sweightsA, numCategories + 1);
 		weightsB = Arrays.copyOf(weightsB, numCategories + 1);
-		weightsA[numCategories] = new HashMap();
+		weightsA[numCategories] = new SparseVector((int)numFeatures);
 		//sweightsA[numCategories] = new double();
-		weightsB[numCategories] = new HashMap();
+		weightsB[numCategories] = new SparseVector((int)snumClasses);
 		//Arrays.fill(weightsA[numCategories], 1.0);
 		//Arrays.fill(weightsB[numCategories], 0.0);
 		sweightsA[numCategories]=sweightsA0;
@@ -839,14 +847,6 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
 		}
 		return result;
 	}
-	private double sumArray(HashMap arr) {
-		int num = arr.size();
-		double result = 0;
-		for (Object key: arr.keySet()) {
-			result += (Double)arr.get(key);
-		}
-		return result;
-	}
   public static void main(String [] argv) {
 
     try {
@@ -857,24 +857,6 @@ public class ARAMNetworkSparseH extends ARAMNetworkClass {
     }
   }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
-
 @Override
 public String getModel() {
 	// TODO Auto-generated method stub
@@ -12,11 +12,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.Vector;
 
 import meka.classifiers.multilabel.Evaluation;
@@ -67,11 +62,10 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
  //define stuff like weight matrices, classifier parameters etc.
  //e.g., protected double rho_a_bar=0.0;
 
-    HashMap[] weightsA = null;
-    HashSet[] upweightsA=null;
+    SparseVector[] weightsA = null;
     double[] sweightsA = null;
     double sweightsA0;
-    HashMap[] weightsB = null;
+    SparseVector[] weightsB = null;
 	HashMap<String, Vector> hmclasses = null;
 	int snumFeatures=0;
 	int snumClasses=0;
@@ -90,18 +84,16 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 		numClasses = fnumClasses;
 		snumClasses= (int)(0.5*numClasses);
 		threshold = fthreshold;
-		weightsA = new HashMap[1];
-		weightsA[0] = new HashMap();
-		upweightsA = new HashSet[1];
-		upweightsA[0] = new HashSet();
+		weightsA = new SparseVector[1];
+		weightsA[0] = new SparseVector(numFeatures);
 		sweightsA = new double[1];
 		sweightsA[0]=0;
 		for(int i=0;i<numFeatures;i++){
 			sweightsA[0]+=1;
 		}
 		sweightsA0=sweightsA[0];
-		weightsB = new HashMap[1];
-		weightsB[0] = new HashMap();
+		weightsB = new SparseVector[1];
+		weightsB[0] = new SparseVector(snumClasses);
 		numCategories = 1;
 		hmclasses = new HashMap<String, Vector>();
 
@@ -187,8 +179,6 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 		}
 		
 		int num_classes=(int) (snumClasses);
-		HashMap<Integer,Double> data = new HashMap<Integer,Double>();
-		HashMap<Integer, Double> labels = new HashMap<Integer, Double>();
 		int numChanges = 0;
 		int numCategories_1=numCategories -1;
 		numinstances+=1;
@@ -196,18 +186,19 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
     if (!instance.classIsMissing()) {
      //Do the weight updates using the instance.
 
-			for (Integer tj=0; tj<instance.numValues(); tj++){
+			SparseVector data = new SparseVector(snumFeatures, instance.numValues());
+			SparseVector labels = new SparseVector(num_classes);
+			for (int tj=0; tj<instance.numValues(); tj++){
 				int j=instance.index(tj);
-				double  da = instance.value(j);
+				double  da = instance.valueSparse(tj);
 				if (da==0){
 					continue;
 				}
 				if(j<num_classes){
 					labels.put(j, da);
 				}else{
-			data.put(j-num_classes, da);
-				
-			}
+					data.put(j-num_classes, da);
+				}
 			}
 			
 			SortPair2[] cateacti = ARTActivateCategories(data,labels);
@@ -228,9 +219,6 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 				else{
 				matchA =  (cateacti[currentSortedIndex].getRawValue()/
 									snumFeatures);
-		//		System.out.println("Ma: "+matchA+" "+cateacti[currentSortedIndex].getValue()
-		//				+" "+numinstances+" "+currentCategory+" S:"+sweightsA[currentCategory]);
-				
 				}
 				if (matchA >= roa) {
 					if (currentCategory == numCategories_1) {
@@ -241,47 +229,8 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 							resonance = true;
 						} else {
 							// Add a new category
-							sweightsA[currentCategory]=0;
-							Set<Integer> s1=data.keySet();
-							for (Integer j :s1) {
-								Double da=data.get(j);
-								weightsA[currentCategory].put(j,da);
-								weightsA[currentCategory].put(j+snumFeatures, da);
-								upweightsA[currentCategory].add(j+snumFeatures);
-							}
-							Set<Integer> s2=weightsA[currentCategory].keySet();
-							int count=0;
-							for (int j :s2) {
-								double da=(Double)weightsA[currentCategory].get(j);
-								if (j<snumFeatures){
-									sweightsA[currentCategory]+=da;
-								}
-								else{
-									sweightsA[currentCategory]+=1-da;
-									count+=1;
-									
-								}
-							}
-							sweightsA[currentCategory]+=snumFeatures-count;
-
-							s1=labels.keySet();
-							for (int j :s1) {
-								weightsB[currentCategory].put(j,labels.get(j));
-							}
-							String s = labels.keySet().toString();
-							if (hmclasses.containsKey(s)){
-								hmclasses.get(s).add(currentCategory);
-							hmclasses.put(s,hmclasses.get(s)); 
-							}else{
-								Vector<Integer> v = new Vector<Integer>();
-								v.add(currentCategory);
-								hmclasses.put(s,v);
-							}
+							ARAMm_Init_Category(currentCategory, data, labels);
 							ARAMm_Add_New_Category();
-							//System.out.println(numinstances+" "+numCategories);
-							
-							// fprintf(FileID,'Add a new category of %d\n',
-							// network.numCategories);
 							// Increment the number of changes since we added a
 							// new category.
 							numChanges = numChanges + 1;
@@ -292,8 +241,6 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 						// % Update weights
 						double weightChange = ARAMm_Update_Weights(data,
 								labels, currentCategory);
-						//System.out.println(numinstances+" "+currentCategory+" S:"+sweightsA[currentCategory]);
-						//sumArrayF(this.weightsA[1]);
 						if (weightChange == 1) {
 							numChanges += 1;
 						}
@@ -310,41 +257,11 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 			if(!resonance && currentSortedIndex>=cateacti.length)
 			{
 				// Add a new category
-				sweightsA[numCategories_1]=0;
-				Set<Integer> s1=data.keySet();
-				int count=0;
-				for (int j: s1) {
-					double da=data.get(j);
-					weightsA[numCategories_1].put(j, da);
-					sweightsA[numCategories_1]+=da;
-					weightsA[numCategories_1].put(j+snumFeatures, da);
-					sweightsA[numCategories_1]+=1-da;
-					upweightsA[numCategories_1].add(j+snumFeatures);
-					count+=1;
-				}
-				sweightsA[numCategories_1]+=snumFeatures-count;
-				s1=labels.keySet();
-				for (int j : s1) {
-					weightsB[numCategories_1].put(j, labels.get(j));
-				}
-				String s = labels.keySet().toString();
-				if (hmclasses.containsKey(s)){
-					hmclasses.get(s).add(numCategories_1);
-				hmclasses.put(s,hmclasses.get(s)); 
-				}else{
-					Vector<Integer> v = new Vector<Integer>();
-					v.add(numCategories_1);
-					hmclasses.put(s,v);
-				}
+				ARAMm_Init_Category(numCategories_1, data, labels);
 				ARAMm_Add_New_Category();
-				//System.out.println(numinstances+" "+numCategories);
-				// fprintf(FileID,'Add a new category of %d\n',
-				// network.numCategories);
 				// Increment the number of changes since we added a
 				// new category.
 				numChanges = numChanges + 1;
-				
-				
 			}
       }
   }
@@ -363,6 +280,15 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
    * @exception Exception if there is a problem generating the prediction
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
+		PredictionBuffers buffers = new PredictionBuffers();
+		double[] ranking = distributionForInstance(instance, buffers);
+		this.neuronsactivated = buffers.neuronsactivated;
+		this.neuronsactivity = buffers.neuronsactivity;
+		this.nrinstclassified+=1;
+		return ranking;
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
 
 		int num_classes=(int) (snumClasses);
 		double[] ranking = new double[num_classes];
@@ -376,7 +302,7 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 //				}
 //			}
 			//TODO use instance here
-			SortPair[] sortedActivations = ARTActivateCategories(instance);
+			SortPair[] sortedActivations = ARTActivateCategories(instance, buffers);
 
 			java.util.Arrays.sort(sortedActivations);
 			double s0=sortedActivations[0].getValue();
@@ -406,21 +332,20 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 
 			double sum_mat = sumArray(best_matches);
 			int currentCategory = 0;
-			this.neuronsactivated=new int[largest_activ];
-			this.neuronsactivity=new double[largest_activ];
+			buffers.neuronsactivated=new int[largest_activ];
+			buffers.neuronsactivity=new double[largest_activ];
 			for (int i = 0; i < largest_activ; i++) {
-				this.neuronsactivity[i]=best_matches[i];
+				buffers.neuronsactivity[i]=best_matches[i];
 				best_matches[i] = best_matches[i] / sum_mat;
 				currentCategory = sortedActivations[i].getOriginalIndex();
-				this.neuronsactivated[i]=currentCategory;
+				buffers.neuronsactivated[i]=currentCategory;
 				// % Fill return vector with weightB values
-				Set <Integer> s1= weightsB[currentCategory].keySet();
-				for (int j :s1) {
-					ranking[j] = ranking[j]
-							+ best_matches[i] * (Double)weightsB[currentCategory].get(j);
+				SparseVector wb = weightsB[currentCategory];
+				for (int p = 0; p < wb.nnz(); p++) {
+					ranking[wb.indexAt(p)] = ranking[wb.indexAt(p)]
+							+ best_matches[i] * wb.valueAt(p);
 				}
 			}
-			this.nrinstclassified+=1;
 			if(m_userankstoclass) {
 				return ARAMm_Ranking2Class(ranking);
 				
@@ -455,90 +380,42 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 	            }
 		return classes;
 	}
-	private SortPair[] ARTActivateCategories(Instance Data) {
-		SortPair[] catacti = new SortPair[numCategories-1];
-		// double[] catacti=new double[numCategories];
-		//Set<Integer> s1=new HashSet<Integer>();
-		//Set<Integer> s1=Data.keySet();
-	  //  long startMilli = System.currentTimeMillis();
-		
-		for (int i = 0; i < numCategories-1; i++) {
-		//    long startMilliss = System.nanoTime();
-			double sumvector = 0;
-		//	double sumweight = 0;
-			int count=0;
-			List<Integer> s2=new ArrayList<Integer>(upweightsA[i]);
-			//List<Integer> s2=new ArrayList<Integer>(weightsA[i].keySet());
-			//for (Integer j: s1) {
-			//double da=(Double)Data.get(j);
-			long st3 =0;
-			long st4 =0;
-				for (int tj=0; tj<Data.numValues(); tj++){
-				    long startMillisst = System.nanoTime();
-					int sj=Data.index(tj);
-					double  da = Data.value(sj);
-					Integer j=sj-snumClasses;
-					//s1.add(j);
-					if (da==0){
-
-						//s2.remove((Integer)j);
-						continue;
-					}
-				    long st10 = System.nanoTime();
-				count+=1;
-			    long st1 = System.nanoTime();
-
-				Double wa=(Double)weightsA[i].get(j);
-			    long st1a = System.nanoTime();
-				if(wa!=null){
-				sumvector += ((da < wa) ?da
-						: wa);
-				
-				//s2.remove((Integer)j);
-				}
-			    long st2 = System.nanoTime();
-
-				Integer j1=j+snumFeatures;
-				Double wat=(Double)weightsA[i].get(j1);
-				if(wat!=null){
-					wat=1-wat;
-				double dat=1-da;
-				sumvector += (((dat) < wat) ? dat: wat);
-			     st3 = System.nanoTime();
-				s2.remove((Integer)j1);
-			     st4 = System.nanoTime();
-				}else{
-					sumvector+=1-da;
-				}
-			//    long endMillisst = System.nanoTime();
-			 int jti=1;
-			   // System.out.println("it took " + (endMillisst - startMillisst) + " milli(s)");
-			}
-			for (Integer j: s2) {
-				double wat=1-(Double)weightsA[i].get(j);
-				sumvector +=wat;
-				count+=1;
-				
-				
+	/**
+	 * The non-zero features of the instance (the labels are skipped), as a sparse vector.
+	 */
+	private SparseVector ARAMm_Sparse_Data(Instance instance) {
+		SparseVector data = new SparseVector(snumFeatures, instance.numValues());
+		for (int tj=0; tj<instance.numValues(); tj++){
+			int j=instance.index(tj);
+			double da=instance.valueSparse(tj);
+			if (j>=snumClasses && da!=0){
+				data.put(j-snumClasses, da);
 			}
-			sumvector+=snumFeatures-count;
-			//sumweight=sweightsA[i]; 
-		   // long endMilliss = System.nanoTime();
-			catacti[i] = new SortPair(sumvector / (alpha + sweightsA[i]), i);
-		    //System.out.println("it took " + (endMilliss - startMilliss) + " milli(s)");
-		//	catacti[i] = new SortPair(sumvector / (alpha + sumweight), i);
-			//System.out.println("sumweight "+(sumweight-sweightsA[i]));
-			//if(activated==121){
-			//	System.out.println(i+ " "+sumvector+" "+sweightsA[i]);
-			//}
 		}
-	   // long endMilli = System.currentTimeMillis();
-		//activated+=1;
+		return data;
+	}
+
+	/**
+	 * The (unnormalised) activation of a category: the fuzzy AND of the complement coded data and 
+	 * weights, computed by merging the non-zero entries only.
+	 */
+	private double ARAMm_Activation(SparseVector data, int category) {
+		return weightsA[category].sumMin(data)
+				+ weightsA[category].sumMinComplement(data, snumFeatures, snumFeatures);
+	}
+
+	private SortPair[] ARTActivateCategories(Instance Data, PredictionBuffers buffers) {
+		SortPair[] catacti = buffers.activations(numCategories-1);
+		SparseVector data = ARAMm_Sparse_Data(Data);
+		for (int i = 0; i < numCategories-1; i++) {
+			double sumvector = ARAMm_Activation(data, i);
+			catacti[i].set(sumvector / (alpha + sweightsA[i]), i);
+		}
 		return catacti;
 	}
-	private SortPair2[] ARTActivateCategories(Map<Integer, Double> Data, HashMap<Integer, Double> labels) {
+	private SortPair2[] ARTActivateCategories(SparseVector Data, SparseVector labels) {
 		
-		String s = labels.keySet().toString();		
+		String s = Arrays.toString(labels.indices());
 		Vector lclasses = (Vector)hmclasses.get(s);
 		SortPair2[] catacti = null;
 		if (lclasses==null||lclasses.size()==0){
@@ -547,66 +424,9 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
 			return catacti;
 		}
 		catacti = new SortPair2[lclasses.size()];
-		// double[] catacti=new double[numCategories];	
 		for (int i = 0; i < lclasses.size(); i++) {
-			double sumvector = 0;
-		//	double sumweight = 0;
 			int k = ((Integer)lclasses.get(i)).intValue();
-			List<Integer> s2=new ArrayList<Integer>(upweightsA[k]);
-			
-
-			int counter=0;
-			//double dt = instance.value(num_classes+j);
-			
-			for (Map.Entry<Integer, Double> entry : Data.entrySet()) {
-				int j=entry.getKey();
-				double da=(Double)entry.getValue();
-//			for (Integer tj=0; tj<Data.numValues(); tj++){
-//				int j=Data.index(tj);
-//				
-//				double  da = Data.value(j-snumClasses);
-//				if (da==0){
-//					s2.remove((Integer)j);
-//					continue;
-//				}
-				Double wa=(Double)weightsA[k].get(j);
-				if(wa!=null){
-				if(wa==0){
-					continue;
-				}
-				sumvector +=  ((da < wa) ? da
-						: wa);
-			//	s2.remove((Integer)j);
-				
-				}
-				Integer j1=j+snumFeatures;
-				double dat=1-da;
-				Double wat=(Double)weightsA[k].get(j1);
-				if(wat!=null){
-					wat=1-wat;
-			//	sumweight += weightsA[k][j];
-				sumvector +=(((dat) < wat) ? dat: wat);
-				s2.remove((Object)j1);
-				
-				counter+=1;
-				}else{
-					sumvector += dat;
-					counter+=1;
-					//s2.remove((Integer)j1);
-							
-				}
-
-			}		
-			for (Integer j: s2) {
-					counter+=1;
-					sumvector += 1-(Double)weightsA[k].get(j);
-					
-					
-			}
-			sumvector += snumFeatures-counter;
-			//sumweight=sweightsA[k];
-			//catacti[i] = new SortPair(sumvector / (alpha + sumweight), k);
-			//System.out.println("sumweight "+(sumweight-sweightsA[k]));
+			double sumvector = ARAMm_Activation(Data, k);
 			catacti[i] = new SortPair2(sumvector / (alpha + sweightsA[k]), k,sumvector);
 		}
 		return catacti;
@@ -670,6 +490,7 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -718,7 +539,7 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -764,134 +585,139 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
    *
    * @param argv the options
    */
-	private double ARAMm_Update_Weights(HashMap<Integer, Double> data, HashMap<Integer, Double> labels,
+	/**
+	 * Sets the weights of a (new) category to the data, complement coded, and to the labels.
+	 * The lower half of weightsA holds the weights w, the upper half the complement coded 
+	 * weights as 1 - w (so that the complement of a 0 is not stored).
+	 */
+	private void ARAMm_Init_Category(int category, SparseVector data, SparseVector labels) {
+		SparseVector wa = new SparseVector(numFeatures, 2 * data.nnz());
+		SparseVector wb = new SparseVector(snumClasses, labels.nnz());
+		double sw = 0;
+		for (int p = 0; p < data.nnz(); p++) {
+			wa.put(data.indexAt(p), data.valueAt(p));
+			sw += data.valueAt(p);
+		}
+		for (int p = 0; p < data.nnz(); p++) {
+			wa.put(data.indexAt(p) + snumFeatures, data.valueAt(p));
+			sw += 1 - data.valueAt(p);
+		}
+		sw += snumFeatures - data.nnz();
+		for (int p = 0; p < labels.nnz(); p++) {
+			wb.put(labels.indexAt(p), labels.valueAt(p));
+		}
+		weightsA[category] = wa;
+		sweightsA[category] = sw;
+		weightsB[category] = wb;
+
+		String s = Arrays.toString(labels.indices());
+		if (hmclasses.containsKey(s)){
+			hmclasses.get(s).add(category);
+		}else{
+			Vector<Integer> v = new Vector<Integer>();
+			v.add(category);
+			hmclasses.put(s,v);
+		}
+	}
+
+	/**
+	 * Updates the weights of the category with the data (fuzzy AND, complement coded), in one
+	 * merge over the non-zero entries of the weights and the data.
+	 */
+	private double ARAMm_Update_Weights(SparseVector data, SparseVector labels,
 			int category) {
 		double weightChange = 0;
-		sweightsA[category]=0;
-		Set<Integer> s1=new TreeSet<Integer>(data.keySet());
-		Set<Integer> s2=new HashSet<Integer>(weightsA[category].keySet());
-		int count=0;
-		
-		for (Integer i: s1) {
-			if (i>=snumFeatures){
-				continue;
-			}
-			double da=data.get(i);
-			Double wa=(Double)weightsA[category].get(i);
-			if(wa!=null){
-			if (da < wa ){
-			wa = (learningRate * da)
-					+ (1 - learningRate) * wa;
-			if(wa==0){
-				weightsA[category].remove(i);
-			}else{
-			weightsA[category].put(i, wa);
-			}
-			}
-			sweightsA[category]+=wa;
-			s2.remove(i);
-			}
-			double dat=1-da;
-		//}
-		//	for (Integer i: s1) {
-				int j1= i+snumFeatures;
-		//		double dat=1-data.get(j1-snumFeatures);
-				Double wat=(Double)weightsA[category].get(j1);
-		//	Double wat=(Double)weightsA[category].get(j1);
-			if(wat!=null){
-			wat=1-wat;
-			if (dat < wat ){
-			wat = ((learningRate * dat)
-					+ (1 - learningRate) * wat);
-			if (wat==1){
-				weightsA[category].remove(j1);
-				upweightsA[category].remove(j1);
-			}else{
-			weightsA[category].put(j1, 1-wat);
-			upweightsA[category].add(j1);
-			count+=1;
+		SparseVector wa = weightsA[category];
+		SparseVector nwa = new SparseVector(numFeatures, wa.nnz() + data.nnz());
+		double sw = 0;
+		int count = 0;
+		int p = 0;
+		int q = 0;
+
+		// the weights: features that are 0 in the data are removed
+		for (; p < wa.nnz() && wa.indexAt(p) < snumFeatures; p++) {
+			int i = wa.indexAt(p);
+			while (q < data.nnz() && data.indexAt(q) < i) {
+				q++;
 			}
-			}else{
-				if (wat!=1){
-					count+=1;
-					
+			if (q < data.nnz() && data.indexAt(q) == i) {
+				double w = wa.valueAt(p);
+				double da = data.valueAt(q);
+				if (da < w) {
+					w = (learningRate * da)
+							+ (1 - learningRate) * w;
 				}
-			
-				
+				nwa.put(i, w);
+				sw += w;
 			}
-			sweightsA[category]+=wat;
-
-			s2.remove(j1);
-			}else{
-				wat=(learningRate * dat);
-				if (wat==1){
-					weightsA[category].remove(j1);
-					upweightsA[category].remove(j1);
-					
-				}else{
-				weightsA[category].put((Integer)j1,(Double) (1-wat));
-				upweightsA[category].add(j1);
-				count+=1;
-				}
-				sweightsA[category]+=wat;
-				
-	}
-
 		}
-		for (Integer i: s2) {
-
-			if (i<snumFeatures){
-				try{
-					weightsA[category].remove(i);	
 
-					upweightsA[category].remove(i);
-				}catch(Exception e){
-					e.getClass();
-				}	
-						
+		// the complement coded weights: merge with the data
+		q = 0;
+		while (p < wa.nnz() || q < data.nnz()) {
+			int jw = (p < wa.nnz()) ? wa.indexAt(p) - snumFeatures : Integer.MAX_VALUE;
+			int jd = (q < data.nnz()) ? data.indexAt(q) : Integer.MAX_VALUE;
+			double wat;
+			if (jw < jd) {
+				// 0 in the data, i.e., 1 in the complement: no change
+				wat = 1 - wa.valueAt(p);
+				nwa.put(jw + snumFeatures, wa.valueAt(p));
+				count += 1;
+				p++;
 			}
-			else{
-				double wat=1-(Double)weightsA[category].get(i);
-				sweightsA[category]+=wat;
-				count+=1;
+			else {
+				double dat = 1 - data.valueAt(q);
+				wat = (jw == jd) ? 1 - wa.valueAt(p) : 1;
+				if (jw > jd) {
+					wat = (learningRate * dat);
+				}
+				else if (dat < wat) {
+					wat = (learningRate * dat)
+							+ (1 - learningRate) * wat;
+				}
+				if (wat != 1) {
+					nwa.put(jd + snumFeatures, 1 - wat);
+					count += 1;
+				}
+				if (jw == jd) {
+					p++;
+				}
+				q++;
 			}
+			sw += wat;
 		}
-		
-		sweightsA[category]+=snumFeatures-count;
+		sw += snumFeatures - count;
 
-		s1=labels.keySet();
-		
-		for (Integer i: s1) {
-			double lb=labels.get(i);
-			Double wb=(Double)weightsB[category].get(i);
-			if(wb!=null){
+		weightsA[category] = nwa;
+		sweightsA[category] = sw;
+
+		SparseVector wb = weightsB[category];
+		for (int k = 0; k < labels.nnz(); k++) {
+			int i = labels.indexAt(k);
+			double lb = labels.valueAt(k);
+			double w = wb.get(i);
+			if (w != 0) {
 		    if(weightblearnmethod== 0){
-		    	weightsB[category].put(i, lb + wb);
+		    	wb.put(i, lb + w);
 	        weightChange = 1;
 		    }else{
 	      //  %normalise
-	        if ( lb< wb){
-		    	weightsB[category].put(i, (learningRate * lb )+ (1 - learningRate) *wb);  
+	        if ( lb< w){
+		    	wb.put(i, (learningRate * lb )+ (1 - learningRate) *w);  
 	            weightChange = 1;
-	            
 	        }
 		    }}
 		}
 		return weightChange;
 	}
 
-	
-	
-
 	private void ARAMm_Add_New_Category() {
 
 		weightsA = Arrays.copyOf(weightsA, numCategories + 1);
 		sweightsA = Arrays.copyOf(sweightsA, numCategories + 1);
 		weightsB = Arrays.copyOf(weightsB, numCategories + 1);
-		upweightsA = Arrays.copyOf(upweightsA, numCategories + 1);
-		weightsA[numCategories] = new HashMap<Integer, Double>();
-		weightsB[numCategories] = new HashMap<Integer, Double>();
-		upweightsA[numCategories] = new HashSet();
+		weightsA[numCategories] = new SparseVector(numFeatures);
+		weightsB[numCategories] = new SparseVector(snumClasses);
 		sweightsA[numCategories]=sweightsA0;
 		numCategories += 1;
 
@@ -914,11 +740,6 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
       System.err.println(e.getMessage());
     }
   }
-  public double[][] distributionForInstanceM(Instances i) throws Exception {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
   
   class SortPair2  implements Comparable<SortPair2> {
 		private int originalIndex;
@@ -949,18 +770,6 @@ public class ARAMNetworkSparseHT extends ARAMNetworkClass {
   }
 
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
 @Override
 public String getModel() {
 	// TODO Auto-generated method stub
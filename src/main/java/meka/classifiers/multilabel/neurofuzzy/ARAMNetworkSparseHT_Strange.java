@@ -367,6 +367,12 @@ public class ARAMNetworkSparseHT_Strange extends ARAMNetworkClass {
 
 
  //****THIS IS THE CLASSIFICATION ROUTINE. MODIFY TO CHANGE THE ALGORITHM****
+  protected boolean canPredictInParallel() {
+		// distributionForInstance keeps its state in the fields of the network, so the
+		// threads would only take turns
+		return false;
+  }
+
  //****classifyInstance() uses this method, so implement the 
  //****nuts-and-bolts of your algorithm here. 
   /**
@@ -612,6 +618,7 @@ public class ARAMNetworkSparseHT_Strange extends ARAMNetworkClass {
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -660,7 +667,7 @@ public class ARAMNetworkSparseHT_Strange extends ARAMNetworkClass {
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -1011,24 +1018,6 @@ public class ARAMNetworkSparseHT_Strange extends ARAMNetworkClass {
     }
   }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
-
 @Override
 public String getModel() {
 	// TODO Auto-generated method stub
@@ -361,17 +361,30 @@ private void print_weights(Writer twriter){
    */
   
   public double[] distributionForInstance(Instance instance) throws Exception {
+		PredictionBuffers buffers = new PredictionBuffers();
+		double[] ranking = distributionForInstance(instance, buffers);
+		this.neuronsactivated = buffers.neuronsactivated;
+		this.neuronsactivity = buffers.neuronsactivity;
+		this.nrinstclassified+=1;
+		return ranking;
+  }
+
+  protected boolean canPredictInParallel() {
+		// the report is written instance by instance
+		return this.activity_report.compareTo("")==0;
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
 
 		int num_classes=(int) (0.5 * numClasses);
 		int num_features=(int) (0.5 * numFeatures);
-		double[] dist = new double[num_classes];
-		double[] currentData = new double[numFeatures];
+		double[] currentData = buffers.data(numFeatures);
 		double[] ranking = new double[num_classes];
 			for (int j = 0; j < num_features; j++) {
 				currentData[j] = instance.value(num_classes+j);
 				currentData[num_features+j] = 1 - currentData[j];
 			}
-			SortPair2[] sortedActivations = ARTActivateCategories(currentData);
+			SortPair[] sortedActivations = ARTActivateCategories(currentData, buffers);
 
 			java.util.Arrays.sort(sortedActivations);
 			double s0=sortedActivations[0].getValue();
@@ -401,8 +414,8 @@ private void print_weights(Writer twriter){
 
 			double sum_mat = sumArray(best_matches);
 			int currentCategory = 0;
-			this.neuronsactivated=new int[largest_activ];
-			this.neuronsactivity=new double[largest_activ];
+			buffers.neuronsactivated=new int[largest_activ];
+			buffers.neuronsactivity=new double[largest_activ];
 
 			if (this.activity_report.compareTo("")!=0){
 
@@ -421,17 +434,17 @@ private void print_weights(Writer twriter){
 				
 			}
 			for (int i = 0; i < largest_activ; i++) {
-				this.neuronsactivity[i]=best_matches[i];
+				buffers.neuronsactivity[i]=best_matches[i];
 				best_matches[i] = best_matches[i] / sum_mat;
 				currentCategory = sortedActivations[i].getOriginalIndex();
-				this.neuronsactivated[i]=currentCategory;
+				buffers.neuronsactivated[i]=currentCategory;
 				// % Fill return vector with weightB values
 
 				if (this.activity_report.compareTo("")!=0){
 					
 
 					try {
-					    writer.write(this.neuronsactivity[i]+","+this.neuronsactivated[i]+";");
+					    writer.write(buffers.neuronsactivity[i]+","+buffers.neuronsactivated[i]+";");
 					} catch (IOException ex) {
 					  // report
 					} 
@@ -441,8 +454,6 @@ private void print_weights(Writer twriter){
 							+ best_matches[i] * weightsB[currentCategory][j];
 				}
 			}
-			this.nrinstclassified+=1;
-
 			if (this.activity_report.compareTo("")!=0){
 				
 
@@ -489,8 +500,8 @@ private void print_weights(Writer twriter){
 	            }
 		return classes;
 	}
-	private SortPair2[] ARTActivateCategories(double[] Data) {
-		SortPair2[] catacti = new SortPair2[numCategories-1];
+	private SortPair[] ARTActivateCategories(double[] Data, PredictionBuffers buffers) {
+		SortPair[] catacti = buffers.activations(numCategories-1);
 		// double[] catacti=new double[numCategories];
 		for (int i = 0; i < numCategories-1; i++) {
 			double sumvector = 0;
@@ -502,7 +513,7 @@ private void print_weights(Writer twriter){
 			//	sumweight += weightsA[i][j];
 			}
 			//sumweight=sweightsA[i]; 
-			catacti[i] = new SortPair2(sumvector / (alpha + sweightsA[i]), i, sumvector);
+			catacti[i].set(sumvector / (alpha + sweightsA[i]), i);
 			//if(activated==121){
 			//	System.out.println(i+ " "+sumvector+" "+sweightsA[i]);
 			//}
@@ -603,6 +614,7 @@ private void print_weights(Writer twriter){
     	    new Option("\tUse report file to output debug specific information of ARAM.\n",
     		       "Rt", 0,"-Rt"));
     
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -653,7 +665,7 @@ private void print_weights(Writer twriter){
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -787,24 +799,6 @@ Evaluation.runExperiment((MultiLabelClassifier)new WvARAM(), argv);
 		}
 
 }
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
-
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
 @Override
 public String getModel() {
 	// TODO Auto-generated method stub
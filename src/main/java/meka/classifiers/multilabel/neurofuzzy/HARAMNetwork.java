@@ -280,16 +280,31 @@ private boolean relearned=false;
    * @exception Exception if there is a problem generating the prediction
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
+	  if (relearned==true)
+	  {
+		  PrepareHClusters();
+	  }
+		PredictionBuffers buffers = new PredictionBuffers();
+		double[] ranking = distributionForInstance(instance, buffers);
+		this.neuronsactivated = buffers.neuronsactivated;
+		this.neuronsactivity = buffers.neuronsactivity;
+		return ranking;
+  }
 
-      
+  public double[][] distributionForInstanceM(Instances D) throws Exception {
 	  if (relearned==true)
 	  {
 		  PrepareHClusters();
 	  }
+	  return super.distributionForInstanceM(D);
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
+
+      
 		int num_classes=(int) (0.5 * numClasses);
 		int num_features=(int) (0.5 * numFeatures);
-		double[] dist = new double[num_classes];
-		double[] currentData = new double[numFeatures];
+		double[] currentData = buffers.data(numFeatures);
 		double[] ranking = new double[num_classes];
 			for (int j = 0; j < num_features; j++) {
 				currentData[j] = instance.value(num_classes+j);
@@ -315,7 +330,7 @@ private boolean relearned=false;
             	c1+=1;
             }
 
-			SortPair[] sortedActivations = ARTActivateCategories(currentData, ids, numberofids);
+			SortPair[] sortedActivations = ARTActivateCategories(currentData, ids, numberofids, buffers);
 
 			java.util.Arrays.sort(sortedActivations);
 			double diff_act = sortedActivations[0].getValue()
@@ -343,13 +358,13 @@ private boolean relearned=false;
 
 			double sum_mat = sumArray(best_matches);
 			int currentCategory = 0;
-			this.neuronsactivated=new int[largest_activ];
-			this.neuronsactivity=new double[largest_activ];
+			buffers.neuronsactivated=new int[largest_activ];
+			buffers.neuronsactivity=new double[largest_activ];
 			for (int i = 0; i < largest_activ; i++) {
-				this.neuronsactivity[i]=best_matches[i];
+				buffers.neuronsactivity[i]=best_matches[i];
 				best_matches[i] = best_matches[i] / sum_mat;
 				currentCategory = sortedActivations[i].getOriginalIndex();
-				this.neuronsactivated[i]=currentCategory;
+				buffers.neuronsactivated[i]=currentCategory;
 				// % Fill return vector with weightB values
 				for (int j = 0; j < num_classes; j++) {
 					ranking[j] = ranking[j]
@@ -407,10 +422,10 @@ private boolean relearned=false;
 		}
 		return catacti;
 	}
-	private SortPair[] ARTActivateCategories(double[] Data,List<Integer> ids, int maxnumberids ) {
-		SortPair[] catacti = new SortPair[ids.size()];
+	private SortPair[] ARTActivateCategories(double[] Data,List<Integer> ids, int maxnumberids, PredictionBuffers buffers ) {
+		SortPair[] catacti = buffers.activations(ids.size());
 		// double[] catacti=new double[numCategories];
-		double[] matchVector = new double[numFeatures];
+		double[] matchVector = buffers.match(numFeatures);
 		for (int i1 = 0; i1 < maxnumberids; i1++) {
 			double sumvector = 0;
 			double sumweight = 0;
@@ -423,7 +438,7 @@ private boolean relearned=false;
 				sumweight += weightsA[i][j];
 			}
 
-			catacti[i1] = new SortPair(sumvector / (alpha + sumweight), i);
+			catacti[i1].set(sumvector / (alpha + sumweight), i);
 		}
 		return catacti;
 	}
@@ -493,6 +508,7 @@ private boolean relearned=false;
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -549,7 +565,7 @@ private boolean relearned=false;
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return (String[]) result.toArray(new String[result.size()]);	
+    return addThreadOptions((String[]) result.toArray(new String[result.size()]));	
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -736,24 +752,6 @@ private boolean relearned=false;
     }
   }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
-
 public double getVigilancy(){
 	
 	return roa;
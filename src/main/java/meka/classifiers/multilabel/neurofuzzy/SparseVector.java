@@ -1,36 +1,103 @@
 package meka.classifiers.multilabel.neurofuzzy;
 
+import java.io.Serializable;
+import java.util.Arrays;
+
 /*
  * from http://introcs.cs.princeton.edu/java/44st/SparseVector.java.html
-Copyright © 2000–2011, Robert Sedgewick and Kevin Wayne. 
+Copyright © 2000–2011, Robert Sedgewick and Kevin Wayne.
+ *
+ * Stores the non-zero entries as parallel, sorted, primitive arrays of indices and values (rather than in
+ * a symbol table of boxed Integer/Double), so that the kernels of the ARAM networks (fuzzy AND of input and
+ * weights, also for the complement coding) can be computed by merging two vectors, without allocating.
+ * Missing entries are 0.
  */
-public class SparseVector {
+public class SparseVector implements Serializable {
+    private static final long serialVersionUID = -2381417296233612957L;
+
     private final int N;             // length
-    private ST<Integer, Double> st;  // the vector, represented by index-value pairs
+    private int[] index;             // the indices of the non-zero entries, ascending
+    private double[] value;          // the corresponding values
+    private int nnz;                 // the number of non-zero entries
 
     // initialize the all 0s vector of length N
     public SparseVector(int N) {
-        this.N  = N;
-        this.st = new ST<Integer, Double>();
+        this(N, 4);
+    }
+
+    // initialize the all 0s vector of length N, with room for capacity non-zero entries
+    public SparseVector(int N, int capacity) {
+        this.N     = N;
+        this.index = new int[Math.max(capacity, 1)];
+        this.value = new double[this.index.length];
+    }
+
+    // the position of index i, or (-(insertion point) - 1) if there is no entry for i
+    private int find(int i) {
+        // appending in ascending order is the common case
+        if (nnz == 0 || index[nnz - 1] < i) return -(nnz + 1);
+        return Arrays.binarySearch(index, 0, nnz, i);
     }
 
     // put st[i] = value
     public void put(int i, double value) {
         if (i < 0 || i >= N) throw new RuntimeException("Illegal index");
-        if (value == 0.0) st.delete(i);
-        else              st.put(i, value);
+        int p = find(i);
+        if (p >= 0) {
+            if (value == 0.0) removeAt(p);
+            else              this.value[p] = value;
+        }
+        else if (value != 0.0) {
+            p = -p - 1;
+            if (nnz == index.length) {
+                index = Arrays.copyOf(index, 2 * nnz);
+                this.value = Arrays.copyOf(this.value, 2 * nnz);
+            }
+            System.arraycopy(index, p, index, p + 1, nnz - p);
+            System.arraycopy(this.value, p, this.value, p + 1, nnz - p);
+            index[p] = i;
+            this.value[p] = value;
+            nnz++;
+        }
+    }
+
+    // remove st[i], i.e., set it to 0
+    public void remove(int i) {
+        int p = find(i);
+        if (p >= 0) removeAt(p);
+    }
+
+    private void removeAt(int p) {
+        System.arraycopy(index, p + 1, index, p, nnz - p - 1);
+        System.arraycopy(value, p + 1, value, p, nnz - p - 1);
+        nnz--;
     }
 
     // return st[i]
     public double get(int i) {
         if (i < 0 || i >= N) throw new RuntimeException("Illegal index");
-        if (st.contains(i)) return st.get(i);
-        else                return 0.0;
+        int p = find(i);
+        return (p >= 0) ? value[p] : 0.0;
+    }
+
+    // return the index of the p-th non-zero entry
+    public int indexAt(int p) {
+        return index[p];
+    }
+
+    // return the value of the p-th non-zero entry
+    public double valueAt(int p) {
+        return value[p];
+    }
+
+    // return the indices of the non-zero entries
+    public int[] indices() {
+        return Arrays.copyOf(index, nnz);
     }
 
     // return the number of nonzero entries
     public int nnz() {
-        return st.size();
+        return nnz;
     }
 
     // return the size of the vector
@@ -43,38 +110,91 @@ public class SparseVector {
         SparseVector a = this;
         if (a.N != b.N) throw new RuntimeException("Vector lengths disagree");
         double sum = 0.0;
-
-        // iterate over the vector with the fewest nonzeros
-        if (a.st.size() <= b.st.size()) {
-            for (int i : a.st)
-                if (b.st.contains(i)) sum += a.get(i) * b.get(i);
-        }
-        else  {
-            for (int i : b.st)
-                if (a.st.contains(i)) sum += a.get(i) * b.get(i);
+        for (int p = 0, q = 0; p < a.nnz && q < b.nnz; ) {
+            if      (a.index[p] < b.index[q]) p++;
+            else if (a.index[p] > b.index[q]) q++;
+            else    sum += a.value[p++] * b.value[q++];
         }
         return sum;
     }
 
+    // return the sum of the entries
     public double sum() {
-    	double s1=0;
-        SparseVector a = this;
-    	for (int i : a.st){
-    		s1+=a.get(i); 
-    	}
-    	return s1;
+        double s1 = 0;
+        for (int p = 0; p < nnz; p++) {
+            s1 += value[p];
+        }
+        return s1;
+    }
+
+    // return the sum of the entries with index in [from,to)
+    public double sum(int from, int to) {
+        double s1 = 0;
+        for (int p = lowerBound(from); p < nnz && index[p] < to; p++) {
+            s1 += value[p];
+        }
+        return s1;
     }
+
     // return the 2-norm
     public double norm() {
         SparseVector a = this;
         return Math.sqrt(a.dot(a));
     }
 
+    // return the fuzzy AND |min(a,b)|, i.e., sum_i min(a_i,b_i) over the entries present in both
+    public double sumMin(SparseVector b) {
+        SparseVector a = this;
+        double sum = 0.0;
+        for (int p = 0, q = 0; p < a.nnz && q < b.nnz; ) {
+            if      (a.index[p] < b.index[q]) p++;
+            else if (a.index[p] > b.index[q]) q++;
+            else {
+                double av = a.value[p++], bv = b.value[q++];
+                sum += (av < bv) ? av : bv;
+            }
+        }
+        return sum;
+    }
+
+    // return the fuzzy AND of the complements, sum_{j < n} min(1 - b_j, 1 - a_{offset + j}),
+    // where the entries of this vector a from offset on are complement coded
+    public double sumMinComplement(SparseVector b, int offset, int n) {
+        SparseVector a = this;
+        double sum = 0.0;
+        int union = 0;
+        int p = a.lowerBound(offset);
+        int q = 0;
+        int end = offset + n;
+        while ((p < a.nnz && a.index[p] < end) || (q < b.nnz && b.index[q] < n)) {
+            int ja = (p < a.nnz && a.index[p] < end) ? a.index[p] - offset : Integer.MAX_VALUE;
+            int jb = (q < b.nnz && b.index[q] < n) ? b.index[q] : Integer.MAX_VALUE;
+            if (jb < ja) {
+                sum += 1 - b.value[q++];
+            }
+            else if (ja < jb) {
+                sum += 1 - a.value[p++];
+            }
+            else {
+                double av = 1 - a.value[p++], bv = 1 - b.value[q++];
+                sum += (bv < av) ? bv : av;
+            }
+            union++;
+        }
+        return sum + (n - union);
+    }
+
+    // the position of the first entry with index >= i
+    private int lowerBound(int i) {
+        int p = find(i);
+        return (p >= 0) ? p : -p - 1;
+    }
+
     // return alpha * a
     public SparseVector scale(double alpha) {
         SparseVector a = this;
-        SparseVector c = new SparseVector(N);
-        for (int i : a.st) c.put(i, alpha * a.get(i));
+        SparseVector c = new SparseVector(N, nnz);
+        for (int p = 0; p < a.nnz; p++) c.put(a.index[p], alpha * a.value[p]);
         return c;
     }
 
@@ -82,19 +202,33 @@ public class SparseVector {
     public SparseVector plus(SparseVector b) {
         SparseVector a = this;
         if (a.N != b.N) throw new RuntimeException("Vector lengths disagree");
-        SparseVector c = new SparseVector(N);
-        for (int i : a.st) c.put(i, a.get(i));                // c = a
-        for (int i : b.st) c.put(i, b.get(i) + c.get(i));     // c = c + b
+        SparseVector c = new SparseVector(N, a.nnz + b.nnz);
+        int p = 0, q = 0;
+        while (p < a.nnz || q < b.nnz) {
+            if (q == b.nnz || (p < a.nnz && a.index[p] < b.index[q])) {
+                c.put(a.index[p], a.value[p]);
+                p++;
+            }
+            else if (p == a.nnz || a.index[p] > b.index[q]) {
+                c.put(b.index[q], b.value[q]);
+                q++;
+            }
+            else {
+                c.put(a.index[p], b.value[q] + a.value[p]);
+                p++;
+                q++;
+            }
+        }
         return c;
     }
 
     // return a string representation
     public String toString() {
-        String s = "";
-        for (int i : st) {
-            s += "(" + i + ", " + st.get(i) + ") ";
+        StringBuilder s = new StringBuilder();
+        for (int p = 0; p < nnz; p++) {
+            s.append("(" + index[p] + ", " + value[p] + ") ");
         }
-        return s;
+        return s.toString();
     }
 
 
@@ -114,4 +248,4 @@ public class SparseVector {
         System.out.println("a + b   = " + a.plus(b));
     }
 
-}
\ No newline at end of file
+}
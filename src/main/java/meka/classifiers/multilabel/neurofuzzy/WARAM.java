@@ -258,18 +258,21 @@ public class WARAM extends ARAMNetworkClass
    * @exception Exception if there is a problem generating the prediction
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
+		return distributionForInstance(instance, new PredictionBuffers());
+  }
+
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
 
       
 		int num_classes=(int) (0.5 * numClasses);
 		int num_features=(int) (0.5 * numFeatures);
-		double[] dist = new double[num_classes];
-		double[] currentData = new double[numFeatures];
+		double[] currentData = buffers.data(numFeatures);
 		double[] ranking = new double[num_classes];
 			for (int j = 0; j < num_features; j++) {
 				currentData[j] = instance.value(num_classes+j);
 				currentData[num_features+j] = 1 - currentData[j];
 			}
-			SortPair[] sortedActivations = ARTActivateCategories(currentData);
+			SortPair[] sortedActivations = ARTActivateCategories(currentData, buffers);
 
 			java.util.Arrays.sort(sortedActivations);
 			double diff_act = sortedActivations[0].getValue()
@@ -340,9 +343,12 @@ public class WARAM extends ARAMNetworkClass
 		return classes;
 	}
 	private SortPair[] ARTActivateCategories(double[] Data) {
-		SortPair[] catacti = new SortPair[numCategories];
+		return ARTActivateCategories(Data, new PredictionBuffers());
+	}
+	private SortPair[] ARTActivateCategories(double[] Data, PredictionBuffers buffers) {
+		SortPair[] catacti = buffers.activations(numCategories);
 		// double[] catacti=new double[numCategories];
-		double[] matchVector = new double[numFeatures];
+		double[] matchVector = buffers.match(numFeatures);
 		for (int i = 0; i < numCategories; i++) {
 			double sumvector = 0;
 			double sumweight = 0;
@@ -353,7 +359,7 @@ public class WARAM extends ARAMNetworkClass
 				sumweight += weightsA[i][j];
 			}
 
-			catacti[i] = new SortPair(sumvector / (alpha + sumweight), i);
+			catacti[i].set(sumvector / (alpha + sumweight), i);
 		}
 		return catacti;
 	}
@@ -416,6 +422,7 @@ public class WARAM extends ARAMNetworkClass
     newVector.addElement(
 	    new Option("\tUse ranking to class function special dev. for ARAM.\n",
 		       "K", 0,"-K"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -464,7 +471,7 @@ public class WARAM extends ARAMNetworkClass
     }catch (Exception ex) {
 	System.out.println(ex.getMessage());
     }
-    return options;
+    return addThreadOptions(options);
   }
 
  //****ANY INFORMATION LIKE NO. OF UNITS ETC PRINTED HERE
@@ -693,23 +700,6 @@ public Capabilities getCapabilities() {
 	return null;
 }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
-
-@Override
-public double[][] distributionForInstanceM(Instances i) throws Exception {
-	// TODO Auto-generated method stub
-	return null;
-}
 }
 
 
@@ -739,6 +729,11 @@ class SortPair implements Comparable<SortPair> {
 	public double getValue() {
 		return value;
 	}
+
+	void set(double value, int originalIndex) {
+		this.value = value;
+		this.originalIndex = originalIndex;
+	}
 }
 
 
@@ -10,8 +10,8 @@ package meka.classifiers.multilabel.neurofuzzy;
 
 import meka.classifiers.multilabel.Evaluation;
 import meka.classifiers.multilabel.MultiLabelClassifier;
+import meka.core.ThreadUtils;
 import weka.classifiers.UpdateableClassifier;
-import weka.core.AbstractInstance;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -35,6 +35,8 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 //import weka.classifiers.Evaluation;
 
@@ -82,12 +84,13 @@ public class WvARAM extends ARAMNetworkClass
     boolean sparsearamHT=false;
     boolean tfastaram=true;
     int m_seed = 42;
-	DistributionCalc[] dc=null ;
 	long intclass =0;
 	PrintWriter fwneurons=null;
 	boolean saveneuronsactivity=false;
 	String fsna=null;
 	protected String activity_report="";
+	/** the pool of the threaded voters, kept for the lifetime of the model (null if sequential) */
+	protected transient ExecutorService m_Executor = null;
 
     public WvARAM(int fnumberofnetworks) {
     	numberofnetworks=fnumberofnetworks;
@@ -106,6 +109,7 @@ public class WvARAM extends ARAMNetworkClass
   public void buildClassifier(Instances D) throws Exception {
       // swap attributes to fit MEKA
 		//testCapabilities(D);
+		shutdownExecutor();
 		Random r = new Random(m_seed);
 		// System.out.println("Version TNG"+tfastaram);
 		if (fastaram){
@@ -131,53 +135,28 @@ public class WvARAM extends ARAMNetworkClass
 	// Use the enumeration of instances to train classifier.
 	// Do any sanity checks (e.g., missing attributes etc here
 	// before calling updateClassifier for the actual learning
-		
-		if (tfastaram){
-			BuildClassifier[] bc= new BuildClassifier[numberofnetworks];
-			for (int i=0; i< numberofnetworks;i++){
-				List<Integer> list = new ArrayList<Integer>();
+
+		// The voters all read D, each in its own order, rather than copies of it (or D itself 
+		// getting shuffled between voters). The orders are those of before: with threaded voters, 
+		// each voter shuffles the original order; otherwise, each voter shuffles the order of the 
+		// previous one further (as D.randomize(r) did).
+		List<Integer> list = new ArrayList<Integer>();
+		for (int j=0; j<D.numInstances();j++){
+			list.add(j);
+		}
+		List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+		for (int i=0; i< numberofnetworks;i++){
+			if (tfastaram){
+				list = new ArrayList<Integer>(list.size());
 				for (int j=0; j<D.numInstances();j++){
 					list.add(j);
 				}
 				java.util.Collections.shuffle(list,r);
-				if (fastaram){
-			networks[i]=new ARAMNetworkfast();
-				}
-				else if(sparsearam){
-					networks[i]=new ARAMNetworkSparse();
-				}
-				else if(sparsearamH){
-					networks[i]=new ARAMNetworkSparseV();
-				}
-				else if(sparsearamHT){
-					networks[i]=new ARAMNetworkSparseHT();
-				}
-			else{
-
-				networks[i]=new ARAMNetwork();
-				
 			}
-				networks[i].order=list;
-		networks[i].roa=roa;
-		  bc[i] = new BuildClassifier(networks[i]);
-		  
-		bc[i].setinstances(D);
-		bc[i].start();
-		//D.randomize(r);
+			else if (i>0){
+				list = new ArrayList<Integer>(list);
+				java.util.Collections.shuffle(list,r);
 			}
-
-			  for (int i=0; i< numberofnetworks;i++){
-				  bc[i].join();
-					 networks[i]=bc[i].m_network;
-
-						networks[i].learningphase=false;
-					
-				}
-			  
-			  
-		}
-		else{
-		for (int i=0; i< numberofnetworks;i++){
 				if (fastaram){
 			networks[i]=new ARAMNetworkfast();
 				}
@@ -195,13 +174,20 @@ public class WvARAM extends ARAMNetworkClass
 				networks[i]=new ARAMNetwork();
 				
 			}
+			networks[i].order=list;
 			networks[i].roa=roa;
-			networks[i].buildClassifier(D);
-			networks[i].learningphase=false;
-			D.randomize(r);
-		}
+			final ARAMNetworkClass network=networks[i];
+			final Instances data=D;
+			jobs.add(new Callable<Object>() {
+				public Object call() throws Exception {
+					network.buildClassifier(data);
+					network.learningphase=false;
+					return null;
+				}
+			});
 		}
-	dc =new  DistributionCalc[numberofnetworks];
+		// the voters are independent, with threaded voters they get trained on a bounded pool
+		ThreadUtils.invokeAll(jobs, getExecutor());
 	// Alternatively, you can put the training logic within this method,
 	// rather than updateClassifier(...). However, if you omit the 
 	// updateClassifier(...) method, you should remove 
@@ -228,8 +214,6 @@ public class WvARAM extends ARAMNetworkClass
 	//	long before_test = System.currentTimeMillis();
 		//long after_test=0;
 		//long after_test1=0;
-	  int donetime=0;
-	  boolean[] ddone=new boolean[numberofnetworks];
 	  if(saveneuronsactivity && fwneurons==null){
 			try {
 		    fwneurons = new PrintWriter(new BufferedWriter(new FileWriter(fsna)));
@@ -241,114 +225,26 @@ public class WvARAM extends ARAMNetworkClass
 			}
 		  
 	  }
-	  if (tfastaram){
-	//	  System.out.println("fastaram");
-	  for (int i=0; i< numberofnetworks;i++){
-		  if (dc[i]==null){
-			  networks[i].activity_report=activity_report;
-	  dc[i] = new DistributionCalc(networks[i]);
-	  dc[i].id=i;
-	  
-		  }
-	  dc[i].setinstance(instance);
-	  }
+	  List<Callable<double[]>> jobs = new ArrayList<Callable<double[]>>();
 	  for (int i=0; i< numberofnetworks;i++){
-		  ddone[i]=false;
-	  if(dc[i].reuse){
-			dc[i].gathered=false;
-			synchronized(dc[i]){
-		  dc[i].doNotify();
-			}
-	  }else{
-			dc[i].gathered=false;
-		  dc[i].start();
-	  }
-	//  System.out.println("start "+i+" "+dc[i].do_classify+" "+dc[i].gathered+ " "+intclass);
+		  networks[i].activity_report=activity_report;
+		  final ARAMNetworkClass network=networks[i];
+		  final Instance x=instance;
+		  jobs.add(new Callable<double[]>() {
+			  public double[] call() throws Exception {
+				  return network.distributionForInstance(x);
+			  }
+		  });
 	  }
-	//	after_test = System.currentTimeMillis();
-	  int clsnr=0;
-	  int counter=0;
-	  while(clsnr<numberofnetworks){
+	  // with threaded voters, the voters classify the instance concurrently; the rankings get 
+	  // summed in the order of the voters either way, so the result does not depend on the threads
+	  List<double[]> tdists = ThreadUtils.invokeAll(jobs, getExecutor());
 	  for (int i=0; i< numberofnetworks;i++){
-			synchronized(dc[i]){
-		if(dc[i].do_classify==2 && dc[i].gathered!=true){
-			clsnr+=1;
-		//	dc[i].suspend();
-			  for (int j=0; j< numClasses;j++){
-					dist[j]+=dc[i].m_dist[j];
-					}
-				dc[i].gathered=true;
-				ddone[i]=true;
-				donetime+=counter;
-				if(saveneuronsactivity){
-					
-						//fwneurons.println(dc[i].m_network.nrinstclassified+":"+i+":"+Arrays.toString(dc[i].m_network.getneuronsactivity())+":"+Arrays.toString(dc[i].m_network.getneuronsactivity()));
-				}
-			
-		}
-			}
-	  }
-	  if (clsnr==numberofnetworks){
-		  break;
-	  }
-	  Thread.sleep(1);
-	  counter+=1;
-	  if((clsnr)/((float)numberofnetworks)>0.75 && counter>20 && counter==2*(donetime/((float)clsnr))){
-		  for (int i=0; i< numberofnetworks;i++){
-			  if (ddone[i]){
-				  continue;
-			  }
-				synchronized(dc[i]){
-			if (dc[i].sleep&& dc[i].do_classify!=2){
-				  System.out.println("Error in counter at "+intclass+" clr "+clsnr+" counter "+counter+ "restarting "+i);
-				dc[i].notify();
-				}
-			}
+		  double[] tdist=tdists.get(i);
+		  for (int j=0; j< numClasses;j++){
+			  dist[j]+=tdist[j];
 		  }
 	  }
-	  if(counter%1000==0 && counter >0){
-		  
-	  }
-	  if(this.getDebug()) { 
-	  if(counter%100==0){
-		  System.out.println("Error in counter at "+intclass+" clr "+clsnr+" counter "+counter);
-		  
-	  }
-	  }
-	  }
-	  }
-	  else{
-		//	after_test = System.currentTimeMillis();
-			for (int i=0; i< numberofnetworks;i++){
-
-				  networks[i].activity_report=activity_report;
-			double[] tdist=networks[i].distributionForInstance(instance);
-			for (int j=0; j< numClasses;j++){
-			dist[j]+=tdist[j];
-			}
-			if(saveneuronsactivity){
-	/*			int[] naia=networks[i].getneuronsactivated();
-		//		fwneurons.println(networks[i].nrinstclassified-1+":"+i+":"+Arrays.toString(naia)+":"+Arrays.toString(networks[i].getneuronsactivity()));
-				for(int it=0;it<naia.length;it++){
-					fwneurons.print(naia[it]+"#value:");					
-					int t1=0;
-					for(int k=0;k<networks[i].weightsB[naia[it]].length/2;k++){
-						if (networks[i].weightsB[naia[it]][k]!=0){
-							if(t1==0){
-								fwneurons.print(networks[i].weightsB[naia[it]][k]+"#positions:");
-								t1=1;
-							}
-							fwneurons.print(k+",");
-						}
-					}
-					fwneurons.print("\n");
-					
-				//fwneurons.println(naia[it]+":"+Arrays.toString(Arrays.copyOfRange(networks[i].weightsB[naia[it]],0,networks[i].numClasses/2)));
-				}*/
-		}
-		}
-		  
-	  }
 
 
  // after_test1 = System.currentTimeMillis();
@@ -366,6 +262,29 @@ public class WvARAM extends ARAMNetworkClass
 	  return dist;
 	}
 
+  /**
+   * Sums the rankings of the voters, in the order of the voters (as without threaded voters), 
+   * each with its own buffers.
+   */
+  protected double[] distributionForInstance(Instance instance, PredictionBuffers buffers) throws Exception {
+	  double[] dist = new double[numClasses];
+	  for (int i=0; i< numberofnetworks;i++){
+		  double[] tdist=networks[i].distributionForInstance(instance, buffers.voter(i, numberofnetworks));
+		  for (int j=0; j< numClasses;j++){
+			  dist[j]+=tdist[j];
+		  }
+	  }
+	  if(m_userankstoclass) {
+		  return ARAMm_Ranking2Class(dist);
+	  }
+	  return dist;
+  }
+
+  protected boolean canPredictInParallel() {
+	  // the activity of the neurons is written instance by instance
+	  return activity_report.isEmpty() && !saveneuronsactivity;
+  }
+
 	public double[] ARAMm_Ranking2Class(double[] rankings) {
 
 		int columns=rankings.length;
@@ -464,6 +383,7 @@ public class WvARAM extends ARAMNetworkClass
 		       "NA", 0,"-NA"));
 	newVector.addElement(new Option("\t Save neurons activity in network ARAM.\n",
 		       "Rt", 0,"-Rt"));
+    listThreadOptions(newVector);
     return newVector.elements();
   }
 
@@ -554,7 +474,7 @@ public class WvARAM extends ARAMNetworkClass
 	    
 	   // Collections.addAll(result, super.getOptions());
 	    
-	    return (String[]) result.toArray(new String[result.size()]);	
+	    return addThreadOptions((String[]) result.toArray(new String[result.size()]));	
 
 //    try{
 //	options =weka.core.Utils.splitOptions("-P "+roa+(m_userankstoclass?" -K":"")+" -V "+numberofnetworks);
@@ -725,6 +645,29 @@ public boolean getThreadedVoters(){
 
 public void setThreadedVoters(boolean fThreadedVoters){
 	tfastaram=fThreadedVoters;
+	shutdownExecutor();
+}
+
+@Override
+public void setNumThreads(int value) {
+	super.setNumThreads(value);
+	shutdownExecutor();
+}
+
+/**
+ * Returns the pool of the threaded voters (created on first use, with daemon threads), null if 
+ * the voters are not threaded or there is only one thread.
+ */
+protected ExecutorService getExecutor() {
+	if (m_Executor == null && tfastaram && ThreadUtils.getActualNumThreads(m_NumThreads, numberofnetworks) > ThreadUtils.SEQUENTIAL)
+		m_Executor = ThreadUtils.newExecutor(m_NumThreads, numberofnetworks, true);
+	return m_Executor;
+}
+
+protected void shutdownExecutor() {
+	if (m_Executor != null)
+		m_Executor.shutdownNow();
+	m_Executor = null;
 }
 
 public boolean getFastLearn(){
@@ -818,13 +761,7 @@ public void setNeuronsActivityFileName(String ffsna){
 }
 
 public void freeNetworks (){
-	if(tfastaram){
-	for(int i=0;i<dc.length;i++){
-		dc[i].destroy();		
-		dc[i]=null;
-	}
-	dc=null;
-	}
+	// the voters do not keep any threads alive between instances (anymore)
 }
 
 public void destroy(){
@@ -847,183 +784,6 @@ public static void main(String [] argv) {
   }
   System.out.println("Done");
 }
-public class DistributionCalc extends Thread
-{
-	ARAMNetworkClass m_network =null;
-	Instance m_inst=null;
-	double[] m_dist=null;
-	int do_classify=0;
-	boolean reuse=false;
-	boolean sleep=true;
-	boolean sleep2=false;
-	boolean doexit=false;
-	int id=0;//
-	private Object lock = null;
-
-	boolean gathered=false;
-	  public DistributionCalc(ARAMNetworkClass network)
-	  {
-		  m_network=network;
-		  lock=new Object();
-	  } 
-	  public void setinstance(Instance inst)
-	  {
-		  m_inst=inst;
-		  do_classify=1;
-		  //System.out.println("new instance "+id);
-	  }
-  public void run()
-  {
-	  while (true){
-		  sleep=false;
-		  //System.out.println("start classify again "+id);
-		try {
-			m_dist = m_network.distributionForInstance(m_inst);
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		  //System.out.println("check "+id+" "+do_classify+" "+gathered);
-		  synchronized (this) {
-          try {
-      		do_classify=2;
-    		reuse=true;
-    		sleep=true;
-    		gathered=false;
-        	  sleep2=true;
-              this.wait();
-              if(doexit){
-            	  return;
-              }
-          } catch (InterruptedException e) {
-              // TODO Auto-generated catch block
-              e.printStackTrace();
-          }
-		  }
-		
-  }
-}
-
-  public void doNotify() {
-      synchronized(this) {
-          this.notify();
-          sleep2=false;
-      }
-  }
-  public void destroy(){
-      synchronized(this) {
-    	  doexit=true;
-          this.notify();
-          sleep2=false;
-      }
-  }
-}
-public class DistributionCalcM extends Thread
-{
-	ARAMNetworkClass m_network =null;
-	Instances m_inst=null;
-	double[] m_dist=null;
-	double[][] results=null;
-	int do_classify=0;
-	boolean reuse=false;
-	boolean sleep=true;
-	boolean sleep2=false;
-	boolean doexit=false;
-	int id=0;//
-	private Object lock = null;
-
-	boolean gathered=false;
-	  public DistributionCalcM(ARAMNetworkClass network)
-	  {
-		  m_network=network;
-		  lock=new Object();
-	  } 
-	  public void setinstances(Instances inst)
-	  {
-		  m_inst=inst;
-		  do_classify=1;
-		  //System.out.println("new instance "+id);
-	  }
-  public void run()
-  {
-	  int L=m_inst.classIndex();
-	  int N=m_inst.numInstances();
-	  results=new double[N][L];
-	  //System.out.println("start classify again "+id);
-		try {
-			for (int i = 0, c = 0; i < N; i++) {
-
-				//if(m_network.getDebug()) { int t = i*50/m_inst.numInstances(); if(t > c) { System.out.print("#"); c = t; } }
-
-				// No cheating allowed; clear all class information
-				AbstractInstance x = (AbstractInstance)((AbstractInstance) m_inst.instance(i)).copy(); 
-				for(int v = 0; v < m_inst.classIndex(); v++) 
-					x.setValue(v,0.0);
-
-			double y[] = m_network.distributionForInstance(x);
-			for(int j=0;j<numClasses;j++){
-				results[i][j]=y[j];
-			}
-			}
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		  
-		
-  }
-}
-
-public class BuildClassifier extends Thread
-{
-	ARAMNetworkClass m_network =null;
-	Instances m_inst=null;
-	double[] m_dist=null;
-	  public BuildClassifier(ARAMNetworkClass network)
-	  {
-		  m_network=network;
-	  } 
-	  public void setinstances(Instances inst)
-	  {
-		  m_inst=inst;
-	  }
-  public void run()
-  {
-	try {
-		m_network.buildClassifier(m_inst);
-		
-	} catch (Exception e) {
-		// TODO Auto-generated catch block
-		e.printStackTrace();
-	}	
-  }
-}
-@Override
-public double[][] distributionForInstanceM(Instances inst) throws Exception {
-	// TODO Auto-generated method stub
-	DistributionCalcM[] dct=null ;
-	  int L=numClasses;
-	  int N=inst.numInstances();
-	dct =new  DistributionCalcM[numberofnetworks];
-	 double[][] results=new double[N][L];
-	for (int i=0; i< numberofnetworks;i++){
-
-		  dct[i] = new DistributionCalcM(networks[i]);
-		  dct[i].id=i;
-		  dct[i].setinstances(inst);
-		  dct[i].start();
-	}
-	for (int k=0; k< numberofnetworks;k++){
-		dct[k].join();
-			for (int i = 0, c = 0; i < N; i++) {
-				for(int j=0;j<numClasses;j++){
-					results[i][j]+=dct[k].results[i][j];
-				}
-			}
-		}
-		return results;
-}
-
 @Override
 public void setDebug(boolean debug) {
 	// TODO Auto-generated method stub
@@ -1054,17 +814,6 @@ public Capabilities getCapabilities() {
 	return null;
 }
 
-@Override
-public boolean isThreaded() {
-	// TODO Auto-generated method stub
-	return false;
-}
-
-@Override
-public void setThreaded(boolean setv) {
-	// TODO Auto-generated method stub
-	
-}
 
 
 public String thresholdTipText() {
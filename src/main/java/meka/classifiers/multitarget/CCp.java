@@ -22,6 +22,7 @@ import weka.classifiers.AbstractClassifier;
 import meka.classifiers.multilabel.ProblemTransformationMethod;
 import weka.core.Instance;
 import weka.core.Instances;
+import meka.core.A;
 import meka.core.MLUtils;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
@@ -53,6 +54,8 @@ public class CCp extends meka.classifiers.multilabel.CC implements MultiTargetCl
 		private int index = -1;
 		private int excld[]; // to contain the indices to delete
 		private int j = 0; //@temp
+		private int keep[]; // the indices kept (all the others)
+		private int pos[]; // where each index ends up (-1 if deleted)
 
 		public Link(int chain[], int j, Instances train) throws Exception {
 			this.j = j;
@@ -82,6 +85,13 @@ public class CCp extends meka.classifiers.multilabel.CC implements MultiTargetCl
 
 			_template = new Instances(new_train,0);
 
+			// precompute the projection, rather than deleting attributes from each instance
+			this.keep = A.invert(excld,train.numAttributes());
+			this.pos = new int[train.numAttributes()];
+			Arrays.fill(this.pos,-1);
+			for(int k = 0; k < keep.length; k++)
+				this.pos[keep[k]] = k;
+
 			this.classifier.buildClassifier(new_train);
 			new_train = null;
 
@@ -89,32 +99,25 @@ public class CCp extends meka.classifiers.multilabel.CC implements MultiTargetCl
 				next = new meka.classifiers.multitarget.CCp.Link(chain, ++j, train);
 		}
 
-		protected void classify(Instance test) throws Exception {
-			// copy
-			Instance copy = (Instance)test.copy();
-			copy.setDataset(null);
-
-			// delete attributes we don't need
-			for(int i = excld.length-1; i >= 0; i--) {
-				copy.deleteAttributeAt(this.excld[i]);
-			}
-
-			//set template
-			copy.setDataset(this._template);
-
-			// round
+		protected void classify(Instance test, double ypred[]) throws Exception {
+			// round (the first j+1 attributes kept are labels, so this is done on ypred, and undone after the copy)
+			double y_j = ypred[keep[j]];
 			for(int k = 0; k < this.j; k++) {
-				copy.setValue(j,Math.round(copy.value(k)));
+				ypred[keep[j]] = Math.round(ypred[keep[k]]);
 			}
 
+			// the attributes we need, with the labels predicted so far
+			Instance copy = MLUtils.keepAttributesAt(test,keep,pos,ypred,ypred.length,new double[keep.length],this._template);
+			ypred[keep[j]] = y_j;
+
 			//set class
 			double dist[] = this.classifier.distributionForInstance(copy);
 			int max_index = Utils.maxIndex(dist);
 			confidences[this.index] = dist[max_index];
-			test.setValue(this.index,max_index);
+			ypred[this.index] = max_index;
 
 			//carry on
-			if (next!=null) next.classify(test);
+			if (next!=null) next.classify(test,ypred);
 		}
 
 		@Override
@@ -156,10 +159,11 @@ public class CCp extends meka.classifiers.multilabel.CC implements MultiTargetCl
 	public double[] distributionForInstance(Instance x) throws Exception {
 		int L = x.classIndex();
 		confidences = new double[L];
-		root.classify(x);
+		double ypred[] = MLUtils.toDoubleArray(x,L);
+		root.classify(x,ypred);
 		double y[] = new double[L*2];
 		for(int j = 0; j < L; j++) {
-			y[j] = x.value(j);
+			y[j] = ypred[j];
 			y[j+L] = confidences[j]; // <--- this is the extra line
 		}
 		return y;
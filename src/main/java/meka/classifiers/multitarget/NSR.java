@@ -48,6 +48,12 @@ public class NSR extends meka.classifiers.multilabel.PS implements MultiTargetCl
 	/** for serialization. */
 	private static final long serialVersionUID = 8373228150066785001L;
 
+	/** the (decoded) values of each super-class value, e.g., "0+3+0" -&gt; [0,3,0]. */
+	protected int m_Values[][] = null;
+
+	/** the number of values of each target, for the table of votes of each prediction. */
+	protected int m_NumValues[] = null;
+
 	public NSR() {
 		// default classifier for GUI
 		this.m_Classifier = new J48();
@@ -96,6 +102,14 @@ public class NSR extends meka.classifiers.multilabel.PS implements MultiTargetCl
 			else 
 				throw new Exception("Failed to construct a classifier.");
 		}
+
+		// decode the super-class values once, rather than for each prediction
+		Attribute c = m_InstancesTemplate.classAttribute();
+		m_Values = new int[c.numValues()][];
+		for(int i = 0; i < m_Values.length; i++) {
+			m_Values[i] = MLUtils.toIntArray(decodeValue(c.value(i)));	// "0+3+0" -> [0,3,0]
+		}
+		m_NumValues = SuperLabelUtils.numValues(D);
 	}
 
 	@Override
@@ -112,25 +126,24 @@ public class NSR extends meka.classifiers.multilabel.PS implements MultiTargetCl
 		double w[] = m_Classifier.distributionForInstance(x_sl);		// w[j] = p(y_j) for each j = 1,...,L
 		int max_j  = Utils.maxIndex(w);									// j of max w[j]
 		//int max_j = (int)m_Classifier.classifyInstance(x_sl);			// where comb_i is selected
-		String y_max = m_InstancesTemplate.classAttribute().value(max_j);									// comb_i e.g. "0+3+0+0+1+2+0+0"
-
-		double y[] = Arrays.copyOf(A.toDoubleArray(MLUtils.toIntArray(y_max)),L*2);					// "0+3+0+0+1+2+0+0" -> [0.0,3.0,0.0,...,0.0]
+		int y_max[] = m_Values[max_j];									// comb_i e.g. [0,3,0,0,1,2,0,0]
 
-		HashMap<Double,Double> votes[] = new HashMap[L];
+		double y[] = new double[L*2];
 		for(int j = 0; j < L; j++) {
-			votes[j] = new HashMap<Double,Double>();
+			y[j] = y_max[j];
 		}
 
+		double votes[][] = SuperLabelUtils.makeVoteTable(m_NumValues);
 		for(int i = 0; i < w.length; i++) {
-			double y_i[] = A.toDoubleArray(MLUtils.toIntArray(m_InstancesTemplate.classAttribute().value(i)));
+			int y_i[] = m_Values[i];
 			for(int j = 0; j < y_i.length; j++) {
-				votes[j].put(y_i[j] , votes[j].containsKey(y_i[j]) ? votes[j].get(y_i[j]) + w[i] : w[i]);
+				SuperLabelUtils.addVote(votes,j,y_i[j],w[i]);
 			}
 		}
 
 		// some confidence information
 		for(int j = 0; j < L; j++) {
-			y[j+L] = votes[j].size() > 0 ? Collections.max(votes[j].values()) : 0.0;
+			y[j+L] = SuperLabelUtils.maxVote(votes[j]);
 		}
 
 		return y;
@@ -55,7 +55,7 @@ public class RAkELd extends NSR {
 	int m_K = 3;
 	int m_M = 10;
 	protected int kMap[][] = null;
-	protected int vMap[][][] = null; // TODO use this to speed things up
+	protected int vMap[][][] = null;
 
 
 	/**
@@ -86,6 +86,7 @@ public class RAkELd extends NSR {
 		vMap = new int[m_M][][];
 		m_Classifiers = AbstractClassifier.makeCopies(m_Classifier,m_M);
 		m_InstancesTemplates = new Instances[m_M];
+		m_NumValues = SuperLabelUtils.numValues(D);
 
 		if (getDebug())
 			System.out.println("Building "+m_M+" models of "+m_K+" partitions:");
@@ -104,7 +105,7 @@ public class RAkELd extends NSR {
 			Instances D_i = F.keepLabels(D,D.classIndex(),new int[]{i});
 			D_i.setClassIndex(0);
 
-			//vMap[i] = SuperLabelUtils.extractValues(D_i);
+			vMap[i] = SuperLabelUtils.extractValues(D_i);
 
 			if (getDebug()) 
 				System.out.println("\tbuilding model "+(i+1)+"/"+m_M+": "+Arrays.toString(kMap[i]));
@@ -121,10 +122,7 @@ public class RAkELd extends NSR {
 
 		int L = x.classIndex();
 
-		HashMap<Integer,Double> votes[] = new HashMap[L];
-		for(int j = 0; j < L; j++) {
-			votes[j] = new HashMap<Integer,Double>();
-		}
+		double votes[][] = SuperLabelUtils.makeVoteTable(m_NumValues);
 
 		for(int m = 0; m < m_M; m++) {
 
@@ -135,16 +133,12 @@ public class RAkELd extends NSR {
 			// Get a meta classification
 			int yp_j = (int)m_Classifiers[m].classifyInstance(x_m);        // e.g., 2
 
-			int values[] = SuperLabelUtils.decodeValue(m_InstancesTemplates[m].classAttribute().value(yp_j));
-
-			int k_indices[] = SuperLabelUtils.decodeClass(m_InstancesTemplates[m].classAttribute().name());
+			int values[] = vMap[m][yp_j];
 
 			// Vote with classification
-            for(int j_k = 0; j_k < k_indices.length; j_k++) {
-				//int i = k_indices[j_k];			// original indices
+			for(int j_k = 0; j_k < values.length; j_k++) {
 				int j = kMap[m][j_k];				// original indices
-				Double score = votes[j].get(values[j_k]);
-				votes[j].put(values[j_k],(score == null) ? 1. : score + 1.);
+				SuperLabelUtils.addVote(votes,j,values[j_k],1.);
 			}
 
 		}
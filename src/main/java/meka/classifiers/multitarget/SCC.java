@@ -20,12 +20,14 @@ import meka.classifiers.multilabel.ProblemTransformationMethod;
 import meka.classifiers.multilabel.MultiTargetCapable;
 import meka.core.*;
 import meka.filters.multilabel.SuperNodeFilter;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.*;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * SCC.java - Super Class Classifier (aka Super Node Classifier).
@@ -35,7 +37,7 @@ import java.util.*;
  * @author 	Jesse Read
  * @version	June 2012
  */
-public class SCC extends NSR implements Randomizable, MultiTargetClassifier, TechnicalInformationHandler {
+public class SCC extends NSR implements Randomizable, MultiTargetClassifier, TechnicalInformationHandler, ThreadLimiter {
 
 	private static final long serialVersionUID = 6517394813440480854L;
 
@@ -43,13 +45,25 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 
 	private int m_Iv = 0;
 	private int m_I = 1000;
+	private int m_NumThreads = ThreadUtils.SEQUENTIAL;
+	private boolean m_CacheLEAD = false;
+
+	private int m_Chains = 1;
 
 	/* TODO make external options */
 	private static final int i_SPLIT = 67;
 	private static final String i_ErrFn = "Exact match";
+	private static final int i_SWAP = 100;			// iterations between swaps of neighbouring chains
+	private static final double i_TEMP = 2.0;		// ratio between the temperatures of neighbouring chains
 
 	private Random rand = null;
 
+	/** the original label indices of each super class, e.g., "c_3+4" -&gt; [3,4]. */
+	private int m_SuperClasses[][] = null;
+
+	/** the original values of each value of each super class, e.g., "1+0" -&gt; [1,0]. */
+	private int m_SuperValues[][][] = null;
+
 	public SCC() {
 		// default classifier for GUI
 		this.m_Classifier = new CC();
@@ -174,13 +188,123 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 	}
 
 	/**
-	 * Train classifier <code>h</code>, on dataset <code>D</code>, under super-class partition <code>partition</code>.
+	 * Chain - a simulated annealing walk over super-class partitions (as in the original single walk) at temperature <code>T</code>.
+	 * The super classes are kept sorted (as rating() leaves them), so the walk is the same as rating each mutated copy from scratch,
+	 * but a single-label move is scored in O(L), from a symmetric copy of the pairwise information, and only accepted moves get applied.
 	 */
-	public void trainClassifier(Classifier h, Instances D, int partition[][]) throws Exception {
-		f  = new SuperNodeFilter();
+	private static class Chain {
+
+		int partition[][];
+		double w;
+		final double M[][];
+		final double T;
+		final Random r;
+		final boolean debug;
+
+		Chain(int partition[][], double w, double M[][], double T, Random r, boolean debug) {
+			this.partition = partition;
+			this.w = w;
+			this.M = M;
+			this.T = T;
+			this.r = r;
+			this.debug = debug;
+		}
+
+		/** Inverse temperature at iteration i (as used in the acceptance probability). */
+		double beta(int i) {
+			return Math.max(i,1) / (1000. * T);
+		}
+
+		/** Do iterations from (inclusive) to 'to' (exclusive) of the walk. */
+		void walk(int from, int to) {
+			for(int i = from; i < to; i++) {
+				step(i);
+			}
+		}
+
+		/** Propose a move (like mutateCombinations) at iteration i, and maybe accept it. */
+		void step(int i) {
+			int from = r.nextInt(partition.length);
+			int idx = r.nextInt(partition[from].length);
+			int to = r.nextInt(partition.length);
+			int l = partition[from][idx];
+
+			// pairs with l in 'from' are split up, pairs with l in 'to' are put together
+			double delta = 0.0;
+			for(int k : partition[from]) {
+				if (k != l)
+					delta -= M[l][k];
+			}
+			if (to != from) {
+				for(int k : partition[to]) {
+					delta += M[l][k];
+				}
+			}
+			double w_ = w + 2. * delta;
+
+			if (w_ > w) {
+				// ACCEPT
+				move(from,idx,to);
+				w = w_;
+				if (debug) System.out.println("@"+i+" : "+SuperLabelUtils.toString(partition)+ "\t("+w+")");
+			}
+			else {
+				// MAYBE ACCEPT
+				double diff = Math.abs(w_-w);
+				double p = (2.*(1. - sigma(diff*i/(1000.*T))));
+				if (p > r.nextDouble()) {
+					// OK, ACCEPT NOW
+					move(from,idx,to);
+					w = w_;
+					if (debug) System.out.println("@"+i+" : "+SuperLabelUtils.toString(partition)+ "\t("+w+")*");
+				}
+			}
+		}
+
+		/** Move the idx-th label of super class 'from' to super class 'to' (a new one if to == from). */
+		void move(int from, int idx, int to) {
+			int l = partition[from][idx];
+			if (to == from) {
+				// create new list, add
+				partition = Arrays.copyOf(partition,partition.length+1);
+				partition[partition.length-1] = new int[]{l};
+			}
+			else {
+				// make new slot, copy (keeping it sorted)
+				int c[] = A.append(partition[to],l);
+				Arrays.sort(c);
+				partition[to] = c;
+			}
+			// delete original (keeping it sorted)
+			int c[] = new int[partition[from].length-1];
+			System.arraycopy(partition[from],0,c,0,idx);
+			System.arraycopy(partition[from],idx+1,c,idx,c.length-idx);
+			partition[from] = c;
+			// if empty ...
+			if (partition[from].length <= 0) {
+				// delete it
+				partition[from] = partition[partition.length-1];
+				partition = Arrays.copyOf(partition,partition.length-1);
+			}
+		}
+	}
+
+	/**
+	 * A SuperNodeFilter for partition <code>partition</code>, with pruning values <code>P</code> and <code>N</code>.
+	 */
+	private static SuperNodeFilter newFilter(int partition[][], int P, int N) {
+		SuperNodeFilter f = new SuperNodeFilter();
 		f.setIndices(partition);
-		f.setP(m_P >= 0 ? m_P : rand.nextInt(Math.abs(m_P)));
-		f.setN(m_N >= 0 ? m_N : rand.nextInt(Math.abs(m_N)));
+		f.setP(P);
+		f.setN(N);
+		return f;
+	}
+
+	/**
+	 * Train classifier <code>h</code> on dataset <code>D</code>, as processed by filter <code>f</code> (the state of this classifier is not touched).
+	 * @return	the processed dataset
+	 */
+	private Instances trainClassifier(Classifier h, SuperNodeFilter f, Instances D) throws Exception {
 		Instances D_ = f.process(D);
 		//int K[] = MLUtils.getK(D_); <-- if some K[j] < 2, this is a problem!
 		if (getDebug()) {
@@ -190,9 +314,33 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 			//System.out.println("E_acc P "+f.getP()+" "+(D_.numInstances()/(double)N) +" "+(MLUtils.numberOfUniqueCombinations(D_)/(double)U));
 			//m_Info = "P="+f.getP()+"; %N="+(D_.numInstances()/(double)N) +"; %C"+(MLUtils.numberOfUniqueCombinations(D_)/(double)U)+"; size(partition)="+partition.length;
 		}
+		h.buildClassifier(D_); // build on the processed batch
+		return D_;
+	}
+
+	/**
+	 * Train classifier <code>h</code>, on dataset <code>D</code>, under super-class partition <code>partition</code>.
+	 */
+	public void trainClassifier(Classifier h, Instances D, int partition[][]) throws Exception {
+		f = newFilter(partition, m_P >= 0 ? m_P : rand.nextInt(Math.abs(m_P)), m_N >= 0 ? m_N : rand.nextInt(Math.abs(m_N)));
+		Instances D_ = trainClassifier(m_Classifier, f, D);
 
 		m_InstancesTemplate = D_;
-		m_Classifier.buildClassifier(D_); // build on the processed batch
+
+		// decode the super classes (and their values) once, rather than for each prediction
+		int L_ = D_.classIndex();
+		m_SuperClasses = new int[L_][];
+		m_SuperValues = new int[L_][][];
+		for(int j = 0; j < L_; j++) {
+			m_SuperClasses[j] = SuperNodeFilter.decodeClasses(D_.attribute(j).name());						// 3,4	(partition)
+			m_SuperValues[j] = new int[D_.attribute(j).numValues()][m_SuperClasses[j].length];
+			for(int v = 0; v < m_SuperValues[j].length; v++) {
+				String vals[] = SuperNodeFilter.decodeValue(D_.attribute(j).value(v)); 						// 1,0	(clases)
+				for(int i = 0; i < vals.length; i++) {
+					m_SuperValues[j][v][i] = D.attribute(m_SuperClasses[j][i]).indexOfValue(vals[i]);
+				}
+			}
+		}
 	}
 
 	/**
@@ -204,6 +352,14 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 
 		trainClassifier(m_Classifier,D_train,partition);
 
+		return evaluate(h,D_train,D_test);
+	}
+
+	/**
+	 * Evaluate (already trained) classifier h on dataset D_test (the state of this classifier is not touched).
+	 */
+	private Result evaluate(Classifier h, Instances D_train, Instances D_test) throws Exception {
+
 		Result result = Evaluation.testClassifier((ProblemTransformationMethod)h, D_test);
 
 		if (h instanceof MultiTargetClassifier || Evaluation.isMT(D_test)) {
@@ -251,73 +407,128 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 		Instances D_test = new Instances(D_r,D_train.numInstances(),D_r.numInstances()-D_train.numInstances());
 
 		// 1. BUILD BR or EBR
-		if (getDebug()) System.out.print("1. BUILD & Evaluate BR: ");
-		CR cr = new CR();
-		cr.setClassifier(((ProblemTransformationMethod)m_Classifier).getClassifier()); // assume PT
-		Result result_1 = Evaluation.evaluateModel((ProblemTransformationMethod)cr,D_train,D_test,"PCut1","5");
-		double acc1 = (Double)result_1.getMeasurement(i_ErrFn);
-		if (getDebug()) System.out.println(" "+acc1);
-
-		int partition[][] = SuperLabelUtils.generatePartition(A.make_sequence(L), rand);
+		Classifier h = ((ProblemTransformationMethod)m_Classifier).getClassifier(); // assume PT
+		String key = m_CacheLEAD ? StatUtils.getLEADCacheKey("SCC",D,h,m_S) : null;
+		double MER[][] = m_CacheLEAD ? StatUtils.getCachedLEAD(key) : null;
+		if (MER == null) {
+			if (getDebug()) System.out.print("1. BUILD & Evaluate BR: ");
+			double Yprob[][] = StatUtils.independentPredictions(h,D_train,D_test,true,m_NumThreads); // as CR would
+			int Ypred[][] = ThresholdUtils.round(Yprob);
+			if (getDebug()) {
+				int Ytrue[][] = new int[D_test.numInstances()][];
+				for(int i = 0; i < Ytrue.length; i++)
+					Ytrue[i] = MLUtils.toIntArray(D_test.instance(i),L);
+				System.out.println(" "+Metrics.P_ExactMatch(Ytrue,Ypred));
+			}
 
-		// 2. SELECT / MODIFY INDICES (using LEAD technique)
-		if (getDebug()) System.out.println("2. GET ERR-CHI-SQUARED MATRIX: ");
-		double MER[][] = StatUtils.condDepMatrix(D_test, result_1);
+			// 2. SELECT / MODIFY INDICES (using LEAD technique)
+			if (getDebug()) System.out.println("2. GET ERR-CHI-SQUARED MATRIX: ");
+			MER = StatUtils.condDepMatrix(D_test,Yprob,Ypred,m_NumThreads);
+			if (m_CacheLEAD)
+				StatUtils.putCachedLEAD(key,MER);
+		}
 		if (getDebug()) System.out.println(MatrixUtils.toString(MER));
 
+		int partition[][] = SuperLabelUtils.generatePartition(A.make_sequence(L), rand);
+
 		/*
 		 * 3. SIMULATED ANNEALING
 		 * Always accept if best, progressively less likely accept otherwise.
+		 * With several chains (parallel tempering), chain c runs at temperature i_TEMP^c, neighbouring chains 
+		 * swap their partitions every i_SWAP iterations (Metropolis criterion), and the coldest chain gives the result.
 		 */
 		if (getDebug()) System.out.println("3. COMBINE NODES TO FIND THE BEST COMBINATION ACCORDING TO CHI");
 		double w = rating(partition,MER);
 		if (getDebug()) System.out.println("@0 : "+SuperLabelUtils.toString(partition)+ "\t("+w+")");
 
-		for(int i = 0; i < m_I; i++) {
-			int partition_[][] = mutateCombinations(MatrixUtils.deep_copy(partition),rand);
-			double w_ = rating(partition_,MER); // this is really p_MER(partition_)
-			 if (w_ > w) {
-				 // ACCEPT
-				 partition = partition_;
-				 w = w_;
-				 if (getDebug()) System.out.println("@"+i+" : "+SuperLabelUtils.toString(partition)+ "\t("+w+")");
-			 }
-			 else {
-				 // MAYBE ACCEPT
-				 double diff = Math.abs(w_-w);
-				 double p = (2.*(1. - sigma(diff*i/1000.)));
-				 if (p > rand.nextDouble()) {
-					 // OK, ACCEPT NOW
-					 if (getDebug()) System.out.println("@"+i+" : "+SuperLabelUtils.toString(partition_)+ "\t("+w_+")*");
-					 partition = partition_;
-					 w = w_;
-				 }
-			 }
-
+		double M[][] = new double[L][L];		// symmetric
+		for(int j = 0; j < L; j++) {
+			for(int k = j+1; k < L; k++) {
+				M[j][k] = M[k][j] = MER[j][k];
+			}
+		}
+		final Chain chains[] = new Chain[m_Chains];
+		chains[0] = new Chain(partition,w,M,1.0,rand,getDebug());
+		if (chains.length > 1) {
+			for(int c = 1; c < chains.length; c++) {
+				Random r = new Random(rand.nextLong());
+				int partition_[][] = SuperLabelUtils.generatePartition(A.make_sequence(L), r);
+				chains[c] = new Chain(partition_,rating(partition_,MER),M,Math.pow(i_TEMP,c),r,false);
+			}
+			Random r = new Random(rand.nextLong());
+			for(int i = 0; i < m_I; i += i_SWAP) {
+				final int from = i, to = Math.min(i+i_SWAP,m_I);
+				List<Callable<Void>> jobs = new ArrayList<Callable<Void>>(chains.length);
+				for(final Chain chain : chains) {
+					jobs.add(new Callable<Void>() {
+						@Override
+						public Void call() {
+							chain.walk(from,to);
+							return null;
+						}
+					});
+				}
+				ThreadUtils.invokeAll(jobs,m_NumThreads);
+				// swap neighbours
+				for(int c = 0; c+1 < chains.length; c++) {
+					double a = (chains[c].beta(to) - chains[c+1].beta(to)) * (chains[c+1].w - chains[c].w);
+					if (a >= 0 || Math.exp(a) > r.nextDouble()) {
+						int partition_[][] = chains[c].partition;
+						double w_ = chains[c].w;
+						chains[c].partition = chains[c+1].partition;
+						chains[c].w = chains[c+1].w;
+						chains[c+1].partition = partition_;
+						chains[c+1].w = w_;
+						if (getDebug()) System.out.println("@"+to+" : swapped chains "+c+" and "+(c+1)+", "+SuperLabelUtils.toString(chains[0].partition)+ "\t("+chains[0].w+")");
+					}
+				}
+			}
+		}
+		else {
+			chains[0].walk(0,m_I);
 		}
+		partition = chains[0].partition;
 
 		/*
 		 * METHOD 2
 		 * refine the set we started with above, with a few iterations.
 		 * we mutate a set, and accept whenever the classification performance is GREATER
+		 * (the mutations are evaluated in batches, one per thread, on copies of the base classifier).
 		 */
 		if (m_Iv > 0) {
 			if (getDebug()) System.out.println("4. REFINING THE INITIAL SET WITH SOME OLD-FASHIONED INTERNAL EVAL");
 			// Build & evaluate the classifier with the latest partition
-			result_1 = testClassifier((ProblemTransformationMethod)m_Classifier,D_train,D_test,partition);
+			Result result_1 = testClassifier((ProblemTransformationMethod)m_Classifier,D_train,D_test,partition);
 			w = (Double)result_1.getMeasurement(i_ErrFn);
 			if (getDebug()) System.out.println("@0 : "+SuperLabelUtils.toString(partition)+ "\t("+w+")");
-			for(int i = 0; i < m_Iv; i++) {
-				int partition_[][] = mutateCombinations(MatrixUtils.deep_copy(partition),rand);
-				// Build the classifier with the new combination
-				trainClassifier(m_Classifier,D_train,partition);
-				// Evaluate on D_test
-				Result result_2 = testClassifier((ProblemTransformationMethod)m_Classifier,D_train,D_test,partition_);
-				double w_ = (Double)result_2.getMeasurement(i_ErrFn);
-				if (w_ > w) {
-					w = w_;
-					partition = partition_;
-					if (getDebug()) System.out.println("@"+(i+1)+"' : "+SuperLabelUtils.toString(partition)+ "\t("+w+")");
+			int batch = ThreadUtils.getActualNumThreads(m_NumThreads,m_Iv);
+			for(int i = 0; i < m_Iv; i += batch) {
+				final int partitions_[][][] = new int[Math.min(batch,m_Iv-i)][][];
+				List<Callable<Double>> jobs = new ArrayList<Callable<Double>>(partitions_.length);
+				for(int b = 0; b < partitions_.length; b++) {
+					partitions_[b] = mutateCombinations(MatrixUtils.deep_copy(partition),rand);
+					// draw P and N here, in the same order as a sequential search, so that each candidate gets its own values
+					final SuperNodeFilter f_ = newFilter(partitions_[b], m_P >= 0 ? m_P : rand.nextInt(Math.abs(m_P)), m_N >= 0 ? m_N : rand.nextInt(Math.abs(m_N)));
+					final Classifier h_ = AbstractClassifier.makeCopy(m_Classifier);
+					final Instances D_train_ = D_train, D_test_ = D_test;
+					jobs.add(new Callable<Double>() {
+						@Override
+						public Double call() throws Exception {
+							// Build the classifier with the new combination, and evaluate on D_test
+							trainClassifier(h_,f_,D_train_);
+							Result result_2 = evaluate(h_,D_train_,D_test_);
+							return (Double)result_2.getMeasurement(i_ErrFn);
+						}
+					});
+				}
+				List<Double> ws = ThreadUtils.invokeAll(jobs,m_NumThreads);
+				for(int b = 0; b < partitions_.length; b++) {
+					double w_ = ws.get(b);
+					if (w_ > w) {
+						w = w_;
+						partition = partitions_[b];
+						if (getDebug()) System.out.println("@"+(i+b+1)+"' : "+SuperLabelUtils.toString(partition)+ "\t("+w+")");
+					}
 				}
 			}
 		}
@@ -357,12 +568,12 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 		// For each super node ...
 		for(int j = 0; j < L_; j++) {
 
-			int idxs[] = SuperNodeFilter.decodeClasses(m_InstancesTemplate.attribute(j).name());						 	// 3,4	(partition)
-			String vals[] = SuperNodeFilter.decodeValue(m_InstancesTemplate.attribute(j).value((int)Math.round(y_[j]))); 	// 1,0	(clases)
+			int idxs[] = m_SuperClasses[j];									// 3,4	(partition)
+			int vals[] = m_SuperValues[j][(int)Math.round(y_[j])];			// 1,0	(clases)
 
 			for(int i = 0; i < idxs.length; i++) {
-				y[idxs[i]] = x.dataset().attribute(idxs[i]).indexOfValue(vals[i]); 		// y_j = v
-				y[idxs[i]+L] = y_[j+L_];												// P(Y_j = v), hence, MUST be a multi-target classifier
+				y[idxs[i]] = vals[i]; 										// y_j = v
+				y[idxs[i]+L] = y_[j+L_];									// P(Y_j = v), hence, MUST be a multi-target classifier
 			}
 		}
 
@@ -393,6 +604,50 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 		return "the number of internal-validation iterations";
 	}
 
+	public void setChains(int c) {
+		if (c >= 1)
+			m_Chains = c;
+		else
+			System.err.println("Number of chains must be >= 1, provided: " + c);
+	}
+
+	public int getChains() {
+		return m_Chains;
+	}
+
+	public String chainsTipText() {
+		return "the number of simulated annealing chains (at different temperatures, swapping partitions now and then), 1 = a single walk";
+	}
+
+	@Override
+	public void setNumThreads(int value) {
+		if (value >= -1)
+			m_NumThreads = value;
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + value);
+	}
+
+	@Override
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
+	public String numThreadsTipText() {
+		return "the number of threads to use for LEAD, the annealing chains, and the internal validation (-1 = # of CPUs/cores)";
+	}
+
+	public void setCacheLEAD(boolean value) {
+		m_CacheLEAD = value;
+	}
+
+	public boolean getCacheLEAD() {
+		return m_CacheLEAD;
+	}
+
+	public String cacheLEADTipText() {
+		return "whether to re-use the LEAD matrix of earlier builds on the same data with the same base classifier and seed";
+	}
+
 	public static void main(String args[]) {
 		ProblemTransformationMethod.evaluation(new SCC(), args);
 	}
@@ -409,6 +664,9 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 		Vector result = new Vector();
 		result.addElement(new Option("\tSets the number of simulated annealing iterations\n\tdefault: 1000", "I", 1, "-I <value>"));
 		result.addElement(new Option("\tSets the number of internal-validation iterations\n\tdefault: 0", "V", 1, "-V <value>"));
+		result.addElement(new Option("\tSets the number of simulated annealing chains (parallel tempering)\n\tdefault: 1", "chains", 1, "-chains <value>"));
+		result.addElement(new Option("\tSets the number of threads to use (-1 = # of CPUs/cores)\n\tdefault: 1", "num-threads", 1, "-num-threads <value>"));
+		result.addElement(new Option("\tRe-use the LEAD matrix of earlier builds on the same data, base classifier and seed", "cache-lead", 0, "-cache-lead"));
 		OptionUtils.add(result, super.listOptions());
 		return OptionUtils.toEnumeration(result);
 	}
@@ -417,6 +675,9 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 	public void setOptions(String[] options) throws Exception {
 		setI(OptionUtils.parse(options, 'I', 1000));
 		setIv(OptionUtils.parse(options, 'V', 0));
+		setChains(OptionUtils.parse(options, "chains", 1));
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
+		setCacheLEAD(Utils.getFlag("cache-lead", options));
 		super.setOptions(options);
 	}
 
@@ -425,6 +686,9 @@ public class SCC extends NSR implements Randomizable, MultiTargetClassifier, Tec
 		List<String> result = new ArrayList<>();
 		OptionUtils.add(result, 'I', getI());
 		OptionUtils.add(result, 'V', getIv());
+		OptionUtils.add(result, "chains", getChains());
+		OptionUtils.add(result, "num-threads", getNumThreads());
+		OptionUtils.add(result, "cache-lead", getCacheLEAD());
 		OptionUtils.add(result, super.getOptions());
 		return OptionUtils.toArray(result);
 	}
@@ -19,13 +19,11 @@ import meka.classifiers.multilabel.ProblemTransformationMethod;
 import meka.classifiers.multilabel.meta.BaggingML;
 import meka.classifiers.multitarget.CC;
 import meka.classifiers.multitarget.MultiTargetClassifier;
-import meka.core.MLUtils;
 import meka.core.SuperLabelUtils;
 import weka.core.Instance;
+import weka.core.Instances;
 import weka.core.RevisionUtils;
 
-import java.util.HashMap;
-
 /**
  * BaggingMT.java - The Multi-Target Version of BaggingML.
  * It takes votes using the confidence outputs of the base classifier.
@@ -39,6 +37,9 @@ public class BaggingMT extends BaggingML implements MultiTargetClassifier {
 	/** for serialization. */
 	private static final long serialVersionUID = -8107887827513707843L;
 
+	/** the number of values of each target, for the table of votes of each prediction. */
+	protected int m_NumValues[] = null;
+
 	public BaggingMT() {
 		// default classifier for GUI
 		this.m_Classifier = new CC();
@@ -60,22 +61,24 @@ public class BaggingMT extends BaggingML implements MultiTargetClassifier {
 		return "Multi-Target Version of BaggingML\n" + "It takes votes using the confidence outputs of the base classifier.";
 	}
 
+	@Override
+	public void buildClassifier(Instances D) throws Exception {
+		super.buildClassifier(D);
+		m_NumValues = SuperLabelUtils.numValues(D);
+	}
+
 	@Override
 	public double[] distributionForInstance(Instance x) throws Exception {
 
 		int L = x.classIndex();
 
-		HashMap<Integer,Double> votes[] = new HashMap[L];
-		for(int j = 0; j < L; j++) {
-			votes[j] = new HashMap<Integer,Double>();
-		}
+		double votes[][] = SuperLabelUtils.makeVoteTable(m_NumValues);
 
 		for(int m = 0; m < m_NumIterations; m++) {
 			double c[] = ((ProblemTransformationMethod)m_Classifiers[m]).distributionForInstance(x);
 			// votes[j] = votes[j] + P(j|x)		@TODO: only if c.length > L
 			for(int j = 0; j < L; j++) {
-				Double w = votes[j].containsKey((int)c[j]) ? votes[j].get((int)c[j]) + c[j+L] : c[j+L];
-				votes[j].put((int)c[j] , w);
+				SuperLabelUtils.addVote(votes,j,(int)c[j],c[j+L]);
 			}
 		}
 
@@ -19,12 +19,11 @@ import meka.classifiers.multilabel.ProblemTransformationMethod;
 import meka.classifiers.multilabel.meta.EnsembleML;
 import meka.classifiers.multitarget.CC;
 import meka.classifiers.multitarget.MultiTargetClassifier;
-import meka.core.MLUtils;
+import meka.core.SuperLabelUtils;
 import weka.core.Instance;
+import weka.core.Instances;
 import weka.core.RevisionUtils;
 
-import java.util.HashMap;
-
 /**
  * The Multi-Target Version of EnsembleML.
  * It takes votes using the confidence outputs of the base classifier.
@@ -38,6 +37,9 @@ public class EnsembleMT extends EnsembleML implements MultiTargetClassifier {
 	/** for serialization. */
 	private static final long serialVersionUID = 1213045324147680550L;
 
+	/** the number of values of each target, for the table of votes of each prediction. */
+	protected int m_NumValues[] = null;
+
 	public EnsembleMT() {
 		// default classifier for GUI
 		this.m_Classifier = new CC();
@@ -62,33 +64,29 @@ public class EnsembleMT extends EnsembleML implements MultiTargetClassifier {
 				+ "It takes votes using the confidence outputs of the base classifier.";
 	}
 
+	@Override
+	public void buildClassifier(Instances D) throws Exception {
+		super.buildClassifier(D);
+		m_NumValues = SuperLabelUtils.numValues(D);
+	}
+
 	@Override
 	public double[] distributionForInstance(Instance x) throws Exception {
 
 		int L = x.classIndex();
 
-		HashMap<Integer,Double> votes[] = new HashMap[L];
-		for(int j = 0; j < L; j++) {
-			votes[j] = new HashMap<Integer,Double>();
-		}
-
-		double y[] = new double[L];
+		double votes[][] = SuperLabelUtils.makeVoteTable(m_NumValues);
 
 		for(int m = 0; m < m_NumIterations; m++) {
 			double c[] = ((ProblemTransformationMethod)m_Classifiers[m]).distributionForInstance(x);
 			// votes[j] = votes[j] + P(j|x)		@TODO: only if c.length > L
 			for(int j = 0; j < L; j++) {
-				Double w = votes[j].containsKey((int)c[j]) ? votes[j].get((int)c[j]) + c[j+L] : c[j+L];
-				votes[j].put((int)c[j] , w);
+				SuperLabelUtils.addVote(votes,j,(int)c[j],c[j+L]);
 			}
 		}
 
-		for(int j = 0; j < L; j++) {
-			// get the class with max weight
-			y[j] = (Integer)MLUtils.maxItem(votes[j]);
-		}
-
-		return y;
+		// get the class with max weight
+		return SuperLabelUtils.convertVotesToDistributionForInstance(votes);
 	}
 
 	@Override
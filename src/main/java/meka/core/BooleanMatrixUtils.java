@@ -0,0 +1,466 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.core;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * BooleanMatrixUtils.java - Boolean matrix decomposition on bitsets.
+ * <br>
+ * Decomposes a Boolean matrix A (N x L) into a usage matrix U (N x k) and a basis B (k x L), such that
+ * A is approximately the Boolean product of U and B, in the same way as the BMaD library configured for MLC-BMaD:
+ * the candidate basis rows are the pairwise association rules between the columns, FastLoc selects k of them,
+ * and the usage is combined greedily by density and then refined iteratively. Rows are packed into
+ * <code>long[]</code> bitsets, so that coverage counts are popcounts, and the candidate scoring and the
+ * per-row combination are split up across threads.
+ * <br>
+ * Missing values are treated as unknown, i.e., they count neither as covered ones nor as covered zeros.
+ *
+ * @see meka.classifiers.multilabel.MLCBMaD
+ */
+public abstract class BooleanMatrixUtils {
+
+	/**
+	 * NumWords - the number of longs needed for a bitset of n bits.
+	 */
+	public static int numWords(int n) {
+		return (n + 63) >>> 6;
+	}
+
+	/**
+	 * ToBits - pack the rows of D into bitsets, of the entries that are true (non-zero, non-missing) if
+	 * <code>ones</code> is set, otherwise of the entries that are (known to be) false.
+	 */
+	public static long[][] toBits(Instances D, boolean ones) {
+		int L = D.numAttributes();
+		long[][] bits = new long[D.numInstances()][numWords(L)];
+		for(int i = 0; i < bits.length; i++) {
+			Instance x = D.instance(i);
+			for(int j = 0; j < L; j++) {
+				double v = x.value(j);
+				if (Double.isNaN(v))
+					continue;
+				if ((v != 0) == ones)
+					bits[i][j >>> 6] |= 1L << j;
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Transpose - the columns of the bitset matrix A (with the given number of columns), as bitsets.
+	 */
+	public static long[][] transpose(long[][] A, int width) {
+		long[][] T = new long[width][numWords(A.length)];
+		for(int i = 0; i < A.length; i++) {
+			long[] a = A[i];
+			for(int w = 0; w < a.length; w++) {
+				long bits = a[w];
+				while (bits != 0) {
+					int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+					T[j][i >>> 6] |= 1L << i;
+					bits &= bits - 1;
+				}
+			}
+		}
+		return T;
+	}
+
+	/**
+	 * ToInstances - the bitset matrix A (with the given number of columns) as Instances, in the format of the
+	 * BMaD library: one nominal attribute "col j" (e.g., "col 0") per column j, with the values "0" and "1".
+	 */
+	public static Instances toInstances(long[][] A, int width) {
+		List<String> values = new ArrayList<>();
+		values.add("0");
+		values.add("1");
+		ArrayList<Attribute> atts = new ArrayList<>(width);
+		for(int j = 0; j < width; j++)
+			atts.add(new Attribute("col " + j, values));
+		Instances D = new Instances("boolean matrix", atts, A.length);
+		for(long[] a : A) {
+			double[] x = new double[width];
+			for(int j = 0; j < width; j++)
+				x[j] = (a[j >>> 6] & (1L << j)) != 0 ? 1.0 : 0.0;
+			D.add(new DenseInstance(1.0, x));
+		}
+		return D;
+	}
+
+	/**
+	 * Associations - the candidate basis rows: row i has a 1 in column j if the confidence of the association
+	 * rule i &rArr; j is above the threshold, i.e., if |C_i &amp; C_j| &gt; threshold * |C_i|.
+	 *
+	 * @param cols      the columns of the data, as bitsets
+	 * @param threshold the confidence threshold
+	 * @param executor  the executor to use, null for the calling thread
+	 * @return          the candidate rows (L x L)
+	 */
+	public static long[][] associations(final long[][] cols, final double threshold, ExecutorService executor) {
+		final int L = cols.length;
+		final int[] counts = new int[L];
+		for(int i = 0; i < L; i++)
+			counts[i] = popcount(cols[i]);
+		final long[][] C = new long[L][numWords(L)];
+		long work = (long)L * L * (L > 0 ? cols[0].length : 0);
+		MatrixUtils.forRows(L, work, executor, (from, to) -> {
+			for(int i = from; i < to; i++) {
+				double min = threshold * counts[i];
+				for(int j = 0; j < L; j++) {
+					if (andCount(cols[i], cols[j]) > min)
+						C[i][j >>> 6] |= 1L << j;
+				}
+			}
+		});
+		return C;
+	}
+
+	/**
+	 * Decompose - decompose the Boolean matrix D into a usage and a basis matrix.
+	 *
+	 * @param D           the (label) matrix
+	 * @param k           the number of basis rows
+	 * @param threshold   the confidence threshold of the association rules
+	 * @param r           the random number generator, for the initial order of the candidates
+	 * @param numThreads  the number of threads to use (-1 for # of cores/cpus)
+	 * @return            the usage (N x k) and the basis (k x L), as Instances
+	 * @throws Exception  if k is larger than the number of candidates, or a job fails
+	 */
+	public static Instances[] decompose(Instances D, int k, double threshold, Random r, int numThreads) throws Exception {
+		int L = D.numAttributes();
+		long[][] ones = toBits(D, true);
+		long[][] zeros = toBits(D, false);
+
+		ExecutorService executor = ThreadUtils.newExecutor(numThreads, ThreadUtils.getAvailableProcessors());
+		try {
+			long[][] C = associations(transpose(ones, L), threshold, executor);
+			long[][] B = selectBasis(C, ones, zeros, k, r, executor);
+			long[][] U = combine(B, ones, zeros, executor);
+			return new Instances[]{toInstances(U, k), toInstances(B, L)};
+		}
+		finally {
+			if (executor != null)
+				executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The coverage of one row of the data by the basis rows it uses: which entries are covered at least once,
+	 * and which at least twice (so that the ones covered exactly once can be told apart on exclusion).
+	 */
+	protected static class Cover {
+
+		/** the data row: the true entries. */
+		protected final long[] ones;
+
+		/** the data row: the (known) false entries. */
+		protected final long[] zeros;
+
+		/** the entries covered at least once. */
+		protected final long[] covered;
+
+		/** the entries covered at least twice. */
+		protected final long[] twice;
+
+		/** the basis rows (slots) in use. */
+		protected final long[] used;
+
+		public Cover(long[] ones, long[] zeros, int k) {
+			this.ones = ones;
+			this.zeros = zeros;
+			this.covered = new long[ones.length];
+			this.twice = new long[ones.length];
+			this.used = new long[numWords(k)];
+		}
+
+		public boolean uses(int t) {
+			return (used[t >>> 6] & (1L << t)) != 0;
+		}
+
+		/**
+		 * Number of true minus number of false entries that c would newly cover.
+		 */
+		public int inclusionGain(long[] c) {
+			int gain = 0;
+			for(int w = 0; w < c.length; w++) {
+				long free = c[w] & ~covered[w];
+				gain += Long.bitCount(ones[w] & free) - Long.bitCount(zeros[w] & free);
+			}
+			return gain;
+		}
+
+		/**
+		 * Number of false minus number of true entries that would no longer be covered without c.
+		 */
+		public int exclusionChange(long[] c) {
+			int change = 0;
+			for(int w = 0; w < c.length; w++) {
+				long once = c[w] & covered[w] & ~twice[w];
+				change += Long.bitCount(zeros[w] & once) - Long.bitCount(ones[w] & once);
+			}
+			return change;
+		}
+
+		/**
+		 * The density of the entries that c would newly cover, (ones - zeros) / (ones + zeros), -1 if none.
+		 */
+		public double inclusionDensity(long[] c) {
+			int o = 0;
+			int z = 0;
+			for(int w = 0; w < c.length; w++) {
+				long free = c[w] & ~covered[w];
+				o += Long.bitCount(ones[w] & free);
+				z += Long.bitCount(zeros[w] & free);
+			}
+			if (o + z == 0)
+				return -1.0;
+			return (double)(o - z) / (o + z);
+		}
+
+		public void include(int t, long[] c) {
+			for(int w = 0; w < c.length; w++) {
+				twice[w] |= covered[w] & c[w];
+				covered[w] |= c[w];
+			}
+			used[t >>> 6] |= 1L << t;
+		}
+
+		/**
+		 * Stops using slot t, recomputing the coverage from the remaining slots.
+		 */
+		public void exclude(int t, long[][] slots) {
+			used[t >>> 6] &= ~(1L << t);
+			Arrays.fill(covered, 0L);
+			Arrays.fill(twice, 0L);
+			for(int s = 0; s < slots.length; s++) {
+				if (!uses(s))
+					continue;
+				long[] c = slots[s];
+				for(int w = 0; w < c.length; w++) {
+					twice[w] |= covered[w] & c[w];
+					covered[w] |= c[w];
+				}
+			}
+		}
+	}
+
+	/**
+	 * SelectBasis - select k of the candidate rows with FastLoc: starting from a random order of the candidates,
+	 * each of the first k is swapped with the candidate outside of them that covers the data best (given the
+	 * others), until no more swaps are made.
+	 *
+	 * @param C         the candidate rows
+	 * @param ones      the true entries of the data rows
+	 * @param zeros     the false entries of the data rows
+	 * @param k         the number of basis rows
+	 * @param r         the random number generator, for the initial order
+	 * @param executor  the executor to use, null for the calling thread
+	 * @return          the basis rows (k x L)
+	 */
+	public static long[][] selectBasis(final long[][] C, final long[][] ones, final long[][] zeros, final int k, Random r, ExecutorService executor) {
+		final int m = C.length;
+		final int N = ones.length;
+		if (k > m)
+			throw new IllegalArgumentException("dimension too high: cannot choose " + k + " basis rows out of " + m + " candidates!");
+		int W = numWords(m);
+
+		List<Integer> order = new ArrayList<>(m);
+		for(int i = 0; i < m; i++)
+			order.add(i);
+		Collections.shuffle(order, r);
+		final int[] perm = new int[m];
+		for(int i = 0; i < m; i++)
+			perm[i] = order.get(i);
+
+		// the rows that a candidate would improve on its own, the only ones it gets used for
+		final int[][] useful = new int[m][];
+		MatrixUtils.forRows(m, (long)m * N * W, executor, (from, to) -> {
+			int[] rows = new int[N];
+			for(int c = from; c < to; c++) {
+				int n = 0;
+				for(int i = 0; i < N; i++) {
+					if (andCount(ones[i], C[c]) > andCount(zeros[i], C[c]))
+						rows[n++] = i;
+				}
+				useful[c] = Arrays.copyOf(rows, n);
+			}
+		});
+
+		final Cover[] covers = new Cover[N];
+		for(int i = 0; i < N; i++)
+			covers[i] = new Cover(ones[i], zeros[i], k);
+		final long[][] slots = new long[k][];
+		final int[] delta = new int[N];
+		final long[] scores = new long[m];
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for(int j = 0; j < k; j++) {
+				final int slot = j;
+				final long[] current = C[perm[j]];
+				slots[j] = current;
+
+				// stop using the current candidate, the score of keeping it is what is lost that way
+				Arrays.fill(delta, 0);
+				MatrixUtils.forRows(N, (long)N * k * W, executor, (from, to) -> {
+					for(int i = from; i < to; i++) {
+						if (covers[i].uses(slot)) {
+							delta[i] = covers[i].exclusionChange(current);
+							covers[i].exclude(slot, slots);
+						}
+					}
+				});
+				long best = 0;
+				for(int i = 0; i < N; i++)
+					best -= delta[i];
+
+				// the candidates outside of the basis, in their current order
+				MatrixUtils.forRows(m - k, (long)(m - k) * N * W, executor, (from, to) -> {
+					for(int q = k + from; q < k + to; q++) {
+						long[] c = C[perm[q]];
+						long score = 0;
+						for(int i : useful[perm[q]])
+							score += Math.max(0, covers[i].inclusionGain(c));
+						scores[q] = score;
+					}
+				});
+				int bestIndex = j;
+				for(int q = k; q < m; q++) {
+					if (scores[q] > best) {
+						best = scores[q];
+						bestIndex = q;
+					}
+				}
+				if (bestIndex != j) {
+					changed = true;
+					int tmp = perm[j];
+					perm[j] = perm[bestIndex];
+					perm[bestIndex] = tmp;
+				}
+
+				final long[] chosen = C[perm[j]];
+				slots[j] = chosen;
+				final int[] rows = useful[perm[j]];
+				MatrixUtils.forRows(rows.length, (long)rows.length * W, executor, (from, to) -> {
+					for(int n = from; n < to; n++) {
+						Cover cover = covers[rows[n]];
+						if (cover.inclusionGain(chosen) > 0)
+							cover.include(slot, chosen);
+					}
+				});
+			}
+		}
+
+		long[][] B = new long[k][];
+		for(int j = 0; j < k; j++)
+			B[j] = C[perm[j]].clone();
+		return B;
+	}
+
+	/**
+	 * Combine - the usage of the basis rows for each data row: greedily by density (the basis row with the
+	 * highest density of newly covered ones, as long as it is positive), then iteratively refined (basis rows
+	 * are added while they cover more ones than zeros, and dropped while they do not), until nothing changes.
+	 *
+	 * @param B         the basis rows
+	 * @param ones      the true entries of the data rows
+	 * @param zeros     the false entries of the data rows
+	 * @param executor  the executor to use, null for the calling thread
+	 * @return          the usage rows (N x k)
+	 */
+	public static long[][] combine(final long[][] B, final long[][] ones, final long[][] zeros, ExecutorService executor) {
+		final int N = ones.length;
+		final int k = B.length;
+		final long[][] U = new long[N][];
+		long work = (long)N * k * k * (N > 0 ? ones[0].length : 0);
+		MatrixUtils.forRows(N, work, executor, (from, to) -> {
+			for(int i = from; i < to; i++) {
+				Cover cover = new Cover(ones[i], zeros[i], k);
+
+				// density greedy
+				while (true) {
+					double best = Double.NEGATIVE_INFINITY;
+					int bestIndex = -1;
+					for(int t = 0; t < k; t++) {
+						if (cover.uses(t))
+							continue;
+						double density = cover.inclusionDensity(B[t]);
+						if (density > best) {
+							best = density;
+							bestIndex = t;
+						}
+					}
+					if (best <= 0)
+						break;
+					cover.include(bestIndex, B[bestIndex]);
+				}
+
+				// iterative refinement
+				boolean changed = true;
+				while (changed) {
+					changed = false;
+					for(int t = 0; t < k; t++) {
+						if (!cover.uses(t)) {
+							if (cover.inclusionGain(B[t]) > 0) {
+								cover.include(t, B[t]);
+								changed = true;
+							}
+						}
+						else if (cover.exclusionChange(B[t]) >= 0) {
+							cover.exclude(t, B);
+							changed = true;
+						}
+					}
+				}
+
+				U[i] = cover.used;
+			}
+		});
+		return U;
+	}
+
+	/**
+	 * Popcount - the number of bits set in a.
+	 */
+	public static int popcount(long[] a) {
+		int n = 0;
+		for(long w : a)
+			n += Long.bitCount(w);
+		return n;
+	}
+
+	/**
+	 * AndCount - the number of bits set in both a and b.
+	 */
+	public static int andCount(long[] a, long[] b) {
+		int n = 0;
+		for(int w = 0; w < a.length; w++)
+			n += Long.bitCount(a[w] & b[w]);
+		return n;
+	}
+
+}
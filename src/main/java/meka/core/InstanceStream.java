@@ -0,0 +1,301 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.core;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.AbstractFileLoader;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.ConverterUtils;
+import weka.core.converters.IncrementalConverter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InstanceStream.java - Reads a multi-label (multi-target) dataset one instance at a time, so that a data stream
+ * can be processed in constant memory, however long it is.
+ * <br>
+ * The source is a file (read with the incremental interface of the converter for its extension, e.g., ARFF or CSV),
+ * a named pipe (ARFF, unless the extension says otherwise), or the standard input ("stdin", ARFF). The structure is
+ * prepared as by {@link MLUtils#prepareData(Instances)}, i.e., the class index is taken from the relation name
+ * (labels at the end, in MULAN style, are moved to the beginning of each instance as it is read). Converters that
+ * cannot read incrementally fall back to loading the whole dataset. An InstanceStream can also be made over
+ * Instances already in memory; it then returns copies of them.
+ * <br>
+ * A stream can be fanned out to several readers (e.g., models evaluated concurrently), so that it is read only once:
+ * see {@link #fanOut(int, int)} and {@link #feed(InstanceStream[])}.
+ *
+ * @see weka.core.converters.IncrementalConverter
+ */
+public class InstanceStream implements Closeable {
+
+	/** the location for reading from the standard input */
+	public static final String STDIN = "stdin";
+
+	/** the loader, if reading incrementally */
+	protected AbstractFileLoader loader = null;
+
+	/** the stream opened for a named pipe */
+	protected InputStream in = null;
+
+	/** the dataset, if not reading incrementally */
+	protected Instances D = null;
+
+	/** the index of the next instance in D */
+	protected int i = 0;
+
+	/** the structure as read */
+	protected Instances raw;
+
+	/** the (prepared) structure of the instances returned */
+	protected Instances header;
+
+	/** the number of labels to move to the front (MULAN format), 0 if none */
+	protected int L_mulan = 0;
+
+	/** the queue, if fed by another stream (see fanOut) */
+	protected BlockingQueue<Instance> queue = null;
+
+	/** whether a stream fed by another stream has been ended or closed */
+	protected volatile boolean closed = false;
+
+	/** marks the end of a stream fed by another stream */
+	protected static final Instance END = new DenseInstance(0);
+
+	/**
+	 * InstanceStream - over a file, named pipe or the standard input.
+	 * @param	location	the filename, or "stdin" for the standard input
+	 */
+	public InstanceStream(String location) throws Exception {
+
+		if (location == null || location.isEmpty())
+			throw new Exception("[Error] You did not specify a dataset!");
+
+		try {
+			if (location.equals(STDIN)) {
+				loader = new ArffLoader();
+				loader.setSource(System.in);
+			}
+			else {
+				File file = new File(location);
+				if (!file.exists())
+					throw new Exception("[Error] File does not exist: " + location);
+				if (file.isDirectory())
+					throw new Exception("[Error] "+location+ " points to a directory!");
+				// (ARFF directly, as ConverterUtils.DataSource does)
+				loader = ConverterUtils.DataSource.isArff(location) ? new ArffLoader() : ConverterUtils.getLoaderForFile(file);
+				if (file.isFile()) {
+					if (loader == null)
+						throw new Exception("[Error] Cannot determine the file format of '"+location+"'.");
+					loader.setFile(file);
+				}
+				else {
+					// named pipe: can only be opened (and read) once
+					if (loader == null)
+						loader = new ArffLoader();
+					in = new FileInputStream(file);
+					loader.setSource(in);
+				}
+			}
+			readStructure();
+		} catch(Exception e) {
+			if (e.getMessage() != null && e.getMessage().startsWith("[Error]"))
+				throw e;
+			e.printStackTrace();
+			throw new Exception("[Error] Failed to load Instances from '"+location+"'.");
+		}
+
+		prepare();
+	}
+
+	/**
+	 * InstanceStream - over a loader whose source has been set (e.g., for a format that its extension does not tell).
+	 * @param	loader	the loader
+	 */
+	public InstanceStream(AbstractFileLoader loader) throws Exception {
+		this.loader = loader;
+		readStructure();
+		prepare();
+	}
+
+	/**
+	 * InstanceStream - over a dataset in memory.
+	 * @param	D	the dataset (its class index is kept)
+	 */
+	public InstanceStream(Instances D) {
+		this.D = D;
+		raw = new Instances(D, 0);
+		header = raw;
+	}
+
+	/**
+	 * InstanceStream - fed by another stream, through a bounded queue (see fanOut).
+	 * @param	header		the structure
+	 * @param	capacity	the maximum number of instances waiting in the queue
+	 */
+	protected InstanceStream(Instances header, int capacity) {
+		raw = header;
+		this.header = header;
+		queue = new ArrayBlockingQueue<Instance>(capacity);
+	}
+
+	/**
+	 * FanOut - makes k streams that each get a copy of every instance of this stream, as it is read by
+	 * {@link #feed(InstanceStream[])} (typically in another thread than those reading the k streams).
+	 * Each holds at most 'capacity' instances not yet read, so the stream is read at the pace of the slowest reader.
+	 * @param	k			the number of streams
+	 * @param	capacity	the maximum number of instances waiting in each stream
+	 * @return	the streams
+	 */
+	public InstanceStream[] fanOut(int k, int capacity) {
+		InstanceStream out[] = new InstanceStream[k];
+		for (int j = 0; j < k; j++)
+			out[j] = new InstanceStream(header, capacity);
+		return out;
+	}
+
+	/**
+	 * Feed - reads this stream to the end into streams made by {@link #fanOut(int, int)}, and then ends them.
+	 * A stream that has been closed by its reader (e.g., after an error) gets no more instances.
+	 * @param	out	the streams
+	 */
+	public void feed(InstanceStream out[]) throws Exception {
+		try {
+			Instance x;
+			while ((x = next()) != null) {
+				for (InstanceStream s : out)
+					s.put((Instance) x.copy());
+			}
+		}
+		finally {
+			for (InstanceStream s : out)
+				s.put(END);
+		}
+	}
+
+	/**
+	 * Put - waits until there is room in the queue for x, unless this stream is closed.
+	 */
+	protected void put(Instance x) throws InterruptedException {
+		while (!closed && !queue.offer(x, 100, TimeUnit.MILLISECONDS))
+			;
+	}
+
+	/**
+	 * Reads the structure from the loader, or the whole dataset if the loader cannot read incrementally.
+	 */
+	protected void readStructure() throws Exception {
+		raw = loader.getStructure();
+		if (!(loader instanceof IncrementalConverter)) {
+			D = loader.getDataSet();
+			loader = null;
+		}
+	}
+
+	/**
+	 * Sets the class index of the structure, from the options in the relation name.
+	 */
+	protected void prepare() throws Exception {
+		header = new Instances(raw, 0);
+		String doptions[] = MLUtils.getDatasetOptions(raw);
+		int c = 0;
+		try {
+			c = (Utils.getOptionPos('C', doptions) >= 0) ? Integer.parseInt(Utils.getOption('C', doptions)) : Integer.parseInt(Utils.getOption('c', doptions));
+		} catch(Exception e) {
+			// let prepareData complain
+		}
+		MLUtils.prepareData(header);
+		if (c < 0)
+			L_mulan = -c;
+	}
+
+	/**
+	 * GetStructure - the header of the instances returned (with the class index set).
+	 */
+	public Instances getStructure() {
+		return header;
+	}
+
+	/**
+	 * Next - the next instance of the stream (belonging to the structure).
+	 * @return	the instance, or null at the end of the stream
+	 */
+	public Instance next() throws Exception {
+		Instance x;
+		if (queue != null) {
+			if (closed)
+				return null;
+			x = queue.take();
+			if (x == END) {
+				closed = true;
+				return null;
+			}
+			return x;
+		}
+		else if (loader != null) {
+			x = loader.getNextInstance(raw);
+			if (x == null) {
+				close();
+				return null;
+			}
+		}
+		else if (D != null && i < D.numInstances()) {
+			x = (Instance) D.instance(i++).copy();
+		}
+		else {
+			close();
+			return null;
+		}
+
+		if (L_mulan > 0) {
+			// labels from the end to the front (see F.mulan2meka)
+			double v[] = x.toDoubleArray();
+			double v_[] = new double[v.length];
+			System.arraycopy(v, v.length - L_mulan, v_, 0, L_mulan);
+			System.arraycopy(v, 0, v_, L_mulan, v.length - L_mulan);
+			x = new DenseInstance(x.weight(), v_);
+		}
+		x.setDataset(header);
+		return x;
+	}
+
+	/**
+	 * Close - stop reading (and close the named pipe, if any).
+	 */
+	@Override
+	public void close() throws IOException {
+		if (queue != null) {
+			closed = true;
+			queue.clear();
+		}
+		loader = null;
+		D = null;
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * LatencyHistogram.java - A histogram of latencies (in nanoseconds), in fixed memory.
+ * <br>
+ * Values below 16 ns are counted exactly; above, each power of two is split into 16 buckets of equal width, so
+ * that a percentile is reported within 1/16 (6.25%) of its true value, whatever the range of the latencies.
+ * The count, total and maximum are exact.
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 2870364839419218807L;
+
+	/** the percentiles reported by addMeasurements */
+	public static final double PERCENTILES[] = new double[]{50., 90., 99., 99.9};
+
+	/** the number of buckets per power of two (as bits) */
+	protected static final int SUB_BITS = 4;
+
+	protected static final int SUB = 1 << SUB_BITS;
+
+	/** the counts per bucket */
+	protected long counts[] = new long[(64 - SUB_BITS) * SUB];
+
+	/** the number of values */
+	protected long n = 0;
+
+	/** the sum of the values */
+	protected long total = 0;
+
+	/** the largest value */
+	protected long max = 0;
+
+	/**
+	 * Bucket - the index of the bucket of a value.
+	 */
+	protected static int bucket(long v) {
+		if (v < SUB)
+			return (int)v;
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		return (e - SUB_BITS + 1) * SUB + (int)((v >>> (e - SUB_BITS)) & (SUB - 1));
+	}
+
+	/**
+	 * UpperBound - the largest value that falls into a bucket.
+	 */
+	protected static long upperBound(int b) {
+		if (b < SUB)
+			return b;
+		int e = b / SUB + SUB_BITS - 1;
+		long width = 1L << (e - SUB_BITS);
+		return (SUB + b % SUB) * width + width - 1;
+	}
+
+	/**
+	 * Add - record a latency.
+	 * @param	ns	the latency, in nanoseconds (negative values count as 0)
+	 */
+	public void add(long ns) {
+		if (ns < 0)
+			ns = 0;
+		counts[bucket(ns)]++;
+		n++;
+		total += ns;
+		if (ns > max)
+			max = ns;
+	}
+
+	/**
+	 * Merge - add all the values of another histogram (e.g., of a window, to those since the start).
+	 * @param	h	the other histogram
+	 */
+	public void merge(LatencyHistogram h) {
+		for (int b = 0; b < counts.length; b++)
+			counts[b] += h.counts[b];
+		n += h.n;
+		total += h.total;
+		if (h.max > max)
+			max = h.max;
+	}
+
+	/**
+	 * Clear - remove all values, e.g., at the start of a new window.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0L);
+		n = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/** the number of values */
+	public long count() {
+		return n;
+	}
+
+	/** the sum of the values, in nanoseconds */
+	public long total() {
+		return total;
+	}
+
+	/** the largest value, in nanoseconds */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Percentile - the latency below which (at least) p percent of the values fall.
+	 * @param	p	the percentile, in [0,100]
+	 * @return	the latency in nanoseconds (the upper bound of its bucket, but no more than the maximum); 0 if empty
+	 */
+	public long percentile(double p) {
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1L, (long)Math.ceil(p / 100. * n));
+		long c = 0;
+		for (int b = 0; b < counts.length; b++) {
+			c += counts[b];
+			if (c >= rank)
+				return Math.min(upperBound(b), max);
+		}
+		return max;
+	}
+
+	/**
+	 * AddMeasurements - puts the percentiles and maximum (in microseconds) into a map of evaluation statistics,
+	 * as "[name] latency p50 (us)", ..., "[name] latency max (us)".
+	 * @param	stats	the statistics
+	 * @param	name	the name of the operation, e.g., "Test"
+	 */
+	public void addMeasurements(HashMap<String,Object> stats, String name) {
+		for (double p : PERCENTILES) {
+			String p_ = (p == Math.rint(p)) ? String.valueOf((long)p) : String.valueOf(p);
+			stats.put(name + " latency p" + p_ + " (us)", percentile(p) / 1000.0);
+		}
+		stats.put(name + " latency max (us)", max / 1000.0);
+	}
+
+	/**
+	 * Throughput - the number of instances per second, given the histograms of all the operations done per instance.
+	 * @param	h	the histograms (each holding one value per instance)
+	 * @return	instances per second, 0 if no time was recorded
+	 */
+	public static double throughput(LatencyHistogram... h) {
+		long t = 0;
+		for (LatencyHistogram h_ : h)
+			t += h_.total;
+		return (t == 0) ? 0.0 : h[0].n / (t / 1e9);
+	}
+
+}
@@ -16,8 +16,10 @@
 package meka.core;
 
 import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.SparseInstance;
 import weka.core.Utils;
 import weka.core.converters.ConverterUtils.DataSource;
 import weka.classifiers.evaluation.NominalPrediction;
@@ -55,6 +57,27 @@ public abstract class MLUtils {
 		return getRelationName(instances.relationName());
 	}
 
+	/**
+	 * Fingerprint - a hash over the header and all values (and weights) of a dataset.
+	 * Two datasets with the same fingerprint can be considered identical (e.g., for caching purposes).
+	 * @param	D	the dataset
+	 * @return	the fingerprint
+	 */
+	public static final long fingerprint(Instances D) {
+		long h = 1125899906842597L;
+		h = 31 * h + D.stringFreeStructure().toString().hashCode();
+		h = 31 * h + D.classIndex();
+		h = 31 * h + D.numInstances();
+		for (int i = 0; i < D.numInstances(); i++) {
+			Instance x = D.instance(i);
+			for (int a = 0; a < x.numAttributes(); a++) {
+				h = 31 * h + Double.doubleToLongBits(x.value(a));
+			}
+			h = 31 * h + Double.doubleToLongBits(x.weight());
+		}
+		return h;
+	}
+
 	/**
 	 * GetRelationName - get, e.g., 'Music' from 'Music: -C 6'
 	 * @param name	dataset name
@@ -649,6 +672,48 @@ public abstract class MLUtils {
 		return deleteAttributesAt(D, A.invert(indicesToRemove, lim));
 	}
 
+	/**
+	 * KeepAttributesAt - x with only the attributes keep[], as deleting all the others from a copy of x would give,
+	 * but without copying the values of x for each attribute deleted. Dense instances stay dense, sparse stay sparse.
+	 * @param	x			instance
+	 * @param	keep		indices of the attributes to keep (sorted)
+	 * @param	pos			the position in keep[] of each attribute of x, -1 if not kept (for sparse instances)
+	 * @param	y			values for the first L attributes (the labels), instead of those of x; or null
+	 * @param	L			the number of labels given in y
+	 * @param	buf			buffer of length keep.length; the instance returned (if dense) holds it without a copy, so it is
+	 * 						only valid until the next call with the same buffer
+	 * @param	D_template	the dataset of the instance returned
+	 * @return	the projected instance
+	 */
+	public static final Instance keepAttributesAt(Instance x, int keep[], int pos[], double y[], int L, double buf[], Instances D_template) {
+		Instance x_;
+		if (x instanceof SparseInstance) {
+			int n = x.numValues();
+			int c = 0;
+			int indices[] = new int[n + L];
+			double values[] = new double[n + L];
+			for (int k = 0; y != null && k < keep.length && keep[k] < L; k++) {
+				indices[c] = k;
+				values[c++] = y[keep[k]];
+			}
+			for (int k = 0; k < n; k++) {
+				int i = x.index(k);
+				if ((y == null || i >= L) && pos[i] >= 0) {
+					indices[c] = pos[i];
+					values[c++] = x.valueSparse(k);
+				}
+			}
+			x_ = new SparseInstance(x.weight(), Arrays.copyOf(values, c), Arrays.copyOf(indices, c), keep.length);
+		}
+		else {
+			for (int k = 0; k < keep.length; k++)
+				buf[k] = (y != null && keep[k] < L) ? y[keep[k]] : x.value(keep[k]);
+			x_ = new DenseInstance(x.weight(), buf);
+		}
+		x_.setDataset(D_template);
+		return x_;
+	}
+
 	public static final Instance setTemplate(Instance x, Instances instancesTemplate) {
 		int L = x.classIndex();
 		int L_t = instancesTemplate.classIndex();
@@ -0,0 +1,193 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * QuantileSketch.java - Approximate quantiles of a stream of values (e.g., prediction confidences), in memory that
+ * grows only with the log of the number of values.
+ * <br>
+ * A KLL sketch: the values are kept in a hierarchy of compactors, where each value at level h stands for 2^h values
+ * of the stream; when a level is full, it is sorted and every other value is promoted to the next level. The lower
+ * levels get smaller capacities (by a factor 2/3), so that about 3k values are kept in all, and a quantile is found
+ * within a rank error of about 1.7/k (for k = 200, under 1% of the number of values). Compaction alternates between
+ * the odd and even values (rather than choosing at random), so that the results are reproducible.
+ * <br>
+ * See: Karnin, Lang, Liberty. <i>Optimal Quantile Approximation in Streams</i>. FOCS 2016.
+ */
+public class QuantileSketch implements Serializable {
+
+	private static final long serialVersionUID = -1986473003391865120L;
+
+	/** the capacity of the top level */
+	protected int k;
+
+	/** the values of each level */
+	protected double items[][];
+
+	/** the number of values at each level */
+	protected int size[];
+
+	/** which values (odd or even) each level promotes next */
+	protected boolean odd[];
+
+	/** the number of levels */
+	protected int H = 0;
+
+	/** the number of values kept, and the number kept before compacting */
+	protected int kept = 0, maxKept = 0;
+
+	/** the number of values added */
+	protected long n = 0;
+
+	/**
+	 * QuantileSketch - with k = 200.
+	 */
+	public QuantileSketch() {
+		this(200);
+	}
+
+	/**
+	 * QuantileSketch.
+	 * @param	k	the capacity of the top level (the accuracy)
+	 */
+	public QuantileSketch(int k) {
+		this.k = k;
+		items = new double[0][];
+		size = new int[0];
+		odd = new boolean[0];
+		grow();
+	}
+
+	/** the capacity of level h */
+	protected int capacity(int h) {
+		return Math.max(2, (int)Math.ceil(k * Math.pow(2. / 3., H - h - 1)));
+	}
+
+	/** adds a level on top */
+	protected void grow() {
+		H++;
+		items = Arrays.copyOf(items, H);
+		size = Arrays.copyOf(size, H);
+		odd = Arrays.copyOf(odd, H);
+		items[H - 1] = new double[capacity(H - 1)];
+		maxKept = 0;
+		for (int h = 0; h < H; h++)
+			maxKept += capacity(h);
+	}
+
+	/** appends v to level h */
+	protected void append(int h, double v) {
+		if (size[h] == items[h].length)
+			items[h] = Arrays.copyOf(items[h], Math.max(2, 2 * items[h].length));
+		items[h][size[h]++] = v;
+	}
+
+	/**
+	 * Add - a value (NaN is ignored).
+	 */
+	public void add(double v) {
+		if (Double.isNaN(v))
+			return;
+		append(0, v);
+		n++;
+		kept++;
+		if (kept >= maxKept)
+			compress();
+	}
+
+	/** compacts the lowest level that is full */
+	protected void compress() {
+		for (int h = 0; h < H; h++) {
+			if (size[h] >= capacity(h)) {
+				if (h + 1 >= H)
+					grow();
+				double a[] = items[h];
+				int s = size[h];
+				Arrays.sort(a, 0, s);
+				// if odd, the smallest value stays (of weight 2^h); of each pair above it, one is promoted (of weight 2^(h+1))
+				int start = s % 2;
+				int offset = odd[h] ? 1 : 0;
+				odd[h] = !odd[h];
+				for (int i = start; i < s; i += 2)
+					append(h + 1, a[i + offset]);
+				size[h] = start;
+				kept -= (s - start) / 2;
+				return;
+			}
+		}
+	}
+
+	/** the number of values added */
+	public long count() {
+		return n;
+	}
+
+	/**
+	 * Clear - remove all values (e.g., at the start of a new window).
+	 */
+	public void clear() {
+		items = new double[0][];
+		size = new int[0];
+		odd = new boolean[0];
+		H = 0;
+		kept = 0;
+		n = 0;
+		grow();
+	}
+
+	/**
+	 * Quantile - the (approximate) value below which a fraction q of the values fall.
+	 * @param	q	the fraction, in [0,1]
+	 * @return	the smallest value kept whose (estimated) rank is at least q times the number of values; NaN if empty
+	 */
+	public double quantile(double q) {
+		return valueAt(q * n);
+	}
+
+	/**
+	 * ValueAt - the (approximate) value of a given rank; exact as long as no values have been compacted.
+	 * @param	rank	the rank, from 1 (the smallest value) to the number of values
+	 * @return	the smallest value kept whose (estimated) rank is at least rank; NaN if empty
+	 */
+	public double valueAt(double rank) {
+		if (n == 0)
+			return Double.NaN;
+		double v[] = new double[kept];
+		long w[] = new long[kept];
+		Integer order[] = new Integer[kept];
+		int c = 0;
+		for (int h = 0; h < H; h++) {
+			for (int i = 0; i < size[h]; i++) {
+				v[c] = items[h][i];
+				w[c] = 1L << h;
+				order[c] = c;
+				c++;
+			}
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(v[a], v[b]));
+		long sum = 0;
+		for (int i = 0; i < c; i++) {
+			sum += w[order[i]];
+			if (sum >= rank)
+				return v[order[i]];
+		}
+		return v[order[c - 1]];
+	}
+
+}
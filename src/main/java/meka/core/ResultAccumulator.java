@@ -0,0 +1,525 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.core;
+
+import weka.core.Instance;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * ResultAccumulator.java - Evaluation statistics of a stream of predictions, kept up to date as predictions come in,
+ * so that they can be sampled at any time without storing (and re-evaluating) all predictions, as a Result does.
+ * <br>
+ * Either cumulative, i.e., over all predictions since the start, or over a sliding window of the most recent
+ * predictions. Cumulative statistics are sums over instances and per-label counts, so memory and the cost of
+ * sampling do not depend on the number of predictions (except for the log loss limited by D, see below); they are
+ * the same as those of
+ * {@link MLEvalUtils#getMLStats(double[][], int[][], double[], String)} (and getMTStats), except for those that
+ * need all predictions (AUPRC, AUROC and the curve data), which are left out. The predictions are thresholded
+ * when they are added, with the thresholds at that time. A sliding window keeps the last predictions in a
+ * ring buffer and computes all statistics over them with MLEvalUtils when sampled.
+ * <br>
+ * The log loss limited by D caps each loss at log(n), for the number of instances n at the time of sampling. To
+ * give the same value as Metrics.L_LogLossD, the (finite) losses that are still above log(n) are kept until n has
+ * grown past them, so that memory is O(number of losses above log(n)), i.e., of confident mistakes (a confidence
+ * below 1/n for a relevant label, or above 1 - 1/n for an irrelevant one). Losses above log(Integer.MAX_VALUE)
+ * are always capped, and only counted.
+ *
+ * @see Result
+ * @see MLEvalUtils
+ */
+public class ResultAccumulator implements Serializable {
+
+	private static final long serialVersionUID = -4207353623150711235L;
+
+	/** multi-target (or multi-label) */
+	protected boolean mt;
+
+	/** the threshold option (multi-label only) */
+	protected String threshold;
+
+	/** the thresholds, one per label (multi-label only) */
+	protected double t[] = null;
+
+	/** the number of labels (targets), set by the first prediction */
+	protected int L = -1;
+
+	/** the size of the sliding window, 0 for cumulative statistics */
+	protected int windowSize;
+
+	// sliding window
+
+	protected double window_pred[][] = null;
+	protected int window_true[][] = null;
+	protected int next = 0;
+
+	// cumulative statistics over instances
+
+	/** the number of instances */
+	protected int N = 0;
+	/** the number of instances that do not have all labels missing */
+	protected int n = 0;
+	/** the number of missing label values */
+	protected int missing = 0;
+
+	protected double accuracy = 0.0;
+	protected double hamming = 0.0;
+	protected int hammingN = 0;
+	protected double zeroOne = 0.0;
+	protected int zeroOneN = 0;
+	protected double harmonic = 0.0;
+	protected int harmonicN = 0;
+	protected int oneError = 0;
+	protected double rankLoss = 0.0;
+	protected double avgPrecision = 0.0;
+	protected double logLossL = 0.0;
+	protected double f1D = 0.0;
+	protected double levenshtein = 0.0;
+	protected int emptyPredicted = 0;
+
+	/** the largest limit log(n) there can be (n is an int) */
+	protected static final double LOG_MAX_N = Math.log((double)Integer.MAX_VALUE);
+	/** the log losses (limited by D) that are below the current limit log(n), summed */
+	protected double logLossD = 0.0;
+	/** the log losses above the current limit log(n), which may still fall below it as n grows (all kept) */
+	protected PriorityQueue<Double> logLossDAbove = new PriorityQueue<Double>();
+	/** the number of log losses that are always at the limit: infinite, or above log(Integer.MAX_VALUE) */
+	protected int logLossDInf = 0;
+
+	// cumulative statistics over labels
+
+	protected int tp = 0, fp = 0, fn = 0;
+	protected int nonMissing = 0;
+	protected int TP[], FP[], FN[];
+	/** number of (non-missing) values of each label */
+	protected int Nj[];
+	/** number of wrong (non-missing) values of each label */
+	protected int Ej[];
+	/** number of true 0s/1s of each label, and how many of them are predicted correctly */
+	protected int N0[], N1[], C0[], C1[];
+	/** sum of the true (including missing, as -1) and predicted values of each label */
+	protected double sumTrue[], sumPred[];
+
+	/**
+	 * Cumulative statistics.
+	 * @param	type		the type of evaluation, "ML" or "MT" (as the "Type" info of a Result)
+	 * @param	threshold	the threshold option, e.g., "0.5" or "[0.1, 0.5, 0.3]" (multi-label only)
+	 */
+	public ResultAccumulator(String type, String threshold) {
+		this(type, threshold, 0);
+	}
+
+	/**
+	 * Statistics over a sliding window.
+	 * @param	type		the type of evaluation, "ML" or "MT" (as the "Type" info of a Result)
+	 * @param	threshold	the threshold option, e.g., "0.5" or "[0.1, 0.5, 0.3]" (multi-label only)
+	 * @param	windowSize	the number of most recent predictions to evaluate, 0 for all (cumulative)
+	 */
+	public ResultAccumulator(String type, String threshold, int windowSize) {
+		this.mt = type.startsWith("MT");
+		this.threshold = threshold;
+		this.windowSize = windowSize;
+	}
+
+	/** Whether the statistics are over a sliding window, rather than cumulative. */
+	public boolean isWindowed() {
+		return windowSize > 0;
+	}
+
+	/** The number of predictions the statistics are over. */
+	public int size() {
+		return isWindowed() ? Math.min(N, windowSize) : N;
+	}
+
+	/**
+	 * SetThreshold - Set the threshold option for the predictions added from now on (multi-label only).
+	 */
+	public void setThreshold(String threshold) {
+		this.threshold = threshold;
+		if (L >= 0)
+			t = ThresholdUtils.thresholdStringToArray(threshold, L);
+	}
+
+	/**
+	 * AddResult - Add an entry.
+	 * @param pred	predictions
+	 * @param real  an instance containing the true label values
+	 */
+	public void addResult(double pred[], Instance real) {
+		addResult(pred, MLUtils.toIntArray(real, pred.length));
+	}
+
+	/**
+	 * AddResult - Add an entry.
+	 * @param pred	predictions
+	 * @param y		the true label values (-1 for missing)
+	 */
+	public void addResult(double pred[], int y[]) {
+		if (L < 0)
+			init(y.length);
+
+		if (isWindowed()) {
+			window_pred[next] = pred;
+			window_true[next] = y;
+			next = (next + 1) % windowSize;
+			N++;
+			return;
+		}
+
+		int ypred[] = new int[L];
+		for(int j = 0; j < L; j++)
+			ypred[j] = mt ? (int)Math.round(pred[j]) : ((pred[j] >= t[j]) ? 1 : 0);
+
+		N++;
+		for(int j = 0; j < L; j++) {
+			if (y[j] == -1)
+				missing++;
+		}
+
+		if (!Metrics.allMissing(y)) {
+			n++;
+			accuracy += Metrics.P_Accuracy(y, ypred);
+			double h = Metrics.L_Hamming(y, ypred);
+			if (!Double.isNaN(h)) {
+				hamming += h;
+				hammingN++;
+			}
+			double z = Metrics.L_ZeroOne(y, ypred);
+			if (!Double.isNaN(z)) {
+				zeroOne += z;
+				zeroOneN++;
+			}
+			levenshtein += Metrics.L_LevenshteinDistance(y, ypred);
+			if (!mt)
+				addRanking(pred, y, ypred);
+		}
+
+		if (mt) {
+			for(int j = 0; j < L; j++) {
+				if (y[j] != -1 && ypred[j] != -1) {
+					Nj[j]++;
+					if (y[j] != ypred[j])
+						Ej[j]++;
+				}
+			}
+			return;
+		}
+
+		int sum = 0;
+		for(int j = 0; j < L; j++) {
+			sum += ypred[j];
+			sumTrue[j] += y[j];
+			sumPred[j] += ypred[j];
+			if (y[j] == -1)
+				continue;
+			nonMissing++;
+			if (ypred[j] == 1 && y[j] == 1) {
+				tp++;
+				TP[j]++;
+			}
+			else if (ypred[j] == 1 && y[j] == 0) {
+				fp++;
+				FP[j]++;
+			}
+			else if (ypred[j] == 0 && y[j] == 1) {
+				fn++;
+				FN[j]++;
+			}
+			if (ypred[j] == -1)
+				continue;
+			Nj[j]++;
+			if (y[j] != ypred[j])
+				Ej[j]++;
+			if (y[j] == 0) {
+				N0[j]++;
+				if (ypred[j] == 0)
+					C0[j]++;
+			}
+			else if (y[j] == 1) {
+				N1[j]++;
+				if (ypred[j] == 1)
+					C1[j]++;
+			}
+		}
+		if (sum <= 0)
+			emptyPredicted++;
+	}
+
+	/**
+	 * The statistics of an instance (with not all labels missing) that need the confidences (multi-label only).
+	 */
+	protected void addRanking(double pred[], int y[], int ypred[]) {
+		double h = Metrics.P_Harmonic(y, ypred);
+		if (!Double.isNaN(h)) {
+			harmonic += h;
+			harmonicN++;
+		}
+		if (y[Utils.maxIndex(pred)] == 0)
+			oneError++;
+		rankLoss += Metrics.L_RankLoss(y, pred);
+		avgPrecision += Metrics.P_AveragePrecision(y, pred);
+		f1D += Metrics.F1(y, ypred);
+
+		double limitL = Math.log((double)L);
+		double limitD = Math.log((double)n);
+		for(int j = 0; j < L; j++) {
+			if (y[j] == -1)
+				continue;
+			logLossL += Metrics.L_LogLoss(y[j], pred[j], limitL);
+			double loss = Metrics.L_LogLoss(y[j], pred[j], Double.POSITIVE_INFINITY);
+			if (loss > LOG_MAX_N)
+				logLossDInf++;
+			else if (loss <= limitD)
+				logLossD += loss;
+			else
+				logLossDAbove.add(loss);
+		}
+	}
+
+	protected void init(int L) {
+		this.L = L;
+		if (!mt)
+			t = ThresholdUtils.thresholdStringToArray(threshold, L);
+		if (isWindowed()) {
+			window_pred = new double[windowSize][];
+			window_true = new int[windowSize][];
+			return;
+		}
+		TP = new int[L];
+		FP = new int[L];
+		FN = new int[L];
+		Nj = new int[L];
+		Ej = new int[L];
+		N0 = new int[L];
+		N1 = new int[L];
+		C0 = new int[L];
+		C1 = new int[L];
+		sumTrue = new double[L];
+		sumPred = new double[L];
+	}
+
+	/**
+	 * GetStats - The evaluation statistics of the predictions added so far (in the window).
+	 * @param	vop		the verbosity option, e.g. "5"
+	 * @return	the evaluation statistics, with the same keys as the ones of MLEvalUtils
+	 */
+	public HashMap<String,Object> getStats(String vop) {
+		if (isWindowed())
+			return getWindowStats(vop);
+		else if (mt)
+			return getMTStats(vop);
+		else
+			return getMLStats(vop);
+	}
+
+	/**
+	 * GetWindowStats - The statistics of the predictions in the window, in the order in which they were added.
+	 */
+	protected HashMap<String,Object> getWindowStats(String vop) {
+		int size = size();
+		double Rpred[][] = new double[size][];
+		int Y[][] = new int[size][];
+		int first = (N <= windowSize) ? 0 : next;
+		for(int i = 0; i < size; i++) {
+			Rpred[i] = window_pred[(first + i) % windowSize];
+			Y[i] = window_true[(first + i) % windowSize];
+		}
+		if (mt)
+			return MLEvalUtils.getMTStats(Rpred, Y, vop);
+		else
+			return MLEvalUtils.getMLStats(Rpred, Y, threshold, vop);
+	}
+
+	/** the mean of the given sum over count entries, NaN if there are none (as Metrics). */
+	protected static double mean(double sum, int count) {
+		return count == 0 ? Double.NaN : sum / (double)count;
+	}
+
+	/** Precision, as Metrics.P_Precision: NaN if all labels are missing, 0 if nothing was predicted. */
+	protected static double precision(int tp, int fp, int nonMissing) {
+		if (nonMissing == 0)
+			return Double.NaN;
+		if (tp == 0 && fp == 0)
+			return 0.0;
+		return (double)tp / (double)(tp + fp);
+	}
+
+	/** Recall, as Metrics.P_Recall: NaN if all labels are missing, 0 if nothing was relevant. */
+	protected static double recall(int tp, int fn, int nonMissing) {
+		if (nonMissing == 0)
+			return Double.NaN;
+		if (tp == 0 && fn == 0)
+			return 0.0;
+		return (double)tp / (double)(tp + fn);
+	}
+
+	/** The log loss limited by the number of instances, as Metrics.L_LogLossD. */
+	protected double logLossD() {
+		if (n == 0)
+			return Double.NaN;
+		double limit = Math.log((double)n);
+		while (!logLossDAbove.isEmpty() && logLossDAbove.peek() <= limit)
+			logLossD += logLossDAbove.poll();
+		double loss = logLossD + limit * (logLossDAbove.size() + logLossDInf);
+		return loss / (((double)n * (double)L) - (double)missing);
+	}
+
+	protected HashMap<String,Object> getMLStats(String vop) {
+
+		int V = MLUtils.getIntegerOption(vop,1); // default 1
+
+		HashMap<String,Object> results = new LinkedHashMap<String,Object>();
+
+		double acc = accuracy / (double)n;
+		double ham = hamming / (double)hammingN;
+
+		results.put("Number of test instances (N)"			,(int)N);
+		results.put("Accuracy"			,acc);
+		results.put("Jaccard index"		,acc);
+		results.put("Hamming score"		,1. - ham);
+		results.put("Exact match"		,1. - zeroOne / (double)zeroOneN);
+
+		if (V > 1) {
+
+			double p = precision(tp, fp, nonMissing);
+			double r = recall(tp, fn, nonMissing);
+
+			int missingL = 0;
+			double macroP = 0.0, macroR = 0.0, F = 0.0;
+			for(int j = 0; j < L; j++) {
+				if (Nj[j] == 0) {
+					// all values of the label missing
+					missingL++;
+					continue;
+				}
+				double p_j = precision(TP[j], FP[j], Nj[j]);
+				if (!Double.isNaN(p_j))
+					macroP += p_j;
+				double r_j = recall(TP[j], FN[j], Nj[j]);
+				if (!Double.isNaN(r_j))
+					macroR += r_j;
+				if (TP[j] > 0) {
+					double prec = (double)TP[j] / ((double)TP[j]+(double)FP[j]);
+					double rec = (double)TP[j] / ((double)TP[j]+(double)FN[j]);
+					F += 2 * ((prec*rec) / (prec+rec));
+				}
+			}
+
+			results.put("Jaccard distance"	,1. - acc);
+			results.put("Hamming loss"		,ham);
+			results.put("ZeroOne loss"		,zeroOne / (double)zeroOneN);
+			results.put("Harmonic score"	,harmonic / (double)harmonicN);
+			results.put("One error"			,mean(oneError, n));
+			results.put("Rank loss"			,rankLoss / (double)n);
+			results.put("Avg precision"		,avgPrecision / (double)n);
+			results.put("Log Loss (lim. L)"	,n == 0 ? Double.NaN : logLossL / (((double)n * (double)L) - (double)missing));
+			results.put("Log Loss (lim. D)"	,logLossD());
+			if (V > 3) {
+				results.put("Micro Precision"		,p);
+				results.put("Micro Recall"			,r);
+				results.put("Macro Precision"		,mean(macroP, L - missingL));
+				results.put("Macro Recall"			,mean(macroR, L - missingL));
+			}
+			double f1 = Double.NaN;
+			if (!Double.isNaN(p) && !Double.isNaN(r))
+				f1 = (p == 0.0 && r == 0.0) ? 0.0 : 2. * p * r / (p + r);
+			results.put("F1 (micro averaged)"				,f1);
+			results.put("F1 (macro averaged by example)"	,mean(f1D, n));
+			results.put("F1 (macro averaged by label)"		,mean(F, L - missingL));
+
+			if (V > 2) {
+				results.put("Label indices              "	,A.make_sequence(L));
+				double HL[] = new double[L];
+				double HA[] = new double[L];
+				double Pr[] = new double[L];
+				double Re[] = new double[L];
+				for(int j = 0; j < L; j++) {
+					HL[j] = 1. - mean(Ej[j], Nj[j]);
+					double acc0 = (double)C0[j] / (double)N0[j];
+					double acc1 = (double)C1[j] / (double)N1[j];
+					HA[j] = 2. / ((1. / acc0) + (1. / acc1));
+					Pr[j] = precision(TP[j], FP[j], Nj[j]);
+					Re[j] = recall(TP[j], FN[j], Nj[j]);
+				}
+				results.put("Accuracy (per label)"	        ,HL);
+				if (V > 3) {
+					results.put("Harmonic (per label)"	    ,HA);
+					results.put("Precision (per label)"	    ,Pr);
+					results.put("Recall (per label)"		,Re);
+				}
+			}
+
+			if (V > 2) {
+				double cardTrue = 0.0, cardPred = 0.0;
+				for(int j = 0; j < L; j++) {
+					cardTrue += sumTrue[j];
+					cardPred += sumPred[j];
+				}
+				results.put("Empty labelvectors (predicted)"	,(double)emptyPredicted/(double)N);
+				results.put("Label cardinality (predicted)"		,cardPred/(double)N);
+				results.put("Levenshtein distance", mean(levenshtein, n));
+				if (V > 3) {
+					// Label cardinality
+					results.put("Label cardinality (difference)"		,cardTrue/(double)N-cardPred/(double)N);
+					double diff_LC[] = new double[L];
+					double true_LC[] = new double[L];
+					double pred_LC[] = new double[L];
+					for(int j = 0; j < L; j++) {
+						true_LC[j] = sumTrue[j]/(double)N;
+						pred_LC[j] = sumPred[j]/(double)N;
+						diff_LC[j] = true_LC[j] - pred_LC[j];
+					}
+					results.put("avg. relevance (test set)"		,true_LC);
+					results.put("avg. relevance (predicted)     "		,pred_LC);
+					results.put("avg. relevance (difference)     "	,diff_LC);
+				}
+			}
+		}
+		return results;
+	}
+
+	protected HashMap<String,Object> getMTStats(String vop) {
+
+		int V = MLUtils.getIntegerOption(vop,1); // default 1
+
+		HashMap<String,Object> output = new LinkedHashMap<String,Object>();
+		output.put("N(test)"            ,(double)N);
+		output.put("L"					,(double)L);
+		output.put("Hamming score"		,1. - hamming / (double)hammingN);
+		output.put("Exact match"		,1. - zeroOne / (double)zeroOneN);
+
+		if (V > 1) {
+			output.put("Hamming loss"		,hamming / (double)hammingN);
+			output.put("ZeroOne loss"		,zeroOne / (double)zeroOneN);
+		}
+		if (V > 2) {
+			output.put("Levenshtein distance", mean(levenshtein, n));
+
+			double HL[] = new double[L];
+			for(int j = 0; j < L; j++) {
+				HL[j] = 1. - mean(Ej[j], Nj[j]);
+			}
+			output.put("Label indices              "	,A.make_sequence(L));
+			output.put("Accuracy (per label)"	        ,HL);
+		}
+		return output;
+	}
+
+}
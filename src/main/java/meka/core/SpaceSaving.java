@@ -0,0 +1,188 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package meka.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * SpaceSaving.java - Counts the most frequent items of a stream (e.g., labelsets) in bounded memory.
+ * <br>
+ * At most <code>capacity</code> items are counted. When a new item arrives and all counters are in use, it takes
+ * over the counter of the least frequent item, and its count starts from there; so counts are overestimated by at
+ * most the count taken over (kept as the error of the item), and any item occurring more than N/capacity times in
+ * a stream of N items is counted. As long as there are no more distinct items than counters, the counts are exact.
+ * The counters are kept in a min-heap, so that an update costs O(log capacity).
+ * <br>
+ * See: Metwally, Agrawal, El Abbadi. <i>Efficient Computation of Frequent and Top-k Elements in Data Streams</i>. ICDT 2005.
+ */
+public class SpaceSaving<K> implements Serializable {
+
+	private static final long serialVersionUID = 5412780340264734135L;
+
+	/** the items, as a min-heap on their counts */
+	protected Object items[];
+
+	/** the (estimated) counts, in heap order */
+	protected int counts[];
+
+	/** the overestimation of the counts, in heap order */
+	protected int errors[];
+
+	/** the position of each item in the heap */
+	protected HashMap<K,Integer> pos;
+
+	/** the number of counters in use */
+	protected int size = 0;
+
+	/** the number of items counted */
+	protected long total = 0;
+
+	/**
+	 * SpaceSaving.
+	 * @param	capacity	the number of counters (items kept)
+	 */
+	public SpaceSaving(int capacity) {
+		items = new Object[capacity];
+		counts = new int[capacity];
+		errors = new int[capacity];
+		pos = new HashMap<K,Integer>(2 * capacity);
+	}
+
+	/**
+	 * Add - count an occurrence of an item.
+	 */
+	public void add(K item) {
+		add(item, 1);
+	}
+
+	/**
+	 * Add - count c occurrences of an item.
+	 */
+	public void add(K item, int c) {
+		total += c;
+		Integer i = pos.get(item);
+		if (i != null) {
+			counts[i] += c;
+			down(i);
+		}
+		else if (size < items.length) {
+			items[size] = item;
+			counts[size] = c;
+			errors[size] = 0;
+			pos.put(item, size);
+			up(size++);
+		}
+		else if (size > 0) {
+			// take over the least frequent counter
+			pos.remove(items[0]);
+			items[0] = item;
+			errors[0] = counts[0];
+			counts[0] += c;
+			pos.put(item, 0);
+			down(0);
+		}
+	}
+
+	/** the (estimated) count of an item, 0 if it is not counted */
+	public int count(K item) {
+		Integer i = pos.get(item);
+		return (i == null) ? 0 : counts[i];
+	}
+
+	/** the maximum overestimation of the count of an item */
+	public int error(K item) {
+		Integer i = pos.get(item);
+		return (i == null) ? 0 : errors[i];
+	}
+
+	/** the number of items counted */
+	public int size() {
+		return size;
+	}
+
+	/** the number of counters */
+	public int capacity() {
+		return items.length;
+	}
+
+	/** the number of occurrences seen */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * Top - the k most frequent items, most frequent first.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<K> top(int k) {
+		Integer order[] = new Integer[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+		List<K> result = new ArrayList<K>(Math.min(k, size));
+		for (int i = 0; i < Math.min(k, size); i++)
+			result.add((K)items[order[i]]);
+		return result;
+	}
+
+	/**
+	 * ToMap - the items counted and their (estimated) counts.
+	 */
+	@SuppressWarnings("unchecked")
+	public HashMap<K,Integer> toMap() {
+		HashMap<K,Integer> map = new HashMap<K,Integer>(2 * size);
+		for (int i = 0; i < size; i++)
+			map.put((K)items[i], counts[i]);
+		return map;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void swap(int i, int j) {
+		Object o = items[i]; items[i] = items[j]; items[j] = o;
+		int c = counts[i]; counts[i] = counts[j]; counts[j] = c;
+		int e = errors[i]; errors[i] = errors[j]; errors[j] = e;
+		pos.put((K)items[i], i);
+		pos.put((K)items[j], j);
+	}
+
+	protected void up(int i) {
+		while (i > 0) {
+			int p = (i - 1) / 2;
+			if (counts[p] <= counts[i])
+				break;
+			swap(i, p);
+			i = p;
+		}
+	}
+
+	protected void down(int i) {
+		while (true) {
+			int l = 2 * i + 1;
+			if (l >= size)
+				break;
+			int m = (l + 1 < size && counts[l + 1] < counts[l]) ? l + 1 : l;
+			if (counts[i] <= counts[m])
+				break;
+			swap(i, m);
+			i = m;
+		}
+	}
+
+}
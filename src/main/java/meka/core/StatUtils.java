@@ -18,13 +18,21 @@ package meka.core;
 import meka.classifiers.multilabel.BR;
 import meka.classifiers.multilabel.Evaluation;
 import meka.classifiers.multilabel.MultiLabelClassifier;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.functions.SMO;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 /**
  * StatUtils - Helpful statistical functions.
@@ -651,78 +659,106 @@ public abstract class StatUtils {
 		return M;
 	}
 
-	// A bit of a useless function -- get rid of it somehow?
-	private static double[] fillError(Result result, int L) {
-
-		double Yprob[][] = result.allPredictions(); 
-		int Ytrue[][] = result.allTrueValues();
+	/**
+	 * CondDepMatrix - Get a Conditional Dependency Matrix.
+	 * Based on Zhang's 'LEAD' approach, where<br>
+	 * the probability of labels j and k both getting errors on the same instance is error(j)*error(k)
+	 * if the actual co-occurence is otherwise. 
+	 * @param	D	dataset
+	 * @param	result	the evaluation of independent models on D
+	 * @return a L*L matrix of Unconditional Depndence.
+	 */
+	public static double[][] condDepMatrix(Instances D, Result result) {
+		int L = D.classIndex();
 		int Ypred[][] = null;
 		if (result.getInfo("Type").equals("MT")) {
 			// Multi-target, so just round!
-			Ypred = ThresholdUtils.round(Yprob);
+			Ypred = ThresholdUtils.round(result.allPredictions());
 		}
 		else {
-			double ts[] = ThresholdUtils.thresholdStringToArray(result.getInfo("Threshold"),L); 
-			Ypred = ThresholdUtils.threshold(Yprob,ts);
+			double ts[] = ThresholdUtils.thresholdStringToArray(result.getInfo("Threshold"),L);
+			Ypred = ThresholdUtils.threshold(result.allPredictions(),ts);
 		}
-
-		double E[] = new double[L];
-		for(int j = 0; j < L; j++) {
-			//E[j] = 1.0 - result.output.get("Accuracy["+j+"]");
-			E[j] = Metrics.P_Hamming(Ytrue,Ypred,j);
+		try {
+			return condDepMatrix(D, result.allPredictions(), Ypred, ThreadUtils.SEQUENTIAL);
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			// only thrown by the threads, and there are none
+			throw new IllegalStateException(e);
 		}
-		return E;
 	}
 
 	/**
-	 * CondDepMatrix - Get a Conditional Dependency Matrix.
-	 * Based on Zhang's 'LEAD' approach, where<br>
-	 * the probability of labels j and k both getting errors on the same instance is error(j)*error(k)
-	 * if the actual co-occurence is otherwise. 
-	 * @param	D	dataset
+	 * CondDepMatrix - Get a Conditional Dependency Matrix, as above, directly from the predictions.
+	 * The error types of each pair of labels are counted on a (primitive) residual matrix, 
+	 * with the pairs split up by their first label across up to <code>numThreads</code> threads.
+	 * @param	D			dataset
+	 * @param	Yprob		the predictions (confidences) for D
+	 * @param	Ypred		the predictions used for measuring the expected error of each label
+	 * @param	numThreads	the number of threads to use (-1 for # of cores/cpus)
 	 * @return a L*L matrix of Unconditional Depndence.
 	 */
-	public static double[][] condDepMatrix(Instances D, Result result) {
+	public static double[][] condDepMatrix(Instances D, double Yprob[][], int Ypred[][], int numThreads) throws Exception {
 
-		int L = D.classIndex();
-		int N = D.numInstances();
-		double T[][] = MLUtils.getYfromD(D);						// Output (TEACHER)
-		double Y[][] = MatrixUtils.threshold(result.allPredictions(), 0.5);	// Output (PREDICTED)
-		result.output = Result.getStats(result,"6");	            // <-- high verbosity, because we need individual accuracies				
-		double E[] = fillError(result, L);							// Errors (EXPECTED)
-		double F[][][] = new double[3][L][L];						// Errors (ACTUAL)
-		// Find the actual co-occurence ...
+		final int L = D.classIndex();
+		final int N = D.numInstances();
+
+		// Errors (EXPECTED)
+		int Ytrue[][] = new int[N][];
+		for(int i = 0; i < N; i++) {
+			Ytrue[i] = MLUtils.toIntArray(D.instance(i),L);
+		}
+		final double E[] = new double[L];
+		for(int j = 0; j < L; j++) {
+			E[j] = Metrics.P_Hamming(Ytrue,Ypred,j);
+		}
+
+		// Correct (or not), label-wise
+		final boolean C[][] = new boolean[L][N];
 		for(int i = 0; i < N; i++) {
-			int y[] = A.toIntArray(Y[i],0.5); 					// predicted
-			int t[] = A.toIntArray(T[i],0.5);					// actual (teacher)
 			for(int j = 0; j < L; j++) {
-				for(int k = j+1; k < L; k++) {
-					if (y[j] != t[j] && y[k] != t[k]) {
-						// if j incorrect and k also ...
-						F[0][j][k]++;								// error type 0
-					}
-					else if (y[j] == t[j] && t[k] == y[k]) {
-						// both are correct
-						F[2][j][k]++;								// error type 2
-					}
-					else {
-						// if only one is correct
-						F[1][j][k]++;								// error type 1
-					}
-				}
+				int y = (Yprob[i][j] > 0.5) ? 1 : 0; 				// predicted
+				int t = (D.instance(i).value(j) >= 0.5) ? 1 : 0;	// actual (teacher)
+				C[j][i] = (y == t);
 			}
 		}
 
-		// Un-Normalize with the Expected error
-		double E_norm[][][] = new double[3][L][L];
+		// Errors (ACTUAL) against the expected ones, chi^2 (as in chi2(double[][][],double[][][]))
+		List<Callable<double[]>> jobs = new ArrayList<Callable<double[]>>(L);
 		for(int j = 0; j < L; j++) {
-			for(int k = j+1; k < L; k++) {
-				E_norm[0][j][k] = N * (E[j] * E[k]);
-				E_norm[2][j][k] = N * ((1.0 - E[k]) * (1.0 - E[j]));
-				E_norm[1][j][k] = N * ( (E[j] * (1.0 - E[k])) + (1.0 - E[j]) * E[k]);
-			}
+			final int j_ = j;
+			jobs.add(new Callable<double[]>() {
+				@Override
+				public double[] call() {
+					double V[] = new double[L];
+					for(int k = j_+1; k < L; k++) {
+						int F[] = new int[3];
+						for(int i = 0; i < N; i++) {
+							if (!C[j_][i] && !C[k][i])
+								F[0]++;								// error type 0: both incorrect
+							else if (C[j_][i] && C[k][i])
+								F[2]++;								// error type 2: both correct
+							else
+								F[1]++;								// error type 1: only one is correct
+						}
+						double Exp[] = new double[]{
+							N * (E[j_] * E[k]),
+							N * ( (E[j_] * (1.0 - E[k])) + (1.0 - E[j_]) * E[k]),
+							N * ((1.0 - E[k]) * (1.0 - E[j_]))
+						};
+						for(int v = 0; v < 3; v++) {
+							V[k] += ( ((F[v] - Exp[v]) * (F[v] - Exp[v])) / Exp[v] );
+						}
+						V[k] -= CRITICAL[2];
+					}
+					return V;
+				}
+			});
 		}
-		return StatUtils.chi2(F,E_norm);
+		return ThreadUtils.invokeAll(jobs, numThreads).toArray(new double[L][]);
 	}
 
 	/**
@@ -762,6 +798,64 @@ public abstract class StatUtils {
 		return X;
 	}
 
+	/**
+	 * LEAD. 
+	 * As LEAD2(Instances,Result), but directly from the predictions (confidences) Ypred for D. 
+	 * The label-pairs are tested on a (primitive) residual matrix, split up by their first label 
+	 * across up to <code>numThreads</code> threads.
+	 */
+	public static double[][] LEAD2 (Instances D, double Ypred[][], int numThreads) throws Exception {
+
+		final int L = D.classIndex();
+		final int N = D.numInstances();
+
+		// Error (-1, 0, or +1), label-wise
+		final int R[][] = new int[L][N];
+		for(int i = 0; i < N; i++) {
+			for(int j = 0; j < L; j++) {
+				double y_ = (Ypred[i][j] > 0.5) ? 1. : 0.;
+				R[j][i] = (int)Math.round(D.instance(i).value(j) - y_);
+			}
+		}
+		// Counts of each error (for each j)
+		final int C[][] = new int[L][3];
+		for(int j = 0; j < L; j++) {
+			for(int i = 0; i < N; i++) {
+				if (R[j][i] >= -1 && R[j][i] <= 1)
+					C[j][R[j][i]+1]++;
+			}
+		}
+
+		List<Callable<double[]>> jobs = new ArrayList<Callable<double[]>>(L);
+		for(int j = 0; j < L; j++) {
+			final int j_ = j;
+			jobs.add(new Callable<double[]>() {
+				@Override
+				public double[] call() {
+					double X[] = new double[L];
+					for(int k = j_+1; k < L; k++) {
+						// joint counts of each error
+						int C_jk[] = new int[3];
+						for(int i = 0; i < N; i++) {
+							if (R[j_][i] == R[k][i] && R[j_][i] >= -1 && R[j_][i] <= 1)
+								C_jk[R[j_][i]+1]++;
+						}
+						for(int v : new int[]{0,1,-1}) { 
+							double p_j = (0.0001 + C[j_][v+1]) / N;			// prior
+							double p_k = (0.0001 + C[k][v+1]) / N;			// prior
+							double p_jk = (0.0001 + C_jk[v+1]) / N;			// joint
+							double Exp = p_j * p_k;							// expected
+							X[k] += ( ((p_jk - Exp) * (p_jk - Exp)) / Exp );	// calc.
+						}
+						X[k] -= CRITICAL[1];
+					}
+					return X;
+				}
+			});
+		}
+		return ThreadUtils.invokeAll(jobs, numThreads).toArray(new double[L][]);
+	}
+
 	/**
 	 * LEAD - Performs LEAD on dataset 'D', with corresponding gresult 'R', and dependency measurement type 'MDType'.
 	 */
@@ -795,14 +889,124 @@ public abstract class StatUtils {
 	 * WARNING: changing this method will affect the perfomance of e.g., BCC -- on the other hand the original BCC paper did not use LEAD, so don't worry.
 	 */
 	public static double[][] LEAD(Instances D, Classifier h, Random r)  throws Exception {
+		return LEAD(D,h,r,ThreadUtils.SEQUENTIAL);
+	}
+
+	/**
+	 * LEAD - Performs LEAD on dataset 'D', using BR with base classifier 'h', under random seed 'r'.
+	 * The BR models are built (and evaluated) on up to 'numThreads' threads.
+	 */
+	public static double[][] LEAD(Instances D, Classifier h, Random r, int numThreads)  throws Exception {
 		Instances D_r = new Instances(D);
 		D_r.randomize(r);
 		Instances D_train = new Instances(D_r,0,D_r.numInstances()*60/100);
 		Instances D_test = new Instances(D_r,D_train.numInstances(),D_r.numInstances()-D_train.numInstances());
-		BR br = new BR();
-		br.setClassifier(h);
-		Result result = Evaluation.evaluateModel((MultiLabelClassifier)br,D_train,D_test,"PCut1","1");
-		return LEAD2(D_test,result);
+		double Ypred[][] = independentPredictions(h,D_train,D_test,false,numThreads);
+		return LEAD2(D_test,Ypred,numThreads);
+	}
+
+	/**
+	 * LEAD - Performs LEAD on dataset 'D', using BR with base classifier 'h', under random seed 'seed'.
+	 * If 'cache' is set, the matrix is kept (see #getCachedLEAD(String)), and re-used next time for the same data, classifier setup and seed.
+	 */
+	public static double[][] LEAD(Instances D, Classifier h, long seed, int numThreads, boolean cache)  throws Exception {
+		String key = null;
+		if (cache) {
+			key = getLEADCacheKey("LEAD",D,h,seed);
+			double CD[][] = getCachedLEAD(key);
+			if (CD != null)
+				return CD;
+		}
+		double CD[][] = LEAD(D,h,new Random(seed),numThreads);
+		if (cache)
+			putCachedLEAD(key,CD);
+		return CD;
+	}
+
+	/**
+	 * IndependentPredictions - Build a copy of 'h' for each label of 'D_train' (on its own), and get its predictions on 'D_test'.
+	 * In the multi-label case (as BR) these are P(y_j = 1|x), in the multi-target case (as CR) the confidence in the most likely value of y_j.
+	 * I.e., the predictions that Evaluation would give back for BR (resp. CR). The labels are dealt with on up to 'numThreads' threads.
+	 * @param	h			base classifier
+	 * @param	D_train		training data
+	 * @param	D_test		test data
+	 * @param	mt			multi-target (else multi-label)
+	 * @param	numThreads	the number of threads to use (-1 for # of cores/cpus)
+	 * @return	the N_test * L predictions
+	 */
+	public static double[][] independentPredictions(final Classifier h, final Instances D_train, final Instances D_test, final boolean mt, int numThreads) throws Exception {
+		final int L = D_train.classIndex();
+		final int N = D_test.numInstances();
+		final double Y[][] = new double[N][L];
+
+		List<Callable<Void>> jobs = new ArrayList<Callable<Void>>(L);
+		for(int j = 0; j < L; j++) {
+			final int j_ = j;
+			jobs.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Instances D_j = mt ? MLUtils.keepAttributesAt(new Instances(D_train),new int[]{j_},L) : F.keepLabels(new Instances(D_train),L,new int[]{j_});
+					D_j.setClassIndex(0);
+					Classifier h_j = AbstractClassifier.makeCopy(h);
+					h_j.buildClassifier(D_j);
+					Instances T_j = mt ? MLUtils.keepAttributesAt(new Instances(D_test),new int[]{j_},L) : F.keepLabels(new Instances(D_test),L,new int[]{j_});
+					T_j.setClassIndex(0);
+					for(int i = 0; i < N; i++) {
+						// No cheating allowed; clear the class information
+						Instance x = T_j.instance(i);
+						x.setValue(0,0.0);
+						double w[] = h_j.distributionForInstance(x);
+						Y[i][j_] = mt ? w[Utils.maxIndex(w)] : w[1];
+					}
+					return null;
+				}
+			});
+		}
+		ThreadUtils.invokeAll(jobs, numThreads);
+		return Y;
+	}
+
+	/** The maximum number of matrices kept in the LEAD cache. */
+	public static final int LEAD_CACHE_SIZE = 32;
+
+	/** The LEAD cache (least-recently used matrices get dropped first). */
+	private static final Map<String,double[][]> LEAD_CACHE = Collections.synchronizedMap(new LinkedHashMap<String,double[][]>(16,0.75f,true) {
+		private static final long serialVersionUID = 4405468389373404524L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,double[][]> eldest) {
+			return size() > LEAD_CACHE_SIZE;
+		}
+	});
+
+	/**
+	 * GetLEADCacheKey - The key to a dependency matrix measured on dataset 'D' with (a copy of) classifier 'h' under random seed 'seed'.
+	 * @param	type	the kind of matrix, e.g., "LEAD"
+	 * @return	a key made up of the dataset fingerprint and the classifier setup
+	 */
+	public static String getLEADCacheKey(String type, Instances D, Classifier h, long seed) {
+		return type + ":" + seed + ":" + Long.toHexString(MLUtils.fingerprint(D)) + ":" + OptionUtils.toCommandLine(h);
+	}
+
+	/**
+	 * GetCachedLEAD - The matrix stored under 'key', or null if there is none.
+	 */
+	public static double[][] getCachedLEAD(String key) {
+		double CD[][] = LEAD_CACHE.get(key);
+		return (CD == null) ? null : MatrixUtils.deep_copy(CD);
+	}
+
+	/**
+	 * PutCachedLEAD - Store (a copy of) matrix 'CD' under 'key'.
+	 */
+	public static void putCachedLEAD(String key, double CD[][]) {
+		LEAD_CACHE.put(key,MatrixUtils.deep_copy(CD));
+	}
+
+	/**
+	 * ClearLEADCache - Drop all matrices from the LEAD cache.
+	 */
+	public static void clearLEADCache() {
+		LEAD_CACHE.clear();
 	}
 
 	public static double[][] LEAD(Instances D, Classifier h, Random r, String MDType)  throws Exception {
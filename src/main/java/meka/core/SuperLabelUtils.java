@@ -449,5 +449,70 @@ public abstract class SuperLabelUtils {
 		return y;
 	}
 
-}
+	/**
+	 * The number of values of each target, e.g., for sizing the tables of votes (see makeVoteTable).
+	 * @param	D	a multi-target dataset (only the header is used)
+	 */
+	public static int[] numValues(Instances D) {
+		int L = D.classIndex();
+		int K[] = new int[L];
+		for(int j = 0; j < L; j++) {
+			K[j] = D.attribute(j).numValues();
+		}
+		return K;
+	}
+
+	/**
+	 * Make a table for the votes of an ensemble: one row for each target j, with one entry for each of its values;
+	 * e.g., votes[j][v]. An entry is NaN until it gets a vote (see addVote), so that, as with a map of the values voted
+	 * for, only those are considered; the table is small, so allocate one per prediction (not shared between threads).
+	 * @param	K	the number of values of each target (see numValues)
+	 * @return	the (empty) table
+	 */
+	public static double[][] makeVoteTable(int K[]) {
+		double votes[][] = new double[K.length][];
+		for(int j = 0; j < K.length; j++) {
+			votes[j] = new double[K[j]];
+			Arrays.fill(votes[j],Double.NaN);
+		}
+		return votes;
+	}
+
+	/** Add a vote of weight w for value v of target j. */
+	public static void addVote(double votes[][], int j, int v, double w) {
+		votes[j][v] = Double.isNaN(votes[j][v]) ? w : votes[j][v] + w;
+	}
+
+	/** The largest vote for a target, 0 if there are none. */
+	public static double maxVote(double votes[]) {
+		double max_v = 0.0;
+		for(int v = 0; v < votes.length; v++) {
+			if (votes[v] > max_v)
+				max_v = votes[v];
+		}
+		return max_v;
+	}
+
+	/**
+	 * Convert a table of votes into a classification, i.e., the value with the most votes for each target, as
+	 * convertVotesToDistributionForInstance(HashMap[]) does: among the values voted for, ties go to the higher value
+	 * (also when all the votes are 0); 0 if there are no votes.
+	 * @see #makeVoteTable(int[])
+	 */
+	public static double[] convertVotesToDistributionForInstance(double votes[][]) {
+		int L = votes.length;
 
+		double y[] = new double[L];
+		for(int j = 0; j < L; j++) {
+			double max_v = 0.0;
+			for(int v = 0; v < votes[j].length; v++) {
+				if (votes[j][v] >= max_v) {	// (never for NaN)
+					y[j] = v;
+					max_v = votes[j][v];
+				}
+			}
+		}
+		return y;
+	}
+
+}
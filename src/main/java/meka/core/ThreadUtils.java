@@ -20,6 +20,14 @@
 
 package meka.core;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * Thread and multi-process related methods.
  *
@@ -74,4 +82,111 @@ public class ThreadUtils {
 	public static boolean isMultiThreaded(int numThreads) {
 		return (ThreadUtils.getActualNumThreads(numThreads, ThreadUtils.getAvailableProcessors()) != ThreadUtils.SEQUENTIAL);
 	}
+
+	/**
+	 * Executes the jobs and returns their results, in the same order as the jobs.
+	 * The jobs get run in the calling thread if only a single thread is to be used,
+	 * otherwise on a fixed pool that gets shut down again before returning.
+	 *
+	 * @param jobs              the jobs to execute
+	 * @param numThreads        the requested number of threads (-1 for # of cores/cpus)
+	 * @return                  the results of the jobs
+	 * @throws Exception        the first exception thrown by any of the jobs
+	 */
+	public static <T> List<T> invokeAll(List<? extends Callable<T>> jobs, int numThreads) throws Exception {
+		List<T>			result;
+		ExecutorService		executor;
+		int			actual;
+
+		actual = getActualNumThreads(numThreads, jobs.size());
+		if ((actual <= SEQUENTIAL) || (jobs.size() <= 1)) {
+			result = new ArrayList<>(jobs.size());
+			for (Callable<T> job : jobs)
+				result.add(job.call());
+			return result;
+		}
+
+		executor = Executors.newFixedThreadPool(actual);
+		try {
+			return invokeAll(jobs, executor);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates a fixed thread pool for repeated use, e.g., across the epochs of an iterative learner.
+	 * The caller is responsible for shutting it down again.
+	 *
+	 * @param numThreads        the requested number of threads (-1 for # of cores/cpus)
+	 * @param maxThreads        the maximum to ask for
+	 * @return                  the pool, null if only a single thread is to be used
+	 */
+	public static ExecutorService newExecutor(int numThreads, int maxThreads) {
+		int	actual;
+
+		actual = getActualNumThreads(numThreads, maxThreads);
+		if (actual <= SEQUENTIAL)
+			return null;
+		return Executors.newFixedThreadPool(actual);
+	}
+
+	/**
+	 * Creates a fixed thread pool for repeated use, optionally of daemon threads, e.g., for an incremental
+	 * learner that has no point at which the pool could be shut down (daemon threads do not keep the JVM alive).
+	 *
+	 * @param numThreads        the requested number of threads (-1 for # of cores/cpus)
+	 * @param maxThreads        the maximum to ask for
+	 * @param daemon            whether to use daemon threads
+	 * @return                  the pool, null if only a single thread is to be used
+	 */
+	public static ExecutorService newExecutor(int numThreads, int maxThreads, boolean daemon) {
+		int	actual;
+
+		if (!daemon)
+			return newExecutor(numThreads, maxThreads);
+		actual = getActualNumThreads(numThreads, maxThreads);
+		if (actual <= SEQUENTIAL)
+			return null;
+		return Executors.newFixedThreadPool(actual, (Runnable r) -> {
+			Thread t = Executors.defaultThreadFactory().newThread(r);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Executes the jobs on the given (long-lived) executor and returns their results,
+	 * in the same order as the jobs. The executor does not get shut down.
+	 *
+	 * @param jobs              the jobs to execute
+	 * @param executor          the executor to use, null to run the jobs in the calling thread
+	 * @return                  the results of the jobs
+	 * @throws Exception        the first exception thrown by any of the jobs
+	 */
+	public static <T> List<T> invokeAll(List<? extends Callable<T>> jobs, ExecutorService executor) throws Exception {
+		List<T>			result;
+		List<Future<T>>		futures;
+
+		result = new ArrayList<>(jobs.size());
+		if ((executor == null) || (jobs.size() <= 1)) {
+			for (Callable<T> job : jobs)
+				result.add(job.call());
+			return result;
+		}
+
+		try {
+			futures = executor.invokeAll(jobs);
+			for (Future<T> future : futures)
+				result.add(future.get());
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+
+		return result;
+	}
 }
@@ -102,6 +102,45 @@ public abstract class ThresholdUtils {
 		return t;
 	}
 
+	/**
+	 * CalibrateThreshold - PCut on a sketch of the confidences, rather than on all of them: as calibrateThreshold(Y,LC)
+	 * would give on the confidences, but with their (approximate) quantiles in place of the sorted confidences; so,
+	 * exactly the same as long as the sketch has not compacted any of them. Where calibrateThreshold(Y,LC) fails (a
+	 * single confidence, or L &gt; 1 and at most one relevant label), 1.0 is returned.
+	 * @param	Y	sketch of the confidences
+	 * @param	LC	label cardinality (or the frequency of the label, with L = 1)
+	 * @param	L	the number of labels whose confidences are in Y
+	 * @return	the threshold; 0.5 if Y is empty
+	 */
+	public static double calibrateThreshold(QuantileSketch Y, double LC, int L) {
+		long size = Y.count();
+		if (size <= 0)
+			return 0.5;
+		long N = size / L;
+		long i = size - Math.round(LC * (double)size / (double)L);
+		// (the ranks of the sorted confidences big.get(i), big.get(i+1), ... are i+1, i+2, ...)
+		if (L == 1 && i+1 == N && N >= 2) // only one! (the same sum as calibrateThreshold(Y,LC))
+			return (Y.valueAt(N-1)+Y.valueAt(N)/2.0);
+		if (i+1 >= size) // zero!
+			return 1.0;
+		double a = Y.valueAt(i+1);
+		double b = Y.valueAt((L == 1) ? i+2 : Math.max(i+2,N));
+		return Math.max((a+b)/2.0, 0.00001);
+	}
+
+	/**
+	 * CalibrateThresholds - PCut for each label, on a sketch of the confidences of each label.
+	 * @param	Y	sketch of the confidences of each label
+	 * @param	F	the frequency of each label
+	 */
+	public static double[] calibrateThresholds(QuantileSketch Y[], double F[]) {
+		double t[] = new double[F.length];
+		for(int j = 0; j < F.length; j++) {
+			t[j] = calibrateThreshold(Y[j],F[j],1);
+		}
+		return t;
+	}
+
 	/**
 	 * Threshold - returns the labels after the prediction-confidence vector is passed through a vector of thresholds.
 	 * @param	Rpred	label confidence predictions in [0,1]
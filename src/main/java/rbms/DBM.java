@@ -58,11 +58,7 @@ public class DBM extends RBM {
 		if (rbm == null)
 			return null;
 
-		for(int i = 0; i < h.length; i++) {
-			z = rbm[i].prob_z(z);					// input = rbm(input)
-		}
-
-		return z;
+		return super.prob_z(z);					// input = rbm(input), for each rbm
 	}
 
 	@Override
@@ -70,11 +66,7 @@ public class DBM extends RBM {
 		if (rbm == null)
 			return null;
 
-		for(int i = 0; i < h.length; i++) {
-			X_ = rbm[i].prob_Z(X_); 				// input = rbm(input)
-		}
-
-		return X_;
+		return super.prob_Z(X_); 				// input = rbm(input), for each rbm
 	}
 
 	/*
@@ -163,6 +155,19 @@ public class DBM extends RBM {
 		return W;
 	}
 
+	@Override
+	public void setWs(Matrix W[]) throws Exception {
+		int N = W.length;
+		this.h = new int[N];
+		this.rbm = new RBM[N];
+		for(int i = 0; i < N; i++) {
+			h[i] = W[i].getColumnDimension()-1;
+			rbm[i] = new RBM(this.getOptions());
+			rbm[i].setH(h[i]);
+			rbm[i].setWs(new Matrix[]{W[i]});
+		}
+	}
+
 	@Override
 	public double train(double X_[][]) throws Exception {
 		return train(X_,0);
@@ -17,13 +17,16 @@ package rbms;
 
 import Jama.Matrix;
 import meka.core.MatrixUtils;
+import meka.core.OptionUtils;
+import meka.core.ThreadUtils;
 import weka.core.*;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * RBM.java - Restricted Boltzmann Machine.
- * Using Contrastive Divergence.
+ * Using Contrastive Divergence (CD-k), or Persistent Contrastive Divergence (PCD-k), optionally on mini-batches.
  * 
  * You have inputs X; You want to output to hidden units Z.
  * To do this, you learn weight matrix W, where Z ~ sigma(W'X).
@@ -32,7 +35,10 @@ import java.util.*;
  * ============== TRAINING (batches of 10) =====
  * RBM rbm = new RBM();
  * rbm.setOptions("-E 100 -H 10 -r 0.1 -m 0.8"); // to build 10 hidden units, over 100 epochs, with learning rate 0.1, momentum 0.8
- * rbm.train(X,10);                              // train in batches of 10
+ * rbm.train(X,10);                              // train in batches of 10 (or: "-B 10" and rbm.train(X))
+ * ============== TRAINING (PCD-5, 4 threads) ==
+ * rbm.setOptions("-E 100 -H 10 -r 0.1 -m 0.8 -B 100 -k 5 -persistent -num-threads 4");
+ * rbm.train(X);
  * Z = rbm.getZ(X);                              // get output
  * ============== UPDATING (one epoch) =========
  * rbm.update(xnew);
@@ -52,11 +58,21 @@ public class RBM {
 	protected int m_E = 1000;
 	protected int m_H = 10;
 	private boolean m_V = false;						// cut out of var(10) < 0.0001
-	private int batch_size = 0; 						// @todo implement this option (with CLI option)
+	protected int m_B = 0; 								// mini-batch size for train(X) (0 = full batch)
+	protected int m_K = 1;								// number of Gibbs steps (CD-k / PCD-k)
+	protected boolean m_Persistent = false;				// persistent chains (PCD), rather than restarting from the data (CD)
+	protected int m_NumThreads = ThreadUtils.SEQUENTIAL;	// threads for the matrix products
 
 	protected Matrix W = null;							// the weight matrix
 	protected Matrix dW_ = null;						// used for momentum
 
+	// buffers (reused across updates): input batch, P(Z|X_0), negative visible, negative hidden, positive/negative energies
+	protected double Xb_[][] = null, Z0_[][] = null, X1_[][] = null, Z1_[][] = null, Epos_[][] = null, Eneg_[][] = null;
+	// the fantasy particles of PCD (bias included), and how many there are
+	protected double Xf_[][] = null;
+	protected int m_Nf = 0;
+	protected ExecutorService m_Executor = null;		// only during training, null if sequential
+
 	protected Random m_R = new Random(0);		 			// for random init. of matrices and sampling 
 
 	/**
@@ -87,6 +103,11 @@ public class RBM {
 			e.printStackTrace();
 			System.exit(1);
 		}
+		// (optional)
+		setBatchSize(OptionUtils.parse(options, 'B', 0));
+		setK(OptionUtils.parse(options, 'k', 1));
+		setPersistent(Utils.getFlag("persistent", options));
+		setNumThreads(OptionUtils.parse(options, "num-threads", ThreadUtils.SEQUENTIAL));
 
 		//super.setOptions(options);
 	}
@@ -105,6 +126,14 @@ public class RBM {
 		result.add(String.valueOf(getE()));
 		result.add("-H");
 		result.add(String.valueOf(getH()));
+		result.add("-B");
+		result.add(String.valueOf(getBatchSize()));
+		result.add("-k");
+		result.add(String.valueOf(getK()));
+		if (getPersistent())
+			result.add("-persistent");
+		result.add("-num-threads");
+		result.add(String.valueOf(getNumThreads()));
 		return result.toArray(new String[result.size()]);
 	}
 
@@ -115,20 +144,75 @@ public class RBM {
 	 * @return	z (without bias)
 	 */
 	public double[] prob_z(double x_[]) {
-		Matrix x = new Matrix(MatrixUtils.addBias(x_),1);
-		double z[] = MatrixUtils.sigma(x.times(W).getArray()[0]);
-		return MatrixUtils.removeBias(z);
+		return prob_Z(new double[][]{x_})[0];
 	}
 
+	/** the number of rows pushed through the layer(s) at a time by prob_Z(X_) */
+	protected static final int ENCODE_BATCH = 256;
+
 	/**
-	 * Hidden Activation Probability - returns P(Z|X).
+	 * Hidden Activation Probability - returns P(Z|X), through all layers of getWs().
 	 * A Bias column added (and removed) automatically.
+	 * The rows are encoded in batches, through reused buffers, split across m_NumThreads threads for large X.
 	 * @param	X_	X (without bias)
 	 * @return	P(Z|X) 
 	 */
-	public double[][] prob_Z(double X_[][]) {
-		Matrix X = new Matrix(MatrixUtils.addBias(X_));
-		return MatrixUtils.removeBias(prob_Z(X).getArray());
+	public double[][] prob_Z(final double X_[][]) {
+		final Matrix W[] = getWs();
+		final int N = X_.length;
+		final double Z[][] = new double[N][W[W.length-1].getColumnDimension()-1];
+		int numJobs = ThreadUtils.getActualNumThreads(m_NumThreads, N / ENCODE_BATCH);
+		if (numJobs <= 1) {
+			encode(W, X_, Z, 0, N);
+			return Z;
+		}
+		List<java.util.concurrent.Callable<Void>> jobs = new ArrayList<>();
+		int step = (N + numJobs - 1) / numJobs;
+		for(int from = 0; from < N; from += step) {
+			final int f = from;
+			final int t = Math.min(from + step, N);
+			jobs.add(() -> { encode(W, X_, Z, f, t); return null; });
+		}
+		try {
+			ThreadUtils.invokeAll(jobs, numJobs);
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return Z;
+	}
+
+	/**
+	 * Encode - push rows [from,to) of X_ up through the layers W, in batches, into Z (without bias).
+	 * Identical to calling <code>X_ = prob_Z(X_)</code> layer by layer, without the intermediate matrices.
+	 */
+	protected static void encode(Matrix W[], double X_[][], double Z[][], int from, int to) {
+		int B = Math.min(ENCODE_BATCH, to - from);
+		double A[][][] = new double[W.length+1][][];					// activations of each layer (bias included)
+		A[0] = new double[B][W[0].getRowDimension()];
+		for(int l = 0; l < W.length; l++) {
+			A[l+1] = new double[B][W[l].getColumnDimension()];
+		}
+		for(int n = from; n < to; n += B) {
+			int b = Math.min(B, to - n);
+			for(int i = 0; i < b; i++) {
+				A[0][i][0] = 1.0;
+				System.arraycopy(X_[n+i],0,A[0][i],1,X_[n+i].length);
+			}
+			for(int l = 0; l < W.length; l++) {
+				MatrixUtils.multiplySigma(A[l], W[l].getArray(), A[l+1], b, false, null);
+				for(int i = 0; i < b; i++) {
+					A[l+1][i][0] = 1.0;										// fix bias ... set first col to 1.0
+				}
+			}
+			double top[][] = A[W.length];
+			for(int i = 0; i < b; i++) {
+				System.arraycopy(top[i],1,Z[n+i],0,Z[n+i].length);
+			}
+		}
 	}
 
 	/**
@@ -259,6 +343,7 @@ public class RBM {
 
 		this.W = makeW(d,h);
 		this.dW_ = new Matrix(W.getRowDimension(),W.getColumnDimension()); // for momentum
+		this.Xf_ = null;													// restart PCD chains
 	}
 
 	/**
@@ -278,29 +363,40 @@ public class RBM {
 	 * @param	X 	X
 	 */
 	public void update(Matrix X) {
-
-		Matrix CD = epoch(X);
-
-		Matrix dW = (CD.minusEquals(this.W.times(COST))).timesEquals(LEARNING_RATE); 	// with COST
-		this.W.plusEquals(dW.plus(this.dW_.timesEquals(MOMENTUM)));                  	// with MOMENTUM.
-		this.dW_ = dW;																	// for the next update
+		update(X, 1.0);
 	}
 
 	/**
 	 * Update - Carry out one epoch of CD, update W.
-	 * <br>
-	 * TODO	combine with above fn.
 	 * @param	X 	X
 	 * @param	s	multiply the gradient by this scalar
 	 */
 	public void update(Matrix X, double s) {
+		int N = X.getRowDimension();
+		initBuffers(N);
+		gradient(X.getArray(), N);
+		update(N, s);
+	}
 
-		Matrix CD = epoch(X);
-
-		Matrix dW = (CD.minusEquals(this.W.times(COST))).timesEquals(LEARNING_RATE); 	// with COST
-		dW = dW.times(s); // *scaling factor
-		this.W.plusEquals(dW.plus(this.dW_.timesEquals(MOMENTUM)));                  	// with MOMENTUM.
-		this.dW_ = dW;																	// for the next update
+	/**
+	 * Update - Update W (in place) from the energies of the last call to gradient(X_0,N), as
+	 * <code>dW = ((CD - W * COST) * LEARNING_RATE) * s; W += dW + dW_ * MOMENTUM; dW_ = dW</code>.
+	 * @param	N	the number of rows the energies were computed over
+	 * @param	s	multiply the gradient by this scalar
+	 */
+	protected void update(int N, double s) {
+		double W_[][] = W.getArray();
+		double D_[][] = dW_.getArray();
+		double n = 1./N;
+		double nf = m_Persistent ? 1./m_Nf : n;
+		for(int i = 0; i < W_.length; i++) {
+			for(int j = 0; j < W_[i].length; j++) {
+				double cd = m_Persistent ? (n * Epos_[i][j]) - (nf * Eneg_[i][j]) : n * (Epos_[i][j] - Eneg_[i][j]);
+				double dw = s * (LEARNING_RATE * (cd - COST * W_[i][j]));
+				W_[i][j] += dw + MOMENTUM * D_[i][j];
+				D_[i][j] = dw;
+			}
+		}
 	}
 
 	/**
@@ -331,36 +427,49 @@ public class RBM {
 	}
 
 	/**
-	 * Train - Setup and train the RBM on X, over m_E epochs.
+	 * Train - Setup and train the RBM on X, over m_E epochs (in mini-batches, if a batch size is set).
 	 * @param	X_	X
 	 * @return	the error (@TODO unnecessary)
 	 */
 	public double train(double X_[][]) throws Exception {
 
+		if (m_B > 0 && m_B < X_.length)
+			return train(X_,m_B);
+
 		initWeights(X_);
 
 		Matrix X = new Matrix(MatrixUtils.addBias(X_));
+		int N = X_.length;
+		initBuffers(N);
 
 		double _error = Double.MAX_VALUE; // prev error , necessary only when using m_V
 
 		// TRAIN FOR m_E EPOCHS.
 
-		for(int e = 0; e < m_E; e++) {
-
-			// BREAK OUT IF THE GRADIENT IS POSITIVE
-			if (m_V) { 
-				double err_now = calculateError(X); // Retrieve error
-				if (_error < err_now) {
-					System.out.println("broken out @"+e);
-					break;
+		m_Executor = ThreadUtils.newExecutor(m_NumThreads, ThreadUtils.getAvailableProcessors());
+		try {
+			for(int e = 0; e < m_E; e++) {
+
+				// BREAK OUT IF THE GRADIENT IS POSITIVE
+				if (m_V) { 
+					double err_now = calculateError(X); // Retrieve error
+					if (_error < err_now) {
+						System.out.println("broken out @"+e);
+						break;
+					}
+					_error = err_now;
 				}
-				_error = err_now;
-			}
 
-			/*
-			 * The update
-			 */
-			update(X);
+				/*
+				 * The update
+				 */
+				gradient(X.getArray(), N);
+				update(N, 1.0);
+			}
+		}
+		finally {
+			shutdownExecutor();
+			clearBuffers();
 		}
 
 		return _error;
@@ -368,8 +477,7 @@ public class RBM {
 
 	/**
 	 * Train - Setup and batch-train the RBM on X.
-	 * <br>
-	 * TODO, above function train(X_) could really be trained with train(X_,N), so, should share code with train(X)
+	 * Each batch gets copied (with bias) into the same buffer, rather than keeping a copy of all of X.
 	 * <br>
 	 * TODO, divide gradient by the size of the batch! (doing already? .. no)
 	 * @param	X_			X
@@ -377,28 +485,31 @@ public class RBM {
 	 */
 	public double train(double X_[][], int batchSize) throws Exception {
 
-		initWeights(X_);
-
-		X_ = MatrixUtils.addBias(X_);
-
 		int N = X_.length;					// N
-		if (batchSize == N)
-			return train(X_);
-		int N_n = (int)Math.ceil(N*1./batchSize);// Number of batches
+		if (batchSize <= 0 || batchSize >= N) 
+			return trainFullBatch(X_);
 
-		Matrix X_n[] = new Matrix[N_n];
-		for(int n = 0,i = 0; n < N; n+=batchSize,i++) {
-			// @TODO, could save some small-time memory/speed here
-			X_n[i] = new Matrix(Arrays.copyOfRange(X_,n,Math.min(n+batchSize,N)));
-		}
+		initWeights(X_);
+		initBuffers(batchSize);
+		initBatchBuffer(batchSize);
+		int N_n = (int)Math.ceil(N*1./batchSize);// Number of batches
 
-		for(int e = 0; e < m_E; e++) {
+		m_Executor = ThreadUtils.newExecutor(m_NumThreads, ThreadUtils.getAvailableProcessors());
+		try {
+			for(int e = 0; e < m_E; e++) {
 
-			// @TODO could be random, see function below
-			for(Matrix X : X_n) {
-				update(X, 1./N_n);
+				// @TODO could be random, see function below
+				for(int n = 0; n < N; n+=batchSize) {
+					int n_ = fillBatch(X_,n,Math.min(n+batchSize,N));
+					gradient(Xb_, n_);
+					update(n_, 1./N_n);
+				}
 			}
 		}
+		finally {
+			shutdownExecutor();
+			clearBuffers();
+		}
 
 		return 1.0;
 	}
@@ -414,24 +525,174 @@ public class RBM {
 	public double train(double X_[][], int batchSize, Random r) throws Exception {
 
 		initWeights(X_);
+		initBuffers(batchSize);
+		initBatchBuffer(batchSize);
 
-		X_ = MatrixUtils.addBias(X_);
 		int N = X_.length;					// N
 		int N_n = (int)Math.ceil(N*1./batchSize);// Number of batches
 
-		// @TODO select the batches randomly at each epoch
-		Matrix X_n[] = new Matrix[N_n];
-		for(int n = 0,i = 0; n < N; n+=batchSize,i++) {
-			X_n[i] = new Matrix(Arrays.copyOfRange(X_,n,Math.min(n+batchSize,N)));
+		m_Executor = ThreadUtils.newExecutor(m_NumThreads, ThreadUtils.getAvailableProcessors());
+		try {
+			for(int e = 0; e < m_E; e++) {
+				for(int i = 0; i < N_n; i++) {
+					int n = r.nextInt(N_n) * batchSize;
+					int n_ = fillBatch(X_,n,Math.min(n+batchSize,N));
+					gradient(Xb_, n_);
+					update(n_, 1.0);
+				}
+			}
+		}
+		finally {
+			shutdownExecutor();
+			clearBuffers();
+		}
+
+		return 1.0;
+	}
+
+	/**
+	 * Train - Full-batch training, regardless of the batch size option.
+	 */
+	private double trainFullBatch(double X_[][]) throws Exception {
+		int B = m_B;
+		m_B = 0;
+		try {
+			return train(X_);
+		}
+		finally {
+			m_B = B;
+		}
+	}
+
+	private void shutdownExecutor() {
+		if (m_Executor != null)
+			m_Executor.shutdownNow();
+		m_Executor = null;
+	}
+
+	/**
+	 * InitBuffers - (Re)allocate the training buffers for up to N rows, unless the current ones already fit.
+	 * The batch buffer is not included, see initBatchBuffer(N).
+	 * @param	N	the number of rows
+	 */
+	protected void initBuffers(int N) {
+		int d = W.getRowDimension();
+		int h = W.getColumnDimension();
+		if (Xf_ != null && Xf_[0].length != d)
+			Xf_ = null;
+		N = Math.max(N, (Xf_ == null) ? 0 : m_Nf);
+		if (Z0_ == null || Z0_.length < N || X1_[0].length != d || Z0_[0].length != h) {
+			Z0_ = new double[N][h];
+			X1_ = new double[N][d];
+			Z1_ = new double[N][h];
+			Epos_ = new double[d][h];
+			Eneg_ = new double[d][h];
 		}
+	}
 
-		for(int e = 0; e < m_E; e++) {
-			for(int i = 0; i < N_n; i++) {
-				update(X_n[r.nextInt(N_n)]);
+	/**
+	 * InitBatchBuffer - (Re)allocate the buffer that mini-batches are copied into (with bias), for up to N rows.
+	 * @param	N	the number of rows
+	 */
+	protected void initBatchBuffer(int N) {
+		int d = W.getRowDimension();
+		if (Xb_ == null || Xb_.length < N || Xb_[0].length != d)
+			Xb_ = new double[N][d];
+	}
+
+	/**
+	 * ClearBuffers - Drop the training buffers (but not the PCD chains), so that they are neither kept nor serialized after training.
+	 */
+	protected void clearBuffers() {
+		Xb_ = null;
+		Z0_ = null;
+		X1_ = null;
+		Z1_ = null;
+		Epos_ = null;
+		Eneg_ = null;
+	}
+
+	/**
+	 * FillBatch - Copy rows [from,to) of X_ into the batch buffer, adding the bias.
+	 * @return	the number of rows in the batch
+	 */
+	protected int fillBatch(double X_[][], int from, int to) {
+		for(int i = from; i < to; i++) {
+			double x[] = Xb_[i-from];
+			x[0] = 1.0;
+			System.arraycopy(X_[i],0,x,1,X_[i].length);
+		}
+		return to - from;
+	}
+
+	/**
+	 * Hidden Activation Probability, in place - Z = P(Z|X) for the first N rows (bias included).
+	 */
+	protected void prob_Z(double X[][], double Z[][], int N) {
+		MatrixUtils.multiplySigma(X, W.getArray(), Z, N, false, m_Executor);
+		for(int i = 0; i < N; i++) {
+			Z[i][0] = 1.0;										// fix bias ... set first col to 1.0
+		}
+	}
+
+	/**
+	 * Visible Activation Probability, in place - X = P(X|Z) for the first N rows (bias included).
+	 */
+	protected void prob_X(double Z[][], double X[][], int N) {
+		MatrixUtils.multiplyTranspose(Z, W.getArray(), X, N, m_Executor);
+		for(int i = 0; i < N; i++) {
+			double x[] = X[i];
+			for(int j = 0; j < x.length; j++) {
+				x[j] = MatrixUtils.sigma(x[j]);
 			}
+			x[0] = 1.0;											// fix bias - set first col to 1.0
 		}
+	}
 
-		return 1.0;
+	/**
+	 * Gradient - Compute the positive and negative energies of CD-k (or PCD-k) into the buffers, leaving W untouched.
+	 * For CD-1 these are exactly the energies of epoch(X).
+	 * <verbatim>
+	 *  CD:   Z_0 = P(Z|X_0); X_1 = P(X|Z_0); Z_1 = P(Z|X_1); ... (k times)  E+ = X_0' * Z_0; E- = X_k' * Z_k
+	 *  PCD:  Z_0 = P(Z|X_0); X_f = P(X|Z_f ~ P(Z|X_f))       ... (k times)  E+ = X_0' * Z_0; E- = X_f' * P(Z|X_f)
+	 * </verbatim>
+	 * @param	X_0	the input, including the bias column (at least N rows)
+	 * @param	N	the number of rows of X_0 to use
+	 */
+	protected void gradient(double X_0[][], int N) {
+
+		// POSITIVE
+		prob_Z(X_0, Z0_, N);													// sample up
+		MatrixUtils.transposeMultiply(X_0, 1.0, Z0_, Epos_, N, m_Executor);		// positive energy, H_1 * V_1
+
+		// NEGATIVE
+		if (!m_Persistent) {
+			double Z[][] = Z0_;
+			for(int k = 0; k < m_K; k++) {
+				prob_X(Z, X1_, N);												// go down
+				prob_Z(X1_, Z1_, N);											// go back up again
+				Z = Z1_;
+			}
+			MatrixUtils.transposeMultiply(X1_, 1.0, Z1_, Eneg_, N, m_Executor);	// negative energy, P(Z_1) * X_1
+		}
+		else {
+			if (Xf_ == null) {													// start the chains at the data
+				Xf_ = MatrixUtils.deep_copy(Arrays.copyOf(X_0, N));
+				m_Nf = N;
+			}
+			for(int k = 0; k < m_K; k++) {
+				prob_Z(Xf_, Z1_, m_Nf);
+				for(int i = 0; i < m_Nf; i++) {									// sample up
+					double z[] = Z1_[i];
+					for(int j = 0; j < z.length; j++) {
+						z[j] = (z[j] > m_R.nextDouble()) ? 1.0 : 0.0;
+					}
+				}
+				prob_X(Z1_, Xf_, m_Nf);											// go down
+			}
+			prob_Z(Xf_, Z1_, m_Nf);												// go back up again
+			MatrixUtils.transposeMultiply(Xf_, 1.0, Z1_, Eneg_, m_Nf, m_Executor);	// negative energy of the fantasy particles
+		}
 	}
 
 	/**
@@ -474,26 +735,20 @@ public class RBM {
 	 */
 	public Matrix epoch(Matrix X_0) {
 
-		int N = X_0.getArray().length;
-
-		// POSITIVE
-		Matrix Z_0 = prob_Z(X_0);                                             // sample up                              		
-		Matrix E_pos = X_0.transpose().times(Z_0);								// positive energy, H_1 * V_1
-
-		// NEGATIVE
-		Matrix X_1 = prob_X(Z_0);												// go down -- can either sample down 
-		//Matrix X_1 = Mat.threshold(prob_X(Z_0),0.5);							// ... or just go down
-		Matrix pZ_1 = prob_Z(X_1);                               				// go back up again
-		Matrix E_neg = X_1.transpose().times(pZ_1);								// negative energy, P(Z_1) * X_1
-
-		// CALCULATE ERROR (Optional!)
-		//double _Err = Mat.meanSquaredError(X_0.getArray(),X_1.getArray());			// @note: this take some milliseconds to calculate
-		//System.out.println(""+_Err);
+		int N = X_0.getRowDimension();
+		initBuffers(N);
+		gradient(X_0.getArray(), N);
 
 		// CONTRASTIVE DIVERGENCE
-		Matrix CD = ((E_pos.minusEquals(E_neg)).times(1./N));					// CD = difference between energies
-		 
-		return CD;
+		double n = 1./N;
+		double nf = m_Persistent ? 1./m_Nf : n;
+		double CD[][] = new double[Epos_.length][Epos_[0].length];
+		for(int i = 0; i < CD.length; i++) {
+			for(int j = 0; j < CD[i].length; j++) {
+				CD[i][j] = m_Persistent ? (n * Epos_[i][j]) - (nf * Eneg_[i][j]) : n * (Epos_[i][j] - Eneg_[i][j]);	// CD = difference between energies
+			}
+		}
+		return new Matrix(CD);
 
 	}
 
@@ -513,8 +768,8 @@ public class RBM {
 		Matrix E_neg = X_1.transpose().times(pZ_1);								// negative energy, P(Z_1) * X_1
 
 		// CALCULATE ERROR (Optional!)
-		double _Err = MatrixUtils.meanSquaredError(X_0.getArray(), X_1.getArray());			// @note: this take some milliseconds to calculate
-		System.out.println(""+_Err);
+		//double _Err = MatrixUtils.meanSquaredError(X_0.getArray(), X_1.getArray());			// @note: this take some milliseconds to calculate
+		//System.out.println(""+_Err);
 
 		// CONTRASTIVE DIVERGENCE
 		Matrix CD = ((E_pos.minusEquals(E_neg)).times(1./N));					// CD = difference between energies
@@ -568,6 +823,53 @@ public class RBM {
 		return MOMENTUM;
 	}
 
+	/**
+	 * SetBatchSize - set the mini-batch size used by train(X) (0 = full batch).
+	 */
+	public void setBatchSize(int b) {
+		m_B = b;
+	}
+
+	public int getBatchSize() {
+		return m_B;
+	}
+
+	/**
+	 * SetK - set the number of Gibbs steps k of CD-k / PCD-k.
+	 */
+	public void setK(int k) {
+		m_K = Math.max(1, k);
+	}
+
+	public int getK() {
+		return m_K;
+	}
+
+	/**
+	 * SetPersistent - use persistent chains (PCD) for the negative phase, rather than restarting them at the data (CD).
+	 */
+	public void setPersistent(boolean p) {
+		m_Persistent = p;
+	}
+
+	public boolean getPersistent() {
+		return m_Persistent;
+	}
+
+	/**
+	 * SetNumThreads - the number of threads for the matrix products during training (-1 = # of CPUs/cores).
+	 */
+	public void setNumThreads(int n) {
+		if (n >= -1)
+			m_NumThreads = n;
+		else
+			System.err.println("Number of threads must be >= -1, provided: " + n);
+	}
+
+	public int getNumThreads() {
+		return m_NumThreads;
+	}
+
 	public void setSeed(int seed) {
 		m_R = new Random(seed);
 	}
@@ -580,6 +882,15 @@ public class RBM {
 		return new Matrix[]{W};
 	}
 
+	/**
+	 * SetWs - Set (pre-trained) weight matrices, e.g., from a cache, instead of training.
+	 */
+	public void setWs(Matrix W[]) throws Exception {
+		this.W = W[0];
+		this.dW_ = new Matrix(this.W.getRowDimension(),this.W.getColumnDimension());
+		this.Xf_ = null;
+	}
+
 	public Matrix getW() {
 		return W;
 	}
@@ -0,0 +1,291 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.classifiers.incremental;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import meka.classifiers.MultiXClassifier;
+import meka.classifiers.multilabel.incremental.BRUpdateable;
+import meka.classifiers.multilabel.incremental.CCUpdateable;
+import meka.core.InstanceStream;
+import meka.core.MLUtils;
+import meka.core.Result;
+import meka.core.ResultAccumulator;
+import meka.core.ThresholdUtils;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffSaver;
+import weka.core.converters.ConverterUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests evaluating several incremental models on a single pass over a stream. Run from the command line with:<p/>
+ * java meka.classifiers.incremental.IncrementalEvaluationTest
+ *
+ * @version $Revision$
+ */
+public class IncrementalEvaluationTest
+    extends TestCase {
+
+    /** the window size and micro-batch size */
+    protected static final int WINDOW = 100, BATCH = 10;
+
+    /** the stream */
+    protected Instances D;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public IncrementalEvaluationTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        D = ConverterUtils.DataSource.read("Music.arff");
+        MLUtils.prepareData(D);
+    }
+
+    /**
+     * A model that fails after a number of updates.
+     */
+    protected static class FailingBRUpdateable
+        extends BRUpdateable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected int updates = 0;
+
+        protected int limit;
+
+        public FailingBRUpdateable(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void updateClassifier(Instance x) throws Exception {
+            if (++updates > limit)
+                throw new Exception("failed after " + limit + " updates");
+            super.updateClassifier(x);
+        }
+    }
+
+    /**
+     * The models to evaluate, new each time.
+     */
+    protected static MultiXClassifier[] models() {
+        CCUpdateable cc = new CCUpdateable();
+        cc.setClassifier(new NaiveBayesUpdateable());
+        return new MultiXClassifier[]{new BRUpdateable(), cc};
+    }
+
+    protected static String toString(Object o) {
+        if (o instanceof double[])
+            return Arrays.toString((double[])o);
+        if (o instanceof int[])
+            return Arrays.toString((int[])o);
+        if (o instanceof Object[])
+            return Arrays.deepToString((Object[])o);
+        return String.valueOf(o);
+    }
+
+    /**
+     * Asserts that two results have the same statistics, except for the times.
+     */
+    protected static void assertSameResults(Result expected, Result actual) {
+        assertEquals(expected.getInfo("Classifier"), actual.getInfo("Classifier"));
+        assertEquals(expected.getInfo("Threshold"), actual.getInfo("Threshold"));
+        assertEquals(expected.output.keySet(), actual.output.keySet());
+        int compared = 0;
+        for (Map.Entry<String,Object> e : expected.output.entrySet()) {
+            String key = e.getKey();
+            if (key.contains("time") || key.contains("latency") || key.startsWith("Throughput"))
+                continue;
+            assertEquals(key, toString(e.getValue()), toString(actual.output.get(key)));
+            compared++;
+        }
+        assertTrue(compared > 5);
+    }
+
+    /**
+     * The models evaluated on one pass over the stream give the same results as each evaluated on its own.
+     */
+    public void testSameResultsAsSeparateRuns() throws Exception {
+        MultiXClassifier h[] = models();
+        Result expected[] = new Result[h.length];
+        for (int k = 0; k < h.length; k++)
+            expected[k] = IncrementalEvaluation.evaluateModelPrequentialBasic(h[k], new InstanceStream(D), WINDOW, 0, BATCH, 1.0, "PCut1", "3");
+
+        Result actual[] = IncrementalEvaluation.evaluateModelsPrequentialBasic(models(), new InstanceStream(D), WINDOW, 0, BATCH, 1.0, "PCut1", "3");
+        assertEquals(h.length, actual.length);
+        for (int k = 0; k < h.length; k++)
+            assertSameResults(expected[k], actual[k]);
+    }
+
+    /**
+     * Evaluates the models in another thread, and returns the exception thrown; fails if there is none, or if the
+     * evaluation does not end.
+     */
+    protected Throwable evaluateFailing(MultiXClassifier h[], Instances D) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Result[]> future = executor.submit(() -> IncrementalEvaluation.evaluateModelsPrequentialBasic(h, new InstanceStream(D), WINDOW, 0, 1, 1.0, "0.5", "3"));
+            future.get(5, TimeUnit.MINUTES);
+            fail("no exception");
+            return null;
+        }
+        catch (ExecutionException e) {
+            return e.getCause();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A model that fails stops reading its copy of the stream, without holding up the others (on a stream longer
+     * than the queue of each model), and its exception is thrown.
+     */
+    public void testFailingModel() throws Exception {
+        Instances D_ = new Instances(D);
+        while (D_.numInstances() <= 2 * IncrementalEvaluation.QUEUE_CAPACITY)
+            D_.addAll(D);
+
+        Throwable e = evaluateFailing(new MultiXClassifier[]{new FailingBRUpdateable(50), new BRUpdateable()}, D_);
+        assertEquals("failed after 50 updates", e.getMessage());
+
+        e = evaluateFailing(new MultiXClassifier[]{new BRUpdateable(), new BRUpdateable(), new FailingBRUpdateable(500)}, D_);
+        assertEquals("failed after 500 updates", e.getMessage());
+    }
+
+    /**
+     * The other models given with -model are evaluated on the same stream, in the order given.
+     */
+    public void testModelOption() throws Exception {
+        File file = File.createTempFile("IncrementalEvaluationTest", ".arff");
+        try {
+            ArffSaver saver = new ArffSaver();
+            saver.setInstances(D);
+            saver.setFile(file);
+            saver.writeBatch();
+
+            String args[] = new String[]{
+                "-t", file.getPath(), "-x", "" + WINDOW, "-micro-batch", "" + BATCH, "-verbosity", "3",
+                "-model", CCUpdateable.class.getName() + " -W " + NaiveBayesUpdateable.class.getName(),
+                "-model", BRUpdateable.class.getName(),
+            };
+            String options[] = IncrementalEvaluation.evaluationOptions(args);
+            for (String arg : args)
+                assertEquals("", arg);
+            Result results[] = IncrementalEvaluation.evaluateModels(new BRUpdateable(), options);
+            assertEquals(3, results.length);
+
+            MultiXClassifier h[] = models();
+            for (int k = 0; k < h.length; k++)
+                assertSameResults(IncrementalEvaluation.evaluateModelPrequentialBasic(h[k], new InstanceStream(D), WINDOW, 0, BATCH, 1.0, "0.5", "3"), results[k]);
+            assertSameResults(results[0], results[2]);
+
+            // other models are only evaluated prequentially
+            try {
+                IncrementalEvaluation.evaluateModels(new BRUpdateable(), new String[]{"-t", file.getPath(), "-no-eval", "-model", BRUpdateable.class.getName()});
+                fail("no exception");
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A BRUpdateable that ignores instances without labels.
+     */
+    protected static BRUpdateable naiveBayes() {
+        BRUpdateable h = new BRUpdateable();
+        h.setClassifier(new NaiveBayesUpdateable());
+        return h;
+    }
+
+    /**
+     * PCut counts only the labels that the classifier is given: with the labels withheld from the updates, those of
+     * the stream (after the initial window) make no difference to the threshold.
+     */
+    public void testPCutSupervision() throws Exception {
+        Instances D_flipped = new Instances(D);
+        int L = D.classIndex();
+        for (int i = WINDOW; i < D_flipped.numInstances(); i++) {
+            for (int j = 0; j < L; j++)
+                D_flipped.instance(i).setValue(j, 1.0 - D_flipped.instance(i).value(j));
+        }
+        for (String Top : new String[]{"PCut1", "PCutL"}) {
+            Result expected = IncrementalEvaluation.evaluateModelPrequentialBasic(naiveBayes(), D, WINDOW, 1.0, Top, "3");
+            Result actual = IncrementalEvaluation.evaluateModelPrequentialBasic(naiveBayes(), D_flipped, WINDOW, 1.0, Top, "3");
+            assertEquals(Top, expected.getInfo("Threshold"), actual.getInfo("Threshold"));
+        }
+    }
+
+    /**
+     * The threshold of the first window is calibrated on the initial window, as predicted by the initial classifier.
+     */
+    public void testPCutInitialWindow() throws Exception {
+        Instances D_init = new Instances(D, 0, WINDOW);
+        BRUpdateable h = naiveBayes();
+        h.buildClassifier(D_init);
+        ArrayList<double[]> Y = new ArrayList<double[]>();
+        for (Instance x : D_init)
+            Y.add(h.distributionForInstance(x));
+        double t = ThresholdUtils.calibrateThreshold(Y, MLUtils.labelCardinality(D_init));
+        assertFalse(t == 0.5);
+
+        // the labels are withheld from the updates, so h makes the predictions of the first window
+        ResultAccumulator expected = new ResultAccumulator("ML", String.valueOf(t));
+        for (int i = WINDOW; i < 2 * WINDOW; i++)
+            expected.addResult(h.distributionForInstance(D.instance(i)), MLUtils.toIntArray(D.instance(i), D.classIndex()));
+        Map<String,Object> stats = expected.getStats("3");
+
+        Result result = IncrementalEvaluation.evaluateModelPrequentialBasic(naiveBayes(), new Instances(D, 0, 3 * WINDOW), WINDOW, 1.0, "PCut1", "3");
+        Instances samples = (Instances) result.getMeasurement("Results sampled over time");
+        for (String key : new String[]{"Hamming score", "Exact match", "Accuracy"})
+            assertEquals(key, (Double) stats.get(key), samples.instance(0).value(samples.attribute(key)), 1e-12);
+    }
+
+    public static Test suite() {
+        return new TestSuite(IncrementalEvaluationTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
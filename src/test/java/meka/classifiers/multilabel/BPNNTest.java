@@ -22,7 +22,12 @@ package meka.classifiers.multilabel;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import meka.classifiers.AbstractMekaClassifierTest;
+import meka.core.MLUtils;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Arrays;
 
 /**
  * Tests BPNN. Run from the command line with:<p/>
@@ -53,6 +58,34 @@ public class BPNNTest
     return new BPNN();
   }
 
+  /**
+   * Trains a BPNN with the given options on Music, and returns its weights.
+   */
+  protected static double[][][] weights(String options) throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    BPNN h = new BPNN();
+    h.setOptions(Utils.splitOptions(options));
+    h.buildClassifier(D);
+    // the training buffers are let go of
+    assertNull(h.Z_);
+    assertNull(h.dZ_);
+    assertNull(h.E_);
+    assertNull(h.G_);
+    double W[][][] = new double[h.W.length][][];
+    for (int i = 0; i < W.length; i++)
+      W[i] = h.W[i].getArray();
+    return W;
+  }
+
+  /**
+   * Tests that mini-batch training gives the same weights (bit for bit) with any number of threads.
+   */
+  public void testMiniBatchNumThreads() throws Exception {
+    double expected[][][] = weights("-B 64 -H 50 -E 10 -num-threads 1");
+    assertTrue(Arrays.deepEquals(expected, weights("-B 64 -H 50 -E 10 -num-threads 4")));
+  }
+
   public static Test suite() {
     return new TestSuite(BPNNTest.class);
   }
@@ -22,8 +22,14 @@ package meka.classifiers.multilabel;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instances;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * Tests MLCBMaD. Run from the command line with:<p/>
  * java meka.classifiers.multilabel.MLCBMaDTest
@@ -67,6 +73,91 @@ public class MLCBMaDTest
 	  //Assert.assertEquals("Result 1", D.classIndex(), 3);
   }
 
+  /**
+   * A random dataset of L labels, the Boolean product of k random basis rows with some noise, and a feature.
+   */
+  protected static Instances booleanData(int N, int L, int k, long seed) {
+    Random r = new Random(seed);
+    boolean B[][] = new boolean[k][L];
+    for (int t = 0; t < k; t++) {
+      for (int j = 0; j < L; j++)
+        B[t][j] = r.nextInt(3) == 0;
+    }
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    for (int j = 0; j < L; j++)
+      atts.add(new Attribute("y" + j, Arrays.asList("0", "1")));
+    atts.add(new Attribute("x"));
+    Instances D = new Instances("boolean", atts, N);
+    D.setClassIndex(L);
+    for (int i = 0; i < N; i++) {
+      double x[] = new double[L + 1];
+      for (int t = 0; t < k; t++) {
+        if (r.nextBoolean()) {
+          for (int j = 0; j < L; j++)
+            x[j] = B[t][j] ? 1.0 : x[j];
+        }
+      }
+      for (int j = 0; j < L; j++) {
+        if (r.nextInt(20) == 0)
+          x[j] = 1.0 - x[j];
+      }
+      x[L] = r.nextGaussian();
+      D.add(new DenseInstance(1.0, x));
+    }
+    return D;
+  }
+
+  /**
+   * The reconstruction error (the number of entries of the labels that the Boolean product of the decomposition
+   * gets wrong) and the cover (the number of true entries it gets right) of the decomposition of the labels of D.
+   */
+  protected static int[] decompositionErrors(MLCBMaD h, Instances D) throws Exception {
+    h.transformLabels(D);
+    int L = D.classIndex();
+    int errors = 0;
+    int cover = 0;
+    for (int i = 0; i < D.numInstances(); i++) {
+      double y[] = h.transformPredictionsBack(h.compressedMatrix.instance(i).toDoubleArray());
+      for (int j = 0; j < L; j++) {
+        boolean truth = D.instance(i).value(j) != 0;
+        boolean predicted = y[j] != 0;
+        if (truth != predicted)
+          errors++;
+        else if (truth)
+          cover++;
+      }
+    }
+    return new int[]{errors, cover};
+  }
+
+  /**
+   * Tests the bitset decomposition (-native) against that of the BMaD library: its reconstruction error may not be
+   * larger, and its cover not smaller, and it is the same with any number of threads.
+   */
+  public void testNativeDecomposition() throws Exception {
+    for (long seed = 1; seed <= 3; seed++) {
+      Instances D = booleanData(200, 12, 4, seed);
+
+      MLCBMaD library = new MLCBMaD();
+      library.setSize(4);
+      int expected[] = decompositionErrors(library, D);
+
+      MLCBMaD bits = new MLCBMaD();
+      bits.setSize(4);
+      bits.setUseNative(true);
+      int actual[] = decompositionErrors(bits, D);
+      assertTrue("error, seed " + seed, actual[0] <= expected[0]);
+      assertTrue("cover, seed " + seed, actual[1] >= expected[1]);
+
+      MLCBMaD threaded = new MLCBMaD();
+      threaded.setSize(4);
+      threaded.setUseNative(true);
+      threaded.setNumThreads(4);
+      assertTrue("threads, seed " + seed, Arrays.equals(actual, decompositionErrors(threaded, D)));
+      assertEquals(bits.uppermatrix.toString(), threaded.uppermatrix.toString());
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(MLCBMaDTest.class);
   }
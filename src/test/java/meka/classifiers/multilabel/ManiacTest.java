@@ -22,8 +22,17 @@ package meka.classifiers.multilabel;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import meka.classifiers.AbstractMekaClassifierTest;
+import meka.core.MLUtils;
+import org.kramerlab.autoencoder.math.matrix.Mat;
+import org.kramerlab.autoencoder.neuralnet.autoencoder.Autoencoder;
 import weka.classifiers.Classifier;
 import weka.core.Instances;
+import weka.core.SerializedObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Tests Maniac. Run from the command line with:<p/>
@@ -68,6 +77,97 @@ public class ManiacTest
 	//Assert.assertEquals("Result 1", D.classIndex(), 3);
     }
 
+    /**
+     * A Maniac whose stream of autoencoders replays (copies of) autoencoders trained beforehand, since
+     * the training of the autoencoders is not reproducible. Like the actual stream, it propagates the 
+     * data through the previous autoencoder before handing out the next one.
+     */
+    protected static class ReplayManiac extends Maniac {
+
+	private static final long serialVersionUID = 1L;
+
+	protected SerializedObject autoencoders;
+
+	public ReplayManiac(List<Autoencoder> autoencoders) throws Exception {
+	    this.autoencoders = new SerializedObject(autoencoders);
+	}
+
+	@Override
+	protected Iterable<Autoencoder> autoencoderStream(final Mat data) {
+	    final List<Autoencoder> replay;
+	    try {
+		replay = (List<Autoencoder>)autoencoders.getObject();
+	    } catch(Exception e) {
+		throw new IllegalStateException(e);
+	    }
+	    return new Iterable<Autoencoder>() {
+		@Override
+		public Iterator<Autoencoder> iterator() {
+		    return new Iterator<Autoencoder>() {
+			int i = 0;
+
+			@Override
+			public boolean hasNext() {
+			    return i < replay.size();
+			}
+
+			@Override
+			public Autoencoder next() {
+			    // (training propagates the data many times)
+			    for (int n = 0; i > 0 && n < 50; n++)
+				replay.get(i - 1).compress(data);
+			    return replay.get(i++);
+			}
+		    };
+		}
+	    };
+	}
+    }
+
+    /**
+     * Builds a Maniac that selects the number of autoencoders (out of the given ones), with the given number of threads.
+     *
+     * @param autoencoders the autoencoders
+     * @param numThreads the number of threads
+     * @param train the training data
+     * @return the classifier
+     */
+    protected Maniac buildOptimized(List<Autoencoder> autoencoders, int numThreads, Instances train) throws Exception {
+	Maniac maniac = new ReplayManiac(autoencoders);
+	maniac.setCompression(0.85);
+	maniac.setNumberAutoencoders(autoencoders.size());
+	maniac.setOptimizeAE(true);
+	maniac.setNumThreads(numThreads);
+	maniac.buildClassifier(new Instances(train));
+	return maniac;
+    }
+
+    /**
+     * The candidate autoencoders are evaluated while the next one is trained: the selection, and 
+     * hence the predictions, must not depend on the number of threads.
+     */
+    public void testOptimizeAENumThreads() throws Exception {
+	Instances D = loadData("Music.arff");
+	MLUtils.prepareData(D);
+	Instances train = new Instances(D, 0, 150);
+	Instances test = new Instances(D, 150, 50);
+
+	Maniac maniac = new Maniac();
+	maniac.setCompression(0.85);
+	maniac.setNumberAutoencoders(3);
+	List<Autoencoder> autoencoders = new ArrayList<Autoencoder>();
+	for (Autoencoder a : maniac.autoencoderStream(maniac.labelsToMat(train)))
+	    autoencoders.add(a);
+
+	Maniac sequential = buildOptimized(autoencoders, 1, train);
+	Maniac parallel = buildOptimized(autoencoders, 4, train);
+	for (int i = 0; i < test.numInstances(); i++) {
+	    double expected[] = sequential.distributionForInstance(test.instance(i));
+	    double actual[] = parallel.distributionForInstance(test.instance(i));
+	    assertTrue("instance " + i, Arrays.equals(expected, actual));
+	}
+    }
+
     public static Test suite() {
 	return new TestSuite(ManiacTest.class);
     }
@@ -0,0 +1,232 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.classifiers.multilabel.NN;
+
+import Jama.Matrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import meka.classifiers.multilabel.DBPNN;
+import meka.core.MLUtils;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests writing and reading the entries of RepresentationCache. Run from the command line with:<p/>
+ * java meka.classifiers.multilabel.NN.RepresentationCacheTest
+ *
+ * @version $Revision$
+ */
+public class RepresentationCacheTest
+    extends TestCase {
+
+    /** the cache directory */
+    protected File m_Dir;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public RepresentationCacheTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_Dir = Files.createTempDirectory("meka-cache").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File files[] = m_Dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++)
+            files[i].delete();
+        m_Dir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * The weights of a 6-4-3 network (with biases).
+     */
+    protected static Matrix[] weights(Random r) {
+        return new Matrix[]{new Matrix(random(7, 5, r)), new Matrix(random(5, 4, r))};
+    }
+
+    /**
+     * The representation of 10 instances in the last layer.
+     */
+    protected static double[][] representation(Random r) {
+        return random(10, 4, r);
+    }
+
+    protected static double[][] random(int rows, int cols, Random r) {
+        double M[][] = new double[rows][cols];
+        for (double m[] : M) {
+            for (int j = 0; j < m.length; j++)
+                m[j] = r.nextGaussian();
+        }
+        return M;
+    }
+
+    protected static void assertSameWeights(Matrix expected[], Matrix actual[]) {
+        assertEquals(expected.length, actual.length);
+        for (int l = 0; l < expected.length; l++)
+            assertTrue("layer " + l, Arrays.deepEquals(expected[l].getArray(), actual[l].getArray()));
+    }
+
+    /**
+     * Tests that what is written is read back, with and without the representation.
+     */
+    public void testRoundTrip() {
+        Random r = new Random(1);
+        Matrix W[] = weights(r);
+        double Z[][] = representation(r);
+
+        assertNull(RepresentationCache.read(m_Dir, "a"));
+        assertTrue(RepresentationCache.write(m_Dir, "a", W, Z));
+        RepresentationCache.Entry e = RepresentationCache.read(m_Dir, "a");
+        assertNotNull(e);
+        assertSameWeights(W, e.W);
+        assertTrue(Arrays.deepEquals(Z, e.Z));
+
+        assertTrue(RepresentationCache.write(m_Dir, "b", W, null));
+        e = RepresentationCache.read(m_Dir, "b");
+        assertNotNull(e);
+        assertSameWeights(W, e.W);
+        assertNull(e.Z);
+    }
+
+    /**
+     * Tests that an entry is not used for another key, even under the same file name.
+     */
+    public void testOtherKey() throws Exception {
+        Random r = new Random(2);
+        assertTrue(RepresentationCache.write(m_Dir, "a", weights(r), representation(r)));
+        Files.copy(RepresentationCache.getFile(m_Dir, "a").toPath(), RepresentationCache.getFile(m_Dir, "b").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertNull(RepresentationCache.read(m_Dir, "b"));
+        assertNotNull(RepresentationCache.read(m_Dir, "a"));
+    }
+
+    /**
+     * Tests that truncated or corrupted files are ignored.
+     */
+    public void testInvalidFile() throws Exception {
+        Random r = new Random(3);
+        assertTrue(RepresentationCache.write(m_Dir, "a", weights(r), representation(r)));
+        File file = RepresentationCache.getFile(m_Dir, "a");
+        long length = file.length();
+
+        // the dimensions of the layers do not fit together
+        int offset = 8 + 4 + 1 + 4 + 8;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(6);
+        }
+        assertNull(RepresentationCache.read(m_Dir, "a"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(5);
+        }
+        assertNotNull(RepresentationCache.read(m_Dir, "a"));
+
+        // the dimensions do not fit the size of the file
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 8);
+        }
+        assertNull(RepresentationCache.read(m_Dir, "a"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length + 8);
+        }
+        assertNull(RepresentationCache.read(m_Dir, "a"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(3);
+        }
+        assertNull(RepresentationCache.read(m_Dir, "a"));
+    }
+
+    /**
+     * The predictions of h on the first instances of D.
+     */
+    protected static double[][] predictions(DBPNN h, Instances D) throws Exception {
+        double Y[][] = new double[20][];
+        for (int i = 0; i < Y.length; i++)
+            Y[i] = h.distributionForInstance(D.instance(i));
+        return Y;
+    }
+
+    /**
+     * Tests that DBPNN stores its pre-trained weights under its key, and that a second build on the same data and setup
+     * uses them (rather than pre-training again), unlike a build with another setup.
+     */
+    public void testDBPNN() throws Exception {
+        Instances D = DataSource.read("Music.arff");
+        MLUtils.prepareData(D);
+        String options[] = new String[]{"-N", "2", "-H", "10", "-E", "5", "-cache-dir", m_Dir.getPath()};
+
+        DBPNN h = new DBPNN();
+        h.setOptions(options.clone());
+        h.buildClassifier(D);
+        assertEquals(1, m_Dir.listFiles().length);
+        String key = h.getCacheKey(D, 10);
+        RepresentationCache.Entry e = RepresentationCache.read(m_Dir, key);
+        assertNotNull(e);
+        assertEquals(2, e.W.length);
+        assertEquals(D.numAttributes() - D.classIndex() + 1, e.W[0].getRowDimension());
+        assertNull(e.Z);
+
+        DBPNN h2 = new DBPNN();
+        h2.setOptions(options.clone());
+        h2.buildClassifier(D);
+        assertEquals(1, m_Dir.listFiles().length);
+        assertTrue(Arrays.deepEquals(predictions(h, D), predictions(h2, D)));
+
+        // other pre-trained weights under the same key get used
+        for (Matrix W : e.W)
+            W.timesEquals(0.5);
+        assertTrue(RepresentationCache.write(m_Dir, key, e.W, null));
+        h2 = new DBPNN();
+        h2.setOptions(options.clone());
+        h2.buildClassifier(D);
+        assertFalse(Arrays.deepEquals(predictions(h, D), predictions(h2, D)));
+
+        // another setup gets its own entry
+        h2 = new DBPNN();
+        h2.setOptions(new String[]{"-N", "2", "-H", "10", "-E", "6", "-cache-dir", m_Dir.getPath()});
+        h2.buildClassifier(D);
+        assertEquals(2, m_Dir.listFiles().length);
+    }
+
+    public static Test suite() {
+        return new TestSuite(RepresentationCacheTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -21,7 +21,17 @@ package meka.classifiers.multilabel;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import meka.classifiers.multilabel.meta.DeepML;
 import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.matrix.Matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Tests PLST. Run from the command line with:<p/>
@@ -53,6 +63,110 @@ public class PLSTTest
 		return plst;
 	}
 
+	/**
+	 * A small multi-label dataset with two numeric features and L = 3 * B labels, where the labels come in groups
+	 * of three identical copies of B random labels (so the centred label matrix has rank at most B).
+	 *
+	 * @param N the number of instances
+	 * @param B the number of distinct labels
+	 * @return the dataset
+	 */
+	protected Instances labelData(int N, int B) {
+		int L = 3 * B;
+		ArrayList<Attribute> atts = new ArrayList<Attribute>();
+		for (int j = 0; j < L; j++)
+			atts.add(new Attribute("y" + j, Arrays.asList("0", "1")));
+		atts.add(new Attribute("a"));
+		atts.add(new Attribute("b"));
+		Instances D = new Instances("test: -C " + L, atts, N);
+		D.setClassIndex(L);
+		Random r = new Random(1);
+		for (int i = 0; i < N; i++) {
+			double x[] = new double[L + 2];
+			for (int b = 0; b < B; b++) {
+				double y = r.nextDouble() < 0.3 + 0.1 * b ? 1.0 : 0.0;
+				for (int c = 0; c < 3; c++)
+					x[3 * b + c] = y;
+			}
+			x[L] = r.nextGaussian();
+			x[L + 1] = r.nextGaussian();
+			D.add(new DenseInstance(1.0, x));
+		}
+		return D;
+	}
+
+	/**
+	 * Transforms the labels of D with the given PLST and decodes the transformed labels again.
+	 *
+	 * @param plst the (configured) PLST
+	 * @param D the dataset
+	 * @return the decoded labels
+	 */
+	protected double[][] transformAndDecode(PLST plst, Instances D) throws Exception {
+		Instances D_ = plst.transformLabels(D);
+		int k = plst.getSize();
+		double Y[][] = new double[D_.numInstances()][2 * k];
+		for (int i = 0; i < Y.length; i++) {
+			for (int j = 0; j < k; j++)
+				Y[i][k + j] = D_.instance(i).value(j);
+		}
+		return plst.transformPredictionsBack(Y);
+	}
+
+	/**
+	 * Compares the randomized truncated SVD with the exact one: the subspace spanned by the right singular
+	 * vectors (the projection V V', since the signs of the vectors may differ), and the labels decoded from
+	 * the projected labels.
+	 *
+	 * @param oversampling the oversampling of the randomized SVD
+	 * @param powerIterations the number of power iterations
+	 */
+	protected void checkRandomized(int oversampling, int powerIterations) throws Exception {
+		Instances D = labelData(60, 4);
+
+		PLST exact = new PLST();
+		exact.setSize(4);
+		double decodedExact[][] = transformAndDecode(exact, D);
+
+		PLST randomized = new PLST();
+		randomized.setSize(4);
+		randomized.setRandomized(true);
+		randomized.setOversampling(oversampling);
+		randomized.setPowerIterations(powerIterations);
+		double decodedRandomized[][] = transformAndDecode(randomized, D);
+
+		Matrix P = exact.m_v.times(exact.m_v.transpose());
+		Matrix P_ = randomized.m_v.times(randomized.m_v.transpose());
+		assertEquals("projection", 0.0, P.minus(P_).normF(), 1e-8);
+		assertTrue("decoded labels", Arrays.deepEquals(decodedExact, decodedRandomized));
+	}
+
+	/**
+	 * With oversampling, the sampled range covers the whole label space.
+	 */
+	public void testRandomizedSVDOversampling() throws Exception {
+		checkRandomized(10, 0);
+	}
+
+	/**
+	 * Without oversampling, the sampled range covers the (rank 4) centred label matrix, refined by power iterations.
+	 */
+	public void testRandomizedSVDPowerIterations() throws Exception {
+		checkRandomized(0, 2);
+	}
+
+	/**
+	 * Batch prediction is only reported as more efficient if it is for the internal classifier.
+	 */
+	public void testImplementsMoreEfficientBatchPrediction() {
+		PLST plst = new PLST();
+		assertFalse(plst.implementsMoreEfficientBatchPrediction());
+		plst.setClassifier(new J48());
+		assertFalse(plst.implementsMoreEfficientBatchPrediction());
+		plst.setClassifier(new DeepML());
+		assertTrue(plst.implementsMoreEfficientBatchPrediction());
+	}
+
 	public static Test suite() {
 		return new TestSuite(PLSTTest.class);
 	}
@@ -21,7 +21,16 @@ package meka.classifiers.multilabel;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import meka.core.MLUtils;
 import weka.classifiers.Classifier;
+import weka.classifiers.rules.ZeroR;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Tests RT. Run from the command line with:<p/>
@@ -52,6 +61,101 @@ public class RTTest
     return new RT();
   }
 
+  /**
+   * The conversion of x as before: a copy of x for each relevant label, deleting the other labels.
+   */
+  protected static List<Instance> deleteLabels(Instance x, Instances template) {
+    int L = x.classIndex();
+    List<Instance> copies = new ArrayList<Instance>();
+    for (int j = 0; j < L; j++) {
+      if ((int) x.value(j) > 0) {
+        Instance x_ = (Instance) x.copy();
+        x_.setDataset(null);
+        for (int k = 1; k < L; k++)
+          x_.deleteAttributeAt(1);
+        x_.setDataset(template);
+        x_.setClassValue(j);
+        copies.add(x_);
+      }
+    }
+    return copies;
+  }
+
+  protected static void assertSameInstance(Instance expected, Instance actual) {
+    assertEquals(expected instanceof SparseInstance, actual instanceof SparseInstance);
+    assertSame(expected.dataset(), actual.dataset());
+    assertEquals(expected.weight(), actual.weight(), 0.0);
+    assertEquals(expected.numAttributes(), actual.numAttributes());
+    for (int k = 0; k < expected.numAttributes(); k++)
+      assertEquals("attribute " + k, 0, Double.compare(expected.value(k), actual.value(k)));
+  }
+
+  /**
+   * Converts Music (dense or sparse, with random weights) and asserts the same instances as deleting the labels.
+   */
+  protected void assertSameConversion(boolean sparse) throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    Random r = new Random(1);
+    for (int i = 0; i < D.numInstances(); i++) {
+      Instance x = sparse ? new SparseInstance(D.instance(i)) : D.instance(i);
+      x.setWeight(0.5 + r.nextDouble());
+      D.set(i, x);
+    }
+    RT h = new RT();
+    h.setClassifier(new ZeroR());
+    h.buildClassifier(D);
+
+    for (int i = 0; i < D.numInstances(); i++) {
+      Instance x = D.instance(i);
+      List<Instance> expected = deleteLabels(x, h.m_InstancesTemplate);
+      List<Instance> actual = h.convertInstances(x);
+      assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < expected.size(); j++)
+        assertSameInstance(expected.get(j), actual.get(j));
+    }
+  }
+
+  /**
+   * Tests convertInstances on dense instances.
+   */
+  public void testConvertInstancesDense() throws Exception {
+    assertSameConversion(false);
+  }
+
+  /**
+   * Tests convertInstances on sparse instances.
+   */
+  public void testConvertInstancesSparse() throws Exception {
+    assertSameConversion(true);
+  }
+
+  /**
+   * Tests that, with copy-weight, the copies of an example share its weight.
+   */
+  public void testCopyWeight() throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    RT h = new RT();
+    h.setOptions(new String[]{"-copy-weight", "-W", ZeroR.class.getName()});
+    assertTrue(h.getCopyWeight());
+    h.buildClassifier(D);
+
+    Random r = new Random(2);
+    for (int i = 0; i < D.numInstances(); i++) {
+      Instance x = D.instance(i);
+      x.setWeight(0.5 + r.nextDouble());
+      List<Instance> copies = h.convertInstances(x);
+      double sum = 0.0;
+      for (Instance x_j : copies) {
+        assertEquals(x.weight() / copies.size(), x_j.weight(), 0.0);
+        sum += x_j.weight();
+      }
+      if (!copies.isEmpty())
+        assertEquals(x.weight(), sum, 1e-12);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(RTTest.class);
   }
@@ -22,7 +22,11 @@ package meka.classifiers.multilabel.incremental;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import meka.classifiers.multilabel.AbstractMultiLabelClassifierTest;
+import meka.core.MLUtils;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.Arrays;
 
 /**
  * Tests CCUpdateable. Run from the command line with:<p/>
@@ -53,6 +57,34 @@ public class CCUpdateableTest
     return new CCUpdateable();
   }
 
+  /**
+   * Builds on the first 100 instances of D, updates with the rest in batches of 50, and returns the predictions
+   * for all of D.
+   */
+  protected static double[][] updateInBatches(CCUpdateable h, Instances D) throws Exception {
+    h.buildClassifier(new Instances(D, 0, 100));
+    for (int i = 100; i < D.numInstances(); i += 50)
+      h.updateClassifier(new Instances(D, i, Math.min(50, D.numInstances() - i)));
+    double y[][] = new double[D.numInstances()][];
+    for (int i = 0; i < D.numInstances(); i++)
+      y[i] = h.distributionForInstance(D.instance(i));
+    return y;
+  }
+
+  /**
+   * Updating the links with a batch in parallel gives the same model as sequentially.
+   */
+  public void testBatchNumThreads() throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    CCUpdateable h = new CCUpdateable();
+    double expected[][] = updateInBatches(h, D);
+    h = new CCUpdateable();
+    h.setNumThreads(4);
+    assertTrue(Arrays.deepEquals(expected, updateInBatches(h, D)));
+    assertEquals(4, h.getNumThreads());
+  }
+
   public static Test suite() {
     return new TestSuite(CCUpdateableTest.class);
   }
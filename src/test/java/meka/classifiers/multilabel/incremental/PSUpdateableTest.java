@@ -22,7 +22,19 @@ package meka.classifiers.multilabel.incremental;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import meka.classifiers.multilabel.AbstractMultiLabelClassifierTest;
+import meka.core.LabelSet;
 import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Tests PSUpdateable. Run from the command line with:<p/>
@@ -53,6 +65,135 @@ public class PSUpdateableTest
     return new PSUpdateable();
   }
 
+  /**
+   * An instance with the given labels (of 3), and its first label index (or -1) as the feature.
+   */
+  protected static Instance instance(Instances D, int... labels) {
+    double v[] = new double[4];
+    for (int j : labels)
+      v[j] = 1.0;
+    v[3] = labels.length > 0 ? labels[0] : -1;
+    Instance x = new DenseInstance(1.0, v);
+    x.setDataset(D);
+    return x;
+  }
+
+  /**
+   * The class values (labelsets) of PS, sorted.
+   */
+  protected static ArrayList<String> classValues(PSUpdateable h) {
+    ArrayList<String> values = new ArrayList<String>();
+    Attribute C = h.getTemplate().classAttribute();
+    for (int i = 0; i < C.numValues(); i++)
+      values.add(C.value(i));
+    Collections.sort(values);
+    return values;
+  }
+
+  /**
+   * Once a labelset becomes one of the most frequent of the stream, a refresh gives it the class of the least
+   * frequent one that dropped out, and PS learns to predict it.
+   */
+  public void testRefreshRenamesClassValues() throws Exception {
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    for (int j = 0; j < 3; j++)
+      atts.add(new Attribute("y" + j, Arrays.asList("0", "1")));
+    atts.add(new Attribute("x"));
+    Instances D = new Instances("test: -C 3", atts, 0);
+    D.setClassIndex(3);
+    // the initial batch: {0} 10 times, {1} 6 times, {0,1} 4 times
+    for (int i = 0; i < 20; i++)
+      D.add(i < 10 ? instance(D, 0) : i < 16 ? instance(D, 1) : instance(D, 0, 1));
+
+    PSUpdateable h = new PSUpdateable();
+    h.setClassifier(new NaiveBayesUpdateable());
+    h.setLimit(20);
+    h.setSupport(2);
+    h.setCounters(10);
+    h.setRefresh(10);
+    h.buildClassifier(D);
+    assertEquals(Arrays.asList("[0]", "[1]"), classValues(h));
+    assertEquals(2, h.combinations.size());
+
+    // no change while the classes are the most frequent labelsets
+    for (int i = 0; i < 10; i++)
+      h.updateClassifier(instance(D, 1));
+    assertEquals(Arrays.asList("[0]", "[1]"), classValues(h));
+    assertEquals(16, (int)h.combinations.get(new LabelSet(new int[]{1})));
+
+    // {2} overtakes {1} (16), but not {0} (10 + 20)
+    for (int i = 0; i < 20; i++) {
+      h.updateClassifier(instance(D, 2));
+      h.updateClassifier(instance(D, 0));
+    }
+    assertEquals(Arrays.asList("[0]", "[2]"), classValues(h));
+    assertFalse(h.combinations.containsKey(new LabelSet(new int[]{1})));
+    assertEquals(20, (int)h.combinations.get(new LabelSet(new int[]{2})));
+    assertEquals(30, (int)h.combinations.get(new LabelSet(new int[]{0})));
+
+    // the renamed class is learned, and predicted
+    for (int i = 0; i < 50; i++)
+      h.updateClassifier(instance(D, 2));
+    double y[] = h.distributionForInstance(instance(D, 2));
+    assertEquals(1.0, y[2], 0.0);
+    assertEquals(0.0, y[0], 0.0);
+    assertEquals(0.0, y[1], 0.0);
+    y = h.distributionForInstance(instance(D, 0));
+    assertEquals(1.0, y[0], 0.0);
+    assertEquals(0.0, y[2], 0.0);
+  }
+
+  /**
+   * With more distinct labelsets in the initial batch than counters, the counters start with the most frequent
+   * labelsets, and their exact counts.
+   */
+  public void testMoreLabelsetsThanCounters() throws Exception {
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    for (int j = 0; j < 3; j++)
+      atts.add(new Attribute("y" + j, Arrays.asList("0", "1")));
+    atts.add(new Attribute("x"));
+    Instances D = new Instances("test: -C 3", atts, 0);
+    D.setClassIndex(3);
+    // all 8 labelsets, {} once, {0} twice, ..., {0,1,2} 8 times
+    int labelsets[][] = {{}, {0}, {1}, {2}, {0, 1}, {0, 2}, {1, 2}, {0, 1, 2}};
+    for (int k = 0; k < labelsets.length; k++) {
+      for (int i = 0; i <= k; i++)
+        D.add(instance(D, labelsets[k]));
+    }
+    Collections.shuffle(D, new Random(1));
+
+    PSUpdateable h = new PSUpdateable();
+    h.setClassifier(new NaiveBayesUpdateable());
+    h.setLimit(D.numInstances());
+    h.setSupport(2);
+    h.setCounters(3);
+    h.buildClassifier(D);
+    assertEquals(3, h.counts.size());
+    List<LabelSet> top = h.counts.top(3);
+    for (int k = 0; k < 3; k++) {
+      LabelSet y = new LabelSet(labelsets[labelsets.length - 1 - k]);
+      assertEquals(y, top.get(k));
+      assertEquals(labelsets.length - k, h.counts.count(y));
+      assertEquals(0, h.counts.error(y));
+    }
+    assertEquals(Arrays.asList("[0, 1, 2]", "[1, 2]"), classValues(h));
+  }
+
+  /**
+   * Tests that fewer than one counter, and negative refresh intervals, are rejected.
+   */
+  public void testSetCountersRefresh() {
+    PSUpdateable h = new PSUpdateable();
+    h.setCounters(5);
+    h.setCounters(0);
+    assertEquals(5, h.getCounters());
+    h.setRefresh(7);
+    h.setRefresh(-1);
+    assertEquals(7, h.getRefresh());
+    h.setRefresh(0);
+    assertEquals(0, h.getRefresh());
+  }
+
   public static Test suite() {
     return new TestSuite(PSUpdateableTest.class);
   }
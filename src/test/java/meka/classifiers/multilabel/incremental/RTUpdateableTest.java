@@ -22,7 +22,12 @@ package meka.classifiers.multilabel.incremental;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import meka.classifiers.multilabel.AbstractMultiLabelClassifierTest;
+import meka.core.MLUtils;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+
+import java.util.Arrays;
 
 /**
  * Tests RTUpdateable. Run from the command line with:<p/>
@@ -53,6 +58,27 @@ public class RTUpdateableTest
     return new RTUpdateable();
   }
 
+  /**
+   * Tests that a deserialized RTUpdateable (which drops its projection) keeps updating and predicting as the original.
+   */
+  public void testSerialization() throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    int N = D.numInstances() / 2;
+    RTUpdateable h = new RTUpdateable();
+    h.buildClassifier(new Instances(D, 0, N / 2));
+    for (int i = N / 2; i < N; i++)
+      h.updateClassifier(D.instance(i));
+
+    RTUpdateable h2 = (RTUpdateable) new SerializedObject(h).getObject();
+    for (int i = N; i < D.numInstances(); i++) {
+      assertTrue(Arrays.equals(h.distributionForInstance(D.instance(i)), h2.distributionForInstance(D.instance(i))));
+      h.updateClassifier(D.instance(i));
+      h2.updateClassifier(D.instance(i));
+    }
+    assertTrue(Arrays.equals(h.distributionForInstance(D.instance(0)), h2.distributionForInstance(D.instance(0))));
+  }
+
   public static Test suite() {
     return new TestSuite(RTUpdateableTest.class);
   }
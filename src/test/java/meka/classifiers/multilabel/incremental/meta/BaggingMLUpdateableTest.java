@@ -22,7 +22,12 @@ package meka.classifiers.multilabel.incremental.meta;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import meka.classifiers.multilabel.AbstractMultiLabelClassifierTest;
+import meka.core.MLUtils;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Arrays;
 
 /**
  * Tests BRUpdateable. Run from the command line with:<p/>
@@ -52,6 +57,33 @@ public class BaggingMLUpdateableTest
     return new BaggingMLUpdateable();
   }
 
+  /**
+   * Builds the ensemble (with the given options) on the first 100 instances of Music, updates it with the next 300,
+   * one at a time, and returns its distributions for the others.
+   */
+  protected static double[][] distributions(String options) throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    BaggingMLUpdateable h = new BaggingMLUpdateable();
+    h.setOptions(Utils.splitOptions(options));
+    h.buildClassifier(new Instances(D, 0, 100));
+    for (int i = 100; i < 400; i++)
+      h.updateClassifier(D.instance(i));
+    double y[][] = new double[D.numInstances() - 400][];
+    for (int i = 400; i < D.numInstances(); i++)
+      y[i - 400] = h.distributionForInstance(D.instance(i));
+    return y;
+  }
+
+  /**
+   * Tests that the distributions are the same (bit for bit) with any number of threads.
+   */
+  public void testNumThreads() throws Exception {
+    double expected[][] = distributions("-I 10 -num-threads 1");
+    assertTrue(Arrays.deepEquals(expected, distributions("-I 10 -num-threads 4")));
+    assertTrue(Arrays.deepEquals(expected, distributions("-I 10 -num-threads 3")));
+  }
+
   public static Test suite() {
     return new TestSuite(BaggingMLUpdateableTest.class);
   }
@@ -0,0 +1,165 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.classifiers.multilabel.neurofuzzy;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import meka.core.MLUtils;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.util.Arrays;
+
+/**
+ * Tests the classification of batches of instances with several threads (distributionForInstanceM) against
+ * classifying them one at a time. Run from the command line with:<p/>
+ * java meka.classifiers.multilabel.neurofuzzy.ARAMNetworkClassTest
+ *
+ * @version $Revision$
+ */
+public class ARAMNetworkClassTest
+    extends TestCase {
+
+    /** the number of training instances (the others are classified) */
+    protected static final int TRAIN = 400;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public ARAMNetworkClassTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Trains the network on the first instances of Music, with <code>-threaded -num-threads 4</code>, and asserts
+     * that the rankings of distributionForInstanceM of the others are exactly those of distributionForInstance.
+     */
+    protected void assertSameRankings(ARAMNetworkClass network) throws Exception {
+        Instances D = DataSource.read("Music.arff");
+        MLUtils.prepareData(D);
+        Instances train = new Instances(D, 0, TRAIN);
+        Instances test = new Instances(D, TRAIN, D.numInstances() - TRAIN);
+
+        network.setOptions(new String[]{"-threaded", "-num-threads", "4"});
+        assertTrue(network.isThreaded());
+        assertEquals(4, network.getNumThreads());
+        network.buildClassifier(train);
+
+        double[][] batch = network.distributionForInstanceM(test);
+        assertEquals(test.numInstances(), batch.length);
+        for (int i = 0; i < test.numInstances(); i++) {
+            double[] y = network.distributionForInstance(ARAMNetworkClass.clearLabels(test.instance(i)));
+            assertTrue("instance " + i + ": " + Arrays.toString(y) + " vs " + Arrays.toString(batch[i]),
+                Arrays.equals(y, batch[i]));
+        }
+    }
+
+    public void testARAMNetworkfast() throws Exception {
+        assertSameRankings(new ARAMNetworkfast());
+    }
+
+    public void testARAMNetworkSparseV() throws Exception {
+        assertSameRankings(new ARAMNetworkSparseV());
+    }
+
+    public void testARAMNetworkSparseHT() throws Exception {
+        assertSameRankings(new ARAMNetworkSparseHT());
+    }
+
+    /**
+     * Tests that ARAMNetworkSparseHT_Strange, which cannot classify instances concurrently, classifies a batch one
+     * instance at a time.
+     */
+    public void testARAMNetworkSparseHT_Strange() throws Exception {
+        ARAMNetworkSparseHT_Strange network = new ARAMNetworkSparseHT_Strange();
+        assertFalse(network.canPredictInParallel());
+        assertSameRankings(network);
+    }
+
+    /**
+     * Asserts that the rankings of the network, and the neurons activated, are the same (bit for bit) with the
+     * activations pruned as without.
+     */
+    protected void assertSamePruning(ARAMNetwork network, Instances test) throws Exception {
+        assertTrue(network.weightsInUnitRange);
+        for (int i = 0; i < test.numInstances(); i++) {
+            network.weightsInUnitRange = true;
+            double[] pruned = network.distributionForInstance(test.instance(i));
+            int[] prunedNeurons = network.getneuronsactivated();
+            double[] prunedActivity = network.getneuronsactivity();
+            network.weightsInUnitRange = false;
+            double[] y = network.distributionForInstance(test.instance(i));
+            assertTrue("instance " + i, Arrays.equals(y, pruned));
+            assertTrue("instance " + i, Arrays.equals(network.getneuronsactivated(), prunedNeurons));
+            assertTrue("instance " + i, Arrays.equals(network.getneuronsactivity(), prunedActivity));
+        }
+        network.weightsInUnitRange = true;
+    }
+
+    /**
+     * Tests the pruning of the activations of ARAMNetwork, on Music (normalized to [0,1]), with the default
+     * threshold and the largest one that pruning applies to.
+     */
+    public void testARAMNetworkPruning() throws Exception {
+        Instances D = DataSource.read("Music.arff");
+        MLUtils.prepareData(D);
+        for (int j = D.classIndex(); j < D.numAttributes(); j++) {
+            double[] v = D.attributeToDoubleArray(j);
+            double min = v[Utils.minIndex(v)];
+            double max = v[Utils.maxIndex(v)];
+            for (int i = 0; i < D.numInstances(); i++)
+                D.instance(i).setValue(j, max > min ? (v[i] - min) / (max - min) : 0.0);
+        }
+        Instances train = new Instances(D, 0, TRAIN);
+        Instances test = new Instances(D, TRAIN, D.numInstances() - TRAIN);
+
+        for (double threshold : new double[]{0.02, 0.5}) {
+            ARAMNetwork network = new ARAMNetwork();
+            network.threshold = threshold;
+            network.buildClassifier(train);
+            assertSamePruning(network, test);
+        }
+    }
+
+    /**
+     * Tests that learning weights outside of [0,1], from features outside of [0,1], turns off the pruning.
+     */
+    public void testARAMNetworkWeightsOutsideUnitRange() throws Exception {
+        Instances D = DataSource.read("Music.arff");
+        MLUtils.prepareData(D);
+        Instances train = new Instances(D, 0, TRAIN);
+        train.instance(0).setValue(train.classIndex(), 2.0);
+        ARAMNetwork network = new ARAMNetwork();
+        network.buildClassifier(train);
+        assertFalse(network.weightsInUnitRange);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ARAMNetworkClassTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
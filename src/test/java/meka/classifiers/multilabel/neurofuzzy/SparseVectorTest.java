@@ -0,0 +1,164 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.classifiers.multilabel.neurofuzzy;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Random;
+
+/**
+ * Tests the fuzzy AND kernels of SparseVector against dense references. Run from the command line with:<p/>
+ * java meka.classifiers.multilabel.neurofuzzy.SparseVectorTest
+ *
+ * @version $Revision$
+ */
+public class SparseVectorTest
+    extends TestCase {
+
+    /** the length of the vectors */
+    protected static final int N = 40;
+
+    protected Random r;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public SparseVectorTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() {
+        r = new Random(1);
+    }
+
+    /**
+     * A random vector in [0,1], with about the given fraction of non-zero entries in [from,to).
+     */
+    protected double[] randomDense(double density, int from, int to) {
+        double a[] = new double[N];
+        for (int i = from; i < to; i++) {
+            if (r.nextDouble() < density)
+                a[i] = (r.nextInt(4) == 0) ? 1.0 : r.nextDouble();
+        }
+        return a;
+    }
+
+    /**
+     * The sparse vector of the dense vector a.
+     */
+    protected static SparseVector sparse(double a[]) {
+        SparseVector v = new SparseVector(a.length);
+        for (int i = 0; i < a.length; i++)
+            v.put(i, a[i]);
+        return v;
+    }
+
+    /**
+     * sum_i min(a_i,b_i)
+     */
+    protected static double sumMin(double a[], double b[]) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++)
+            sum += Math.min(a[i], b[i]);
+        return sum;
+    }
+
+    /**
+     * sum_{j < n} min(1 - b_j, 1 - a_{offset + j})
+     */
+    protected static double sumMinComplement(double a[], double b[], int offset, int n) {
+        double sum = 0.0;
+        for (int j = 0; j < n; j++)
+            sum += Math.min(1 - b[j], 1 - a[offset + j]);
+        return sum;
+    }
+
+    public void testSumMin() {
+        for (int t = 0; t < 100; t++) {
+            double a[] = randomDense(0.1 + 0.8 * r.nextDouble(), 0, N);
+            double b[] = randomDense(0.1 + 0.8 * r.nextDouble(), 0, N);
+            assertEquals(sumMin(a, b), sparse(a).sumMin(sparse(b)), 1e-12);
+            assertEquals(sumMin(a, b), sparse(b).sumMin(sparse(a)), 1e-12);
+        }
+    }
+
+    public void testSumMinEmptyAndDisjoint() {
+        double a[] = randomDense(0.5, 0, N / 2);
+        double b[] = randomDense(0.5, N / 2, N);
+        double zero[] = new double[N];
+        assertEquals(0.0, sparse(a).sumMin(sparse(b)), 0.0);
+        assertEquals(0.0, sparse(a).sumMin(sparse(zero)), 0.0);
+        assertEquals(0.0, sparse(zero).sumMin(sparse(a)), 0.0);
+        assertEquals(0.0, sparse(zero).sumMin(sparse(zero)), 0.0);
+        // identical vectors
+        assertEquals(sparse(a).sum(), sparse(a).sumMin(sparse(a)), 1e-12);
+    }
+
+    public void testSumMinComplement() {
+        int n = N / 2;
+        for (int t = 0; t < 100; t++) {
+            int offset = r.nextInt(N - n + 1);
+            // entries outside [offset,offset+n) of a, and from n on of b, must be ignored
+            double a[] = randomDense(0.1 + 0.8 * r.nextDouble(), 0, N);
+            double b[] = randomDense(0.1 + 0.8 * r.nextDouble(), 0, N);
+            assertEquals(sumMinComplement(a, b, offset, n), sparse(a).sumMinComplement(sparse(b), offset, n), 1e-12);
+        }
+    }
+
+    public void testSumMinComplementEmptyAndDisjoint() {
+        int n = N / 2, offset = N / 2;
+        double zero[] = new double[N];
+        double a[] = randomDense(0.5, offset, offset + n);
+        double b[] = randomDense(0.5, 0, n);
+        // both empty: each term is min(1,1)
+        assertEquals((double)n, sparse(zero).sumMinComplement(sparse(zero), offset, n), 0.0);
+        assertEquals(sumMinComplement(a, zero, offset, n), sparse(a).sumMinComplement(sparse(zero), offset, n), 1e-12);
+        assertEquals(sumMinComplement(zero, b, offset, n), sparse(zero).sumMinComplement(sparse(b), offset, n), 1e-12);
+
+        // disjoint (after the offset): the even positions in a, the odd ones in b
+        a = new double[N];
+        b = new double[N];
+        for (int j = 0; j < n; j++) {
+            if (j % 2 == 0)
+                a[offset + j] = r.nextDouble();
+            else
+                b[j] = r.nextDouble();
+        }
+        assertEquals(sumMinComplement(a, b, offset, n), sparse(a).sumMinComplement(sparse(b), offset, n), 1e-12);
+
+        // only entries outside the range
+        a = randomDense(0.5, 0, offset);
+        b = randomDense(0.5, n, N);
+        assertEquals((double)n, sparse(a).sumMinComplement(sparse(b), offset, n), 0.0);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SparseVectorTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -21,7 +21,25 @@ package meka.classifiers.multitarget;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import meka.core.PSUtils;
+import meka.core.MLUtils;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tests CC. Run from the command line with:<p/>
@@ -51,6 +69,100 @@ public class NSRTest
     return new NSR();
   }
 
+  /**
+   * A multi-target dataset of N instances, with L targets of K values each (the first two related to the
+   * features), and two numeric features.
+   */
+  public static Instances targetData(int N, int L, int K, long seed) {
+    List<String> values = new ArrayList<String>();
+    for (int v = 0; v < K; v++)
+      values.add("" + v);
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    for (int j = 0; j < L; j++)
+      atts.add(new Attribute("y" + j, values));
+    atts.add(new Attribute("x0"));
+    atts.add(new Attribute("x1"));
+    Instances D = new Instances("test: -C " + L, atts, N);
+    Random r = new Random(seed);
+    for (int i = 0; i < N; i++) {
+      double x[] = new double[L + 2];
+      x[L] = r.nextDouble() * K;
+      x[L + 1] = r.nextDouble() * K;
+      for (int j = 0; j < L; j++) {
+        int v = (j < 2) ? (int)x[L + j] : r.nextInt(K);
+        x[j] = (r.nextInt(5) == 0) ? r.nextInt(K) : v;
+      }
+      D.add(new DenseInstance(1.0, x));
+    }
+    D.setClassIndex(L);
+    return D;
+  }
+
+  /**
+   * The prediction of NSR, decoded with a map of votes for each target, as before the tables of votes.
+   */
+  protected static double[] distributionWithMaps(NSR h, Instance x) throws Exception {
+    int L = x.classIndex();
+    Attribute c = h.getTemplate().classAttribute();
+    double w[] = h.getClassifier().distributionForInstance(PSUtils.convertInstance(x, L, h.getTemplate()));
+    int y_max[] = MLUtils.toIntArray(NSR.decodeValue(c.value(Utils.maxIndex(w))));
+    double y[] = new double[L * 2];
+    HashMap<Integer,Double> votes[] = new HashMap[L];
+    for (int j = 0; j < L; j++) {
+      y[j] = y_max[j];
+      votes[j] = new HashMap<Integer,Double>();
+    }
+    for (int i = 0; i < w.length; i++) {
+      int y_i[] = MLUtils.toIntArray(NSR.decodeValue(c.value(i)));
+      for (int j = 0; j < y_i.length; j++)
+        votes[j].put(y_i[j], votes[j].containsKey(y_i[j]) ? votes[j].get(y_i[j]) + w[i] : w[i]);
+    }
+    for (int j = 0; j < L; j++)
+      y[j + L] = votes[j].size() > 0 ? Collections.max(votes[j].values()) : 0.0;
+    return y;
+  }
+
+  public void testVoteTable() throws Exception {
+    Instances D = targetData(300, 3, 4, 1);
+    NSR h = new NSR();
+    h.buildClassifier(D);
+    Instances test = targetData(100, 3, 4, 2);
+    for (Instance x : test)
+      assertTrue(Arrays.equals(distributionWithMaps(h, x), h.distributionForInstance(x)));
+  }
+
+  /**
+   * A built model can predict in several threads at once.
+   */
+  public void testConcurrentPredictions() throws Exception {
+    Instances D = targetData(300, 3, 4, 1);
+    NSR h = new NSR();
+    h.buildClassifier(D);
+    Instances test = targetData(200, 3, 4, 3);
+    double expected[][] = new double[test.numInstances()][];
+    for (int i = 0; i < expected.length; i++)
+      expected[i] = h.distributionForInstance(test.instance(i));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+      for (int t = 0; t < 4; t++) {
+        jobs.add(() -> {
+          boolean same = true;
+          for (int n = 0; n < 20; n++) {
+            for (int i = 0; i < expected.length; i++)
+              same &= Arrays.equals(expected[i], h.distributionForInstance(test.instance(i)));
+          }
+          return same;
+        });
+      }
+      for (Future<Boolean> f : executor.invokeAll(jobs))
+        assertTrue(f.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(NSRTest.class);
   }
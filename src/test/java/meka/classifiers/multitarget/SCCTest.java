@@ -21,7 +21,20 @@ package meka.classifiers.multitarget;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import meka.classifiers.multilabel.Evaluation;
+import meka.classifiers.multilabel.ProblemTransformationMethod;
+import meka.core.MLUtils;
+import meka.core.Result;
+import meka.core.StatUtils;
+import meka.core.ThresholdUtils;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Tests CC. Run from the command line with:<p/>
@@ -51,6 +64,98 @@ public class SCCTest
     return new SCC();
   }
 
+  /**
+   * The super classes that SCC, with the given options, finds on Music, sorted.
+   */
+  protected static String partition(String options) throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    SCC h = new SCC();
+    h.setOptions(Utils.splitOptions(options));
+    h.buildClassifier(D);
+    Instances T = h.getTemplate();
+    List<String> classes = new ArrayList<String>();
+    for (int j = 0; j < T.classIndex(); j++)
+      classes.add(T.attribute(j).name());
+    Collections.sort(classes);
+    return classes.toString();
+  }
+
+  /**
+   * Tests that a single chain finds the partitions of the original simulated annealing (walks that stop before
+   * putting all labels together, so that every step counts).
+   */
+  public void testSingleChain() throws Exception {
+    assertEquals("[c_0+1+3+4+5, c_2]", partition("-S 0 -I 10"));
+    assertEquals("[c_0+2+3+4+5, c_1]", partition("-S 1 -I 20 -chains 1"));
+    assertEquals("[c_0+1+2+3+4, c_5]", partition("-S 3 -I 5"));
+  }
+
+  /**
+   * Tests that several chains find the same partition with any number of threads.
+   */
+  public void testChainsNumThreads() throws Exception {
+    for (String options : new String[]{"-S 0 -I 10 -chains 4", "-S 1 -I 200 -chains 4", "-S 3 -I 5 -chains 3"}) {
+      String expected = partition(options + " -num-threads 1");
+      assertEquals(options, expected, partition(options + " -num-threads 4"));
+    }
+  }
+
+  /** the dependency matrix of the validation split of Music with seed 0, as found by evaluating CR before */
+  protected static final double[][] MER_0 = {
+    {0.0, 537.7813604905903, 129.9465468907242, 578.3168438579617, 438.7110589740414, 602.8237996235707},
+    {0.0, 0.0, 128.91849160696265, 427.7617425823903, 298.53385172030494, 307.91063056062546},
+    {0.0, 0.0, 0.0, 208.96841895363485, 119.78023791173787, 105.29680665495906},
+    {0.0, 0.0, 0.0, 0.0, 814.7178025153445, 445.5595944669904},
+    {0.0, 0.0, 0.0, 0.0, 0.0, 337.85055271395663},
+    {0.0, 0.0, 0.0, 0.0, 0.0, 0.0},
+  };
+
+  protected static void assertEquals(double[][] expected, double[][] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int j = 0; j < expected.length; j++) {
+      for (int k = 0; k < expected.length; k++)
+        assertEquals("(" + j + "," + k + ")", expected[j][k], actual[j][k], 1e-9);
+    }
+  }
+
+  /**
+   * Tests that the dependency matrix of SCC, from the predictions of independent models, is the one of the
+   * evaluation of CR it replaces, with any number of threads.
+   */
+  public void testCondDepMatrix() throws Exception {
+    Instances D = loadData("Music.arff");
+    MLUtils.prepareData(D);
+    // the split of SCC.buildClassifier
+    Instances D_r = new Instances(D);
+    D_r.randomize(new Random(0));
+    Instances D_train = new Instances(D_r, 0, D_r.numInstances() * 67 / 100);
+    Instances D_test = new Instances(D_r, D_train.numInstances(), D_r.numInstances() - D_train.numInstances());
+    Classifier h = ((ProblemTransformationMethod) new SCC().getClassifier()).getClassifier();
+
+    CR cr = new CR();
+    cr.setClassifier(h);
+    Result result = Evaluation.evaluateModel(cr, D_train, D_test, "PCut1", "5");
+    assertEquals(MER_0, StatUtils.condDepMatrix(D_test, result));
+
+    for (int numThreads : new int[]{1, 4}) {
+      double Yprob[][] = StatUtils.independentPredictions(h, D_train, D_test, true, numThreads);
+      assertEquals(MER_0, StatUtils.condDepMatrix(D_test, Yprob, ThresholdUtils.round(Yprob), numThreads));
+    }
+  }
+
+  /**
+   * Tests that fewer than one chain is rejected.
+   */
+  public void testSetChains() {
+    SCC h = new SCC();
+    h.setChains(4);
+    h.setChains(0);
+    assertEquals(4, h.getChains());
+    h.setChains(-1);
+    assertEquals(4, h.getChains());
+  }
+
   public static Test suite() {
     return new TestSuite(SCCTest.class);
   }
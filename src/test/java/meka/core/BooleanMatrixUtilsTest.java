@@ -0,0 +1,181 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests the Boolean matrix decomposition of BooleanMatrixUtils on a small matrix, checked by hand. Run from the
+ * command line with:<p/>
+ * java meka.core.BooleanMatrixUtilsTest
+ *
+ * @version $Revision$
+ */
+public class BooleanMatrixUtilsTest
+    extends TestCase {
+
+    /**
+     * The matrix (4 x 3): the columns 0 and 1 always go together, column 2 on its own.
+     * <pre>
+     * 1 1 0
+     * 1 1 0
+     * 0 0 1
+     * 1 1 1
+     * </pre>
+     */
+    protected static final double[][] A = {
+        {1, 1, 0},
+        {1, 1, 0},
+        {0, 0, 1},
+        {1, 1, 1},
+    };
+
+    /** the row 1 1 0, as a bitset */
+    protected static final long AB = 0x3L;
+
+    /** the row 0 0 1, as a bitset */
+    protected static final long C = 0x4L;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public BooleanMatrixUtilsTest(String name) {
+        super(name);
+    }
+
+    /**
+     * The bits of the rows of a matrix with the given entries (in BMaD format).
+     */
+    protected static long[][] bits(double[][] A, boolean ones) {
+        long[][] rows = new long[A.length][1];
+        Instances D = BooleanMatrixUtils.toInstances(rows, A[0].length);
+        for (int i = 0; i < A.length; i++) {
+            for (int j = 0; j < A[i].length; j++)
+                D.instance(i).setValue(j, A[i][j]);
+        }
+        return BooleanMatrixUtils.toBits(D, ones);
+    }
+
+    /**
+     * Tests toBits, with a missing value (which is neither true nor false), and transpose.
+     */
+    public void testBits() {
+        double[][] M = {{1, 0, Double.NaN}};
+        assertEquals(0x1L, bits(M, true)[0][0]);
+        assertEquals(0x2L, bits(M, false)[0][0]);
+
+        long[][] T = BooleanMatrixUtils.transpose(bits(A, true), 3);
+        assertEquals(3, T.length);
+        assertEquals(0xBL, T[0][0]);    // rows 0, 1, 3
+        assertEquals(0xBL, T[1][0]);
+        assertEquals(0xCL, T[2][0]);    // rows 2, 3
+    }
+
+    /**
+     * Tests the association rules: 0 &rArr; 1 and 1 &rArr; 0 always hold, 2 &rArr; 0 only in one of the two rows of
+     * column 2, which is not above a confidence of 0.5.
+     */
+    public void testAssociations() {
+        long[][] cols = BooleanMatrixUtils.transpose(bits(A, true), 3);
+        long[][] expected = {{AB}, {AB}, {C}};
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertTrue(Arrays.deepEquals(expected, BooleanMatrixUtils.associations(cols, 0.5, null)));
+            assertTrue(Arrays.deepEquals(expected, BooleanMatrixUtils.associations(cols, 0.5, executor)));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        // at a confidence of 0.4, 2 => 0 and 2 => 1 hold too
+        assertTrue(Arrays.deepEquals(new long[][]{{AB}, {AB}, {0x7L}}, BooleanMatrixUtils.associations(cols, 0.4, null)));
+    }
+
+    /**
+     * Tests that FastLoc replaces the duplicate candidate, whatever the initial order of the candidates.
+     */
+    public void testSelectBasis() {
+        long[][] C_ = {{AB}, {AB}, {C}};
+        for (int seed = 0; seed < 10; seed++) {
+            long[][] B = BooleanMatrixUtils.selectBasis(C_, bits(A, true), bits(A, false), 2, new Random(seed), null);
+            long[] rows = {B[0][0], B[1][0]};
+            Arrays.sort(rows);
+            assertEquals("seed " + seed, AB, rows[0]);
+            assertEquals("seed " + seed, C, rows[1]);
+        }
+        try {
+            BooleanMatrixUtils.selectBasis(C_, bits(A, true), bits(A, false), 4, new Random(1), null);
+            fail("more basis rows than candidates");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests the usage of the basis rows, which covers the matrix exactly: each row uses the basis rows it contains.
+     */
+    public void testCombine() {
+        long[][] B = {{AB}, {C}};
+        long[][] U = BooleanMatrixUtils.combine(B, bits(A, true), bits(A, false), null);
+        long[][] expected = {{0x1L}, {0x1L}, {0x2L}, {0x3L}};
+        assertTrue(Arrays.deepToString(U), Arrays.deepEquals(expected, U));
+    }
+
+    /**
+     * Tests the whole decomposition, which reconstructs the matrix exactly.
+     */
+    public void testDecompose() throws Exception {
+        long[][] rows = bits(A, true);
+        Instances D = BooleanMatrixUtils.toInstances(rows, 3);
+        for (int numThreads : new int[]{ThreadUtils.SEQUENTIAL, 4}) {
+            Instances[] UB = BooleanMatrixUtils.decompose(D, 2, 0.5, new Random(1), numThreads);
+            assertEquals(4, UB[0].numInstances());
+            assertEquals(2, UB[0].numAttributes());
+            assertEquals(2, UB[1].numInstances());
+            assertEquals(3, UB[1].numAttributes());
+            for (int i = 0; i < A.length; i++) {
+                for (int j = 0; j < A[i].length; j++) {
+                    double v = 0;
+                    for (int t = 0; t < 2; t++)
+                        v = Math.max(v, Math.min(UB[0].instance(i).value(t), UB[1].instance(t).value(j)));
+                    assertEquals("(" + i + "," + j + ")", A[i][j], v, 0.0);
+                }
+            }
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(BooleanMatrixUtilsTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
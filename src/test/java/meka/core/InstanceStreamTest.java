@@ -0,0 +1,215 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.AbstractFileSaver;
+import weka.core.converters.ArffSaver;
+import weka.core.converters.XRFFLoader;
+import weka.core.converters.XRFFSaver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests reading datasets one instance at a time with InstanceStream. Run from the command line with:<p/>
+ * java meka.core.InstanceStreamTest
+ *
+ * @version $Revision$
+ */
+public class InstanceStreamTest
+    extends TestCase {
+
+    /** the number of labels, features and instances */
+    protected static final int L = 3, F = 2, N = 10;
+
+    /** the files written by a test */
+    protected List<File> files;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public InstanceStreamTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() {
+        files = new ArrayList<File>();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : files)
+            file.delete();
+    }
+
+    /**
+     * The values of instance i, labels first.
+     */
+    protected static double[] values(int i) {
+        double v[] = new double[L + F];
+        for (int j = 0; j < L; j++)
+            v[j] = (i + j) % 2;
+        for (int k = 0; k < F; k++)
+            v[L + k] = i * 10 + k + 0.5;
+        return v;
+    }
+
+    /**
+     * A small dataset, with the labels first (MEKA format, "-C 3") or at the end (MULAN format, "-C -3").
+     */
+    protected static Instances dataset(boolean mulan) {
+        ArrayList<Attribute> labels = new ArrayList<Attribute>();
+        for (int j = 0; j < L; j++)
+            labels.add(new Attribute("y" + j, Arrays.asList("0", "1")));
+        ArrayList<Attribute> features = new ArrayList<Attribute>();
+        for (int k = 0; k < F; k++)
+            features.add(new Attribute("x" + k));
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.addAll(mulan ? features : labels);
+        atts.addAll(mulan ? labels : features);
+        Instances D = new Instances("test: -C " + (mulan ? -L : L), atts, N);
+        for (int i = 0; i < N; i++) {
+            double v[] = values(i);
+            if (mulan) {
+                double v_[] = new double[L + F];
+                System.arraycopy(v, L, v_, 0, F);
+                System.arraycopy(v, 0, v_, F, L);
+                v = v_;
+            }
+            D.add(new DenseInstance(1.0, v));
+        }
+        return D;
+    }
+
+    /**
+     * Writes D to a temporary file with the given saver and extension.
+     */
+    protected File write(Instances D, AbstractFileSaver saver, String extension) throws Exception {
+        File file = File.createTempFile("InstanceStreamTest", extension);
+        files.add(file);
+        saver.setInstances(D);
+        saver.setFile(file);
+        saver.writeBatch();
+        return file;
+    }
+
+    /**
+     * Asserts that the stream returns the instances of values(i), with the labels first, and then ends; the
+     * structure must be the one of the whole dataset, as prepared by MLUtils.prepareData.
+     */
+    protected static void assertStream(InstanceStream stream, boolean mulan) throws Exception {
+        Instances D = dataset(mulan);
+        MLUtils.prepareData(D);
+        Instances header = stream.getStructure();
+        assertEquals(L, header.classIndex());
+        assertNull(header.equalHeadersMsg(D));
+        for (int i = 0; i < N; i++) {
+            Instance x = stream.next();
+            assertNotNull("instance " + i, x);
+            assertSame(header, x.dataset());
+            assertTrue("instance " + i, Arrays.equals(values(i), x.toDoubleArray()));
+        }
+        assertNull(stream.next());
+        assertNull(stream.next());
+    }
+
+    public void testArff() throws Exception {
+        InstanceStream stream = new InstanceStream(write(dataset(false), new ArffSaver(), ".arff").getPath());
+        assertNotNull(stream.loader);
+        assertStream(stream, false);
+    }
+
+    /**
+     * Labels at the end (MULAN format) are moved to the front of each instance as it is read.
+     */
+    public void testMulanReordering() throws Exception {
+        InstanceStream stream = new InstanceStream(write(dataset(true), new ArffSaver(), ".arff").getPath());
+        assertNotNull(stream.loader);
+        assertStream(stream, true);
+    }
+
+    /**
+     * A converter that cannot read incrementally (XRFF) loads the whole dataset.
+     */
+    public void testNonIncrementalLoader() throws Exception {
+        XRFFLoader loader = new XRFFLoader();
+        loader.setFile(write(dataset(false), new XRFFSaver(), ".xrff"));
+        InstanceStream stream = new InstanceStream(loader);
+        assertNull(stream.loader);
+        assertNotNull(stream.D);
+        assertStream(stream, false);
+
+        loader = new XRFFLoader();
+        loader.setFile(write(dataset(true), new XRFFSaver(), ".xrff"));
+        stream = new InstanceStream(loader);
+        assertNull(stream.loader);
+        assertStream(stream, true);
+    }
+
+    /**
+     * A stream over Instances in memory keeps their class index and returns copies of them.
+     */
+    public void testInMemoryCopies() throws Exception {
+        Instances D = dataset(false);
+        D.setClassIndex(L);
+        InstanceStream stream = new InstanceStream(D);
+        assertEquals(L, stream.getStructure().classIndex());
+        for (int i = 0; i < N; i++) {
+            Instance x = stream.next();
+            assertNotSame(D.instance(i), x);
+            assertTrue(Arrays.equals(D.instance(i).toDoubleArray(), x.toDoubleArray()));
+            x.setValue(0, 1 - x.value(0));
+            x.setValue(L, -1.0);
+            assertTrue("instance " + i, Arrays.equals(values(i), D.instance(i).toDoubleArray()));
+        }
+        assertNull(stream.next());
+        assertEquals(N, D.numInstances());
+    }
+
+    public void testMissingFile() throws Exception {
+        try {
+            new InstanceStream(new File(System.getProperty("java.io.tmpdir"), "InstanceStreamTest-missing.arff").getPath());
+            fail("no exception");
+        }
+        catch (Exception e) {
+            assertTrue(e.getMessage().startsWith("[Error] File does not exist"));
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(InstanceStreamTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Tests the buckets, percentiles and merging of LatencyHistogram. Run from the command line with:<p/>
+ * java meka.core.LatencyHistogramTest
+ *
+ * @version $Revision$
+ */
+public class LatencyHistogramTest
+    extends TestCase {
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public LatencyHistogramTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Asserts that v falls into its bucket: within its bounds, and above those of the previous bucket.
+     */
+    protected static void assertBucket(long v) {
+        int b = LatencyHistogram.bucket(v);
+        assertTrue("bucket of " + v, b >= 0 && b < LatencyHistogram.SUB * (64 - LatencyHistogram.SUB_BITS));
+        assertTrue("upper bound of " + v, LatencyHistogram.upperBound(b) >= v);
+        if (b > 0)
+            assertTrue("upper bound below " + v, LatencyHistogram.upperBound(b - 1) < v);
+    }
+
+    public void testExactBuckets() {
+        for (long v = 0; v < LatencyHistogram.SUB; v++) {
+            assertEquals(v, LatencyHistogram.bucket(v));
+            assertEquals(v, LatencyHistogram.upperBound((int)v));
+        }
+    }
+
+    public void testBucketBoundaries() {
+        // the first power of two above the exact buckets: buckets of width 1
+        assertEquals(16, LatencyHistogram.bucket(16));
+        assertEquals(31, LatencyHistogram.bucket(31));
+        // then of width 2
+        assertEquals(32, LatencyHistogram.bucket(32));
+        assertEquals(32, LatencyHistogram.bucket(33));
+        assertEquals(33, LatencyHistogram.bucket(34));
+        assertEquals(33L, LatencyHistogram.upperBound(32));
+        assertEquals(63L, LatencyHistogram.upperBound(47));
+        assertEquals(48, LatencyHistogram.bucket(64));
+        // the last bucket
+        assertEquals(new LatencyHistogram().counts.length - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.bucket(Long.MAX_VALUE)));
+
+        for (int e = LatencyHistogram.SUB_BITS; e < 63; e++) {
+            long p = 1L << e;
+            for (long v : new long[]{p - 1, p, p + 1, p + (p >> 1), 2 * p - 1})
+                assertBucket(v);
+            // each power of two starts a new group of buckets
+            assertEquals(LatencyHistogram.bucket(p - 1) + 1, LatencyHistogram.bucket(p));
+        }
+        Random r = new Random(1);
+        for (int t = 0; t < 10000; t++)
+            assertBucket((r.nextLong() >>> 1) >>> r.nextInt(63));
+    }
+
+    /**
+     * Above the exact buckets, a bucket is no wider than 1/16 of its lower bound.
+     */
+    public void testRelativeWidth() {
+        for (int b = LatencyHistogram.SUB; b < LatencyHistogram.bucket(Long.MAX_VALUE); b++) {
+            long lower = LatencyHistogram.upperBound(b - 1) + 1;
+            long width = LatencyHistogram.upperBound(b) - lower + 1;
+            assertTrue("bucket " + b, width * LatencyHistogram.SUB <= lower);
+        }
+    }
+
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.count());
+        assertEquals(0L, h.percentile(50.));
+        assertEquals(0L, h.max());
+        assertEquals(0.0, LatencyHistogram.throughput(h), 0.0);
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100; v++)
+            h.add(v);
+        h.add(-5);
+        assertEquals(101, h.count());
+        assertEquals(5050L, h.total());
+        assertEquals(100L, h.max());
+        // the value of the smallest rank, and a negative value counted as 0
+        assertEquals(0L, h.percentile(0.));
+        // exact below 16: the 11th of 0,1,2,...
+        assertEquals(10L, h.percentile(10.5));
+        // the upper bound of the bucket of 51 (in [48,51])
+        assertEquals(51L, h.percentile(50.));
+        // but no more than the maximum
+        assertEquals(100L, h.percentile(99.9));
+        assertEquals(100L, h.percentile(100.));
+    }
+
+    /**
+     * Each percentile is at least its exact value, and within 1/16 of it.
+     */
+    public void testPercentileError() {
+        Random r = new Random(2);
+        long v[] = new long[5000];
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < v.length; i++) {
+            v[i] = (long)Math.exp(r.nextGaussian() * 3 + 12);
+            h.add(v[i]);
+        }
+        Arrays.sort(v);
+        for (double p : new double[]{1., 10., 50., 90., 99., 99.9, 100.}) {
+            long exact = v[(int)Math.max(1, Math.ceil(p / 100. * v.length)) - 1];
+            long approx = h.percentile(p);
+            assertTrue("p" + p, approx >= exact);
+            assertTrue("p" + p, approx - exact <= exact / LatencyHistogram.SUB);
+        }
+        assertEquals(v[v.length - 1], h.max());
+    }
+
+    public void testMerge() {
+        Random r = new Random(3);
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            long v = r.nextInt(1000000);
+            all.add(v);
+            (i % 3 == 0 ? a : b).add(v);
+        }
+        a.merge(b);
+        assertEquals(all.count(), a.count());
+        assertEquals(all.total(), a.total());
+        assertEquals(all.max(), a.max());
+        assertTrue(Arrays.equals(all.counts, a.counts));
+        HashMap<String,Object> expected = new HashMap<String,Object>();
+        HashMap<String,Object> actual = new HashMap<String,Object>();
+        all.addMeasurements(expected, "Test");
+        a.addMeasurements(actual, "Test");
+        assertEquals(expected, actual);
+
+        // merging an empty histogram changes nothing
+        a.merge(new LatencyHistogram());
+        assertEquals(all.count(), a.count());
+        assertEquals(all.max(), a.max());
+        assertEquals(all.percentile(50.), a.percentile(50.));
+        // the other histogram is unchanged
+        assertTrue(b.count() > 0 && b.count() < all.count());
+    }
+
+    public void testClear() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1000; v < 2000; v++)
+            h.add(v);
+        h.clear();
+        assertEquals(0, h.count());
+        assertEquals(0L, h.total());
+        assertEquals(0L, h.max());
+        assertEquals(0L, h.percentile(50.));
+        // the old values are gone from the buckets too
+        h.add(5);
+        assertEquals(5L, h.percentile(100.));
+        assertEquals(5L, h.percentile(1.));
+        assertEquals(1, h.count());
+    }
+
+    public void testMeasurementsAndThroughput() {
+        LatencyHistogram test = new LatencyHistogram();
+        LatencyHistogram update = new LatencyHistogram();
+        for (int i = 0; i < 10; i++) {
+            test.add(4000);
+            update.add(6000);
+        }
+        HashMap<String,Object> stats = new HashMap<String,Object>();
+        test.addMeasurements(stats, "Test");
+        assertEquals(4.0, (Double)stats.get("Test latency p50 (us)"), 0.0);
+        assertEquals(4.0, (Double)stats.get("Test latency p99.9 (us)"), 0.0);
+        assertEquals(4.0, (Double)stats.get("Test latency max (us)"), 0.0);
+        assertEquals(LatencyHistogram.PERCENTILES.length + 1, stats.size());
+        // 10 instances in 100 us
+        assertEquals(100000.0, LatencyHistogram.throughput(test, update), 1e-6);
+    }
+
+    public static Test suite() {
+        return new TestSuite(LatencyHistogramTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the projection of instances of MLUtils against deleting attributes. Run from the command line with:<p/>
+ * java meka.core.MLUtilsTest
+ *
+ * @version $Revision$
+ */
+public class MLUtilsTest
+    extends TestCase {
+
+    /** the number of labels */
+    protected static final int L = 3;
+
+    /** the number of (numeric) features */
+    protected static final int F = 5;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public MLUtilsTest(String name) {
+        super(name);
+    }
+
+    /**
+     * An empty dataset of L binary labels and F numeric features.
+     */
+    protected static Instances header() {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        for (int j = 0; j < L; j++)
+            atts.add(new Attribute("y" + j, Arrays.asList("0", "1")));
+        for (int i = 0; i < F; i++)
+            atts.add(new Attribute("x" + i));
+        Instances D = new Instances("test", atts, 0);
+        D.setClassIndex(L);
+        return D;
+    }
+
+    /**
+     * A random instance of D, mostly zeros, with some missing values; sparse or dense.
+     */
+    protected static Instance randomInstance(Instances D, Random r, boolean sparse) {
+        double v[] = new double[D.numAttributes()];
+        for (int i = 0; i < v.length; i++) {
+            if (r.nextInt(3) > 0)
+                continue;
+            if (r.nextInt(10) == 0)
+                v[i] = Utils.missingValue();
+            else
+                v[i] = (i < L) ? 1.0 : r.nextGaussian();
+        }
+        Instance x = sparse ? new SparseInstance(0.5 + r.nextDouble(), v) : new DenseInstance(0.5 + r.nextDouble(), v);
+        x.setDataset(D);
+        return x;
+    }
+
+    /**
+     * The projection of x as before: a copy of x (with the labels set to y, if given), deleting the attributes not
+     * kept.
+     */
+    protected static Instance deleteAttributes(Instance x, int excl[], double y[], Instances D_template) {
+        Instance copy = (Instance)x.copy();
+        for (int j = 0; y != null && j < L; j++)
+            copy.setValue(j, y[j]);
+        copy.setDataset(null);
+        for (int i = excl.length - 1; i >= 0; i--)
+            copy.deleteAttributeAt(excl[i]);
+        copy.setDataset(D_template);
+        return copy;
+    }
+
+    /**
+     * Projects random sparse or dense instances, excluding a random set of attributes (labels and features), with and
+     * without label values, and asserts the same instances as deleting the attributes.
+     */
+    protected void assertSameProjection(boolean sparse) {
+        Random r = new Random(sparse ? 1 : 2);
+        Instances D = header();
+        for (int t = 0; t < 200; t++) {
+            // a random set of excluded attributes (but not all)
+            int excl[] = new int[0];
+            for (int i = 0; i < D.numAttributes(); i++) {
+                if (r.nextBoolean() && excl.length < D.numAttributes() - 1)
+                    excl = A.append(excl, i);
+            }
+            int keep[] = A.invert(excl, D.numAttributes());
+            int pos[] = new int[D.numAttributes()];
+            Arrays.fill(pos, -1);
+            for (int k = 0; k < keep.length; k++)
+                pos[keep[k]] = k;
+            Instances D_template = new Instances(D, 0);
+            D_template.setClassIndex(-1);
+            for (int i = excl.length - 1; i >= 0; i--)
+                D_template.deleteAttributeAt(excl[i]);
+
+            double y[] = null;
+            if (r.nextBoolean()) {
+                y = new double[L];
+                for (int j = 0; j < L; j++)
+                    y[j] = r.nextInt(4) == 0 ? Utils.missingValue() : r.nextInt(2);
+            }
+
+            Instance x = randomInstance(D, r, sparse);
+            Instance expected = deleteAttributes(x, excl, y, D_template);
+            Instance actual = MLUtils.keepAttributesAt(x, keep, pos, y, y == null ? 0 : L, new double[keep.length], D_template);
+
+            assertEquals(sparse, actual instanceof SparseInstance);
+            assertSame(D_template, actual.dataset());
+            assertEquals(expected.weight(), actual.weight(), 0.0);
+            assertEquals(expected.numAttributes(), actual.numAttributes());
+            for (int k = 0; k < keep.length; k++)
+                assertEquals("attribute " + keep[k], 0, Double.compare(expected.value(k), actual.value(k)));
+        }
+    }
+
+    /**
+     * Tests keepAttributesAt on dense instances.
+     */
+    public void testKeepAttributesAtDense() {
+        assertSameProjection(false);
+    }
+
+    /**
+     * Tests keepAttributesAt on sparse instances.
+     */
+    public void testKeepAttributesAtSparse() {
+        assertSameProjection(true);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MLUtilsTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
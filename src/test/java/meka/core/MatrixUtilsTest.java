@@ -0,0 +1,115 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import Jama.Matrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests the (in-place) matrix multiplications of MatrixUtils against Jama. Run from the command line with:<p/>
+ * java meka.core.MatrixUtilsTest
+ *
+ * @version $Revision$
+ */
+public class MatrixUtilsTest
+    extends TestCase {
+
+    /** dimensions large enough to span several blocks and get split across threads */
+    protected static final int M = 130, K = 150, N = 70;
+
+    protected double A[][], B[][], Bt[][], At[][];
+
+    protected ExecutorService executor;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public MatrixUtilsTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() {
+        Random r = new Random(1);
+        A = MatrixUtils.randn(M, K, r);
+        B = MatrixUtils.randn(K, N, r);
+        Bt = MatrixUtils.randn(N, K, r);
+        At = MatrixUtils.randn(K, M, r);
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testMultiply() {
+        double expected[][] = new Matrix(A).times(new Matrix(B)).getArray();
+        assertTrue(Arrays.deepEquals(expected, MatrixUtils.multiply(A, B)));
+
+        double C[][] = new double[M][N];
+        MatrixUtils.multiply(A, B, C, M, executor);
+        assertTrue(Arrays.deepEquals(expected, C));
+    }
+
+    public void testMultiplySigma() {
+        double expected[][] = MatrixUtils.addBias(MatrixUtils.sigma(new Matrix(A).times(new Matrix(B)).getArray()));
+
+        double Z[][] = new double[M][N + 1];
+        MatrixUtils.multiplySigma(A, B, Z, M, true, executor);
+        assertTrue(Arrays.deepEquals(expected, Z));
+    }
+
+    public void testMultiplyTranspose() {
+        double expected[][] = new Matrix(A).times(new Matrix(Bt).transpose()).getArray();
+        assertTrue(Arrays.deepEquals(expected, MatrixUtils.multiplyTranspose(A, Bt)));
+
+        double C[][] = new double[M][N];
+        MatrixUtils.multiplyTranspose(A, Bt, C, M, executor);
+        assertTrue(Arrays.deepEquals(expected, C));
+    }
+
+    public void testTransposeMultiply() {
+        assertTrue(Arrays.deepEquals(new Matrix(At).transpose().times(new Matrix(B)).getArray(), MatrixUtils.transposeMultiply(At, B)));
+
+        double expected[][] = new Matrix(At).transpose().times(0.1).times(new Matrix(B)).getArray();
+
+        double C[][] = new double[M][N];
+        MatrixUtils.transposeMultiply(At, 0.1, B, C, K, executor);
+        assertTrue(Arrays.deepEquals(expected, C));
+    }
+
+    public static Test suite() {
+        return new TestSuite(MatrixUtilsTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the quantiles of QuantileSketch: exact before any compaction, and within the rank error bound after.
+ * Run from the command line with:<p/>
+ * java meka.core.QuantileSketchTest
+ *
+ * @version $Revision$
+ */
+public class QuantileSketchTest
+    extends TestCase {
+
+    /** the capacity of the top level */
+    protected static final int K = 200;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public QuantileSketchTest(String name) {
+        super(name);
+    }
+
+    /**
+     * The number of (sorted) values v below x, or up to x.
+     */
+    protected static int count(double v[], double x, boolean inclusive) {
+        int lo = 0, hi = v.length;
+        while (lo < hi) {
+            int m = (lo + hi) >>> 1;
+            if (v[m] < x || (inclusive && v[m] == x))
+                lo = m + 1;
+            else
+                hi = m;
+        }
+        return lo;
+    }
+
+    /**
+     * The largest distance, as a fraction of the number of values, between q times the number of values and the
+     * ranks of the quantile q (in the sorted values v), for q = 0.001, 0.002, ..., 0.999.
+     */
+    protected static double maxRankError(QuantileSketch s, double v[]) {
+        int n = v.length;
+        double max = 0.;
+        for (int p = 1; p < 1000; p++) {
+            double q = p / 1000.;
+            double x = s.quantile(q);
+            // the ranks of x (several, if there are ties)
+            int from = count(v, x, false) + 1, to = count(v, x, true);
+            double rank = Math.max(from, Math.min(to, q * n));
+            max = Math.max(max, Math.abs(rank - q * n) / n);
+        }
+        return max;
+    }
+
+    public void testEmpty() {
+        QuantileSketch s = new QuantileSketch(K);
+        assertEquals(0, s.count());
+        assertTrue(Double.isNaN(s.quantile(0.5)));
+        assertTrue(Double.isNaN(s.valueAt(1)));
+        s.add(Double.NaN);
+        assertEquals(0, s.count());
+    }
+
+    /**
+     * Until the first compaction, each value is found at its rank.
+     */
+    public void testExactBelowCompaction() {
+        Random r = new Random(1);
+        for (int n : new int[]{1, 2, 3, 17, K - 1}) {
+            QuantileSketch s = new QuantileSketch(K);
+            double v[] = new double[n];
+            for (int i = 0; i < n; i++) {
+                // with some ties
+                v[i] = r.nextInt(3) == 0 ? 0.5 : r.nextDouble();
+                s.add(v[i]);
+                s.add(Double.NaN);
+            }
+            assertEquals(n, s.count());
+            Arrays.sort(v);
+            for (int rank = 1; rank <= n; rank++)
+                assertEquals("rank " + rank + " of " + n, v[rank - 1], s.valueAt(rank), 0.0);
+            assertEquals(v[0], s.quantile(0.), 0.0);
+            assertEquals(v[n - 1], s.quantile(1.), 0.0);
+            assertEquals(v[(n - 1) / 2], s.quantile(0.5), 0.0);
+        }
+    }
+
+    /**
+     * On a long stream, each quantile is within a rank error of 1.7/k (and most values have been compacted).
+     */
+    public void testRankErrorBound() {
+        int n = 100000;
+        for (int t = 0; t < 3; t++) {
+            Random r = new Random(t);
+            QuantileSketch s = new QuantileSketch(K);
+            double v[] = new double[n];
+            for (int i = 0; i < n; i++) {
+                // uniform, skewed, and sorted (for the compactions, the worst order)
+                v[i] = (t == 0) ? r.nextDouble() : (t == 1) ? Math.pow(r.nextDouble(), 4) : i / (double)n;
+                s.add(v[i]);
+            }
+            assertEquals(n, s.count());
+            assertTrue("values kept: " + s.kept, s.kept < 4 * K);
+            Arrays.sort(v);
+            double e = maxRankError(s, v);
+            assertTrue("rank error " + e + " (stream " + t + ")", e <= 1.7 / K);
+        }
+    }
+
+    /**
+     * Many ties (e.g., confidences of 0 and 1).
+     */
+    public void testTies() {
+        QuantileSketch s = new QuantileSketch(K);
+        int n = 50000;
+        for (int i = 0; i < n; i++)
+            s.add(i % 4 == 0 ? 1.0 : 0.0);
+        assertEquals(0.0, s.quantile(0.7), 0.0);
+        assertEquals(1.0, s.quantile(0.8), 0.0);
+        assertEquals(1.0, s.quantile(1.0), 0.0);
+    }
+
+    public void testClear() {
+        QuantileSketch s = new QuantileSketch(K);
+        for (int i = 0; i < 10000; i++)
+            s.add(i);
+        s.clear();
+        assertEquals(0, s.count());
+        assertTrue(Double.isNaN(s.quantile(0.5)));
+        for (int i = 0; i < 10; i++)
+            s.add(100 + i);
+        assertEquals(100., s.valueAt(1), 0.0);
+        assertEquals(109., s.quantile(1.0), 0.0);
+    }
+
+    public static Test suite() {
+        return new TestSuite(QuantileSketchTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
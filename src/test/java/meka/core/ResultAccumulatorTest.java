@@ -0,0 +1,225 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests that the statistics of ResultAccumulator, accumulated one prediction at a time, are those that MLEvalUtils
+ * computes from all the predictions. Run from the command line with:<p/>
+ * java meka.core.ResultAccumulatorTest
+ *
+ * @version $Revision$
+ */
+public class ResultAccumulatorTest
+    extends TestCase {
+
+    /** the number of predictions and labels */
+    protected static final int N = 400, L = 6;
+
+    /** the verbosity, to get all the statistics */
+    protected static final String VOP = "6";
+
+    protected double Rpred[][];
+
+    protected int Y[][];
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public ResultAccumulatorTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Random confidences and true labels, with some missing labels (and one instance with all of them missing),
+     * some confidences of exactly 0 and 1 (for infinite log losses), and some confidences of 0.01 and 0.99 for
+     * wrong labels, whose log loss is above the limit log(n) for the first instances, but not for the later ones.
+     */
+    @Override
+    protected void setUp() {
+        Random r = new Random(1);
+        Rpred = new double[N][L];
+        Y = new int[N][L];
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < L; j++) {
+                Y[i][j] = r.nextDouble() < 0.3 + 0.05 * j ? 1 : 0;
+                double u = r.nextDouble();
+                if (u < 0.02)
+                    Rpred[i][j] = r.nextBoolean() ? 0.0 : 1.0;
+                else if (u < 0.1)
+                    Rpred[i][j] = Y[i][j] == 1 ? 0.01 : 0.99;
+                else
+                    Rpred[i][j] = r.nextDouble();
+                if (r.nextDouble() < 0.05)
+                    Y[i][j] = -1;
+            }
+        }
+        Arrays.fill(Y[7], -1);
+    }
+
+    /**
+     * Asserts that each of the statistics of the accumulator is also in the expected ones, with the same value.
+     */
+    protected static void assertStats(HashMap<String,Object> expected, HashMap<String,Object> actual) {
+        assertFalse(actual.isEmpty());
+        for (Map.Entry<String,Object> e : actual.entrySet()) {
+            String key = e.getKey();
+            assertTrue("missing: " + key, expected.containsKey(key));
+            Object exp = expected.get(key);
+            Object act = e.getValue();
+            if (exp instanceof double[]) {
+                double a[] = (double[])exp, b[] = (double[])act;
+                assertEquals(key, a.length, b.length);
+                for (int j = 0; j < a.length; j++)
+                    assertEquals(key + "[" + j + "]", a[j], b[j], 1e-9);
+            }
+            else if (exp instanceof int[]) {
+                assertTrue(key, Arrays.equals((int[])exp, (int[])act));
+            }
+            else if (exp instanceof Number) {
+                assertEquals(key, ((Number)exp).doubleValue(), ((Number)act).doubleValue(), 1e-9);
+            }
+            else if (exp instanceof Object[]) {
+                // the curve data (of a window)
+                assertEquals(key, Arrays.deepToString((Object[])exp), Arrays.deepToString((Object[])act));
+            }
+            else {
+                assertEquals(key, String.valueOf(exp), String.valueOf(act));
+            }
+        }
+    }
+
+    /**
+     * The rows from..to-1 of M.
+     */
+    protected static double[][] rows(double M[][], int from, int to) {
+        return Arrays.copyOfRange(M, from, to);
+    }
+
+    protected static int[][] rows(int M[][], int from, int to) {
+        return Arrays.copyOfRange(M, from, to);
+    }
+
+    public void testMultiLabel() {
+        ResultAccumulator stats = new ResultAccumulator("ML", "0.5");
+        for (int i = 0; i < N; i++) {
+            stats.addResult(Rpred[i], Y[i]);
+            if (i == 9 || i == 99 || i == N - 1)
+                assertStats(MLEvalUtils.getMLStats(rows(Rpred, 0, i + 1), rows(Y, 0, i + 1), "0.5", VOP), stats.getStats(VOP));
+        }
+    }
+
+    public void testMultiLabelThresholds() {
+        String t = "[0.3, 0.4, 0.5, 0.6, 0.7, 0.8]";
+        ResultAccumulator stats = new ResultAccumulator("ML", t);
+        for (int i = 0; i < N; i++)
+            stats.addResult(Rpred[i], Y[i]);
+        assertStats(MLEvalUtils.getMLStats(Rpred, Y, t, VOP), stats.getStats(VOP));
+    }
+
+    /**
+     * The log losses above the limit log(n) get added once the limit has grown beyond them.
+     */
+    public void testLogLossD() {
+        ResultAccumulator stats = new ResultAccumulator("ML", "0.5");
+        for (int i = 0; i < N; i++) {
+            stats.addResult(Rpred[i], Y[i]);
+            double expected = Metrics.L_LogLossD(rows(Y, 0, i + 1), rows(Rpred, 0, i + 1));
+            assertEquals("after " + (i + 1), expected, (Double)stats.getStats(VOP).get("Log Loss (lim. D)"), 1e-9);
+        }
+        assertTrue(stats.logLossDInf > 0);
+    }
+
+    /**
+     * The log losses above the limit log(n) are kept (until the limit grows beyond them), and only those; losses that
+     * no limit can reach are only counted.
+     */
+    public void testLogLossDMemory() {
+        ResultAccumulator stats = new ResultAccumulator("ML", "0.5");
+        int y[] = {1, 0};
+        // n = 1: log(1) = 0, both losses are above it
+        stats.addResult(new double[]{0.5, 0.5}, y);
+        assertEquals(2, stats.logLossDAbove.size());
+        // n = 2 .. 10: losses of about 0.01, below log(n)
+        for (int i = 2; i <= 10; i++)
+            stats.addResult(new double[]{0.99, 0.01}, y);
+        assertEquals(2, stats.logLossDAbove.size());
+        // a confident mistake, -log(0.001) = 6.9 > log(11) = 2.4, and one no limit reaches, -log(1e-12) = 27.6
+        stats.addResult(new double[]{0.001, 1e-12}, new int[]{1, 1});
+        assertEquals(3, stats.logLossDAbove.size());
+        assertEquals(1, stats.logLossDInf);
+        // sampling adds those that the limit has grown beyond (log(0.5) = 0.69 < log(11))
+        stats.getStats(VOP);
+        assertEquals(1, stats.logLossDAbove.size());
+        double loss = 2 * -Math.log(0.5) + 9 * 2 * -Math.log(0.99) + 2 * Math.log(11);
+        assertEquals(loss / 22, (Double)stats.getStats(VOP).get("Log Loss (lim. D)"), 1e-12);
+    }
+
+    public void testWindowed() {
+        int window = 50;
+        ResultAccumulator stats = new ResultAccumulator("ML", "0.5", window);
+        for (int i = 0; i < N; i++) {
+            stats.addResult(Rpred[i], Y[i]);
+            if (i == 9 || i == 49 || i == 137 || i == N - 1) {
+                int from = Math.max(0, i + 1 - window);
+                assertEquals(i + 1 - from, stats.size());
+                assertStats(MLEvalUtils.getMLStats(rows(Rpred, from, i + 1), rows(Y, from, i + 1), "0.5", VOP), stats.getStats(VOP));
+            }
+        }
+    }
+
+    public void testMultiTarget() {
+        // values 0..2 for the first labels
+        double P[][] = new double[N][L];
+        int T[][] = new int[N][L];
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < L; j++) {
+                P[i][j] = j < 3 ? Math.round(Rpred[i][j] * 2) : Rpred[i][j];
+                T[i][j] = Y[i][j] == 1 && j < 3 && i % 2 == 0 ? 2 : Y[i][j];
+            }
+        }
+        ResultAccumulator stats = new ResultAccumulator("MT", "0.5");
+        ResultAccumulator windowed = new ResultAccumulator("MT", "0.5", 60);
+        for (int i = 0; i < N; i++) {
+            stats.addResult(P[i], T[i]);
+            windowed.addResult(P[i], T[i]);
+        }
+        assertStats(MLEvalUtils.getMTStats(P, T, VOP), stats.getStats(VOP));
+        assertStats(MLEvalUtils.getMTStats(rows(P, N - 60, N), rows(T, N - 60, N), VOP), windowed.getStats(VOP));
+    }
+
+    public static Test suite() {
+        return new TestSuite(ResultAccumulatorTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
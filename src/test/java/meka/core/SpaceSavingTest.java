@@ -0,0 +1,172 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the counts, evictions and error bounds of SpaceSaving. Run from the command line with:<p/>
+ * java meka.core.SpaceSavingTest
+ *
+ * @version $Revision$
+ */
+public class SpaceSavingTest
+    extends TestCase {
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public SpaceSavingTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Asserts that the counters are a min-heap, and that each item is found at its position.
+     */
+    protected static void assertHeap(SpaceSaving<?> s) {
+        assertEquals(s.size(), s.pos.size());
+        for (int i = 0; i < s.size(); i++) {
+            assertEquals(Integer.valueOf(i), s.pos.get(s.items[i]));
+            if (i > 0)
+                assertTrue("heap at " + i, s.counts[(i - 1) / 2] <= s.counts[i]);
+        }
+    }
+
+    /**
+     * As long as there are no more distinct items than counters, the counts are exact.
+     */
+    public void testExact() {
+        SpaceSaving<String> s = new SpaceSaving<String>(5);
+        HashMap<String,Integer> exact = new HashMap<String,Integer>();
+        Random r = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            String item = "i" + r.nextInt(5);
+            int c = 1 + r.nextInt(3);
+            s.add(item, c);
+            exact.merge(item, c, Integer::sum);
+        }
+        assertEquals(exact, s.toMap());
+        for (String item : exact.keySet())
+            assertEquals(0, s.error(item));
+        assertEquals(5, s.size());
+        assertEquals(5, s.capacity());
+        assertEquals(exact.values().stream().mapToLong(c -> c).sum(), s.total());
+        assertEquals(0, s.count("unseen"));
+        assertHeap(s);
+    }
+
+    /**
+     * A new item takes over the counter of the least frequent one, and its count starts from there.
+     */
+    public void testEviction() {
+        SpaceSaving<String> s = new SpaceSaving<String>(3);
+        for (String item : new String[]{"a", "a", "a", "b", "b", "c"})
+            s.add(item);
+        s.add("d");
+        assertEquals(3, s.size());
+        assertEquals(0, s.count("c"));
+        assertEquals(2, s.count("d"));
+        assertEquals(1, s.error("d"));
+        assertEquals(3, s.count("a"));
+        assertEquals(0, s.error("a"));
+        assertHeap(s);
+
+        // d and b are now tied at 2: one of them goes
+        s.add("e", 5);
+        assertEquals(3, s.size());
+        assertEquals(7, s.count("e"));
+        assertEquals(2, s.error("e"));
+        assertTrue(s.count("b") == 0 ^ s.count("d") == 0);
+        assertEquals(Arrays.asList("e", "a"), s.top(2));
+        assertEquals(12, s.total());
+        assertHeap(s);
+    }
+
+    public void testTop() {
+        SpaceSaving<Integer> s = new SpaceSaving<Integer>(10);
+        for (int v = 1; v <= 6; v++)
+            s.add(v, v * 10);
+        assertEquals(Arrays.asList(6, 5, 4), s.top(3));
+        assertEquals(6, s.top(100).size());
+        assertTrue(s.top(0).isEmpty());
+    }
+
+    /**
+     * On a skewed stream with many more distinct items than counters: each count overestimates the true count by at
+     * most its error, the errors are at most N/capacity, and every item occurring more than N/capacity times is
+     * counted.
+     */
+    public void testErrorBounds() {
+        int capacity = 50, N = 100000;
+        SpaceSaving<Integer> s = new SpaceSaving<Integer>(capacity);
+        HashMap<Integer,Integer> exact = new HashMap<Integer,Integer>();
+        Random r = new Random(2);
+        for (int i = 0; i < N; i++) {
+            // Zipf-like over 5000 items
+            int item = (int)Math.floor(Math.exp(r.nextDouble() * Math.log(5000)));
+            s.add(item);
+            exact.merge(item, 1, Integer::sum);
+            if (i % 10000 == 0)
+                assertHeap(s);
+        }
+        assertTrue(exact.size() > 10 * capacity);
+        assertEquals(capacity, s.size());
+        assertEquals(N, s.total());
+        assertHeap(s);
+
+        long sum = 0;
+        for (Map.Entry<Integer,Integer> e : s.toMap().entrySet()) {
+            int item = e.getKey(), count = e.getValue(), error = s.error(item);
+            int truth = exact.get(item);
+            sum += count;
+            assertTrue("overestimate of " + item, count >= truth);
+            assertTrue("error of " + item, count - error <= truth);
+            assertTrue("error bound of " + item, error <= N / capacity);
+        }
+        // the counters take over each other's counts, so that they add up to the stream
+        assertEquals(N, sum);
+        for (Map.Entry<Integer,Integer> e : exact.entrySet()) {
+            if (e.getValue() > N / capacity)
+                assertTrue("frequent item " + e.getKey(), s.count(e.getKey()) > 0);
+        }
+
+        // the top items are the most frequent ones
+        List<Integer> top = s.top(3);
+        assertEquals(Arrays.asList(1, 2, 3), top);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SpaceSavingTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Tests the tables of votes of SuperLabelUtils against the maps of votes. Run from the command line with:<p/>
+ * java meka.core.SuperLabelUtilsTest
+ *
+ * @version $Revision$
+ */
+public class SuperLabelUtilsTest
+    extends TestCase {
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public SuperLabelUtilsTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Casts the same votes (target, value, weight) into a table and into maps, and asserts the same classification.
+     */
+    protected static void assertSameVotes(int K[], int votes[][], double w[]) {
+        double table[][] = SuperLabelUtils.makeVoteTable(K);
+        HashMap<Integer,Double> maps[] = new HashMap[K.length];
+        for (int j = 0; j < K.length; j++)
+            maps[j] = new HashMap<Integer,Double>();
+        for (int i = 0; i < votes.length; i++) {
+            int j = votes[i][0], v = votes[i][1];
+            SuperLabelUtils.addVote(table, j, v, w[i]);
+            maps[j].put(v, maps[j].containsKey(v) ? maps[j].get(v) + w[i] : w[i]);
+        }
+        assertTrue(Arrays.equals(SuperLabelUtils.convertVotesToDistributionForInstance(maps), SuperLabelUtils.convertVotesToDistributionForInstance(table)));
+    }
+
+    public void testRandomVotes() {
+        Random r = new Random(1);
+        int K[] = new int[]{2, 3, 5, 10};
+        for (int t = 0; t < 500; t++) {
+            int n = 1 + r.nextInt(20);
+            int votes[][] = new int[n][];
+            double w[] = new double[n];
+            for (int i = 0; i < n; i++) {
+                // every target gets a vote first
+                int j = (i < K.length) ? i : r.nextInt(K.length);
+                votes[i] = new int[]{j, r.nextInt(K[j])};
+                // many ties (and zero weights)
+                w[i] = (t % 2 == 0) ? r.nextInt(3) * 0.5 : r.nextDouble();
+            }
+            if (n >= K.length)
+                assertSameVotes(K, votes, w);
+        }
+    }
+
+    /**
+     * All the votes are 0: among the values voted for, the highest, not the highest value of the target.
+     */
+    public void testAllZeroVotes() {
+        int K[] = new int[]{4, 3};
+        int votes[][] = new int[][]{{0, 1}, {0, 0}, {1, 0}};
+        double w[] = new double[]{0.0, 0.0, 0.0};
+        assertSameVotes(K, votes, w);
+        double table[][] = SuperLabelUtils.makeVoteTable(K);
+        for (int i = 0; i < votes.length; i++)
+            SuperLabelUtils.addVote(table, votes[i][0], votes[i][1], w[i]);
+        assertTrue(Arrays.equals(new double[]{1., 0.}, SuperLabelUtils.convertVotesToDistributionForInstance(table)));
+        assertEquals(0.0, SuperLabelUtils.maxVote(table[0]), 0.0);
+    }
+
+    /**
+     * Ties go to the higher value; no votes at all give 0.
+     */
+    public void testTiesAndNoVotes() {
+        double table[][] = SuperLabelUtils.makeVoteTable(new int[]{4, 2});
+        SuperLabelUtils.addVote(table, 0, 3, 0.25);
+        SuperLabelUtils.addVote(table, 0, 1, 0.5);
+        SuperLabelUtils.addVote(table, 0, 3, 0.25);
+        assertTrue(Arrays.equals(new double[]{3., 0.}, SuperLabelUtils.convertVotesToDistributionForInstance(table)));
+        assertEquals(0.5, SuperLabelUtils.maxVote(table[0]), 0.0);
+        assertEquals(0.0, SuperLabelUtils.maxVote(table[1]), 0.0);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SuperLabelUtilsTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package meka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Tests PCut on a sketch of the confidences against PCut on all of them. Run from the command line with:<p/>
+ * java meka.core.ThresholdUtilsTest
+ *
+ * @version $Revision$
+ */
+public class ThresholdUtilsTest
+    extends TestCase {
+
+    protected Random r;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public ThresholdUtilsTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() {
+        r = new Random(1);
+    }
+
+    /**
+     * N random confidence vectors of L labels (with some ties at 0 and 1).
+     */
+    protected ArrayList<double[]> confidences(int N, int L) {
+        ArrayList<double[]> Y = new ArrayList<double[]>();
+        for (int i = 0; i < N; i++) {
+            double y[] = new double[L];
+            for (int j = 0; j < L; j++) {
+                int c = r.nextInt(10);
+                y[j] = (c == 0) ? 0.0 : (c == 1) ? 1.0 : r.nextDouble();
+            }
+            Y.add(y);
+        }
+        return Y;
+    }
+
+    /**
+     * A sketch of all the confidences of Y.
+     */
+    protected static QuantileSketch sketch(ArrayList<double[]> Y) {
+        QuantileSketch s = new QuantileSketch();
+        for (double y[] : Y) {
+            for (double y_ : y)
+                s.add(y_);
+        }
+        return s;
+    }
+
+    /**
+     * The same threshold as on all the confidences, while the sketch holds all of them; a single label, for any number
+     * of relevant labels (including only one, and none).
+     */
+    public void testSingleLabel() {
+        int N = 150;
+        ArrayList<double[]> Y = confidences(N, 1);
+        QuantileSketch s = sketch(Y);
+        for (int ones : new int[]{0, 1, 2, 3, 15, 45, 75, 140, 149, 150}) {
+            double LC = ones / (double)N;
+            assertEquals(ones + " relevant", ThresholdUtils.calibrateThreshold(Y, LC), ThresholdUtils.calibrateThreshold(s, LC, 1), 0.0);
+        }
+        assertEquals(1.0, ThresholdUtils.calibrateThreshold(s, 0., 1), 0.0);
+    }
+
+    /**
+     * The same threshold as on all the confidences, while the sketch holds all of them; several labels.
+     */
+    public void testSeveralLabels() {
+        int N = 45, L = 4;
+        ArrayList<double[]> Y = confidences(N, L);
+        QuantileSketch s = sketch(Y);
+        for (int ones : new int[]{2, 3, 20, 45, 90, 170, 178, 180}) {
+            double LC = ones / (double)N;
+            assertEquals(ones + " relevant", ThresholdUtils.calibrateThreshold(Y, LC), ThresholdUtils.calibrateThreshold(s, LC, L), 0.0);
+        }
+        // where PCut on all the confidences fails (there is no confidence above the one relevant label)
+        assertEquals(1.0, ThresholdUtils.calibrateThreshold(s, 1. / N, L), 0.0);
+        assertEquals(1.0, ThresholdUtils.calibrateThreshold(s, 0., L), 0.0);
+        assertEquals(0.5, ThresholdUtils.calibrateThreshold(new QuantileSketch(), 1., L), 0.0);
+    }
+
+    /**
+     * The same thresholds for each label as on all the confidences.
+     */
+    public void testEachLabel() {
+        int N = 120, L = 5;
+        ArrayList<double[]> Y = confidences(N, L);
+        QuantileSketch s[] = new QuantileSketch[L];
+        for (int j = 0; j < L; j++) {
+            s[j] = new QuantileSketch();
+            for (double y[] : Y)
+                s[j].add(y[j]);
+        }
+        // including a label with a single relevant instance, and one with none
+        double F[] = new double[]{0.3, 1. / N, 0., 0.55, 1.};
+        double expected[] = ThresholdUtils.calibrateThresholds(Y, F);
+        double actual[] = ThresholdUtils.calibrateThresholds(s, F);
+        for (int j = 0; j < L; j++)
+            assertEquals("label " + j, expected[j], actual[j], 0.0);
+    }
+
+    /**
+     * On a long stream, the threshold gives the label cardinality, to within the rank error of the sketch.
+     */
+    public void testLongStream() {
+        int N = 50000, L = 3;
+        ArrayList<double[]> Y = confidences(N, L);
+        QuantileSketch s = sketch(Y);
+        double eps = 1.7 / 200;
+        for (double LC : new double[]{0.1, 0.7, 1.5, 2.6}) {
+            double t = ThresholdUtils.calibrateThreshold(s, LC, L);
+            double exact = ThresholdUtils.calibrateThreshold(Y, LC);
+            int above = 0, exactAbove = 0;
+            for (double y[] : Y) {
+                for (double y_ : y) {
+                    if (y_ >= t)
+                        above++;
+                    if (y_ >= exact)
+                        exactAbove++;
+                }
+            }
+            assertTrue("LC " + LC + ": " + above + " vs " + exactAbove, Math.abs(above - exactAbove) <= eps * N * L + 1);
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(ThresholdUtilsTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
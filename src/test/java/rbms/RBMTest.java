@@ -0,0 +1,171 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2026 University of Waikato, Hamilton, New Zealand
+ */
+
+package rbms;
+
+import Jama.Matrix;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import meka.core.MatrixUtils;
+
+import java.util.Random;
+
+/**
+ * Tests the CD-k and PCD-k gradients of RBM against the Matrix formulation of the epoch. Run from the command line
+ * with:<p/>
+ * java rbms.RBMTest
+ *
+ * @version $Revision$
+ */
+public class RBMTest
+    extends TestCase {
+
+    /** the number of instances */
+    protected static final int N = 20;
+
+    /** the number of visible units */
+    protected static final int D = 6;
+
+    /** the number of hidden units */
+    protected static final int H = 4;
+
+    /**
+     * Initializes the test.
+     *
+     * @param name the name of the test
+     */
+    public RBMTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Random binary data, with the bias column.
+     */
+    protected static Matrix data(long seed) {
+        Random r = new Random(seed);
+        double X[][] = new double[N][D];
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < D; j++)
+                X[i][j] = r.nextBoolean() ? 1.0 : 0.0;
+        }
+        return new Matrix(MatrixUtils.addBias(X));
+    }
+
+    /**
+     * An RBM with random weights, for CD-k or PCD-k.
+     */
+    protected static RBM rbm(int k, boolean persistent) {
+        RBM rbm = new RBM();
+        rbm.setH(H);
+        rbm.setK(k);
+        rbm.setPersistent(persistent);
+        rbm.initWeights(D);
+        return rbm;
+    }
+
+    protected static void assertEquals(Matrix expected, Matrix actual, double delta) {
+        assertEquals("", expected, actual, delta);
+    }
+
+    protected static void assertEquals(String message, Matrix expected, Matrix actual, double delta) {
+        assertEquals(message, expected.getRowDimension(), actual.getRowDimension());
+        assertEquals(message, expected.getColumnDimension(), actual.getColumnDimension());
+        for (int i = 0; i < expected.getRowDimension(); i++) {
+            for (int j = 0; j < expected.getColumnDimension(); j++)
+                assertEquals(message + " (" + i + "," + j + ")", expected.get(i, j), actual.get(i, j), delta);
+        }
+    }
+
+    /**
+     * The CD-k gradient, with Matrix operations: k steps down and back up from the data.
+     */
+    protected static Matrix cd(RBM rbm, Matrix X_0, int k) {
+        Matrix Z_0 = rbm.prob_Z(X_0);
+        Matrix E_pos = X_0.transpose().times(Z_0);
+        Matrix X_1 = X_0;
+        Matrix Z_1 = Z_0;
+        for (int s = 0; s < k; s++) {
+            X_1 = rbm.prob_X(Z_1);
+            Z_1 = rbm.prob_Z(X_1);
+        }
+        Matrix E_neg = X_1.transpose().times(Z_1);
+        return E_pos.minus(E_neg).times(1. / X_0.getRowDimension());
+    }
+
+    /**
+     * Tests that CD-1 gives the gradient of the original epoch, and CD-k that of k steps.
+     */
+    public void testCDk() {
+        Matrix X = data(1);
+        for (int k : new int[]{1, 3}) {
+            RBM rbm = rbm(k, false);
+            assertEquals(cd(rbm, X, k), rbm.epoch(X), 1e-12);
+            // the data, rather than the last negative sample, is where the next one starts
+            assertEquals(cd(rbm, X, k), rbm.epoch(X), 1e-12);
+        }
+    }
+
+    /**
+     * Tests that the fantasy particles of PCD-k start at the data, carry on from one update to the next (sampling the
+     * hidden units with the RBM's random numbers), and are kept after training.
+     */
+    public void testPCDChains() throws Exception {
+        Matrix X = data(2);
+        int k = 2;
+        RBM rbm = rbm(k, true);
+        rbm.m_R = new Random(3);
+        Random r = new Random(3);
+
+        Matrix X_f = X.copy();
+        for (int epoch = 0; epoch < 3; epoch++) {
+            for (int s = 0; s < k; s++) {
+                double Z_f[][] = rbm.prob_Z(X_f).getArray();
+                for (double z[] : Z_f) {
+                    for (int j = 0; j < z.length; j++)
+                        z[j] = (z[j] > r.nextDouble()) ? 1.0 : 0.0;
+                }
+                X_f = rbm.prob_X(new Matrix(Z_f));
+            }
+            Matrix E_pos = X.transpose().times(rbm.prob_Z(X));
+            Matrix E_neg = X_f.transpose().times(rbm.prob_Z(X_f));
+            Matrix expected = E_pos.times(1. / N).minus(E_neg.times(1. / N));
+
+            assertEquals("epoch " + epoch, expected, rbm.epoch(X), 1e-12);
+            assertEquals(X_f, new Matrix(rbm.Xf_), 1e-12);
+        }
+
+        // training keeps the chains (and drops the other buffers)
+        rbm = rbm(k, true);
+        rbm.setE(5);
+        rbm.train(MatrixUtils.removeBias(X.getArray()), 5);
+        assertNotNull(rbm.Xf_);
+        assertEquals(5, rbm.m_Nf);
+        assertNull(rbm.Z0_);
+        assertNull(rbm.Xb_);
+    }
+
+    public static Test suite() {
+        return new TestSuite(RBMTest.class);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}